@@ -0,0 +1,106 @@
+package com.ahmedmq.zatca.qr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding, decoding and validating the QR code of a simplified invoice with a reused
+ * {@link QrCodeWriter} and {@link QrCodeReader}, against encoding it through strings and
+ * {@link ByteArrayOutputStream}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QrCodeBenchmark {
+
+    static final String SELLER_NAME = "شركة التوريد التجريبية | Sample Supplier";
+    static final String VAT_NUMBER = "310122393500003";
+    static final LocalDateTime TIMESTAMP = LocalDateTime.of(2022, 8, 17, 17, 41, 8);
+    static final String INVOICE_HASH = "3Qx3ZLk4Xf3PKmE+gQp0oNi4qCnG5EjWQwDCzkFYXfI=";
+    static final String SIGNATURE = "MEUCIQD7pY2uHyV0ht2Pdt9SEtBq1dN2J3cHNKiuR9/aBdO8rQIgIGYzdgqfP6DvQfhg7gsH2Lk6gQ5MK4GHU4h3hhjM1vg=";
+
+    final QrCodeWriter qrCodeWriter = new QrCodeWriter();
+    final QrCodeReader qrCodeReader = new QrCodeReader();
+    final byte[] base64 = new byte[1024];
+    final byte[] publicKey = new byte[88];
+    final byte[] certificateSignature = new byte[71];
+
+    String qrCode;
+
+    @Setup
+    public void setUp() {
+        encode();
+        qrCode = qrCodeWriter.toBase64();
+    }
+
+    @Benchmark
+    public int encode() {
+        return qrCodeWriter.reset()
+                .text(QrCodeTag.SELLER_NAME, SELLER_NAME)
+                .text(QrCodeTag.VAT_NUMBER, VAT_NUMBER)
+                .timestamp(QrCodeTag.TIMESTAMP, TIMESTAMP)
+                .amount(QrCodeTag.INVOICE_TOTAL, 115000, 2)
+                .amount(QrCodeTag.VAT_TOTAL, 15000, 2)
+                .text(QrCodeTag.INVOICE_HASH, INVOICE_HASH)
+                .text(QrCodeTag.SIGNATURE, SIGNATURE)
+                .bytes(QrCodeTag.PUBLIC_KEY, publicKey)
+                .bytes(QrCodeTag.CERTIFICATE_SIGNATURE, certificateSignature)
+                .toBase64(base64, 0);
+    }
+
+    @Benchmark
+    public String encodeWithStrings() {
+        ByteArrayOutputStream tlv = new ByteArrayOutputStream();
+        field(tlv, 1, SELLER_NAME.getBytes(StandardCharsets.UTF_8));
+        field(tlv, 2, VAT_NUMBER.getBytes(StandardCharsets.UTF_8));
+        field(tlv, 3, TIMESTAMP.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).getBytes(StandardCharsets.UTF_8));
+        field(tlv, 4, new BigDecimal("1150.00").toPlainString().getBytes(StandardCharsets.UTF_8));
+        field(tlv, 5, new BigDecimal("150.00").toPlainString().getBytes(StandardCharsets.UTF_8));
+        field(tlv, 6, INVOICE_HASH.getBytes(StandardCharsets.UTF_8));
+        field(tlv, 7, SIGNATURE.getBytes(StandardCharsets.UTF_8));
+        field(tlv, 8, publicKey);
+        field(tlv, 9, certificateSignature);
+        return Base64.getEncoder().encodeToString(tlv.toByteArray());
+    }
+
+    @Benchmark
+    public int decode() {
+        qrCodeReader.reset(qrCode);
+        int fields = 0;
+        while (qrCodeReader.next()) {
+            fields += qrCodeReader.valueLength();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public List<?> validate() {
+        return QrCodeValidator.validate(qrCode, true, INVOICE_HASH);
+    }
+
+    private static void field(ByteArrayOutputStream tlv, int tag, byte[] value) {
+        tlv.write(tag);
+        tlv.write(value.length);
+        tlv.writeBytes(value);
+    }
+}
@@ -0,0 +1,89 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.Warning;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * UBL invoices of a given size, base64 encoded the way they are submitted to the gateway.
+ */
+final class BenchmarkInvoices {
+
+    static final String UUID = "3cf5ee18-ee25-44ea-a444-2c37ba7f28be";
+
+    static final String INVOICE_HASH = "NWZlY2ViNjZmZmM4NmYzOGQ5NTI3ODZjNmQ2OTZjNzljMmRiYzIzOWRkNGU5MWI0NjcyOWQ3M2EyN2ZiNTdlOQ==";
+
+    private static final String HEADER = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2"
+                     xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2"
+                     xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+                <cbc:ProfileID>reporting:1.0</cbc:ProfileID>
+                <cbc:ID>SME00010</cbc:ID>
+                <cbc:UUID>%s</cbc:UUID>
+                <cbc:IssueDate>2022-08-17</cbc:IssueDate>
+                <cbc:IssueTime>17:41:08</cbc:IssueTime>
+                <cbc:InvoiceTypeCode name="0200000">388</cbc:InvoiceTypeCode>
+                <cbc:DocumentCurrencyCode>SAR</cbc:DocumentCurrencyCode>
+                <cbc:TaxCurrencyCode>SAR</cbc:TaxCurrencyCode>
+            """.formatted(UUID);
+
+    private static final String LINE = """
+                <cac:InvoiceLine>
+                    <cbc:ID>%d</cbc:ID>
+                    <cbc:InvoicedQuantity unitCode="PCE">33.000000</cbc:InvoicedQuantity>
+                    <cbc:LineExtensionAmount currencyID="SAR">99.00</cbc:LineExtensionAmount>
+                    <cac:TaxTotal>
+                        <cbc:TaxAmount currencyID="SAR">14.85</cbc:TaxAmount>
+                        <cbc:RoundingAmount currencyID="SAR">113.85</cbc:RoundingAmount>
+                    </cac:TaxTotal>
+                    <cac:Item>
+                        <cbc:Name>كتاب</cbc:Name>
+                        <cac:ClassifiedTaxCategory>
+                            <cbc:ID>S</cbc:ID>
+                            <cbc:Percent>15.00</cbc:Percent>
+                            <cac:TaxScheme>
+                                <cbc:ID>VAT</cbc:ID>
+                            </cac:TaxScheme>
+                        </cac:ClassifiedTaxCategory>
+                    </cac:Item>
+                    <cac:Price>
+                        <cbc:PriceAmount currencyID="SAR">3.00</cbc:PriceAmount>
+                    </cac:Price>
+                </cac:InvoiceLine>
+            """;
+
+    private static final String FOOTER = "</Invoice>\n";
+
+    private BenchmarkInvoices() {
+    }
+
+    /**
+     * Returns an invoice whose XML, before base64 encoding, is about {@code size} bytes.
+     */
+    static String xml(int size) {
+        StringBuilder xml = new StringBuilder(size + LINE.length()).append(HEADER);
+        for (int line = 1; xml.length() + FOOTER.length() < size; line++) {
+            xml.append(LINE.formatted(line));
+        }
+        return xml.append(FOOTER).toString();
+    }
+
+    static String base64(int size) {
+        return Base64.getEncoder().encodeToString(xml(size).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static InvoiceRequest invoiceRequest(int size) {
+        return new InvoiceRequest(INVOICE_HASH, UUID, base64(size));
+    }
+
+    static ClearedInvoiceResult clearedInvoiceResult(int size) {
+        return new ClearedInvoiceResult(INVOICE_HASH, base64(size), "CLEARED",
+                List.of(new Warning("BR_KSA", "BR-KSA-08", "The seller identification must exist only once")),
+                List.of());
+    }
+}
@@ -0,0 +1,64 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reserving and committing links of {@link DefaultInvoiceChain} from 4 threads, spread over a single EGS unit or
+ * many, with a store that does not persist so that the sequencer itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class InvoiceChainBenchmark {
+
+    @Param({"1", "1024"})
+    int units;
+
+    DefaultInvoiceChain invoiceChain;
+
+    String[] egsUnits;
+
+    @Setup
+    public void setUp() {
+        invoiceChain = new DefaultInvoiceChain(new StreamingInvoiceHasher(), new InvoiceChainStore() {
+            @Override
+            public InvoiceChainState load(String egsUnit) {
+                return null;
+            }
+
+            @Override
+            public void save(String egsUnit, InvoiceChainState state) {
+            }
+        });
+        egsUnits = new String[units];
+        for (int i = 0; i < units; i++) {
+            egsUnits[i] = "egs-" + i;
+        }
+    }
+
+    @Benchmark
+    public long nextAndCommit() {
+        try (InvoiceChain.Link link = invoiceChain.next(egsUnits[ThreadLocalRandom.current().nextInt(units)])) {
+            link.commit(InvoiceChain.INITIAL_INVOICE_HASH);
+            return link.icv();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing an invoice with {@link StreamingInvoiceHasher} against the DOM, stylesheet and C14N pipeline of
+ * {@link XsltInvoiceHasher}, for a single invoice and for a batch of 64.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvoiceHasherBenchmark {
+
+    @Param({"4096", "65536", "1048576"})
+    int invoiceSize;
+
+    StreamingInvoiceHasher streamingInvoiceHasher = new StreamingInvoiceHasher(ForkJoinPool.commonPool(),
+            Runtime.getRuntime().availableProcessors());
+
+    XsltInvoiceHasher xsltInvoiceHasher = new XsltInvoiceHasher();
+
+    InvoiceSource invoice;
+
+    List<InvoiceSource> batch;
+
+    @Setup
+    public void setUp() {
+        invoice = InvoiceSource.of(ByteBuffer.wrap(BenchmarkInvoices.xml(invoiceSize).getBytes(StandardCharsets.UTF_8)));
+        batch = Collections.nCopies(64, invoice);
+    }
+
+    @Benchmark
+    public String streaming() {
+        return streamingInvoiceHasher.hash(invoice);
+    }
+
+    @Benchmark
+    public String xslt() {
+        return xsltInvoiceHasher.hash(invoice);
+    }
+
+    @Benchmark
+    public List<String> streamingBatch() {
+        return streamingInvoiceHasher.hashAll(batch);
+    }
+
+    @Benchmark
+    public List<String> xsltBatch() {
+        return xsltInvoiceHasher.hashAll(batch);
+    }
+}
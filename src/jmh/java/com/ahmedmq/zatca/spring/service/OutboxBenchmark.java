@@ -0,0 +1,69 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appending a 4 KB invoice to a {@link MappedOutboxLog} from 8 threads, with and without forcing each append to
+ * disk, so that the share of forces saved by group commit shows against the throughput of plain appends.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class OutboxBenchmark {
+
+    @Param({"true", "false"})
+    boolean fsync;
+
+    Path directory;
+
+    MappedOutboxLog log;
+
+    InvoiceRequest invoiceRequest = new InvoiceRequest(BenchmarkInvoices.INVOICE_HASH,
+            "8e6000cf-1a98-4174-b3e7-b5d5954bc10d", "x".repeat(4096));
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zatca-outbox");
+        log = MappedOutboxLog.open(directory, 64 << 20, fsync);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        return log.append("egs-1", invoiceRequest);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Recording a submission in a {@link FileSubmissionLedger} holding a million, and looking one up by UUID among
+ * them, most of them in sealed segments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubmissionLedgerBenchmark {
+    static final int SUBMISSIONS = 1_000_000;
+    static final Instant SUBMITTED_AT = Instant.parse("2024-03-01T10:15:30Z");
+
+    Path directory;
+
+    FileSubmissionLedger ledger;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zatca-ledger");
+        ledger = FileSubmissionLedger.open(directory, 32 << 20);
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            ledger.append(record(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ledger.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        ledger.append(record(ThreadLocalRandom.current().nextInt(SUBMISSIONS)));
+    }
+
+    @Benchmark
+    public List<SubmissionRecord> findByUuid() {
+        return ledger.findByUuid(uuid(ThreadLocalRandom.current().nextInt(SUBMISSIONS)));
+    }
+
+    static SubmissionRecord record(int i) {
+        return new SubmissionRecord(uuid(i), BenchmarkInvoices.INVOICE_HASH + i, ZatcaEndpoint.REPORTING,
+                "REPORTED", List.of(), List.of(), null, SUBMITTED_AT.plusMillis(i), Duration.ofMillis(120));
+    }
+
+    static String uuid(int i) {
+        return String.format("8e6000cf-1a98-4174-b3e7-%012d", i);
+    }
+}
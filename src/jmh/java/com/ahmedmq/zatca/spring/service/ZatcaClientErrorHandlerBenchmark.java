@@ -0,0 +1,73 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a rejection into a {@link ZatcaClientApiException}, including reading and parsing the error
+ * body, with and without a stack trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZatcaClientErrorHandlerBenchmark {
+
+    private static final String ERROR = """
+            {"type":"ERROR","code":"BR-KSA-44","category":"KSA","message":"The seller's address must contain the street name","status":"ERROR"}""";
+
+    private static final URI COMPLIANCE_URL = URI.create("https://gateway.example" + ZatcaEndpoint.INVOICE_COMPLIANCE.path());
+
+    @Param({"1", "100"})
+    int errors;
+
+    @Param({"false", "true"})
+    boolean stacklessRejections;
+
+    ZatcaClientErrorHandler errorHandler;
+
+    byte[] body;
+
+    @Setup
+    public void setUp() {
+        errorHandler = new ZatcaClientErrorHandler(
+                new ZatcaProperties.Errors(DataSize.ofKilobytes(64), stacklessRejections));
+        body = """
+                {"validationResults":{"infoMessages":[],"warningMessages":[],"errorMessages":[%s],"status":"ERROR"},\
+                "reportingStatus":"NOT_REPORTED","clearanceStatus":null,"qrSellertStatus":null,"qrBuyertStatus":null}"""
+                .formatted(String.join(",", Collections.nCopies(errors, ERROR)))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ZatcaClientApiException handleError() throws IOException {
+        try {
+            errorHandler.handleError(COMPLIANCE_URL, HttpMethod.POST, new MockClientHttpResponse(body, HttpStatus.BAD_REQUEST));
+            throw new IllegalStateException("error handler did not throw");
+        } catch (ZatcaClientApiException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of {@link InvoiceRequest} and deserialization of {@link ClearedInvoiceResult} through the
+ * message converter {@code RestTemplate} uses, for invoices from 1 KB to 1 MB, along with their streamed
+ * counterparts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZatcaJsonBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int invoiceSize;
+
+    MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
+
+    InvoiceRequest invoiceRequest;
+
+    byte[] clearedInvoiceResult;
+
+    byte[] invoiceXml;
+
+    @Setup
+    public void setUp() throws IOException {
+        invoiceRequest = BenchmarkInvoices.invoiceRequest(invoiceSize);
+        invoiceXml = BenchmarkInvoices.xml(invoiceSize).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        converter.write(BenchmarkInvoices.clearedInvoiceResult(invoiceSize), MediaType.APPLICATION_JSON,
+                new OutputMessage(body));
+        clearedInvoiceResult = body.toByteArray();
+    }
+
+    @Benchmark
+    public void serializeInvoiceRequest() throws IOException {
+        converter.write(invoiceRequest, MediaType.APPLICATION_JSON, new OutputMessage(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Encoding the invoice XML into an {@link InvoiceRequest} before writing it, to compare with
+     * {@link #serializeStreamingInvoiceRequest()}.
+     */
+    @Benchmark
+    public void serializeInvoiceRequestFromXml() throws IOException {
+        InvoiceRequest request = new InvoiceRequest(BenchmarkInvoices.INVOICE_HASH, BenchmarkInvoices.UUID,
+                Base64.getEncoder().encodeToString(invoiceXml));
+        converter.write(request, MediaType.APPLICATION_JSON, new OutputMessage(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public void serializeStreamingInvoiceRequest() throws IOException {
+        StreamingInvoiceRequest request = new StreamingInvoiceRequest(BenchmarkInvoices.INVOICE_HASH,
+                BenchmarkInvoices.UUID, InvoiceSource.of(ByteBuffer.wrap(invoiceXml)));
+        converter.write(request, MediaType.APPLICATION_JSON, new OutputMessage(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public Object deserializeClearedInvoiceResult() throws IOException {
+        return converter.read(ClearedInvoiceResult.class, new InputMessage(new ByteArrayInputStream(clearedInvoiceResult)));
+    }
+
+    /**
+     * Reading the {@link ClearedInvoiceResult} and decoding its invoice, to compare with
+     * {@link #streamClearedInvoice()}.
+     */
+    @Benchmark
+    public void decodeClearedInvoice() throws IOException {
+        ClearedInvoiceResult result = (ClearedInvoiceResult) converter.read(ClearedInvoiceResult.class,
+                new InputMessage(new ByteArrayInputStream(clearedInvoiceResult)));
+        OutputStream.nullOutputStream().write(Base64.getDecoder().decode(result.clearedInvoice()));
+    }
+
+    @Benchmark
+    public Object streamClearedInvoice() throws IOException {
+        return ClearedInvoiceReader.read(converter.getObjectMapper(), new ByteArrayInputStream(clearedInvoiceResult),
+                InvoiceSink.of(OutputStream.nullOutputStream()));
+    }
+
+    private record OutputMessage(OutputStream getBody, HttpHeaders getHeaders) implements HttpOutputMessage {
+
+        OutputMessage(OutputStream body) {
+            this(body, new HttpHeaders());
+        }
+    }
+
+    private record InputMessage(InputStream getBody, HttpHeaders getHeaders) implements HttpInputMessage {
+
+        InputMessage(InputStream body) {
+            this(body, contentType());
+        }
+
+        private static HttpHeaders contentType() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            return headers;
+        }
+    }
+}
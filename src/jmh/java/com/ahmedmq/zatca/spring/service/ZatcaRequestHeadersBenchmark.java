@@ -0,0 +1,53 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the headers sent with every call, against looking up the headers prepared when an EGS unit
+ * was registered with the {@link DefaultZatcaCredentialRegistry}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZatcaRequestHeadersBenchmark {
+
+    DefaultZatcaCredentialRegistry credentialRegistry = new DefaultZatcaCredentialRegistry(Set.of(), "V2");
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 10_000; i++) {
+            credentialRegistry.register("egs-" + i, BenchmarkInvoices.INVOICE_HASH, "secret");
+        }
+    }
+
+    @Benchmark
+    public HttpHeaders withBasicAuth() {
+        return ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.CLEARANCE, "V2", BenchmarkInvoices.INVOICE_HASH, "secret");
+    }
+
+    @Benchmark
+    public HttpHeaders registeredEgsUnit() {
+        return credentialRegistry.unit("egs-4242").clearanceHeaders();
+    }
+
+    @Benchmark
+    public HttpHeaders withOtp() {
+        return ZatcaRequestHeaders.withOtp(ZatcaEndpoint.COMPLIANCE_CSID, "V2", "123345");
+    }
+}
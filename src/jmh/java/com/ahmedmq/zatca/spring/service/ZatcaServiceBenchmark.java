@@ -0,0 +1,142 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clears invoices end to end through {@link DefaultZatcaService} and each {@link ZatcaTransport} against an
+ * in-process stub gateway that answers immediately, so the numbers reflect the client side only.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ZatcaServiceBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    int invoiceSize;
+
+    @Param({"REST_TEMPLATE", "REST_CLIENT", "WEB_CLIENT", "JDK"})
+    ZatcaProperties.Transport transport;
+
+    HttpServer server;
+
+    ExecutorService serverExecutor;
+
+    ConnectionProvider connectionProvider;
+
+    ZatcaService zatcaService;
+
+    InvoiceRequest invoiceRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        new MappingJackson2HttpMessageConverter().getObjectMapper()
+                .writeValue(body, BenchmarkInvoices.clearedInvoiceResult(invoiceSize));
+        byte[] clearedInvoiceResult = body.toByteArray();
+
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try (InputStream requestBody = exchange.getRequestBody()) {
+                requestBody.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, clearedInvoiceResult.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(clearedInvoiceResult);
+            }
+        });
+        server.start();
+
+        ZatcaProperties zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "zatca.base-url", "http://localhost:" + server.getAddress().getPort(),
+                "zatca.api-version", "V2")))
+                .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+        zatcaService = new DefaultZatcaService(transport(zatcaProperties), zatcaProperties);
+        invoiceRequest = BenchmarkInvoices.invoiceRequest(invoiceSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    @Benchmark
+    public ClearedInvoiceResult clearedInvoice() {
+        return zatcaService.clearedInvoice("certificate", "secret", invoiceRequest);
+    }
+
+    private ZatcaTransport transport(ZatcaProperties zatcaProperties) {
+        ObjectMapper objectMapper = new MappingJackson2HttpMessageConverter().getObjectMapper();
+        return switch (transport) {
+            case REST_TEMPLATE -> new RestTemplateZatcaTransport(restTemplate(zatcaProperties));
+            case REST_CLIENT -> new RestClientZatcaTransport(restTemplate(zatcaProperties));
+            case WEB_CLIENT -> {
+                connectionProvider = ZatcaClientHttpConnectors.connectionProvider(zatcaProperties.http());
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-web-client-");
+                executor.setDaemon(true);
+                yield new WebClientZatcaTransports(WebClient.builder(), connectionProvider, objectMapper,
+                        zatcaProperties.errors(), List.of(), executor)
+                        .create(zatcaProperties.baseUrl(), zatcaProperties.http());
+            }
+            case JDK -> new JdkZatcaTransport(ZatcaClientHttpRequestFactories.httpClient(zatcaProperties.http()),
+                    zatcaProperties.baseUrl(), zatcaProperties.http().readTimeout(), objectMapper,
+                    zatcaProperties.errors(), List.of());
+        };
+    }
+
+    private static RestTemplate restTemplate(ZatcaProperties zatcaProperties) {
+        return new RestTemplateBuilder()
+                .rootUri(zatcaProperties.baseUrl())
+                .requestFactory(() -> ZatcaClientHttpRequestFactories.create(zatcaProperties.http()))
+                .errorHandler(new ZatcaClientErrorHandler())
+                .build();
+    }
+}
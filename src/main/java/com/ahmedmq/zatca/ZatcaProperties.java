@@ -1,8 +1,331 @@
 package com.ahmedmq.zatca;
 
+import com.ahmedmq.zatca.spring.service.ZatcaEndpoint;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
 
 @ConfigurationProperties(prefix = "zatca")
 public record ZatcaProperties(String baseUrl,
-        String apiVersion) {
+        String apiVersion,
+        @DefaultValue Http http,
+        @DefaultValue("rest-template") Transport transport,
+        @DefaultValue Bulk bulk,
+        @DefaultValue Stream stream,
+        @DefaultValue Async async,
+        @DefaultValue Retry retry,
+        @DefaultValue CircuitBreaker circuitBreaker,
+        @DefaultValue Hedging hedging,
+        @DefaultValue RateLimit rateLimit,
+        @DefaultValue Errors errors,
+        @DefaultValue Preflight preflight,
+        @DefaultValue Chain chain,
+        Map<String, Tenant> tenants,
+        @DefaultValue Renewal renewal,
+        @DefaultValue Onboarding onboarding,
+        @DefaultValue Outbox outbox,
+        @DefaultValue Ledger ledger,
+        @DefaultValue Deduplication deduplication) {
+
+    /**
+     * Settings of the pooled HTTP transport used to reach the ZATCA gateway.
+     *
+     * @param maxConnections          maximum number of pooled connections
+     * @param maxConnectionsPerRoute  maximum number of pooled connections to a single gateway host
+     * @param connectTimeout          timeout for establishing a connection, including the TLS handshake
+     * @param readTimeout             timeout waiting for the gateway to respond
+     * @param idleTimeout             connections idle for longer than this are evicted from the pool
+     * @param connectionTimeToLive    maximum lifetime of a pooled connection
+     * @param validateAfterInactivity connections idle for longer than this are checked to be open before reuse
+     * @param tlsSessionCacheSize     number of TLS sessions cached for resumption
+     * @param tlsSessionTimeout       lifetime of a cached TLS session
+     * @param http2                   use the JDK HTTP client with HTTP/2 instead of the HTTP/1.1 pool
+     */
+    public record Http(@DefaultValue("200") int maxConnections,
+                       @DefaultValue("50") int maxConnectionsPerRoute,
+                       @DefaultValue("5s") Duration connectTimeout,
+                       @DefaultValue("30s") Duration readTimeout,
+                       @DefaultValue("30s") Duration idleTimeout,
+                       @DefaultValue("5m") Duration connectionTimeToLive,
+                       @DefaultValue("1s") Duration validateAfterInactivity,
+                       @DefaultValue("1000") int tlsSessionCacheSize,
+                       @DefaultValue("24h") Duration tlsSessionTimeout,
+                       @DefaultValue("false") boolean http2) {
+    }
+
+    /**
+     * The HTTP client calls to the gateway are carried over.
+     */
+    public enum Transport {
+
+        /**
+         * A {@code RestTemplate} over the pooled transport, or the JDK client when {@code http2} is set.
+         */
+        REST_TEMPLATE,
+
+        /**
+         * A {@code RestClient} over the same request factory as {@link #REST_TEMPLATE}.
+         */
+        REST_CLIENT,
+
+        /**
+         * A blocking {@code WebClient} over the reactive connection pool, needs spring-webflux and reactor-netty.
+         */
+        WEB_CLIENT,
+
+        /**
+         * The JDK {@code HttpClient} with HTTP/2 called directly, without a request factory.
+         */
+        JDK
+    }
+
+    /**
+     * Settings of the bulk reporting engine.
+     *
+     * @param concurrency    maximum number of submissions in flight at once
+     * @param virtualThreads run submissions on virtual threads when the JVM supports them
+     */
+    public record Bulk(@DefaultValue("16") int concurrency,
+                       @DefaultValue("true") boolean virtualThreads) {
+    }
+
+    /**
+     * Settings of the reactive submission streams.
+     *
+     * @param maxInFlight maximum number of submissions of a single stream awaiting the gateway at once
+     */
+    public record Stream(@DefaultValue("32") int maxInFlight) {
+    }
+
+    /**
+     * Settings of the asynchronous service.
+     *
+     * @param blockingFallback make asynchronous calls through the blocking service on a scheduler thread when an
+     *                         interceptor has no reactive counterpart, so that it applies to them too, rather than
+     *                         leaving it out
+     */
+    public record Async(@DefaultValue("false") boolean blockingFallback) {
+    }
+
+    /**
+     * Settings of the retry applied to reporting, clearance and compliance invoice calls failing with a 5xx, 429
+     * or I/O error. The CSID calls are never retried.
+     *
+     * @param enabled                   whether failed calls are retried
+     * @param maxAttempts               maximum number of attempts per call, including the first one
+     * @param initialBackoff            upper bound of the delay before the first retry
+     * @param maxBackoff                upper bound of the delay before any retry, including one asked for with
+     *                                  {@code Retry-After}
+     * @param multiplier                factor applied to the delay bound after each attempt
+     * @param budgetRatio               retries allowed as a fraction of the calls made within the budget window
+     * @param budgetMinRetriesPerSecond retries always allowed per second, regardless of the ratio
+     * @param budgetWindow              window over which calls and retries are counted
+     */
+    public record Retry(@DefaultValue("false") boolean enabled,
+                        @DefaultValue("3") int maxAttempts,
+                        @DefaultValue("200ms") Duration initialBackoff,
+                        @DefaultValue("5s") Duration maxBackoff,
+                        @DefaultValue("2") double multiplier,
+                        @DefaultValue("0.1") double budgetRatio,
+                        @DefaultValue("10") int budgetMinRetriesPerSecond,
+                        @DefaultValue("10s") Duration budgetWindow) {
+    }
+
+    /**
+     * Settings of the circuit breakers kept for each gateway endpoint.
+     *
+     * @param enabled                               whether calls go through a circuit breaker
+     * @param slidingWindowSize                     number of recent calls the failure and slow call rates are computed over
+     * @param minimumNumberOfCalls                  calls needed in the window before the breaker may open
+     * @param failureRateThreshold                  percentage of failed calls that opens the breaker
+     * @param slowCallRateThreshold                 percentage of slow calls that opens the breaker
+     * @param slowCallDurationThreshold             duration from which a call counts as slow
+     * @param waitDurationInOpenState               time the breaker stays open before letting probe calls through
+     * @param permittedNumberOfCallsInHalfOpenState number of probe calls deciding whether the breaker closes
+     * @param maxWaitDurationInHalfOpenState        time the probe calls have to decide before the breaker opens again
+     */
+    public record CircuitBreaker(@DefaultValue("false") boolean enabled,
+                                 @DefaultValue("50") int slidingWindowSize,
+                                 @DefaultValue("20") int minimumNumberOfCalls,
+                                 @DefaultValue("50") float failureRateThreshold,
+                                 @DefaultValue("80") float slowCallRateThreshold,
+                                 @DefaultValue("10s") Duration slowCallDurationThreshold,
+                                 @DefaultValue("30s") Duration waitDurationInOpenState,
+                                 @DefaultValue("5") int permittedNumberOfCallsInHalfOpenState,
+                                 @DefaultValue("60s") Duration maxWaitDurationInHalfOpenState) {
+    }
+
+    /**
+     * Settings of the hedging of slow reporting and clearance calls with a second attempt.
+     *
+     * @param enabled                  whether slow calls are hedged
+     * @param endpoints                endpoints whose calls are hedged
+     * @param delay                    time after which a call is hedged, or none to use the percentile
+     * @param percentile               percentile of the latencies of recent calls after which a call is hedged
+     * @param minDelay                 lowest time after which a call is hedged when using the percentile
+     * @param budgetRatio              hedges allowed as a fraction of the calls made within the budget window
+     * @param budgetMinHedgesPerSecond hedges always allowed per second, regardless of the ratio
+     * @param budgetWindow             window over which calls and hedges are counted
+     * @param maxConcurrency           attempts running on the hedging threads at once, beyond which calls run on
+     *                                 the calling thread without a hedge
+     */
+    public record Hedging(@DefaultValue("false") boolean enabled,
+                          @DefaultValue("CLEARANCE") Set<ZatcaEndpoint> endpoints,
+                          Duration delay,
+                          @DefaultValue("95") double percentile,
+                          @DefaultValue("50ms") Duration minDelay,
+                          @DefaultValue("0.05") double budgetRatio,
+                          @DefaultValue("1") int budgetMinHedgesPerSecond,
+                          @DefaultValue("10s") Duration budgetWindow,
+                          @DefaultValue("64") int maxConcurrency) {
+    }
+
+    /**
+     * Settings of the client-side pacing of gateway calls.
+     *
+     * @param enabled            whether calls are paced per endpoint and bounded by an adaptive concurrency limit
+     * @param permitsPerSecond   calls allowed per second to each endpoint, or 0 for no rate limit
+     * @param burst              calls allowed at once to an endpoint after an idle period
+     * @param endpoints          calls allowed per second to specific endpoints, overriding {@code permitsPerSecond}
+     * @param maxWait            longest a call waits for a permit before failing without calling the gateway
+     * @param initialConcurrency limit of concurrent calls before it adapts to the gateway
+     * @param minConcurrency     lowest the concurrency limit is lowered to
+     * @param maxConcurrency     highest the concurrency limit is raised to
+     * @param latencyThreshold   duration from which a call counts as a sign of overload
+     * @param backoffRatio       factor applied to the concurrency limit on a sign of overload
+     */
+    public record RateLimit(@DefaultValue("false") boolean enabled,
+                            @DefaultValue("50") double permitsPerSecond,
+                            @DefaultValue("50") int burst,
+                            Map<ZatcaEndpoint, Double> endpoints,
+                            @DefaultValue("10s") Duration maxWait,
+                            @DefaultValue("20") int initialConcurrency,
+                            @DefaultValue("1") int minConcurrency,
+                            @DefaultValue("200") int maxConcurrency,
+                            @DefaultValue("5s") Duration latencyThreshold,
+                            @DefaultValue("0.9") double backoffRatio) {
+    }
+
+    /**
+     * Settings of how error responses of the gateway are turned into a {@code ZatcaClientApiException}.
+     *
+     * @param maxBodySize         error bodies are read up to this size, a longer body is truncated and not parsed
+     * @param stacklessRejections omit the stack trace of exceptions thrown for 4xx business rejections
+     */
+    public record Errors(@DefaultValue("64KB") DataSize maxBodySize,
+                         @DefaultValue("false") boolean stacklessRejections) {
+    }
+
+    /**
+     * Settings of the local validation of invoices before they are sent to the gateway.
+     *
+     * @param enabled whether invoices failing the checks are rejected without calling the gateway
+     */
+    public record Preflight(@DefaultValue("false") boolean enabled) {
+    }
+
+    /**
+     * Settings of the default store of the invoice chain of each EGS unit.
+     *
+     * @param directory directory holding a file per EGS unit with its last invoice counter value and hash, the
+     *                  store and the invoice chain only being created when it is set
+     * @param fsync     force every saved state to disk before the invoice is handed out
+     */
+    public record Chain(Path directory,
+                        @DefaultValue("true") boolean fsync) {
+    }
+
+    /**
+     * A tenant the EGS units registered with the {@code ZatcaCredentialRegistry} can belong to.
+     *
+     * @param baseUrl base URL the units of the tenant call, {@code zatca.base-url} when not set
+     * @param http    settings of a connection pool of the tenant's own, the shared pool is used when not set
+     */
+    public record Tenant(String baseUrl,
+                         Http http) {
+    }
+
+    /**
+     * Settings of the renewal of the production CSIDs of the EGS units registered with the
+     * {@code ZatcaCredentialRegistry}.
+     *
+     * @param enabled       whether CSIDs are renewed in the background, which needs a {@code ZatcaCsidRenewalSource}
+     * @param renewBefore   CSIDs are renewed at the latest this long before they expire
+     * @param jitter        window before {@code renewBefore} the renewals of the units are spread over
+     * @param checkInterval interval at which the expiry of the units is checked
+     * @param retryInterval delay before a failed renewal is attempted again
+     */
+    public record Renewal(@DefaultValue("false") boolean enabled,
+                          @DefaultValue("14d") Duration renewBefore,
+                          @DefaultValue("24h") Duration jitter,
+                          @DefaultValue("1h") Duration checkInterval,
+                          @DefaultValue("15m") Duration retryInterval) {
+    }
+
+    /**
+     * Settings of the onboarding of EGS units, available once a {@code ZatcaOnboardingSupport} bean exists.
+     *
+     * @param concurrency  maximum number of units onboarded at once
+     * @param directory    directory holding a file per unit with the state of its onboarding
+     * @param keyCurve     named curve of the key pairs handed to the CSR of each unit
+     * @param keyProvider  security provider generating the key pairs, the first one supporting the curve when empty
+     * @param keyPoolSize  number of key pairs generated ahead of time, 0 to generate them on demand
+     */
+    public record Onboarding(@DefaultValue("8") int concurrency,
+                             @DefaultValue("zatca-onboarding") Path directory,
+                             @DefaultValue("secp256k1") String keyCurve,
+                             @DefaultValue("") String keyProvider,
+                             @DefaultValue("32") int keyPoolSize) {
+    }
+
+    /**
+     * Settings of the durable outbox of invoices to report.
+     *
+     * @param enabled       whether the {@code ZatcaOutbox} is available and its entries reported in the background
+     * @param directory     directory holding the segment files of the outbox and its checkpoint
+     * @param segmentSize   size of each memory-mapped segment file, which bounds the size of an invoice
+     * @param fsync         whether enqueued invoices are forced to disk before {@code enqueue} returns
+     * @param retryInterval delay before an invoice that failed with other than a rejection is sent again
+     * @param maxAttempts   number of such failures after which an invoice is dead-lettered and removed
+     * @param concurrency   number of EGS units whose invoices are reported at once
+     */
+    public record Outbox(@DefaultValue("false") boolean enabled,
+                         @DefaultValue("zatca-outbox") Path directory,
+                         @DefaultValue("64MB") DataSize segmentSize,
+                         @DefaultValue("true") boolean fsync,
+                         @DefaultValue("30s") Duration retryInterval,
+                         @DefaultValue("10") int maxAttempts,
+                         @DefaultValue("4") int concurrency) {
+    }
+
+    /**
+     * Settings of the ledger of submission outcomes.
+     *
+     * @param enabled     whether every invoice reported, cleared or checked for compliance is recorded
+     * @param directory   directory holding the segment files of the ledger and their indexes
+     * @param segmentSize size after which a segment is sealed and indexed on disk
+     */
+    public record Ledger(@DefaultValue("false") boolean enabled,
+                         @DefaultValue("zatca-ledger") Path directory,
+                         @DefaultValue("64MB") DataSize segmentSize) {
+    }
+
+    /**
+     * Settings of the suppression of duplicate reporting and clearance submissions.
+     *
+     * @param enabled    whether the result of an accepted invoice is returned to later submissions of it
+     * @param ttl        how long the result of an accepted invoice is kept
+     * @param maxEntries number of accepted invoices kept, beyond which the oldest are forgotten
+     * @param directory  directory in which the accepted invoices are persisted, or none to keep them in memory only
+     */
+    public record Deduplication(@DefaultValue("false") boolean enabled,
+                                @DefaultValue("24h") Duration ttl,
+                                @DefaultValue("10000") int maxEntries,
+                                Path directory) {
+    }
 }
@@ -6,5 +6,5 @@ public record ClearedInvoiceResult(String invoiceHash,
                                    String clearedInvoice,
                                    String status,
                                    List<Warning> warnings,
-                                   List<java.lang.Error> errors) {
+                                   List<Error> errors) {
 }
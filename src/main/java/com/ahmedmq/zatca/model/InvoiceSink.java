@@ -0,0 +1,38 @@
+package com.ahmedmq.zatca.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Destination of the signed XML of a cleared invoice, decoded from base64 as it is read from the response.
+ */
+public interface InvoiceSink {
+
+    /**
+     * Opens the stream the invoice XML is written to, it is closed once the invoice has been written. Only
+     * called when the gateway returns a cleared invoice.
+     */
+    OutputStream openStream() throws IOException;
+
+    static InvoiceSink of(Path path) {
+        return () -> Files.newOutputStream(path);
+    }
+
+    /**
+     * Writes to the given stream, which is left open.
+     */
+    static InvoiceSink of(OutputStream stream) {
+        return () -> new NonClosingOutputStream(stream);
+    }
+
+    /**
+     * Writes to the given channel, which is left open.
+     */
+    static InvoiceSink of(WritableByteChannel channel) {
+        return () -> new NonClosingOutputStream(Channels.newOutputStream(channel));
+    }
+}
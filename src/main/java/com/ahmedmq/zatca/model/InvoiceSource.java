@@ -0,0 +1,62 @@
+package com.ahmedmq.zatca.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The raw XML bytes of an invoice, serialized as the base64 string the gateway expects.
+ */
+@JsonSerialize(using = InvoiceSourceSerializer.class)
+public interface InvoiceSource {
+
+    /**
+     * Opens a stream over the invoice XML, the caller closes it.
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Whether {@link #openStream()} may be called more than once, which is needed to retry a request.
+     */
+    default boolean isRepeatable() {
+        return true;
+    }
+
+    static InvoiceSource of(Path path) {
+        return () -> Files.newInputStream(path);
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer, leaving its position untouched.
+     */
+    static InvoiceSource of(ByteBuffer buffer) {
+        ByteBuffer invoice = buffer.asReadOnlyBuffer();
+        return () -> new ByteBufferInputStream(invoice.duplicate());
+    }
+
+    /**
+     * Reads the given stream, which can only be done once. The stream is closed after it has been sent.
+     */
+    static InvoiceSource of(InputStream stream) {
+        AtomicBoolean opened = new AtomicBoolean();
+        return new InvoiceSource() {
+            @Override
+            public InputStream openStream() {
+                if (!opened.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Invoice stream has already been read");
+                }
+                return stream;
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+        };
+    }
+}
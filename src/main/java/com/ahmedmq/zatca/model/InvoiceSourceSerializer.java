@@ -0,0 +1,26 @@
+package com.ahmedmq.zatca.model;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base64 encodes the invoice in chunks straight into the generator's output.
+ */
+class InvoiceSourceSerializer extends StdSerializer<InvoiceSource> {
+
+    InvoiceSourceSerializer() {
+        super(InvoiceSource.class);
+    }
+
+    @Override
+    public void serialize(InvoiceSource source, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        try (InputStream invoice = source.openStream()) {
+            generator.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, invoice, -1);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ahmedmq.zatca.model;
+
+/**
+ * An {@link InvoiceRequest} whose invoice is read from an {@link InvoiceSource} and base64 encoded while it
+ * is written to the connection, so that neither the encoded invoice nor the JSON body is held in memory.
+ */
+public record StreamingInvoiceRequest(String invoiceHash,
+                                      String uuid,
+                                      InvoiceSource invoice) {
+}
@@ -4,6 +4,6 @@ import java.util.List;
 
 public record ValidationResult(List<Info> infoMessages,
         List<Warning> warningMessages,
-        List<java.lang.Error> errorMessages,
+        List<Error> errorMessages,
         String status) {
 }
@@ -0,0 +1,87 @@
+package com.ahmedmq.zatca.qr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Standard base64 over byte arrays with explicit bounds, which {@link java.util.Base64} lacks without
+ * copying the input or allocating the output.
+ */
+final class Base64Codec {
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    static int encode(byte[] source, int length, byte[] destination, int offset) {
+        int position = offset;
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | source[i + 2] & 0xFF;
+            destination[position++] = ALPHABET[bits >>> 18];
+            destination[position++] = ALPHABET[bits >>> 12 & 0x3F];
+            destination[position++] = ALPHABET[bits >>> 6 & 0x3F];
+            destination[position++] = ALPHABET[bits & 0x3F];
+        }
+        if (i < length) {
+            int bits = (source[i] & 0xFF) << 16 | (i + 1 < length ? (source[i + 1] & 0xFF) << 8 : 0);
+            destination[position++] = ALPHABET[bits >>> 18];
+            destination[position++] = ALPHABET[bits >>> 12 & 0x3F];
+            destination[position++] = i + 1 < length ? ALPHABET[bits >>> 6 & 0x3F] : (byte) '=';
+            destination[position++] = '=';
+        }
+        return position - offset;
+    }
+
+    /**
+     * The number of bytes {@code base64} decodes to, or -1 if it is not padded base64.
+     */
+    static int decodedLength(CharSequence base64) {
+        int length = base64.length();
+        if (length % 4 != 0) {
+            return -1;
+        }
+        int padding = length > 0 && base64.charAt(length - 1) == '=' ? length > 1 && base64.charAt(length - 2) == '=' ? 2 : 1 : 0;
+        return length / 4 * 3 - padding;
+    }
+
+    /**
+     * Decodes {@code base64} into {@code destination}, which holds at least {@link #decodedLength} bytes,
+     * returning false if it holds a character outside the alphabet.
+     */
+    static boolean decode(CharSequence base64, byte[] destination) {
+        int length = base64.length();
+        int position = 0;
+        int decoded = decodedLength(base64);
+        for (int i = 0; i < length; i += 4) {
+            int bits = 0;
+            for (int j = 0; j < 4; j++) {
+                char c = base64.charAt(i + j);
+                int value;
+                if (c == '=' && i + 4 == length && j >= 2 && (j == 3 || base64.charAt(i + 3) == '=')) {
+                    value = 0;
+                } else if (c >= 128 || (value = VALUES[c]) < 0) {
+                    return false;
+                }
+                bits = bits << 6 | value;
+            }
+            for (int shift = 16; shift >= 0 && position < decoded; shift -= 8) {
+                destination[position++] = (byte) (bits >>> shift);
+            }
+        }
+        return true;
+    }
+}
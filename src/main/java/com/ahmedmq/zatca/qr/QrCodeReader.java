@@ -0,0 +1,147 @@
+package com.ahmedmq.zatca.qr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the TLV fields of a QR code one at a time from a buffer that is kept across QR codes. The value of
+ * the current field is exposed in place through {@link #buffer()}, {@link #valueOffset()} and
+ * {@link #valueLength()}, and can be compared with {@link #valueEquals(CharSequence)}, so that reading a QR
+ * code allocates nothing once the buffer has grown to fit.
+ * <p>
+ * A reader is meant to be reused by one thread at a time.
+ */
+public final class QrCodeReader {
+    private byte[] tlv;
+    private int length;
+    private int position;
+    private int tag;
+    private int valueOffset;
+    private int valueLength;
+
+    public QrCodeReader() {
+        this(512);
+    }
+
+    public QrCodeReader(int capacity) {
+        this.tlv = new byte[capacity];
+    }
+
+    /**
+     * Starts reading a base64 encoded QR code.
+     *
+     * @throws IllegalArgumentException if the QR code is not valid base64
+     */
+    public QrCodeReader reset(CharSequence base64) {
+        int decodedLength = Base64Codec.decodedLength(base64);
+        if (decodedLength < 0) {
+            throw new IllegalArgumentException("QR code is not valid base64");
+        }
+        ensureCapacity(decodedLength);
+        if (!Base64Codec.decode(base64, tlv)) {
+            throw new IllegalArgumentException("QR code is not valid base64");
+        }
+        return start(decodedLength);
+    }
+
+    /**
+     * Starts reading a QR code given as its TLV bytes.
+     */
+    public QrCodeReader reset(byte[] bytes, int offset, int bytesLength) {
+        ensureCapacity(bytesLength);
+        System.arraycopy(bytes, offset, tlv, 0, bytesLength);
+        return start(bytesLength);
+    }
+
+    /**
+     * Moves to the next field, returning false once all fields have been read.
+     *
+     * @throws IllegalArgumentException if the field is cut short
+     */
+    public boolean next() {
+        if (position == length) {
+            return false;
+        }
+        if (position + 2 > length || position + 2 + (tlv[position + 1] & 0xFF) > length) {
+            throw new IllegalArgumentException("QR code field at offset " + position + " is truncated");
+        }
+        tag = tlv[position] & 0xFF;
+        valueLength = tlv[position + 1] & 0xFF;
+        valueOffset = position + 2;
+        position = valueOffset + valueLength;
+        return true;
+    }
+
+    public int tag() {
+        return tag;
+    }
+
+    /**
+     * The buffer holding the value of the current field, valid until the reader is reset.
+     */
+    public byte[] buffer() {
+        return tlv;
+    }
+
+    public int valueOffset() {
+        return valueOffset;
+    }
+
+    public int valueLength() {
+        return valueLength;
+    }
+
+    public String valueAsString() {
+        return new String(tlv, valueOffset, valueLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether the value of the current field is {@code expected} encoded as UTF-8.
+     */
+    public boolean valueEquals(CharSequence expected) {
+        int position = valueOffset;
+        int end = valueOffset + valueLength;
+        for (int i = 0; i < expected.length(); i++) {
+            int codePoint = Character.codePointAt(expected, i);
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                i++;
+            }
+            int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (position + bytes > end) {
+                return false;
+            }
+            int first = tlv[position] & 0xFF;
+            int expectedFirst = switch (bytes) {
+                case 1 -> codePoint;
+                case 2 -> 0xC0 | codePoint >> 6;
+                case 3 -> 0xE0 | codePoint >> 12;
+                default -> 0xF0 | codePoint >> 18;
+            };
+            if (first != expectedFirst) {
+                return false;
+            }
+            for (int j = 1; j < bytes; j++) {
+                if ((tlv[position + j] & 0xFF) != (0x80 | codePoint >> 6 * (bytes - 1 - j) & 0x3F)) {
+                    return false;
+                }
+            }
+            position += bytes;
+        }
+        return position == end;
+    }
+
+    private QrCodeReader start(int tlvLength) {
+        length = tlvLength;
+        position = 0;
+        tag = 0;
+        valueOffset = 0;
+        valueLength = 0;
+        return this;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > tlv.length) {
+            tlv = Arrays.copyOf(tlv, Math.max(tlv.length * 2, capacity));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ahmedmq.zatca.qr;
+
+/**
+ * The TLV tags of the QR code of an invoice.
+ */
+public enum QrCodeTag {
+
+    SELLER_NAME(1),
+    VAT_NUMBER(2),
+    TIMESTAMP(3),
+    INVOICE_TOTAL(4),
+    VAT_TOTAL(5),
+    INVOICE_HASH(6),
+    SIGNATURE(7),
+    PUBLIC_KEY(8),
+    CERTIFICATE_SIGNATURE(9);
+
+    private static final QrCodeTag[] TAGS = values();
+
+    private final int tag;
+
+    QrCodeTag(int tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Resolves a tag read from a QR code, or {@code null} if it is not a known tag.
+     */
+    public static QrCodeTag resolve(int tag) {
+        return tag >= 1 && tag <= TAGS.length ? TAGS[tag - 1] : null;
+    }
+
+    public int tag() {
+        return tag;
+    }
+}
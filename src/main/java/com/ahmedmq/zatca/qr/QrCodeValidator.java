@@ -0,0 +1,156 @@
+package com.ahmedmq.zatca.qr;
+
+import com.ahmedmq.zatca.model.Error;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the QR code of an invoice before it is submitted: that it is base64 encoded TLV, that the fields
+ * required for the invoice type are present once and in order, and that the VAT number, timestamp, amounts
+ * and invoice hash are well formed. Problems are reported as {@link Error}s in the {@code QR_CODE} category,
+ * the way the gateway reports them, and a valid QR code is checked without allocating.
+ */
+public final class QrCodeValidator {
+    static final String CATEGORY = "QR_CODE";
+
+    private static final ThreadLocal<QrCodeReader> READERS = ThreadLocal.withInitial(QrCodeReader::new);
+
+    private QrCodeValidator() {
+    }
+
+    /**
+     * Validates the QR code of an invoice, a simplified invoice also requiring the signature of the
+     * cryptographic stamp's certificate.
+     */
+    public static List<Error> validate(CharSequence qrCode, boolean simplified) {
+        return validate(qrCode, simplified, null);
+    }
+
+    /**
+     * Validates the QR code of an invoice and checks that it embeds the given invoice hash.
+     */
+    public static List<Error> validate(CharSequence qrCode, boolean simplified, CharSequence invoiceHash) {
+        QrCodeReader reader = READERS.get();
+        List<Error> errors = null;
+        try {
+            reader.reset(qrCode);
+        } catch (IllegalArgumentException e) {
+            return List.of(error("QR-INVALID-BASE64", "QR code is not valid base64"));
+        }
+
+        int required = simplified ? QrCodeTag.CERTIFICATE_SIGNATURE.tag() : QrCodeTag.PUBLIC_KEY.tag();
+        int previous = 0;
+        int present = 0;
+        try {
+            while (reader.next()) {
+                QrCodeTag tag = QrCodeTag.resolve(reader.tag());
+                if (tag == null) {
+                    errors = add(errors, "QR-UNKNOWN-TAG", "QR code has an unknown tag " + reader.tag());
+                    continue;
+                }
+                if ((present & 1 << tag.tag()) != 0) {
+                    errors = add(errors, "QR-DUPLICATE-TAG", "QR code has " + tag + " more than once");
+                } else if (tag.tag() < previous) {
+                    errors = add(errors, "QR-TAG-ORDER", "QR code has " + tag + " out of order");
+                }
+                present |= 1 << tag.tag();
+                previous = tag.tag();
+                String problem = checkValue(reader, tag, invoiceHash);
+                if (problem != null) {
+                    errors = add(errors, "QR-INVALID-" + tag.name().replace('_', '-'), problem);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            errors = add(errors, "QR-INVALID-TLV", e.getMessage());
+        }
+
+        for (int tag = 1; tag <= required; tag++) {
+            if ((present & 1 << tag) == 0) {
+                errors = add(errors, "QR-MISSING-TAG", "QR code is missing " + QrCodeTag.resolve(tag));
+            }
+        }
+        return errors != null ? errors : List.of();
+    }
+
+    private static String checkValue(QrCodeReader reader, QrCodeTag tag, CharSequence invoiceHash) {
+        byte[] value = reader.buffer();
+        int offset = reader.valueOffset();
+        int length = reader.valueLength();
+        if (length == 0) {
+            return tag + " is empty";
+        }
+        return switch (tag) {
+            case VAT_NUMBER -> isVatNumber(value, offset, length) ? null
+                    : "VAT_NUMBER must be 15 digits starting and ending with 3";
+            case TIMESTAMP -> isTimestamp(value, offset, length) ? null
+                    : "TIMESTAMP must be formatted as yyyy-MM-ddTHH:mm:ss, optionally followed by Z";
+            case INVOICE_TOTAL, VAT_TOTAL -> isAmount(value, offset, length) ? null
+                    : tag + " must be a decimal amount";
+            case INVOICE_HASH -> !isSha256Base64(value, offset, length) ? "INVOICE_HASH must be a base64 encoded SHA-256 digest"
+                    : invoiceHash != null && !reader.valueEquals(invoiceHash) ? "INVOICE_HASH does not match the invoice"
+                    : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isVatNumber(byte[] value, int offset, int length) {
+        return length == 15 && value[offset] == '3' && value[offset + 14] == '3' && isDigits(value, offset, length);
+    }
+
+    private static boolean isTimestamp(byte[] value, int offset, int length) {
+        if (length != 19 && !(length == 20 && value[offset + 19] == 'Z')) {
+            return false;
+        }
+        return isDigits(value, offset, 4) && value[offset + 4] == '-'
+                && isDigits(value, offset + 5, 2) && value[offset + 7] == '-'
+                && isDigits(value, offset + 8, 2) && value[offset + 10] == 'T'
+                && isDigits(value, offset + 11, 2) && value[offset + 13] == ':'
+                && isDigits(value, offset + 14, 2) && value[offset + 16] == ':'
+                && isDigits(value, offset + 17, 2);
+    }
+
+    private static boolean isAmount(byte[] value, int offset, int length) {
+        int point = -1;
+        for (int i = offset; i < offset + length; i++) {
+            if (value[i] == '.' && point < 0 && i > offset && i < offset + length - 1) {
+                point = i;
+            } else if (value[i] < '0' || value[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSha256Base64(byte[] value, int offset, int length) {
+        if (length != 44 || value[offset + 43] != '=') {
+            return false;
+        }
+        for (int i = offset; i < offset + 43; i++) {
+            byte b = value[i];
+            if (!(b >= 'A' && b <= 'Z' || b >= 'a' && b <= 'z' || b >= '0' && b <= '9' || b == '+' || b == '/')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigits(byte[] value, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (value[i] < '0' || value[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Error> add(List<Error> errors, String code, String message) {
+        List<Error> list = errors != null ? errors : new ArrayList<>();
+        list.add(error(code, message));
+        return list;
+    }
+
+    private static Error error(String code, String message) {
+        return new Error(CATEGORY, code, message);
+    }
+}
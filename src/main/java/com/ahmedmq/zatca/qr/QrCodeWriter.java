@@ -0,0 +1,206 @@
+package com.ahmedmq.zatca.qr;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Writes the TLV encoded QR code of an invoice into a buffer that is kept across invoices, so that encoding
+ * one allocates nothing once the buffer has grown to fit. Text is encoded as UTF-8 straight into the buffer
+ * and amounts and timestamps are written digit by digit, without going through a {@code String}.
+ * <p>
+ * A writer is meant to be reused by one thread at a time, calling {@link #reset()} before each invoice.
+ * Values are limited to 255 bytes, the largest length a single byte can hold.
+ */
+public final class QrCodeWriter {
+    private static final int MAX_VALUE_LENGTH = 255;
+
+    private byte[] tlv;
+    private int length;
+
+    public QrCodeWriter() {
+        this(512);
+    }
+
+    public QrCodeWriter(int capacity) {
+        this.tlv = new byte[capacity];
+    }
+
+    public QrCodeWriter reset() {
+        length = 0;
+        return this;
+    }
+
+    public QrCodeWriter text(QrCodeTag tag, CharSequence value) {
+        int start = startValue(tag);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | c >> 6);
+                put(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                put(0xF0 | codePoint >> 18);
+                put(0x80 | codePoint >> 12 & 0x3F);
+                put(0x80 | codePoint >> 6 & 0x3F);
+                put(0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                put('?');
+            } else {
+                put(0xE0 | c >> 12);
+                put(0x80 | c >> 6 & 0x3F);
+                put(0x80 | c & 0x3F);
+            }
+        }
+        return endValue(tag, start);
+    }
+
+    /**
+     * Writes an amount given as its unscaled value and scale, {@code 460} with a scale of 2 being
+     * {@code 4.60}.
+     */
+    public QrCodeWriter amount(QrCodeTag tag, long unscaledValue, int scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("Amount scale must not be negative");
+        }
+        int start = startValue(tag);
+        if (unscaledValue < 0) {
+            put('-');
+        }
+        int digitsStart = length;
+        long remaining = unscaledValue;
+        int digits = 0;
+        do {
+            put('0' + (int) Math.abs(remaining % 10));
+            remaining /= 10;
+            digits++;
+            if (digits == scale) {
+                put('.');
+            }
+        } while (remaining != 0 || digits <= scale);
+        reverse(digitsStart, length - 1);
+        return endValue(tag, start);
+    }
+
+    /**
+     * Writes an amount as its plain decimal digits. Prefer {@link #amount(QrCodeTag, long, int)} on hot paths,
+     * reading the unscaled value of a {@code BigDecimal} allocates.
+     */
+    public QrCodeWriter amount(QrCodeTag tag, BigDecimal value) {
+        if (value.scale() >= 0 && value.precision() <= 18) {
+            return amount(tag, value.unscaledValue().longValue(), value.scale());
+        }
+        return text(tag, value.toPlainString());
+    }
+
+    /**
+     * Writes a timestamp as {@code yyyy-MM-dd'T'HH:mm:ss}, the issue date and time of the invoice.
+     */
+    public QrCodeWriter timestamp(QrCodeTag tag, LocalDateTime timestamp) {
+        int start = startValue(tag);
+        digits(timestamp.getYear(), 4);
+        put('-');
+        digits(timestamp.getMonthValue(), 2);
+        put('-');
+        digits(timestamp.getDayOfMonth(), 2);
+        put('T');
+        digits(timestamp.getHour(), 2);
+        put(':');
+        digits(timestamp.getMinute(), 2);
+        put(':');
+        digits(timestamp.getSecond(), 2);
+        return endValue(tag, start);
+    }
+
+    public QrCodeWriter bytes(QrCodeTag tag, byte[] value) {
+        return bytes(tag, value, 0, value.length);
+    }
+
+    public QrCodeWriter bytes(QrCodeTag tag, byte[] value, int offset, int valueLength) {
+        int start = startValue(tag);
+        ensureCapacity(valueLength);
+        System.arraycopy(value, offset, tlv, length, valueLength);
+        length += valueLength;
+        return endValue(tag, start);
+    }
+
+    /**
+     * The number of TLV bytes written since the last {@link #reset()}.
+     */
+    public int length() {
+        return length;
+    }
+
+    public int base64Length() {
+        return Base64Codec.encodedLength(length);
+    }
+
+    /**
+     * Copies the TLV bytes into {@code destination} at {@code offset}, returning their number.
+     */
+    public int copyTo(byte[] destination, int offset) {
+        System.arraycopy(tlv, 0, destination, offset, length);
+        return length;
+    }
+
+    /**
+     * Writes the base64 encoded QR code into {@code destination} at {@code offset} as ASCII, returning the
+     * number of bytes written, {@link #base64Length()}.
+     */
+    public int toBase64(byte[] destination, int offset) {
+        return Base64Codec.encode(tlv, length, destination, offset);
+    }
+
+    public String toBase64() {
+        byte[] base64 = new byte[base64Length()];
+        toBase64(base64, 0);
+        return new String(base64, StandardCharsets.ISO_8859_1);
+    }
+
+    private int startValue(QrCodeTag tag) {
+        put(tag.tag());
+        put(0);
+        return length;
+    }
+
+    private QrCodeWriter endValue(QrCodeTag tag, int start) {
+        int valueLength = length - start;
+        if (valueLength > MAX_VALUE_LENGTH) {
+            length = start - 2;
+            throw new IllegalArgumentException("QR code value of " + tag + " is longer than " + MAX_VALUE_LENGTH + " bytes");
+        }
+        tlv[start - 1] = (byte) valueLength;
+        return this;
+    }
+
+    private void digits(int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            put('0' + value / divisor % 10);
+        }
+    }
+
+    private void reverse(int from, int to) {
+        for (; from < to; from++, to--) {
+            byte b = tlv[from];
+            tlv[from] = tlv[to];
+            tlv[to] = b;
+        }
+    }
+
+    private void put(int b) {
+        if (length == tlv.length) {
+            ensureCapacity(1);
+        }
+        tlv[length++] = (byte) b;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > tlv.length) {
+            tlv = Arrays.copyOf(tlv, Math.max(tlv.length * 2, length + additional));
+        }
+    }
+}
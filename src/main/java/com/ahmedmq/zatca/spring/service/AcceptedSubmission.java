@@ -0,0 +1,18 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceResult;
+
+import java.time.Instant;
+
+/**
+ * An invoice the gateway reported or cleared, with the result returned to later submissions of it. The invoice
+ * result is set for the reporting endpoint and the cleared invoice result for the clearance endpoint.
+ */
+public record AcceptedSubmission(ZatcaEndpoint endpoint,
+                                 String uuid,
+                                 String invoiceHash,
+                                 InvoiceResult invoiceResult,
+                                 ClearedInvoiceResult clearedInvoiceResult,
+                                 Instant acceptedAt) {
+}
@@ -0,0 +1,234 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounds the calls in flight to the gateway with a limit that follows its capacity, in the manner of TCP
+ * congestion control. Each call completing within the latency threshold while the limit is in use raises it by
+ * about one per limit's worth of calls, and a throttled, overloaded or slow call multiplies it by the backoff
+ * ratio. Only calls started after the last decrease may lower it again, so a burst of failures from the same
+ * round of calls counts once.
+ * <p>
+ * Calls waiting for a slot queue in priority lanes, and a freed slot goes to the oldest call of the highest
+ * lane. A call never takes a free slot ahead of waiting calls of its own or a higher lane.
+ */
+final class AdaptiveConcurrencyLimiter {
+
+    enum Lane {HIGH, NORMAL, LOW}
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, ArrayDeque<Waiter>> queues = new EnumMap<>(Lane.class);
+
+    private volatile double limit;
+    private volatile int inFlight;
+    private long decreasedAt;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                               long latencyThresholdNanos, LongSupplier nanoClock) {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.nanoClock = nanoClock;
+        this.decreasedAt = nanoClock.getAsLong();
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Takes a slot, waiting up to {@code timeoutNanos} for one, and returns whether it was taken.
+     */
+    boolean tryAcquire(Lane lane, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < capacity() && !waitingAtOrAbove(lane)) {
+                inFlight++;
+                return true;
+            }
+            Waiter waiter = new Waiter(lock.newCondition(), null);
+            queues.get(lane).add(waiter);
+            long remaining = timeoutNanos;
+            try {
+                while (!waiter.granted) {
+                    if (remaining <= 0) {
+                        queues.get(lane).remove(waiter);
+                        return false;
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+                queues.get(lane).remove(waiter);
+                throw e;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot without blocking: a free one at once, returning {@code null}, or else the next one freed for the
+     * call, queueing a waiter for it that runs {@code onGranted} on the thread freeing the slot. A call that stops
+     * waiting must {@link #cancel} its waiter.
+     */
+    Waiter tryAcquire(Lane lane, Runnable onGranted) {
+        lock.lock();
+        try {
+            if (inFlight < capacity() && !waitingAtOrAbove(lane)) {
+                inFlight++;
+                return null;
+            }
+            Waiter waiter = new Waiter(null, onGranted);
+            queues.get(lane).add(waiter);
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the waiter out of its queue, returning {@code false} if it was granted a slot meanwhile, which is then
+     * the caller's to release.
+     */
+    boolean cancel(Lane lane, Waiter waiter) {
+        lock.lock();
+        try {
+            return queues.get(lane).remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot granted to a call that was not made after all, leaving the limit as it is.
+     */
+    void release() {
+        List<Runnable> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    /**
+     * Frees the slot of a call started at {@code startedAt} and adjusts the limit to its outcome.
+     */
+    void release(long startedAt, boolean overloaded) {
+        long now = nanoClock.getAsLong();
+        List<Runnable> granted;
+        lock.lock();
+        try {
+            int used = inFlight--;
+            if (overloaded || now - startedAt >= latencyThresholdNanos) {
+                if (startedAt - decreasedAt >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    decreasedAt = now;
+                }
+            } else if (used * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    /**
+     * Hands the free slots to waiting calls, signalling those blocked and returning the callbacks of the others to
+     * be run once the lock is released.
+     */
+    private List<Runnable> grantWaiters() {
+        List<Runnable> granted = new ArrayList<>();
+        while (inFlight < capacity()) {
+            Waiter waiter = nextWaiter();
+            if (waiter == null) {
+                break;
+            }
+            inFlight++;
+            waiter.granted = true;
+            if (waiter.condition != null) {
+                waiter.condition.signal();
+            } else {
+                granted.add(waiter.onGranted);
+            }
+        }
+        return granted;
+    }
+
+    double limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight;
+    }
+
+    int queued(Lane lane) {
+        lock.lock();
+        try {
+            return queues.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int capacity() {
+        return (int) limit;
+    }
+
+    private boolean waitingAtOrAbove(Lane lane) {
+        for (Lane other : Lane.values()) {
+            if (!queues.get(other).isEmpty()) {
+                return true;
+            }
+            if (other == lane) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private Waiter nextWaiter() {
+        for (Lane lane : Lane.values()) {
+            Waiter waiter = queues.get(lane).poll();
+            if (waiter != null) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    static final class Waiter {
+        private final Condition condition;
+        private final Runnable onGranted;
+        private boolean granted;
+
+        private Waiter(Condition condition, Runnable onGranted) {
+            this.condition = condition;
+            this.onGranted = onGranted;
+        }
+    }
+}
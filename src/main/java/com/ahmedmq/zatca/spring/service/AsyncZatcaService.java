@@ -0,0 +1,31 @@
+package com.ahmedmq.zatca.spring.service;
+
+
+import com.ahmedmq.zatca.model.*;
+import reactor.core.publisher.Mono;
+
+public interface AsyncZatcaService {
+
+    Mono<CSIDResponse> complianceCSID(CSRRequest CSRRequest,
+                                      String otp);
+
+    Mono<InvoiceComplianceResponse> checkInvoiceCompliance(String userName,
+                                                           String password,
+                                                           InvoiceRequest invoiceRequest);
+
+    Mono<CSIDResponse> productionCSID(String certificate,
+                                      String secret,
+                                      ProductionCSIDRequest productionCSIDRequest);
+
+    Mono<InvoiceResult> reportInvoice(String certificate,
+                                      String secret,
+                                      InvoiceRequest invoiceRequest);
+
+    Mono<CSIDResponse> renewProductionCSID(CSRRequest CSRRequest,
+                                           String otp);
+
+    Mono<ClearedInvoiceResult> clearedInvoice(String certificate,
+                                              String secret,
+                                              InvoiceRequest invoiceRequest);
+
+}
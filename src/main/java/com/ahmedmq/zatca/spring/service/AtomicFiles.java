@@ -0,0 +1,99 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Set;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+final class AtomicFiles {
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * The file of a key in a directory, named after the URL safe base64 of the key so that any key is a valid
+     * file name.
+     */
+    static Path file(Path directory, String key) {
+        return directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the content to a temporary file, optionally forced to disk, and atomically moves it over the file,
+     * so that a crash leaves either the old or the new content. When forced, the directory is forced too once the
+     * file has been moved, as the rename is only durable once the directory entry is.
+     */
+    static void write(Path file, byte[] content, boolean fsync) throws IOException {
+        write(file, content, fsync, false);
+    }
+
+    /**
+     * Writes the content as {@link #write(Path, byte[], boolean)} does. When {@code ownerOnly} is set, a missing
+     * directory is created accessible to the owner only and the file readable and writable by the owner only, on
+     * file systems supporting POSIX permissions.
+     */
+    static void write(Path file, byte[] content, boolean fsync, boolean ownerOnly) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean posix = ownerOnly && file.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            Files.createDirectories(file.getParent(), PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+            // a temporary file left by a crash is replaced, as it keeps the permissions it was created with
+            Files.deleteIfExists(temporary);
+        } else {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = posix
+                ? FileChannel.open(temporary, Set.of(WRITE, CREATE_NEW), ownerOnlyFile())
+                : FileChannel.open(temporary, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+        Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        if (fsync) {
+            forceDirectory(file.getParent());
+        }
+    }
+
+    private static FileAttribute<Set<PosixFilePermission>> ownerOnlyFile() {
+        return PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE);
+    }
+
+    /**
+     * Forces the entries of a directory to disk. Some platforms, such as Windows, cannot open a directory, and
+     * make the rename durable by themselves.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
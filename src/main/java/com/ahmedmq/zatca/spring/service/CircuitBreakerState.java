@@ -0,0 +1,7 @@
+package com.ahmedmq.zatca.spring.service;
+
+public enum CircuitBreakerState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+}
@@ -0,0 +1,87 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.Warning;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads a clearance response token by token, decoding the cleared invoice from base64 into an
+ * {@link InvoiceSink} in chunks so that neither the encoded nor the decoded invoice is held in memory. The
+ * other fields are returned as an {@link InvoiceResult}.
+ */
+final class ClearedInvoiceReader {
+    private static final TypeReference<List<Warning>> WARNINGS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<Error>> ERRORS = new TypeReference<>() {
+    };
+
+    private ClearedInvoiceReader() {
+    }
+
+    static InvoiceResult read(ObjectMapper objectMapper, InputStream body, InvoiceSink clearedInvoice) throws IOException {
+        String invoiceHash = null;
+        String status = null;
+        List<Warning> warnings = null;
+        List<Error> errors = null;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a clearance result object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "invoiceHash" -> invoiceHash = parser.getValueAsString();
+                    case "status" -> status = parser.getValueAsString();
+                    case "warnings" -> warnings = objectMapper.readValue(parser, WARNINGS);
+                    case "errors" -> errors = objectMapper.readValue(parser, ERRORS);
+                    case "clearedInvoice" -> {
+                        try (OutputStream invoice = clearedInvoice.openStream()) {
+                            parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, invoice);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new InvoiceResult(invoiceHash, status, warnings, errors);
+    }
+
+    /**
+     * Reads the response of a transport. Once writing to the sink has started a failure is no longer reported as
+     * an I/O error, so that it is not retried into a sink already holding part of the invoice.
+     */
+    static InvoiceResult extract(ObjectMapper objectMapper, InputStream body, InvoiceSink clearedInvoice)
+            throws IOException {
+        AtomicBoolean opened = new AtomicBoolean();
+        try {
+            return read(objectMapper, body, () -> {
+                opened.set(true);
+                return clearedInvoice.openStream();
+            });
+        } catch (IOException e) {
+            if (opened.get() || e instanceof JsonProcessingException) {
+                throw new RestClientException("Error while extracting response for type [" + InvoiceResult.class + "]", e);
+            }
+            throw e;
+        }
+    }
+}
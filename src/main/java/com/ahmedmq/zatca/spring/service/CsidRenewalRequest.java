@@ -0,0 +1,10 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSRRequest;
+
+/**
+ * The CSR of a new key pair and the OTP to renew the production CSID of an EGS unit with.
+ */
+public record CsidRenewalRequest(CSRRequest csr,
+                                 String otp) {
+}
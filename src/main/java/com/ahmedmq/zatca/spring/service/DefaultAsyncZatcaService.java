@@ -0,0 +1,203 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.Observation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.context.ContextView;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static com.ahmedmq.zatca.spring.service.ZatcaEndpoint.*;
+
+/**
+ * Calls the gateway with a non-blocking {@link WebClient}, through the {@link ZatcaReactiveCallInterceptor}s and
+ * duplicate suppression, so that no thread waits on a call in flight. Exchanges are reported to the
+ * {@link ZatcaExchangeObserver}s within the observation of the call, if it is observed.
+ * <p>
+ * Once a {@link ZatcaService} is set, calls are instead made through it, so that they also go through the
+ * {@link ZatcaCallInterceptor}s that have no reactive counterpart. That service blocks while it waits on the
+ * gateway, so its calls are made on the scheduler, taking up a thread each.
+ */
+class DefaultAsyncZatcaService implements AsyncZatcaService {
+
+    /**
+     * The key of the observation of a call in the subscriber context, the one Reactor and the {@link WebClient}
+     * look for the current observation under.
+     */
+    static final String OBSERVATION_KEY = "micrometer.observation";
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final ZatcaProperties zatcaProperties;
+    private final List<ZatcaExchangeObserver> observers;
+    private List<ZatcaReactiveCallInterceptor> interceptors = List.of();
+    private ZatcaSubmissionDeduplicator deduplicator;
+    private ZatcaService zatcaService;
+    private Scheduler scheduler;
+
+    DefaultAsyncZatcaService(WebClient webClient, ObjectMapper objectMapper, ZatcaProperties zatcaProperties,
+                             List<ZatcaExchangeObserver> observers) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.zatcaProperties = zatcaProperties;
+        this.observers = List.copyOf(observers);
+    }
+
+    void setInterceptors(List<ZatcaReactiveCallInterceptor> interceptors) {
+        this.interceptors = List.copyOf(interceptors);
+    }
+
+    void setDeduplicator(ZatcaSubmissionDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    void setZatcaService(ZatcaService zatcaService, Scheduler scheduler) {
+        this.zatcaService = zatcaService;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<CSIDResponse> complianceCSID(CSRRequest CSRRequest, String otp) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.complianceCSID(CSRRequest, otp));
+        }
+        return execute(COMPLIANCE_CSID, CSRRequest, exchange(COMPLIANCE_CSID,
+                ZatcaRequestHeaders.withOtp(COMPLIANCE_CSID, zatcaProperties.apiVersion(), otp),
+                CSRRequest, CSIDResponse.class));
+    }
+
+    @Override
+    public Mono<InvoiceComplianceResponse> checkInvoiceCompliance(String userName, String password, InvoiceRequest invoiceRequest) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.checkInvoiceCompliance(userName, password, invoiceRequest));
+        }
+        return execute(INVOICE_COMPLIANCE, invoiceRequest, exchange(INVOICE_COMPLIANCE,
+                ZatcaRequestHeaders.withBasicAuth(INVOICE_COMPLIANCE, zatcaProperties.apiVersion(), userName, password),
+                invoiceRequest, InvoiceComplianceResponse.class));
+    }
+
+    @Override
+    public Mono<CSIDResponse> productionCSID(String certificate, String secret, ProductionCSIDRequest productionCSIDRequest) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.productionCSID(certificate, secret, productionCSIDRequest));
+        }
+        return execute(PRODUCTION_CSID, productionCSIDRequest, exchange(PRODUCTION_CSID,
+                ZatcaRequestHeaders.withBasicAuth(PRODUCTION_CSID, zatcaProperties.apiVersion(), certificate, secret),
+                productionCSIDRequest, CSIDResponse.class));
+    }
+
+    @Override
+    public Mono<InvoiceResult> reportInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.reportInvoice(certificate, secret, invoiceRequest));
+        }
+        return deduplicate(REPORTING, invoiceRequest, execute(REPORTING, invoiceRequest, exchange(REPORTING,
+                ZatcaRequestHeaders.withBasicAuth(REPORTING, zatcaProperties.apiVersion(), certificate, secret),
+                invoiceRequest, InvoiceResult.class)));
+    }
+
+    @Override
+    public Mono<CSIDResponse> renewProductionCSID(CSRRequest CSRRequest, String otp) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.renewProductionCSID(CSRRequest, otp));
+        }
+        return execute(RENEW_PRODUCTION_CSID, CSRRequest, exchange(RENEW_PRODUCTION_CSID,
+                ZatcaRequestHeaders.withOtp(RENEW_PRODUCTION_CSID, zatcaProperties.apiVersion(), otp),
+                CSRRequest, CSIDResponse.class));
+    }
+
+    @Override
+    public Mono<ClearedInvoiceResult> clearedInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
+        if (zatcaService != null) {
+            return blocking(() -> zatcaService.clearedInvoice(certificate, secret, invoiceRequest));
+        }
+        return deduplicate(CLEARANCE, invoiceRequest, execute(CLEARANCE, invoiceRequest, exchange(CLEARANCE,
+                ZatcaRequestHeaders.withBasicAuth(CLEARANCE, zatcaProperties.apiVersion(), certificate, secret),
+                invoiceRequest, ClearedInvoiceResult.class)));
+    }
+
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(scheduler);
+    }
+
+    private <T> Mono<T> deduplicate(ZatcaEndpoint endpoint, InvoiceRequest invoiceRequest, Mono<T> submission) {
+        if (deduplicator == null) {
+            return submission;
+        }
+        // the submission is shared by the duplicates made while it is in flight, so they may not cancel it
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> deduplicator.deduplicateAsync(endpoint,
+                invoiceRequest.uuid(), invoiceRequest.invoiceHash(), () -> submission.contextWrite(context).toFuture()),
+                true));
+    }
+
+    /**
+     * Runs the call through the interceptors, each applied anew whenever the call is subscribed to.
+     */
+    private <T> Mono<T> execute(ZatcaEndpoint endpoint, Object request, Mono<T> call) {
+        Mono<T> execution = call;
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            ZatcaReactiveCallInterceptor interceptor = interceptors.get(i);
+            Mono<T> next = execution;
+            execution = Mono.defer(() -> interceptor.intercept(endpoint, request, next));
+        }
+        return execution;
+    }
+
+    private <T> Mono<T> exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+        return Mono.<T>deferContextual(context -> {
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(body);
+            } catch (JsonProcessingException e) {
+                return Mono.error(ZatcaTransports.ioError(endpoint, endpoint.path(), e));
+            }
+            return webClient.method(endpoint.method())
+                    .uri(endpoint.path())
+                    .headers(httpHeaders -> httpHeaders.addAll(headers))
+                    .accept(MediaType.APPLICATION_JSON)
+                    .bodyValue(json)
+                    .exchangeToMono(response -> response.bodyToMono(byte[].class)
+                            .defaultIfEmpty(new byte[0])
+                            .<T>handle((bytes, sink) -> {
+                                notifyObservers(context, endpoint, response.statusCode(), json.length, bytes.length);
+                                try {
+                                    sink.next(ZatcaTransports.read(endpoint, response.statusCode(),
+                                            response.headers().asHttpHeaders(), new ByteArrayInputStream(bytes),
+                                            objectMapper, zatcaProperties.errors(), responseType));
+                                } catch (IOException e) {
+                                    sink.error(ZatcaTransports.ioError(endpoint, endpoint.path(), e));
+                                }
+                            }))
+                    .onErrorMap(WebClientRequestException.class, e -> ZatcaTransports.ioError(endpoint,
+                            e.getUri().toString(),
+                            e.getCause() instanceof IOException cause ? cause : new IOException(e.getMostSpecificCause())));
+        });
+    }
+
+    /**
+     * Reports the exchange in the observation of the call, so that it is tagged with the status.
+     */
+    private void notifyObservers(ContextView context, ZatcaEndpoint endpoint, HttpStatusCode statusCode,
+                                 long requestBytes, long responseBytes) {
+        Observation observation = context.getOrDefault(OBSERVATION_KEY, null);
+        Runnable notification = () -> ZatcaTransports.notify(observers, endpoint, statusCode, requestBytes,
+                responseBytes);
+        if (observation != null) {
+            observation.scoped(notification);
+        } else {
+            notification.run();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a single permit per EGS unit rather than a lock shared by all of them, so that units issue invoices in
+ * parallel and an uncontended {@link #next(String)} costs one compare-and-set. A unit's state is loaded from the
+ * store by the first link reserved for it and saved by every commit before it becomes visible, so that a
+ * restart never hands out a counter value twice.
+ */
+class DefaultInvoiceChain implements InvoiceChain {
+    private final ConcurrentMap<String, Unit> units = new ConcurrentHashMap<>();
+    private final InvoiceHasher invoiceHasher;
+    private final InvoiceChainStore store;
+
+    DefaultInvoiceChain(InvoiceHasher invoiceHasher, InvoiceChainStore store) {
+        this.invoiceHasher = invoiceHasher;
+        this.store = store;
+    }
+
+    @Override
+    public Link next(String egsUnit) {
+        Unit unit = units.computeIfAbsent(egsUnit, Unit::new);
+        unit.permit.acquireUninterruptibly();
+        try {
+            if (!unit.loaded) {
+                unit.state = store.load(egsUnit);
+                unit.loaded = true;
+            }
+        } catch (RuntimeException e) {
+            unit.permit.release();
+            throw e;
+        }
+        return new UnitLink(unit);
+    }
+
+    @Override
+    public InvoiceChainState current(String egsUnit) {
+        Unit unit = units.get(egsUnit);
+        if (unit == null || !unit.loaded) {
+            return store.load(egsUnit);
+        }
+        return unit.state;
+    }
+
+    private static final class Unit {
+        final String egsUnit;
+        final Semaphore permit = new Semaphore(1);
+        // written while holding the permit, read by current() without it
+        volatile InvoiceChainState state;
+        volatile boolean loaded;
+
+        Unit(String egsUnit) {
+            this.egsUnit = egsUnit;
+        }
+    }
+
+    private final class UnitLink implements Link {
+        private final Unit unit;
+        private final long icv;
+        private final String previousInvoiceHash;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        UnitLink(Unit unit) {
+            this.unit = unit;
+            InvoiceChainState state = unit.state;
+            this.icv = state == null ? 1 : state.icv() + 1;
+            this.previousInvoiceHash = state == null ? INITIAL_INVOICE_HASH : state.invoiceHash();
+        }
+
+        @Override
+        public String egsUnit() {
+            return unit.egsUnit;
+        }
+
+        @Override
+        public long icv() {
+            return icv;
+        }
+
+        @Override
+        public String previousInvoiceHash() {
+            return previousInvoiceHash;
+        }
+
+        @Override
+        public InvoiceRequest commit(String uuid, byte[] invoiceXml) {
+            checkOpen();
+            String invoiceHash = invoiceHasher.hash(InvoiceSource.of(ByteBuffer.wrap(invoiceXml)));
+            commit(invoiceHash);
+            return new InvoiceRequest(invoiceHash, uuid, Base64.getEncoder().encodeToString(invoiceXml));
+        }
+
+        @Override
+        public StreamingInvoiceRequest commit(String uuid, InvoiceSource invoice) {
+            checkOpen();
+            String invoiceHash = invoiceHasher.hash(invoice);
+            commit(invoiceHash);
+            return new StreamingInvoiceRequest(invoiceHash, uuid, invoice);
+        }
+
+        @Override
+        public void commit(String invoiceHash) {
+            checkOpen();
+            InvoiceChainState state = new InvoiceChainState(icv, invoiceHash);
+            store.save(unit.egsUnit, state);
+            unit.state = state;
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                unit.permit.release();
+            }
+        }
+
+        private void checkOpen() {
+            if (released.get()) {
+                throw new IllegalStateException("Link " + icv + " of EGS unit " + unit.egsUnit + " is already released");
+            }
+        }
+    }
+}
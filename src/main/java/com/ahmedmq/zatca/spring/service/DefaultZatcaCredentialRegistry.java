@@ -0,0 +1,84 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Prepares the read only headers of the endpoints a unit calls with its production CSID when it is registered, so
+ * that a call by unit neither encodes the credentials nor builds headers.
+ */
+class DefaultZatcaCredentialRegistry implements ZatcaCredentialRegistry {
+    private final ConcurrentMap<String, EgsUnit> units = new ConcurrentHashMap<>();
+    private final Set<String> tenants;
+    private final String apiVersion;
+
+    DefaultZatcaCredentialRegistry(Set<String> tenants, String apiVersion) {
+        this.tenants = Set.copyOf(tenants);
+        this.apiVersion = apiVersion;
+    }
+
+    @Override
+    public void register(String egsUnit, String tenant, String certificate, String secret) {
+        if (!DEFAULT_TENANT.equals(tenant) && !tenants.contains(tenant)) {
+            throw new IllegalArgumentException("Unknown tenant " + tenant + " of EGS unit " + egsUnit);
+        }
+        units.put(egsUnit, egsUnit(tenant, certificate, secret));
+    }
+
+    /**
+     * Replaces the credentials of a unit unless they have changed since {@code expected} was read, so that a
+     * renewal does not undo credentials registered meanwhile.
+     */
+    boolean replace(String egsUnit, EgsUnit expected, String certificate, String secret) {
+        return units.replace(egsUnit, expected, egsUnit(expected.tenant(), certificate, secret));
+    }
+
+    private EgsUnit egsUnit(String tenant, String certificate, String secret) {
+        return new EgsUnit(tenant, ZatcaCertificates.notAfter(certificate),
+                HttpHeaders.readOnlyHttpHeaders(ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.REPORTING, apiVersion, certificate, secret)),
+                HttpHeaders.readOnlyHttpHeaders(ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.CLEARANCE, apiVersion, certificate, secret)),
+                HttpHeaders.readOnlyHttpHeaders(ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.RENEW_PRODUCTION_CSID, apiVersion, certificate, secret)));
+    }
+
+    @Override
+    public boolean unregister(String egsUnit) {
+        return units.remove(egsUnit) != null;
+    }
+
+    @Override
+    public boolean isRegistered(String egsUnit) {
+        return units.containsKey(egsUnit);
+    }
+
+    @Override
+    public Instant expiresAt(String egsUnit) {
+        EgsUnit unit = units.get(egsUnit);
+        return unit == null ? null : unit.notAfter();
+    }
+
+    Map<String, EgsUnit> units() {
+        return Collections.unmodifiableMap(units);
+    }
+
+    EgsUnit unit(String egsUnit) {
+        EgsUnit unit = units.get(egsUnit);
+        if (unit == null) {
+            throw new IllegalArgumentException("EGS unit " + egsUnit + " is not registered");
+        }
+        return unit;
+    }
+
+    /**
+     * A registered unit, replaced as a whole when its credentials change so that a call never sees the
+     * headers of one CSID with the expiry or tenant of another. The renewal headers lack the OTP of the renewal.
+     */
+    record EgsUnit(String tenant, Instant notAfter, HttpHeaders reportingHeaders, HttpHeaders clearanceHeaders,
+                   HttpHeaders renewalHeaders) {
+    }
+}
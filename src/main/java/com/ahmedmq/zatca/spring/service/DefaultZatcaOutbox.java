@@ -0,0 +1,253 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reports the entries of a {@link MappedOutboxLog} from a background thread, in the order they were enqueued for
+ * each EGS unit. The worker sends the first pending entry of each unit, up to {@code concurrency} at once, reading
+ * ahead of the head of the log until that many units have an entry due, so that a unit failing does not hold back
+ * the others however many entries it has queued. The sequence numbers of the entries read ahead are kept in memory
+ * by unit.
+ * An entry is settled once the gateway reported it, or rejected it, in which case a
+ * {@link ZatcaOutboxRejectedEvent} is published. Any other failure, such as an outage, an expired CSID or a unit
+ * not registered yet, leaves the entry to be sent again after the retry interval, until it failed
+ * {@code maxAttempts} times and is dead-lettered with a {@link ZatcaOutboxDeadLetteredEvent}. Settled entries are
+ * acknowledged in order, so that those settled past an unsettled one are sent again after a restart.
+ */
+class DefaultZatcaOutbox implements ZatcaOutbox, SmartLifecycle, DisposableBean {
+    private static final int WINDOW_PER_CALL = 64;
+
+    private final MappedOutboxLog log;
+    private final ZatcaService zatcaService;
+    private final Duration retryInterval;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Executor executor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Set<Long> settled = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Failures> failures = new ConcurrentHashMap<>();
+    // confined to the worker: the entries read ahead and not settled, by unit
+    private final Map<String, ArrayDeque<Long>> queued = new HashMap<>();
+    private volatile Thread worker;
+
+    DefaultZatcaOutbox(MappedOutboxLog log, ZatcaService zatcaService, Duration retryInterval, int concurrency,
+                       int maxAttempts, Executor executor, ApplicationEventPublisher eventPublisher) {
+        if (concurrency < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("The outbox concurrency and maxAttempts must be at least 1");
+        }
+        this.log = log;
+        this.zatcaService = zatcaService;
+        this.retryInterval = retryInterval;
+        this.concurrency = concurrency;
+        this.maxAttempts = maxAttempts;
+        this.executor = executor;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public long enqueue(String egsUnit, InvoiceRequest invoiceRequest) {
+        long sequence = log.append(egsUnit, invoiceRequest);
+        Thread worker = this.worker;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+        return sequence;
+    }
+
+    @Override
+    public long pending() {
+        return log.pending();
+    }
+
+    @Override
+    public void start() {
+        Thread worker = new Thread(this::drain, "zatca-outbox");
+        worker.setDaemon(true);
+        this.worker = worker;
+        worker.start();
+    }
+
+    /**
+     * Stops the worker once the calls in flight, if any, completed, so that their entries are acknowledged before
+     * the log is closed.
+     */
+    @Override
+    public void stop() {
+        Thread worker = this.worker;
+        if (worker != null) {
+            this.worker = null;
+            worker.interrupt();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return worker != null;
+    }
+
+    @Override
+    public void destroy() {
+        log.close();
+    }
+
+    private void drain() {
+        Thread current = Thread.currentThread();
+        while (worker == current) {
+            long wait = deliverWindow();
+            if (wait < 0) {
+                LockSupport.park(this);
+            } else if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    /**
+     * Sends the first entry of each unit that is due, waits for them, and acknowledges the settled entries at the
+     * head of the log. Returns the nanoseconds until an entry is due again, 0 when entries are to be sent again at
+     * once, or -1 when the outbox is empty.
+     */
+    long deliverWindow() {
+        long now = System.nanoTime();
+        if (!readAhead(now) && queued.isEmpty()) {
+            return -1;
+        }
+        long wait = Long.MAX_VALUE;
+        List<OutboxEntry> due = new ArrayList<>();
+        for (long sequence : queued.values().stream().map(ArrayDeque::getFirst).sorted().toList()) {
+            Failures failed = failures.get(sequence);
+            if (failed != null && failed.retryAt() - now > 0) {
+                wait = Math.min(wait, failed.retryAt() - now);
+            } else if (due.size() < concurrency) {
+                due.add(log.read(sequence));
+            } else {
+                wait = 0;
+            }
+        }
+        CompletableFuture.allOf(due.stream()
+                .map(entry -> CompletableFuture.runAsync(() -> deliver(entry), executor))
+                .toArray(CompletableFuture[]::new)).join();
+        for (OutboxEntry entry : due) {
+            if (settled.contains(entry.sequence())) {
+                ArrayDeque<Long> entries = queued.get(entry.egsUnit());
+                entries.removeFirst();
+                if (entries.isEmpty()) {
+                    queued.remove(entry.egsUnit());
+                }
+            }
+        }
+        for (long head = log.head(); settled.remove(head); head++) {
+            log.acknowledge(head);
+        }
+        return due.isEmpty() && wait < Long.MAX_VALUE ? wait : 0;
+    }
+
+    /**
+     * Reads entries ahead until {@code concurrency} units have one due or the log is exhausted, returning whether
+     * any was read. Entries queued behind the first one of a unit do not count, so that they are read past.
+     */
+    private boolean readAhead(long now) {
+        int ready = 0;
+        for (ArrayDeque<Long> entries : queued.values()) {
+            Failures failed = failures.get(entries.getFirst());
+            if (failed == null || failed.retryAt() - now <= 0) {
+                ready++;
+            }
+        }
+        boolean read = false;
+        while (ready < concurrency) {
+            List<OutboxEntry> window = log.readAhead(concurrency * WINDOW_PER_CALL);
+            if (window.isEmpty()) {
+                break;
+            }
+            read = true;
+            for (OutboxEntry entry : window) {
+                if (settled.contains(entry.sequence())) {
+                    continue;
+                }
+                ArrayDeque<Long> entries = queued.computeIfAbsent(entry.egsUnit(), unit -> new ArrayDeque<>());
+                if (entries.isEmpty()) {
+                    ready++;
+                }
+                entries.add(entry.sequence());
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Reports the entry, returning whether it was settled.
+     */
+    boolean deliver(OutboxEntry entry) {
+        try {
+            InvoiceResult invoiceResult = zatcaService.reportInvoice(entry.egsUnit(), entry.invoiceRequest());
+            if (!"REPORTED".equals(invoiceResult.status())) {
+                eventPublisher.publishEvent(new ZatcaOutboxRejectedEvent(entry, invoiceResult, null));
+            }
+        } catch (ZatcaClientApiException e) {
+            if (!isRejection(e)) {
+                return failed(entry, e);
+            }
+            eventPublisher.publishEvent(new ZatcaOutboxRejectedEvent(entry, e.getInvoiceResult(), e));
+        } catch (RuntimeException e) {
+            return failed(entry, e);
+        }
+        failures.remove(entry.sequence());
+        settled.add(entry.sequence());
+        return true;
+    }
+
+    /**
+     * Schedules the entry to be sent again, or dead-letters it once it failed {@code maxAttempts} times, returning
+     * whether it was settled.
+     */
+    private boolean failed(OutboxEntry entry, RuntimeException e) {
+        Failures failed = failures.get(entry.sequence());
+        int attempts = failed == null ? 1 : failed.attempts() + 1;
+        if (attempts < maxAttempts) {
+            failures.put(entry.sequence(), new Failures(attempts, System.nanoTime() + retryInterval.toNanos()));
+            return false;
+        }
+        failures.remove(entry.sequence());
+        eventPublisher.publishEvent(new ZatcaOutboxDeadLetteredEvent(entry, attempts, e));
+        settled.add(entry.sequence());
+        return true;
+    }
+
+    /**
+     * Whether the gateway refused the invoice itself, so that sending it again cannot succeed, as opposed to the
+     * credentials or the load it was sent with.
+     */
+    static boolean isRejection(ZatcaClientApiException e) {
+        return e.getStatusCode().is4xxClientError()
+                && !e.getStatusCode().isSameCodeAs(HttpStatus.UNAUTHORIZED)
+                && !e.getStatusCode().isSameCodeAs(HttpStatus.FORBIDDEN)
+                && !e.getStatusCode().isSameCodeAs(HttpStatus.REQUEST_TIMEOUT)
+                && !e.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private record Failures(int attempts, long retryAt) {
+    }
+}
@@ -2,86 +2,234 @@ package com.ahmedmq.zatca.spring.service;
 
 import com.ahmedmq.zatca.ZatcaProperties;
 import com.ahmedmq.zatca.model.*;
-import org.springframework.http.HttpEntity;
+import com.ahmedmq.zatca.spring.service.DefaultZatcaCredentialRegistry.EgsUnit;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.ahmedmq.zatca.spring.service.ZatcaEndpoint.*;
 
 class DefaultZatcaService implements ZatcaService {
-    private final RestTemplate restTemplate;
+    private final ZatcaTransport transport;
     private final ZatcaProperties zatcaProperties;
+    private List<ZatcaCallInterceptor> interceptors = List.of();
+    private DefaultZatcaCredentialRegistry credentialRegistry;
+    private Map<String, DefaultZatcaService> tenants = Map.of();
+    private ZatcaSubmissionDeduplicator deduplicator;
 
     public DefaultZatcaService(RestTemplate restTemplate, ZatcaProperties zatcaProperties) {
-        this.restTemplate = restTemplate;
+        this(new RestTemplateZatcaTransport(restTemplate), zatcaProperties);
+    }
+
+    public DefaultZatcaService(ZatcaTransport transport, ZatcaProperties zatcaProperties) {
+        this.transport = transport;
         this.zatcaProperties = zatcaProperties;
     }
 
+    public void setInterceptors(List<ZatcaCallInterceptor> interceptors) {
+        this.interceptors = List.copyOf(interceptors);
+    }
+
+    void setCredentialRegistry(DefaultZatcaCredentialRegistry credentialRegistry) {
+        this.credentialRegistry = credentialRegistry;
+    }
+
+    void setTenants(Map<String, DefaultZatcaService> tenants) {
+        this.tenants = Map.copyOf(tenants);
+    }
+
+    void setDeduplicator(ZatcaSubmissionDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
     @Override
     public CSIDResponse complianceCSID(CSRRequest CSRRequest, String otp) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("OTP", otp);
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<CSRRequest> request = new HttpEntity<>(CSRRequest, headers);
-        return restTemplate.postForObject("/compliance", request, CSIDResponse.class);
+        HttpHeaders headers = ZatcaRequestHeaders.withOtp(COMPLIANCE_CSID, zatcaProperties.apiVersion(), otp);
+        return execute(COMPLIANCE_CSID, CSRRequest, () ->
+                transport.exchange(COMPLIANCE_CSID, headers, CSRRequest, CSIDResponse.class));
 
     }
 
     @Override
     public InvoiceComplianceResponse checkInvoiceCompliance(String userName, String password, InvoiceRequest invoiceRequest) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAcceptLanguage(Locale.LanguageRange.parse("en"));
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBasicAuth(userName, password);
-        HttpEntity<InvoiceRequest> request = new HttpEntity<>(invoiceRequest, headers);
-        return restTemplate.postForObject("/compliance/invoices", request, InvoiceComplianceResponse.class);
+        HttpHeaders headers = basicAuth(INVOICE_COMPLIANCE, userName, password);
+        return execute(INVOICE_COMPLIANCE, invoiceRequest, () ->
+                transport.exchange(INVOICE_COMPLIANCE, headers, invoiceRequest, InvoiceComplianceResponse.class));
     }
 
     @Override
     public CSIDResponse productionCSID(String certificate, String secret, ProductionCSIDRequest productionCSIDRequest) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBasicAuth(certificate, secret);
-        HttpEntity<ProductionCSIDRequest> request = new HttpEntity<>(productionCSIDRequest, headers);
-        return restTemplate.postForObject("/production/csids", request, CSIDResponse.class);
+        HttpHeaders headers = basicAuth(PRODUCTION_CSID, certificate, secret);
+        return execute(PRODUCTION_CSID, productionCSIDRequest, () ->
+                transport.exchange(PRODUCTION_CSID, headers, productionCSIDRequest, CSIDResponse.class));
+    }
+
+    @Override
+    public CSIDResponse renewProductionCSID(CSRRequest CSRRequest, String otp) {
+        return renewProductionCSID(ZatcaRequestHeaders.withOtp(RENEW_PRODUCTION_CSID, zatcaProperties.apiVersion(), otp),
+                CSRRequest);
+    }
+
+    @Override
+    public CSIDResponse renewProductionCSID(String egsUnit, CSRRequest CSRRequest, String otp) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).renewProductionCSID(ZatcaRequestHeaders.withOtp(unit.renewalHeaders(), otp), CSRRequest);
+    }
+
+    private CSIDResponse renewProductionCSID(HttpHeaders headers, CSRRequest CSRRequest) {
+        return execute(RENEW_PRODUCTION_CSID, CSRRequest, () ->
+                transport.exchange(RENEW_PRODUCTION_CSID, headers, CSRRequest, CSIDResponse.class));
     }
 
     @Override
     public InvoiceResult reportInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAcceptLanguage(Locale.LanguageRange.parse("en"));
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.set("Clearance-Status", "0");
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBasicAuth(certificate, secret);
-        HttpEntity<InvoiceRequest> request = new HttpEntity<>(invoiceRequest, headers);
-        return restTemplate.postForObject("/invoices/reporting/single", request, InvoiceResult.class);
+        return reportInvoice(basicAuth(REPORTING, certificate, secret), invoiceRequest);
     }
 
     @Override
-    public CSIDResponse renewProductionCSID(CSRRequest CSRRequest, String otp) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("OTP", otp);
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.setAcceptLanguage(Locale.LanguageRange.parse("en"));
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<CSRRequest> request = new HttpEntity<>(CSRRequest, headers);
-        return restTemplate.patchForObject("/production/csids", request, CSIDResponse.class);
+    public InvoiceResult reportInvoice(String certificate, String secret, StreamingInvoiceRequest invoiceRequest) {
+        return reportInvoice(basicAuth(REPORTING, certificate, secret), invoiceRequest);
     }
 
     @Override
     public ClearedInvoiceResult clearedInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAcceptLanguage(Locale.LanguageRange.parse("en"));
-        headers.set("Accept-Version", zatcaProperties.apiVersion());
-        headers.set("Clearance-Status", "0");
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBasicAuth(certificate, secret);
-        HttpEntity<InvoiceRequest> request = new HttpEntity<>(invoiceRequest, headers);
-        return restTemplate.postForObject("/invoices/clearance/single", request, ClearedInvoiceResult.class);
+        return clearedInvoice(basicAuth(CLEARANCE, certificate, secret), invoiceRequest);
+    }
+
+    @Override
+    public ClearedInvoiceResult clearedInvoice(String certificate, String secret, StreamingInvoiceRequest invoiceRequest) {
+        return clearedInvoice(basicAuth(CLEARANCE, certificate, secret), invoiceRequest);
+    }
+
+    @Override
+    public InvoiceResult clearedInvoice(String certificate, String secret, InvoiceRequest invoiceRequest,
+                                        InvoiceSink clearedInvoice) {
+        return clearedInvoice(basicAuth(CLEARANCE, certificate, secret), invoiceRequest, clearedInvoice);
+    }
+
+    @Override
+    public InvoiceResult clearedInvoice(String certificate, String secret, StreamingInvoiceRequest invoiceRequest,
+                                        InvoiceSink clearedInvoice) {
+        return clearedInvoice(basicAuth(CLEARANCE, certificate, secret), invoiceRequest, clearedInvoice);
+    }
+
+    @Override
+    public InvoiceResult reportInvoice(String egsUnit, InvoiceRequest invoiceRequest) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).reportInvoice(unit.reportingHeaders(), invoiceRequest);
+    }
+
+    @Override
+    public InvoiceResult reportInvoice(String egsUnit, StreamingInvoiceRequest invoiceRequest) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).reportInvoice(unit.reportingHeaders(), invoiceRequest);
+    }
+
+    @Override
+    public ClearedInvoiceResult clearedInvoice(String egsUnit, InvoiceRequest invoiceRequest) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).clearedInvoice(unit.clearanceHeaders(), invoiceRequest);
+    }
+
+    @Override
+    public ClearedInvoiceResult clearedInvoice(String egsUnit, StreamingInvoiceRequest invoiceRequest) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).clearedInvoice(unit.clearanceHeaders(), invoiceRequest);
+    }
+
+    @Override
+    public InvoiceResult clearedInvoice(String egsUnit, InvoiceRequest invoiceRequest, InvoiceSink clearedInvoice) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).clearedInvoice(unit.clearanceHeaders(), invoiceRequest, clearedInvoice);
+    }
+
+    @Override
+    public InvoiceResult clearedInvoice(String egsUnit, StreamingInvoiceRequest invoiceRequest,
+                                        InvoiceSink clearedInvoice) {
+        EgsUnit unit = egsUnit(egsUnit);
+        return tenant(unit).clearedInvoice(unit.clearanceHeaders(), invoiceRequest, clearedInvoice);
+    }
+
+    private InvoiceResult reportInvoice(HttpHeaders headers, InvoiceRequest invoiceRequest) {
+        return deduplicate(REPORTING, invoiceRequest.uuid(), invoiceRequest.invoiceHash(), () ->
+                execute(REPORTING, invoiceRequest, () ->
+                        transport.exchange(REPORTING, headers, invoiceRequest, InvoiceResult.class)));
+    }
+
+    private InvoiceResult reportInvoice(HttpHeaders headers, StreamingInvoiceRequest invoiceRequest) {
+        return deduplicate(REPORTING, invoiceRequest.uuid(), invoiceRequest.invoiceHash(), () ->
+                execute(REPORTING, invoiceRequest, () ->
+                        transport.exchange(REPORTING, headers, invoiceRequest, InvoiceResult.class)));
+    }
+
+    private ClearedInvoiceResult clearedInvoice(HttpHeaders headers, InvoiceRequest invoiceRequest) {
+        return deduplicate(CLEARANCE, invoiceRequest.uuid(), invoiceRequest.invoiceHash(), () ->
+                execute(CLEARANCE, invoiceRequest, () ->
+                        transport.exchange(CLEARANCE, headers, invoiceRequest, ClearedInvoiceResult.class)));
+    }
+
+    private ClearedInvoiceResult clearedInvoice(HttpHeaders headers, StreamingInvoiceRequest invoiceRequest) {
+        return deduplicate(CLEARANCE, invoiceRequest.uuid(), invoiceRequest.invoiceHash(), () ->
+                execute(CLEARANCE, invoiceRequest, () ->
+                        transport.exchange(CLEARANCE, headers, invoiceRequest, ClearedInvoiceResult.class)));
+    }
+
+    private InvoiceResult clearedInvoice(HttpHeaders headers, InvoiceRequest invoiceRequest, InvoiceSink clearedInvoice) {
+        return execute(CLEARANCE, invoiceRequest, () ->
+                transport.exchange(CLEARANCE, headers, invoiceRequest, clearedInvoice), false);
+    }
+
+    private InvoiceResult clearedInvoice(HttpHeaders headers, StreamingInvoiceRequest invoiceRequest,
+                                         InvoiceSink clearedInvoice) {
+        return execute(CLEARANCE, invoiceRequest, () ->
+                transport.exchange(CLEARANCE, headers, invoiceRequest, clearedInvoice), false);
+    }
+
+    private HttpHeaders basicAuth(ZatcaEndpoint endpoint, String certificate, String secret) {
+        return ZatcaRequestHeaders.withBasicAuth(endpoint, zatcaProperties.apiVersion(), certificate, secret);
+    }
+
+    private EgsUnit egsUnit(String egsUnit) {
+        if (credentialRegistry == null) {
+            throw new IllegalStateException("No ZatcaCredentialRegistry is configured");
+        }
+        return credentialRegistry.unit(egsUnit);
+    }
+
+    /**
+     * The service calling the base URL and connection pool of the unit's tenant, this one for the default tenant.
+     */
+    private DefaultZatcaService tenant(EgsUnit unit) {
+        DefaultZatcaService tenant = tenants.get(unit.tenant());
+        return tenant == null ? this : tenant;
+    }
+
+    private <T> T deduplicate(ZatcaEndpoint endpoint, String uuid, String invoiceHash, Supplier<T> submission) {
+        return deduplicator == null ? submission.get()
+                : deduplicator.deduplicate(endpoint, uuid, invoiceHash, submission);
+    }
+
+    private <T> T execute(ZatcaEndpoint endpoint, Object request, Supplier<T> call) {
+        return execute(endpoint, request, call, true);
+    }
+
+    /**
+     * Runs the call through the interceptors. A call writing the response to a sink may not run twice at the same
+     * time, so it is not hedged.
+     */
+    private <T> T execute(ZatcaEndpoint endpoint, Object request, Supplier<T> call, boolean hedgeable) {
+        Supplier<T> execution = call;
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            ZatcaCallInterceptor interceptor = interceptors.get(i);
+            if (!hedgeable && interceptor instanceof ZatcaHedgingInterceptor) {
+                continue;
+            }
+            Supplier<T> next = execution;
+            execution = () -> interceptor.intercept(endpoint, request, next);
+        }
+        return execution.get();
     }
 }
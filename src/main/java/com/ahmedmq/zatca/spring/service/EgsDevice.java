@@ -0,0 +1,8 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * An EGS unit to onboard and the OTP issued for it by the Fatoora portal.
+ */
+public record EgsDevice(String egsUnit,
+                        String otp) {
+}
@@ -0,0 +1,188 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Appends the accepted submissions to a file as JSON lines. Lines are queued by the submissions and appended from
+ * the executor, one task at a time, over a channel kept open, so that a submission, possibly made from an event loop,
+ * never waits for the file. The file is compacted to the submissions accepted within the TTL, and at most
+ * {@code maxEntries} of them, when it is loaded and whenever it holds twice as many lines. A line torn by a crash is
+ * skipped, and lines still queued when the application dies are lost, their invoices only being sent again.
+ */
+class FileDeduplicationStore implements ZatcaDeduplicationStore, Closeable {
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+    private static final Log logger = LogFactory.getLog(FileDeduplicationStore.class);
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Executor writer;
+    private final Queue<byte[]> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    // guarded by this
+    private FileChannel channel;
+    private int lines;
+
+    FileDeduplicationStore(Path directory, Duration ttl, int maxEntries, Clock clock, Executor writer) {
+        this.file = directory.resolve("accepted.jsonl");
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.writer = writer;
+    }
+
+    @Override
+    public synchronized List<AcceptedSubmission> load() {
+        try {
+            return compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the accepted submissions from " + file, e);
+        }
+    }
+
+    @Override
+    public void save(AcceptedSubmission submission) {
+        try {
+            queued.add(OBJECT_MAPPER.writeValueAsBytes(submission));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to save the accepted submission of invoice " + submission.uuid(), e);
+        }
+        if (writing.compareAndSet(false, true)) {
+            writer.execute(this::writeQueued);
+        }
+    }
+
+    /**
+     * Appends the queued lines until none is left, compacting the file once it holds twice {@code maxEntries}
+     * lines. A failure is logged and leaves the lines not appended queued, to be appended after the next save.
+     */
+    private void writeQueued() {
+        do {
+            try {
+                synchronized (this) {
+                    appendQueued();
+                    if (lines >= 2 * maxEntries) {
+                        compact();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to save the accepted submissions in " + file, e);
+            } finally {
+                writing.set(false);
+            }
+        } while (!queued.isEmpty() && writing.compareAndSet(false, true));
+    }
+
+    private void appendQueued() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, WRITE, CREATE, APPEND);
+        }
+        while (!queued.isEmpty()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int batch = 0;
+            for (Iterator<byte[]> next = queued.iterator(); next.hasNext() && out.size() < BATCH_BYTES; batch++) {
+                out.write(next.next());
+                out.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            for (int i = 0; i < batch; i++) {
+                queued.remove();
+            }
+            lines += batch;
+        }
+    }
+
+    /**
+     * Appends the lines still queued and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        appendQueued();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private List<AcceptedSubmission> compact() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        List<String> content;
+        try {
+            content = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            lines = 0;
+            return List.of();
+        }
+        List<AcceptedSubmission> kept = kept(content);
+        AtomicFiles.write(file, write(kept), true);
+        lines = kept.size();
+        return kept;
+    }
+
+    /**
+     * Returns the last {@code maxEntries} submissions accepted within the TTL.
+     */
+    private List<AcceptedSubmission> kept(List<String> content) {
+        Instant expired = clock.instant().minus(ttl);
+        List<AcceptedSubmission> submissions = new ArrayList<>();
+        for (String line : content) {
+            try {
+                AcceptedSubmission submission = OBJECT_MAPPER.readValue(line, AcceptedSubmission.class);
+                if (submission.acceptedAt().isAfter(expired)) {
+                    submissions.add(submission);
+                }
+            } catch (JsonProcessingException e) {
+                // torn by a crash while it was appended
+            }
+        }
+        return List.copyOf(submissions.subList(Math.max(0, submissions.size() - maxEntries), submissions.size()));
+    }
+
+    private static byte[] write(List<AcceptedSubmission> submissions) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (AcceptedSubmission submission : submissions) {
+            out.write(OBJECT_MAPPER.writeValueAsBytes(submission));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Keeps the state of each EGS unit in a file of its own, named after the URL safe base64 of the unit, so that
+ * units never contend on a shared file. A state is written to a temporary file, optionally forced to disk, and
+ * atomically moved over the previous one, so that a crash leaves either the old or the new state.
+ */
+class FileInvoiceChainStore implements InvoiceChainStore {
+    private final Path directory;
+    private final boolean fsync;
+
+    FileInvoiceChainStore(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    @Override
+    public InvoiceChainState load(String egsUnit) {
+        String state;
+        try {
+            state = Files.readString(AtomicFiles.file(directory, egsUnit), StandardCharsets.US_ASCII);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the invoice chain of EGS unit " + egsUnit, e);
+        }
+        int separator = state.indexOf(' ');
+        if (separator < 0) {
+            throw new IllegalStateException("Corrupt invoice chain of EGS unit " + egsUnit + ": " + state);
+        }
+        return new InvoiceChainState(Long.parseLong(state, 0, separator, 10), state.substring(separator + 1).strip());
+    }
+
+    @Override
+    public void save(String egsUnit, InvoiceChainState state) {
+        try {
+            AtomicFiles.write(AtomicFiles.file(directory, egsUnit),
+                    (state.icv() + " " + state.invoiceHash() + "\n").getBytes(StandardCharsets.US_ASCII), fsync);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save the invoice chain of EGS unit " + egsUnit, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the onboarding state of each EGS unit as JSON in a file of its own, replaced atomically on every save.
+ * The files hold the secrets of the CSIDs issued, so on file systems supporting POSIX permissions they are created
+ * readable and writable by their owner only ({@code rw-------}), in a directory created accessible to its owner
+ * only. An existing directory keeps its permissions.
+ */
+class FileOnboardingStore implements ZatcaOnboardingStore {
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private final Path directory;
+
+    FileOnboardingStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public OnboardingState load(String egsUnit) {
+        try {
+            return OBJECT_MAPPER.readValue(Files.readAllBytes(AtomicFiles.file(directory, egsUnit)), OnboardingState.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the onboarding state of EGS unit " + egsUnit, e);
+        }
+    }
+
+    @Override
+    public void save(OnboardingState state) {
+        try {
+            AtomicFiles.write(AtomicFiles.file(directory, state.egsUnit()), OBJECT_MAPPER.writeValueAsBytes(state),
+                    true, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save the onboarding state of EGS unit " + state.egsUnit(), e);
+        }
+    }
+
+    @Override
+    public List<OnboardingState> loadAll() {
+        List<OnboardingState> states = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    states.add(OBJECT_MAPPER.readValue(Files.readAllBytes(file), OnboardingState.class));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the onboarding states in " + directory, e);
+        }
+        return states;
+    }
+}
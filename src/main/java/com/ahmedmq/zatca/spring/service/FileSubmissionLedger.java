@@ -0,0 +1,604 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.Warning;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the {@link SubmissionRecord}s in append-only segment files, each record framed by its length and a
+ * CRC32C checksum. Records are indexed by the 64-bit hashes of their UUID and invoice hash: in an open addressing
+ * table in memory for the segment being written, and in a file of sorted hashes and offsets, written when the
+ * segment is sealed, for the others. A lookup is a probe of the table and a binary search of the memory-mapped
+ * index of each sealed segment, and opening the ledger only scans the segment being written. Records are not
+ * forced to disk, so that recording a submission costs no more than a write to the page cache. A segment is
+ * forced when it is sealed and when the ledger is closed.
+ */
+final class FileSubmissionLedger implements ZatcaSubmissionLedger, Closeable {
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                    SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+            .build();
+    private static final int FRAME = 8;
+    private static final int INDEX_HEADER = 16;
+    private static final int INDEX_ENTRY = 16;
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final long UUID_SEED = 0xcbf29ce484222325L;
+    private static final long INVOICE_HASH_SEED = 0x84222325cbf29ce4L;
+    private static final ZatcaEndpoint[] ENDPOINTS = ZatcaEndpoint.values();
+
+    private final Path directory;
+    private final long segmentSize;
+
+    // guarded by this
+    private final List<SealedSegment> sealed = new ArrayList<>();
+    private long activeNumber;
+    private FileChannel active;
+    private long position;
+    private HashIndex activeIndex;
+    private long firstSubmittedAt;
+    private long lastSubmittedAt;
+    private boolean closed;
+
+    private FileSubmissionLedger(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the ledger kept in the directory, writing the index of a sealed segment the application died before
+     * indexing and discarding the torn tail of the segment being written.
+     */
+    static FileSubmissionLedger open(Path directory, long segmentSize) throws IOException {
+        if (segmentSize < 1024 || segmentSize > 1 << 30) {
+            throw new IllegalArgumentException("The ledger segment size must be between 1KB and 1GB, not " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(directory)) {
+            logs = files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && file.getFileName().toString().endsWith(LOG_SUFFIX)).sorted().toList();
+        }
+        FileSubmissionLedger ledger = new FileSubmissionLedger(directory, segmentSize);
+        try {
+            for (int i = 0; i < logs.size() - 1; i++) {
+                ledger.sealed.add(ledger.openSealed(logs.get(i)));
+            }
+            if (logs.isEmpty()) {
+                ledger.openActive(0);
+            } else {
+                ledger.recoverActive(logs.get(logs.size() - 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            ledger.close();
+            throw e;
+        }
+        return ledger;
+    }
+
+    private SealedSegment openSealed(Path log) throws IOException {
+        FileChannel channel = FileChannel.open(log, READ);
+        try {
+            Path index = indexFile(log);
+            if (!Files.exists(index)) {
+                HashIndex hashIndex = new HashIndex();
+                long[] times = {Long.MAX_VALUE, Long.MIN_VALUE};
+                scan(channel, channel.size(), indexer(hashIndex, times));
+                writeIndex(index, hashIndex, times[0], times[1]);
+            }
+            return new SealedSegment(channel, map(index));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void openActive(long number) throws IOException {
+        activeNumber = number;
+        active = FileChannel.open(logFile(number), READ, WRITE, CREATE);
+        position = 0;
+        activeIndex = new HashIndex();
+        firstSubmittedAt = Long.MAX_VALUE;
+        lastSubmittedAt = Long.MIN_VALUE;
+    }
+
+    private void recoverActive(Path log) throws IOException {
+        String name = log.getFileName().toString();
+        openActive(Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - LOG_SUFFIX.length(), 10));
+        long[] times = {Long.MAX_VALUE, Long.MIN_VALUE};
+        position = scan(active, active.size(), indexer(activeIndex, times));
+        firstSubmittedAt = times[0];
+        lastSubmittedAt = times[1];
+        active.truncate(position);
+    }
+
+    /**
+     * Records a submission. It is visible to lookups once this returns.
+     */
+    void append(SubmissionRecord record) {
+        byte[] frame = encode(record);
+        long submittedAt = record.submittedAt().toEpochMilli();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The submission ledger is closed");
+            }
+            try {
+                if (position > 0 && position + frame.length > segmentSize) {
+                    seal();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    active.write(buffer, position + buffer.position());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to record the submission of invoice " + record.uuid(), e);
+            }
+            if (record.uuid() != null) {
+                activeIndex.put(hash(UUID_SEED, record.uuid()), position);
+            }
+            if (record.invoiceHash() != null) {
+                activeIndex.put(hash(INVOICE_HASH_SEED, record.invoiceHash()), position);
+            }
+            firstSubmittedAt = Math.min(firstSubmittedAt, submittedAt);
+            lastSubmittedAt = Math.max(lastSubmittedAt, submittedAt);
+            position += frame.length;
+        }
+    }
+
+    private void seal() throws IOException {
+        active.force(false);
+        Path index = indexFile(logFile(activeNumber));
+        writeIndex(index, activeIndex, firstSubmittedAt, lastSubmittedAt);
+        sealed.add(new SealedSegment(active, map(index)));
+        openActive(activeNumber + 1);
+    }
+
+    @Override
+    public List<SubmissionRecord> findByUuid(String uuid) {
+        return find(hash(UUID_SEED, uuid), record -> uuid.equals(record.uuid()));
+    }
+
+    @Override
+    public List<SubmissionRecord> findByInvoiceHash(String invoiceHash) {
+        return find(hash(INVOICE_HASH_SEED, invoiceHash), record -> invoiceHash.equals(record.invoiceHash()));
+    }
+
+    private List<SubmissionRecord> find(long key, Predicate<SubmissionRecord> matches) {
+        List<SealedSegment> segments;
+        FileChannel channel;
+        long[] activeOffsets;
+        synchronized (this) {
+            segments = List.copyOf(sealed);
+            channel = active;
+            activeOffsets = activeIndex.offsets(key);
+        }
+        List<SubmissionRecord> records = new ArrayList<>();
+        try {
+            for (SealedSegment segment : segments) {
+                read(segment.channel, segment.offsets(key), matches, records);
+            }
+            read(channel, activeOffsets, matches, records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the submission ledger", e);
+        }
+        return records;
+    }
+
+    @Override
+    public void forEach(Instant from, Instant to, Consumer<SubmissionRecord> action) {
+        List<SealedSegment> segments;
+        FileChannel channel;
+        long end;
+        synchronized (this) {
+            segments = List.copyOf(sealed);
+            channel = active;
+            end = position;
+        }
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        try {
+            for (SealedSegment segment : segments) {
+                if (segment.lastSubmittedAt() >= fromMillis && segment.firstSubmittedAt() < toMillis) {
+                    forEach(segment.channel, segment.channel.size(), from, to, action);
+                }
+            }
+            forEach(channel, end, from, to, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the submission ledger", e);
+        }
+    }
+
+    private static void forEach(FileChannel channel, long end, Instant from, Instant to,
+                                Consumer<SubmissionRecord> action) throws IOException {
+        scan(channel, end, (offset, payload) -> {
+            SubmissionRecord record = decode(payload);
+            if (!record.submittedAt().isBefore(from) && record.submittedAt().isBefore(to)) {
+                action.accept(record);
+            }
+        });
+    }
+
+    @Override
+    public void export(Instant from, Instant to, OutputStream out) {
+        forEach(from, to, record -> {
+            try {
+                out.write(OBJECT_MAPPER.writeValueAsBytes(record));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to export the submission of invoice " + record.uuid(), e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (active != null) {
+                active.force(false);
+                active.close();
+            }
+            for (SealedSegment segment : sealed) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the submission ledger", e);
+        }
+    }
+
+    private Path logFile(long number) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, number, LOG_SUFFIX));
+    }
+
+    private static Path indexFile(Path log) {
+        String name = log.getFileName().toString();
+        return log.resolveSibling(name.substring(0, name.length() - LOG_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void writeIndex(Path file, HashIndex index, long firstSubmittedAt, long lastSubmittedAt)
+            throws IOException {
+        long[] keys = new long[index.size];
+        long[] offsets = new long[index.size];
+        for (int slot = 0, i = 0; slot < index.keys.length; slot++) {
+            if (index.keys[slot] != 0) {
+                keys[i] = index.keys[slot];
+                offsets[i++] = index.offsets[slot];
+            }
+        }
+        sort(keys, offsets, 0, keys.length);
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER + INDEX_ENTRY * keys.length);
+        buffer.putLong(firstSubmittedAt).putLong(lastSubmittedAt);
+        for (int i = 0; i < keys.length; i++) {
+            buffer.putLong(keys[i]).putLong(offsets[i]);
+        }
+        AtomicFiles.write(file, buffer.array(), true);
+    }
+
+    /**
+     * Reads the records at the offsets, in the order they were written, adding those matching to the list.
+     */
+    private static void read(FileChannel channel, long[] offsets, Predicate<SubmissionRecord> matches,
+                             List<SubmissionRecord> records) throws IOException {
+        Arrays.sort(offsets);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME);
+        for (long offset : offsets) {
+            readFully(channel, frame.clear(), offset);
+            ByteBuffer payload = ByteBuffer.allocate(frame.getInt(0));
+            readFully(channel, payload, offset + FRAME);
+            SubmissionRecord record = decode(payload.flip());
+            if (matches.test(record)) {
+                records.add(record);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of ledger segment at " + position);
+            }
+        }
+    }
+
+    /**
+     * Passes the payload of each intact record up to the end to the visitor, returning where the records stop.
+     */
+    private static long scan(FileChannel channel, long end, RecordVisitor visitor) throws IOException {
+        if (end == 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        int position = 0;
+        while (position + FRAME <= end) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > end - position - FRAME) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(position + FRAME, length);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            visitor.visit(position, payload);
+            position += FRAME + length;
+        }
+        return position;
+    }
+
+    private static RecordVisitor indexer(HashIndex index, long[] times) {
+        return (offset, payload) -> {
+            long submittedAt = Instant.ofEpochSecond(payload.getLong(), payload.getInt()).toEpochMilli();
+            payload.position(payload.position() + Long.BYTES + 1);
+            String uuid = string(payload);
+            String invoiceHash = string(payload);
+            if (uuid != null) {
+                index.put(hash(UUID_SEED, uuid), offset);
+            }
+            if (invoiceHash != null) {
+                index.put(hash(INVOICE_HASH_SEED, invoiceHash), offset);
+            }
+            times[0] = Math.min(times[0], submittedAt);
+            times[1] = Math.max(times[1], submittedAt);
+        };
+    }
+
+    private static byte[] encode(SubmissionRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(0);
+            out.writeLong(record.submittedAt().getEpochSecond());
+            out.writeInt(record.submittedAt().getNano());
+            out.writeLong(record.duration().toNanos());
+            out.writeByte(record.endpoint().ordinal());
+            writeString(out, record.uuid());
+            writeString(out, record.invoiceHash());
+            writeString(out, record.status());
+            writeString(out, record.failure());
+            List<Warning> warnings = record.warnings() == null ? List.of() : record.warnings();
+            out.writeInt(warnings.size());
+            for (Warning warning : warnings) {
+                writeString(out, warning.category());
+                writeString(out, warning.code());
+                writeString(out, warning.message());
+            }
+            List<Error> errors = record.errors() == null ? List.of() : record.errors();
+            out.writeInt(errors.size());
+            for (Error error : errors) {
+                writeString(out, error.category());
+                writeString(out, error.code());
+                writeString(out, error.message());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] frame = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(frame, FRAME, frame.length - FRAME);
+        ByteBuffer.wrap(frame).putInt(frame.length - FRAME).putInt((int) crc.getValue());
+        return frame;
+    }
+
+    private static SubmissionRecord decode(ByteBuffer payload) {
+        Instant submittedAt = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+        Duration duration = Duration.ofNanos(payload.getLong());
+        ZatcaEndpoint endpoint = ENDPOINTS[payload.get()];
+        String uuid = string(payload);
+        String invoiceHash = string(payload);
+        String status = string(payload);
+        String failure = string(payload);
+        int warningCount = payload.getInt();
+        List<Warning> warnings = new ArrayList<>(warningCount);
+        for (int i = 0; i < warningCount; i++) {
+            warnings.add(new Warning(string(payload), string(payload), string(payload)));
+        }
+        int errorCount = payload.getInt();
+        List<Error> errors = new ArrayList<>(errorCount);
+        for (int i = 0; i < errorCount; i++) {
+            errors.add(new Error(string(payload), string(payload), string(payload)));
+        }
+        return new SubmissionRecord(uuid, invoiceHash, endpoint, status, warnings, errors, failure, submittedAt,
+                duration);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-16 code units, finished with the MurmurHash3 mix and never 0, which marks an empty
+     * slot of the {@link HashIndex}.
+     */
+    static long hash(long seed, String value) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static void sort(long[] keys, long[] values, int from, int to) {
+        while (to - from > 16) {
+            long pivot = keys[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            if (j - from < to - i) {
+                sort(keys, values, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, values, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+                swap(keys, values, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private interface RecordVisitor {
+        void visit(long offset, ByteBuffer payload);
+    }
+
+    /**
+     * Offsets of the records of the segment being written by key hash, kept in open addressing arrays so that
+     * a record costs two array slots rather than a map entry and its boxes.
+     */
+    private static final class HashIndex {
+        long[] keys = new long[1024];
+        long[] offsets = new long[1024];
+        int size;
+
+        void put(long key, long offset) {
+            if (2 * (size + 1) > keys.length) {
+                long[] oldKeys = keys;
+                long[] oldOffsets = offsets;
+                keys = new long[oldKeys.length * 2];
+                offsets = new long[oldKeys.length * 2];
+                size = 0;
+                for (int slot = 0; slot < oldKeys.length; slot++) {
+                    if (oldKeys[slot] != 0) {
+                        put(oldKeys[slot], oldOffsets[slot]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ key >>> 32) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            offsets[slot] = offset;
+            size++;
+        }
+
+        long[] offsets(long key) {
+            long[] found = new long[0];
+            int mask = keys.length - 1;
+            for (int slot = (int) (key ^ key >>> 32) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = offsets[slot];
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * A segment no longer written to, with its index of sorted key hashes and offsets after a header holding the
+     * time of its first and last submissions.
+     */
+    private record SealedSegment(FileChannel channel, MappedByteBuffer index) {
+
+        long firstSubmittedAt() {
+            return index.getLong(0);
+        }
+
+        long lastSubmittedAt() {
+            return index.getLong(Long.BYTES);
+        }
+
+        long[] offsets(long key) {
+            int low = 0;
+            int high = (index.capacity() - INDEX_HEADER) / INDEX_ENTRY;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (index.getLong(INDEX_HEADER + middle * INDEX_ENTRY) < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int end = low;
+            int entries = (index.capacity() - INDEX_HEADER) / INDEX_ENTRY;
+            while (end < entries && index.getLong(INDEX_HEADER + end * INDEX_ENTRY) == key) {
+                end++;
+            }
+            long[] offsets = new long[end - low];
+            for (int i = low; i < end; i++) {
+                offsets[i - low] = index.getLong(INDEX_HEADER + i * INDEX_ENTRY + Long.BYTES);
+            }
+            return offsets;
+        }
+    }
+}
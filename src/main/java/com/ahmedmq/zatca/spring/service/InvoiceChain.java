@@ -0,0 +1,70 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+
+/**
+ * Hands out the invoice counter value (ICV) and previous invoice hash (PIH) of the next invoice of an EGS unit.
+ * The invoices of a unit are chained one at a time: {@link #next(String)} waits until the previous link of the
+ * same unit has been committed or closed, while the chains of different units advance independently.
+ *
+ * <pre>{@code
+ * try (InvoiceChain.Link link = invoiceChain.next(egsUnit)) {
+ *     byte[] invoiceXml = buildInvoice(link.icv(), link.previousInvoiceHash());
+ *     InvoiceRequest request = link.commit(uuid, invoiceXml);
+ * }
+ * }</pre>
+ */
+public interface InvoiceChain {
+
+    /**
+     * The previous invoice hash of the first invoice of a unit, the base64 encoded SHA-256 digest of {@code 0}.
+     */
+    String INITIAL_INVOICE_HASH = "NWZlY2ViNjZmZmM4NmYzOGQ5NTI3ODZjNmQ2OTZjNzljMmRiYzIzOWRkNGU5MWI0NjcyOWQ3M2EyN2ZiNTdlOQ==";
+
+    /**
+     * Reserves the next link of the unit's chain, waiting while another link of the unit is outstanding.
+     */
+    Link next(String egsUnit);
+
+    /**
+     * Returns the last committed state of the unit, or {@code null} when it has not issued an invoice yet.
+     */
+    InvoiceChainState current(String egsUnit);
+
+    /**
+     * The reserved position of an invoice in the chain of its unit. It is used by one thread at a time and must
+     * be committed or closed, which lets the next invoice of the unit through.
+     */
+    interface Link extends AutoCloseable {
+
+        String egsUnit();
+
+        long icv();
+
+        String previousInvoiceHash();
+
+        /**
+         * Hashes the invoice, records it as the last invoice of the unit and returns the request to send it with.
+         */
+        InvoiceRequest commit(String uuid, byte[] invoiceXml);
+
+        /**
+         * Hashes the invoice, records it as the last invoice of the unit and returns the request to stream it
+         * with. The source is read once more when the request is sent, so it must be repeatable.
+         */
+        StreamingInvoiceRequest commit(String uuid, InvoiceSource invoice);
+
+        /**
+         * Records an invoice hashed by the caller as the last invoice of the unit.
+         */
+        void commit(String invoiceHash);
+
+        /**
+         * Releases the link. When it has not been committed the counter value is not used and is handed out again.
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,8 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * The last invoice issued by an EGS unit: its invoice counter value (ICV) and its hash, which becomes the
+ * previous invoice hash (PIH) of the next invoice.
+ */
+public record InvoiceChainState(long icv, String invoiceHash) {
+}
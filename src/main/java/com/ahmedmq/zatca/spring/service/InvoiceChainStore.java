@@ -0,0 +1,18 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * Persists the {@link InvoiceChainState} of each EGS unit so that an {@link InvoiceChain} resumes where it left
+ * off after a restart. Calls for the same unit never overlap, calls for different units may run concurrently.
+ */
+public interface InvoiceChainStore {
+
+    /**
+     * Returns the last saved state of the unit, or {@code null} when it has not issued an invoice yet.
+     */
+    InvoiceChainState load(String egsUnit);
+
+    /**
+     * Saves the state of the unit, which must be durable once this method returns.
+     */
+    void save(String egsUnit, InvoiceChainState state);
+}
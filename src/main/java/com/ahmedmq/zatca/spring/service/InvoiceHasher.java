@@ -0,0 +1,25 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceSource;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Computes the {@code invoiceHash} of an invoice: the base64 encoded SHA-256 digest of its XML, canonicalized
+ * with C14N 1.1 once the {@code UBLExtensions}, the {@code Signature} and the QR code
+ * {@code AdditionalDocumentReference} have been removed, as specified by ZATCA.
+ */
+public interface InvoiceHasher {
+
+    String hash(InvoiceSource invoice);
+
+    default String hash(byte[] invoiceXml) {
+        return hash(InvoiceSource.of(ByteBuffer.wrap(invoiceXml)));
+    }
+
+    /**
+     * Hashes a batch of invoices in parallel, returning their hashes in the order given.
+     */
+    List<String> hashAll(List<? extends InvoiceSource> invoices);
+}
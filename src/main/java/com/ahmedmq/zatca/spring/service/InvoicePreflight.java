@@ -0,0 +1,259 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.Warning;
+import com.ahmedmq.zatca.qr.QrCodeValidator;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Checks an invoice locally against the rules the gateway most often rejects it for, collecting what it needs
+ * while {@link StreamingInvoiceHasher} hashes it, so that the XML is read once: the mandatory elements, the
+ * UUID and hash given alongside the invoice, the invoice type against the endpoint, the date, time and VAT
+ * number formats and, for simplified invoices, the signature and QR code.
+ */
+final class InvoicePreflight implements StreamingInvoiceHasher.Listener {
+    static final String CATEGORY = "PREFLIGHT";
+
+    static final String INVOICE_NAMESPACE = "urn:oasis:names:specification:ubl:schema:xsd:Invoice-2";
+    static final String CAC_NAMESPACE = "urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2";
+    static final String CBC_NAMESPACE = StreamingInvoiceHasher.CBC_NAMESPACE;
+
+    private static final String[] MANDATORY_CBC = {"ProfileID", "ID", "UUID", "IssueDate", "IssueTime",
+            "InvoiceTypeCode", "DocumentCurrencyCode", "TaxCurrencyCode"};
+    private static final String[] MANDATORY_CAC = {"AccountingSupplierParty", "TaxTotal", "LegalMonetaryTotal",
+            "InvoiceLine"};
+
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern TIME = Pattern.compile("\\d{2}:\\d{2}:\\d{2}Z?");
+    private static final Pattern INVOICE_TYPE = Pattern.compile("0[12][01]{5}");
+    private static final Pattern VAT_NUMBER = Pattern.compile("3\\d{13}3");
+
+    private final String[] localNames = new String[6];
+    private final String[] namespaces = new String[6];
+    private final StringBuilder text = new StringBuilder();
+    private int captureDepth;
+
+    private boolean invoice;
+    private final boolean[] mandatoryCbc = new boolean[MANDATORY_CBC.length];
+    private final boolean[] mandatoryCac = new boolean[MANDATORY_CAC.length];
+    private boolean customerParty;
+    private boolean signature;
+    private String uuid;
+    private String issueDate;
+    private String issueTime;
+    private String invoiceTypeName;
+    private String sellerVatNumber;
+    private String documentReferenceId;
+    private String documentReferenceObject;
+    private boolean icv;
+    private boolean pih;
+    private String qrCode;
+
+    private InvoicePreflight() {
+    }
+
+    /**
+     * Checks an invoice about to be sent to the endpoint with the given UUID and hash, returning the result the
+     * gateway would be expected to reject it with, its errors being empty when none of the rules failed.
+     */
+    static InvoiceResult check(StreamingInvoiceHasher invoiceHasher, ZatcaEndpoint endpoint, String uuid,
+                               String invoiceHash, InvoiceSource invoice) {
+        InvoicePreflight preflight = new InvoicePreflight();
+        List<Error> errors = new ArrayList<>();
+        List<Warning> warnings = new ArrayList<>();
+        try {
+            String actualHash = invoiceHasher.hash(invoice, preflight);
+            preflight.check(endpoint, uuid, invoiceHash, actualHash, errors, warnings);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            // the parser wraps the I/O error of an invoice that is not valid base64
+            errors.add(hasCause(e, IOException.class)
+                    ? error("Invalid-Invoice-Encoding", "The invoice is not valid base64")
+                    : error("Invalid-Invoice-XML", "The invoice is not well-formed XML"));
+        }
+        return new InvoiceResult(invoiceHash, endpoint == ZatcaEndpoint.CLEARANCE ? "NOT_CLEARED" : "NOT_REPORTED",
+                warnings, errors);
+    }
+
+    private void check(ZatcaEndpoint endpoint, String expectedUuid, String expectedHash, String actualHash,
+                       List<Error> errors, List<Warning> warnings) {
+        if (!invoice) {
+            errors.add(error("Invalid-Invoice-Document", "The document is not a UBL 2.1 Invoice"));
+            return;
+        }
+        for (int i = 0; i < MANDATORY_CBC.length; i++) {
+            if (!mandatoryCbc[i]) {
+                errors.add(error("Missing-Element", "The invoice has no cbc:" + MANDATORY_CBC[i]));
+            }
+        }
+        for (int i = 0; i < MANDATORY_CAC.length; i++) {
+            if (!mandatoryCac[i]) {
+                errors.add(error("Missing-Element", "The invoice has no cac:" + MANDATORY_CAC[i]));
+            }
+        }
+        if (!icv) {
+            errors.add(error("Missing-ICV", "The invoice has no ICV AdditionalDocumentReference"));
+        }
+        if (!pih) {
+            errors.add(error("Missing-PIH", "The invoice has no PIH AdditionalDocumentReference"));
+        }
+
+        if (uuid != null && !uuid.equals(expectedUuid)) {
+            errors.add(error("Invalid-Invoice-UUID", "The UUID of the request does not match cbc:UUID of the invoice"));
+        }
+        if (!actualHash.equals(expectedHash)) {
+            errors.add(error("Invalid-Invoice-Hash", "The provided invoice hash does not match the invoice"));
+        }
+        if (issueDate != null && !DATE.matcher(issueDate).matches()) {
+            errors.add(error("Invalid-Issue-Date", "cbc:IssueDate must be formatted as yyyy-MM-dd"));
+        }
+        if (issueTime != null && !TIME.matcher(issueTime).matches()) {
+            errors.add(error("Invalid-Issue-Time", "cbc:IssueTime must be formatted as HH:mm:ss"));
+        }
+        if (sellerVatNumber == null) {
+            warnings.add(new Warning(CATEGORY, "Missing-VAT-Number", "The seller has no VAT registration number"));
+        } else if (!VAT_NUMBER.matcher(sellerVatNumber).matches()) {
+            errors.add(error("Invalid-VAT-Number", "The seller VAT registration number must be 15 digits starting and ending with 3"));
+        }
+
+        if (mandatoryCbc[5]) {
+            checkInvoiceType(endpoint, expectedHash, errors);
+        }
+    }
+
+    private void checkInvoiceType(ZatcaEndpoint endpoint, String expectedHash, List<Error> errors) {
+        if (invoiceTypeName == null || !INVOICE_TYPE.matcher(invoiceTypeName).matches()) {
+            errors.add(error("Invalid-Invoice-Type", "cbc:InvoiceTypeCode must have a name of 7 digits starting with 01 or 02"));
+            return;
+        }
+        boolean simplified = invoiceTypeName.startsWith("02");
+        if (endpoint == ZatcaEndpoint.REPORTING && !simplified) {
+            errors.add(error("Invalid-Invoice-Type", "Standard invoices are cleared, not reported"));
+        } else if (endpoint == ZatcaEndpoint.CLEARANCE && simplified) {
+            errors.add(error("Invalid-Invoice-Type", "Simplified invoices are reported, not cleared"));
+        }
+        if (!simplified && !customerParty) {
+            errors.add(error("Missing-Element", "The invoice has no cac:AccountingCustomerParty"));
+        }
+        if (simplified) {
+            if (!signature) {
+                errors.add(error("Missing-Signature", "Simplified invoices must be signed"));
+            }
+            if (qrCode == null) {
+                errors.add(error("Missing-QR-Code", "Simplified invoices must have a QR code"));
+            } else {
+                errors.addAll(QrCodeValidator.validate(qrCode, true, expectedHash));
+            }
+        }
+    }
+
+    @Override
+    public void startElement(XMLStreamReader reader, int depth) {
+        if (depth >= localNames.length) {
+            return;
+        }
+        localNames[depth] = reader.getLocalName();
+        namespaces[depth] = reader.getNamespaceURI();
+        if (depth == 1) {
+            invoice = is(1, INVOICE_NAMESPACE, "Invoice");
+        } else if (!invoice) {
+            return;
+        } else if (depth == 2) {
+            startTopLevelElement(reader);
+        } else if (depth == 3 && is(2, CAC_NAMESPACE, "AdditionalDocumentReference") && is(3, CBC_NAMESPACE, "ID")
+                || depth == 4 && is(2, CAC_NAMESPACE, "AdditionalDocumentReference") && is(3, CAC_NAMESPACE, "Attachment")
+                && is(4, CBC_NAMESPACE, "EmbeddedDocumentBinaryObject")
+                || depth == 5 && is(2, CAC_NAMESPACE, "AccountingSupplierParty") && is(3, CAC_NAMESPACE, "Party")
+                && is(4, CAC_NAMESPACE, "PartyTaxScheme") && is(5, CBC_NAMESPACE, "CompanyID")) {
+            startCapture(depth);
+        }
+    }
+
+    private void startTopLevelElement(XMLStreamReader reader) {
+        String localName = localNames[2];
+        if (CBC_NAMESPACE.equals(namespaces[2])) {
+            for (int i = 0; i < MANDATORY_CBC.length; i++) {
+                mandatoryCbc[i] |= MANDATORY_CBC[i].equals(localName);
+            }
+            if (localName.equals("InvoiceTypeCode")) {
+                invoiceTypeName = reader.getAttributeValue(null, "name");
+            }
+            if (localName.equals("UUID") || localName.equals("IssueDate") || localName.equals("IssueTime")) {
+                startCapture(2);
+            }
+        } else if (CAC_NAMESPACE.equals(namespaces[2])) {
+            for (int i = 0; i < MANDATORY_CAC.length; i++) {
+                mandatoryCac[i] |= MANDATORY_CAC[i].equals(localName);
+            }
+            customerParty |= localName.equals("AccountingCustomerParty");
+            signature |= localName.equals("Signature");
+            if (localName.equals("AdditionalDocumentReference")) {
+                documentReferenceId = null;
+                documentReferenceObject = null;
+            }
+        }
+    }
+
+    @Override
+    public void text(XMLStreamReader reader, int depth) {
+        if (depth == captureDepth) {
+            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        }
+    }
+
+    @Override
+    public void endElement(XMLStreamReader reader, int depth) {
+        if (depth == captureDepth) {
+            String value = text.toString().strip();
+            switch (localNames[depth]) {
+                case "UUID" -> uuid = value;
+                case "IssueDate" -> issueDate = value;
+                case "IssueTime" -> issueTime = value;
+                case "ID" -> documentReferenceId = value;
+                case "EmbeddedDocumentBinaryObject" -> documentReferenceObject = value;
+                case "CompanyID" -> sellerVatNumber = value;
+                default -> {
+                }
+            }
+            captureDepth = 0;
+        }
+        if (depth == 2 && invoice && is(2, CAC_NAMESPACE, "AdditionalDocumentReference") && documentReferenceId != null) {
+            switch (documentReferenceId) {
+                case "ICV" -> icv = true;
+                case "PIH" -> pih = true;
+                case "QR" -> qrCode = documentReferenceObject;
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void startCapture(int depth) {
+        captureDepth = depth;
+        text.setLength(0);
+    }
+
+    private boolean is(int depth, String namespace, String localName) {
+        return localName.equals(localNames[depth]) && namespace.equals(namespaces[depth]);
+    }
+
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Error error(String code, String message) {
+        return new Error(CATEGORY, code, message);
+    }
+}
@@ -0,0 +1,348 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.ahmedmq.zatca.spring.service.ZatcaObservedClientHttpRequestFactory.CountingInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Calls the gateway with the JDK {@link HttpClient}, which multiplexes calls over a few HTTP/2 connections when
+ * the gateway supports it. The calling thread blocks without holding a monitor, so a virtual thread is parked
+ * rather than pinned. Responses are read as they arrive and a streamed invoice is written by the calling thread
+ * as the client asks for it. The exchange is reported to the {@link ZatcaExchangeObserver}s here, as there is
+ * no request factory to observe.
+ */
+final class JdkZatcaTransport implements ZatcaTransport {
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host",
+            "upgrade");
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final Duration readTimeout;
+    private final ObjectMapper objectMapper;
+    private final ZatcaProperties.Errors errors;
+    private final List<ZatcaExchangeObserver> observers;
+
+    JdkZatcaTransport(HttpClient httpClient, String baseUrl, Duration readTimeout, ObjectMapper objectMapper,
+                      ZatcaProperties.Errors errors, List<ZatcaExchangeObserver> observers) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl == null ? "" : baseUrl.replaceFirst("/+$", "");
+        this.readTimeout = readTimeout;
+        this.objectMapper = objectMapper;
+        this.errors = errors;
+        this.observers = List.copyOf(observers);
+    }
+
+    @Override
+    public <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+        return exchange(endpoint, headers, body, (statusCode, responseHeaders, response) ->
+                ZatcaTransports.read(endpoint, statusCode, responseHeaders, response, objectMapper, errors, responseType));
+    }
+
+    @Override
+    public InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice) {
+        return exchange(endpoint, headers, body, (statusCode, responseHeaders, response) ->
+                ZatcaTransports.read(endpoint, statusCode, responseHeaders, response, objectMapper, errors, clearedInvoice));
+    }
+
+    private <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body,
+                           ZatcaTransports.ResponseReader<T> reader) {
+        URI uri = URI.create(baseUrl + endpoint.path());
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(readTimeout);
+        headers.forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(value -> request.header(name, value));
+            }
+        });
+        if (!headers.containsKey(HttpHeaders.ACCEPT)) {
+            request.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        }
+        try {
+            if (body instanceof StreamingInvoiceRequest invoiceRequest) {
+                return streamed(endpoint, request, invoiceRequest, reader);
+            }
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            HttpResponse<InputStream> response = httpClient.send(request
+                    .method(endpoint.method().name(), HttpRequest.BodyPublishers.ofByteArray(json))
+                    .build(), HttpResponse.BodyHandlers.ofInputStream());
+            return read(endpoint, response, json.length, reader);
+        } catch (IOException e) {
+            throw ZatcaTransports.ioError(endpoint, uri.toString(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ZatcaTransports.ioError(endpoint, uri.toString(), new InterruptedIOException(e.getMessage()));
+        }
+    }
+
+    /**
+     * Sends the request and writes the invoice on the calling thread while the client sends it. A failure to
+     * connect ends the writing, and is then thrown in place of it.
+     */
+    private <T> T streamed(ZatcaEndpoint endpoint, HttpRequest.Builder request, StreamingInvoiceRequest invoiceRequest,
+                           ZatcaTransports.ResponseReader<T> reader) throws IOException, InterruptedException {
+        StreamingBodyPublisher body = new StreamingBodyPublisher();
+        CompletableFuture<HttpResponse<InputStream>> response = httpClient.sendAsync(
+                request.method(endpoint.method().name(), body).build(), HttpResponse.BodyHandlers.ofInputStream());
+        response.whenComplete((result, failure) -> body.abort());
+        try {
+            body.write(outputStream -> objectMapper.writeValue(outputStream, invoiceRequest));
+        } catch (IOException e) {
+            if (!response.isDone()) {
+                response.cancel(true);
+                throw e;
+            }
+        }
+        try {
+            return read(endpoint, response.get(), body.count(), reader);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the response to its end so that the connection can be reused, then reports the exchange.
+     */
+    private <T> T read(ZatcaEndpoint endpoint, HttpResponse<InputStream> response, long requestBytes,
+                       ZatcaTransports.ResponseReader<T> reader) throws IOException {
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(response.statusCode());
+        CountingInputStream body = new CountingInputStream(response.body());
+        try (body) {
+            T result = reader.read(statusCode, headers(statusCode, response), StreamUtils.nonClosing(body));
+            body.transferTo(OutputStream.nullOutputStream());
+            return result;
+        } finally {
+            ZatcaTransports.notify(observers, endpoint, statusCode, requestBytes, body.count());
+        }
+    }
+
+    /**
+     * The headers of an error response, which are only read to build the exception.
+     */
+    private static HttpHeaders headers(HttpStatusCode statusCode, HttpResponse<?> response) {
+        if (statusCode.is2xxSuccessful()) {
+            return HttpHeaders.EMPTY;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        return headers;
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Hands the body written by the calling thread to the client a chunk at a time as it asks for them, so that
+     * the body is neither held in memory nor written by another thread.
+     */
+    private static final class StreamingBodyPublisher implements HttpRequest.BodyPublisher {
+        private static final int CHUNK_SIZE = 16 * 1024;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean stopped;
+        private long count;
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            lock.lock();
+            try {
+                if (this.subscriber != null || stopped) {
+                    subscriber.onSubscribe(new Subscription());
+                    subscriber.onError(new IllegalStateException("A streamed invoice can only be sent once"));
+                    return;
+                }
+                this.subscriber = subscriber;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            subscriber.onSubscribe(new Subscription());
+        }
+
+        void write(BodyWriter writer) throws IOException {
+            ChunkOutputStream outputStream = new ChunkOutputStream();
+            try {
+                writer.writeTo(outputStream);
+                outputStream.close();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            awaitSubscriber();
+            subscriber.onComplete();
+        }
+
+        long count() {
+            return count;
+        }
+
+        void abort() {
+            lock.lock();
+            try {
+                stopped = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void emit(ByteBuffer chunk) throws IOException {
+            lock.lock();
+            try {
+                while (!stopped && (subscriber == null || demand == 0)) {
+                    changed.await();
+                }
+                if (stopped) {
+                    throw new IOException("The request was closed before its body was written");
+                }
+                demand--;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the request body");
+            } finally {
+                lock.unlock();
+            }
+            count += chunk.remaining();
+            subscriber.onNext(chunk);
+        }
+
+        private void awaitSubscriber() throws IOException {
+            lock.lock();
+            try {
+                while (!stopped && subscriber == null) {
+                    changed.await();
+                }
+                if (subscriber == null) {
+                    throw new IOException("The request was closed before its body was written");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the request body");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void fail(Exception e) {
+            Flow.Subscriber<? super ByteBuffer> failed;
+            lock.lock();
+            try {
+                failed = stopped ? null : subscriber;
+                stopped = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (failed != null) {
+                failed.onError(e);
+            }
+        }
+
+        private final class Subscription implements Flow.Subscription {
+
+            @Override
+            public void request(long n) {
+                lock.lock();
+                try {
+                    demand = n <= 0 || demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                abort();
+            }
+        }
+
+        private final class ChunkOutputStream extends OutputStream {
+            private byte[] chunk = new byte[CHUNK_SIZE];
+            private int position;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (position == chunk.length) {
+                    flushChunk();
+                }
+                chunk[position++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (position == chunk.length) {
+                        flushChunk();
+                    }
+                    int n = Math.min(len, chunk.length - position);
+                    System.arraycopy(b, off, chunk, position, n);
+                    position += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (position > 0) {
+                    flushChunk();
+                }
+            }
+
+            /**
+             * The client may still hold a chunk once it has been handed over, so every chunk gets its own array.
+             */
+            private void flushChunk() throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, position);
+                chunk = new byte[CHUNK_SIZE];
+                position = 0;
+                emit(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Generates EC key pairs on a background thread ahead of time, so that onboarding a batch of EGS units does
+ * not wait for key generation. When the pool runs dry a key pair is generated by the caller. The generator is
+ * created on first use, so that a curve missing from the installed providers fails onboarding rather than
+ * startup: ZATCA uses secp256k1, which the JDK no longer provides.
+ */
+class KeyPairPool implements DisposableBean {
+    private final String curve;
+    private final String provider;
+    private final BlockingQueue<KeyPair> keyPairs;
+    private Thread generator;
+    private volatile boolean closed;
+
+    KeyPairPool(String curve, String provider, int size) {
+        this.curve = curve;
+        this.provider = provider == null || provider.isEmpty() ? null : provider;
+        this.keyPairs = size > 0 ? new ArrayBlockingQueue<>(size) : null;
+    }
+
+    KeyPair take() {
+        startGenerator();
+        KeyPair keyPair = keyPairs == null ? null : keyPairs.poll();
+        return keyPair != null ? keyPair : generate();
+    }
+
+    private synchronized void startGenerator() {
+        if (keyPairs == null || generator != null || closed) {
+            return;
+        }
+        generate();
+        generator = new Thread(() -> {
+            try {
+                while (!closed) {
+                    keyPairs.put(generate());
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }, "zatca-key-pairs");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
+    private KeyPair generate() {
+        try {
+            KeyPairGenerator keyPairGenerator = provider == null ? KeyPairGenerator.getInstance("EC")
+                    : KeyPairGenerator.getInstance("EC", provider);
+            keyPairGenerator.initialize(new ECGenParameterSpec(curve));
+            return keyPairGenerator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot generate " + curve + " key pairs"
+                    + (provider == null ? ", set zatca.onboarding.key-provider to a provider supporting it" : " with " + provider), e);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        closed = true;
+        if (generator != null) {
+            generator.interrupt();
+        }
+    }
+}
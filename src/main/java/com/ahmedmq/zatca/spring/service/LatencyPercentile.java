@@ -0,0 +1,45 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a percentile of the latencies of the most recent calls. Samples are kept in a ring and the estimate
+ * is only recomputed every {@code RECOMPUTE_INTERVAL} samples, so that recording a call stays cheap. There is
+ * no estimate until {@code minSamples} calls were recorded.
+ */
+final class LatencyPercentile {
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final double percentile;
+    private final int minSamples;
+    private final long[] samples;
+    private int count;
+    private int next;
+    private int sinceEstimate;
+    private volatile long estimate = -1;
+
+    LatencyPercentile(double percentile, int minSamples, int maxSamples) {
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.samples = new long[maxSamples];
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (count >= minSamples && (estimate < 0 || ++sinceEstimate >= RECOMPUTE_INTERVAL)) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            estimate = sorted[Math.max(0, (int) Math.ceil(percentile / 100 * count) - 1)];
+            sinceEstimate = 0;
+        }
+    }
+
+    /**
+     * Returns the estimated percentile in nanoseconds, or {@code -1} if too few calls were recorded.
+     */
+    long estimate() {
+        return estimate;
+    }
+}
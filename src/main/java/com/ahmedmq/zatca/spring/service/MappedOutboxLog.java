@@ -0,0 +1,451 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append-only log of the entries of the {@link ZatcaOutbox}, kept in memory-mapped segment files named after
+ * the sequence number of their first entry. Each entry is framed by its length and a CRC32C checksum, so that the
+ * torn tail a crash may leave is recognised and discarded when the log is opened. Appends are made durable by
+ * group commit: forcing the log to disk covers every entry appended before it started, so that threads appending
+ * concurrently share one force rather than queueing for one each. The sequence number of the next entry to
+ * deliver is kept in a checkpoint file, and segments left with acknowledged entries only are deleted.
+ * <p>
+ * Entries are appended from any thread, while they are read and {@link #acknowledge(long) acknowledged} from a
+ * single one. Entries past the first one not acknowledged can be read ahead, keeping only where they are in memory
+ * until they are read again, but are acknowledged in order.
+ */
+final class MappedOutboxLog implements Closeable {
+    private static final int FRAME = 8;
+    private static final int FIXED_PAYLOAD = 8 + 4 * 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final MappedByteBuffer checkpoint;
+
+    // guarded by this
+    private Segment head;
+    private Segment active;
+    private long nextSequence;
+    private boolean closed;
+
+    // guarded by flushLock
+    private final Object flushLock = new Object();
+    private Segment flushedSegment;
+    private int flushedPosition;
+
+    private volatile long durableSequence;
+    private volatile long acknowledgedSequence;
+
+    // confined to the reading thread: where the entries read are is kept in peeked[peekedFirst..], the first of
+    // them being the first entry not acknowledged
+    private Segment readSegment;
+    private int readPosition;
+    private final ArrayList<Peeked> peeked = new ArrayList<>();
+    private int peekedFirst;
+    private long readAheadSequence;
+
+    private MappedOutboxLog(Path directory, int segmentSize, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        this.checkpoint = map(directory.resolve("checkpoint"), Long.BYTES);
+    }
+
+    /**
+     * Opens the log kept in the directory, recovering the entries appended before it was last closed or before
+     * the application died, and positions it at the first entry not acknowledged.
+     */
+    static MappedOutboxLog open(Path directory, long segmentSize, boolean fsync) throws IOException {
+        if (segmentSize < FRAME + FIXED_PAYLOAD || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The outbox segment size must be between " + (FRAME + FIXED_PAYLOAD)
+                    + " bytes and 2GB, not " + segmentSize);
+        }
+        MappedOutboxLog log = new MappedOutboxLog(directory, (int) segmentSize, fsync);
+        log.recover();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted().toList();
+        }
+        long sequence = checkpoint.getLong(0);
+        Segment previous = null;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long first = Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10);
+            if (previous != null && first != sequence) {
+                throw new IllegalStateException("Outbox segment " + file + " does not follow entry " + (sequence - 1));
+            }
+            Segment segment = new Segment(file, first, map(file, Math.max(segmentSize, Files.size(file))));
+            sequence = first;
+            for (int length; (length = frameLength(segment.buffer, segment.position, sequence)) > 0; sequence++) {
+                segment.position += length;
+            }
+            if (previous == null) {
+                head = segment;
+            } else {
+                previous.next = segment;
+            }
+            previous = segment;
+        }
+        if (previous == null) {
+            head = new Segment(segmentFile(sequence), sequence, map(segmentFile(sequence), segmentSize));
+            previous = head;
+        } else {
+            // entries past a torn one were never acknowledged to their callers and must not come back once
+            // overwritten by shorter ones
+            zero(previous.buffer, previous.position);
+        }
+        active = previous;
+        nextSequence = sequence;
+        durableSequence = sequence;
+        flushedSegment = active;
+        flushedPosition = active.position;
+
+        long acknowledged = Math.min(Math.max(checkpoint.getLong(0), head.firstSequence), nextSequence);
+        readSegment = head;
+        while (readSegment.next != null && readSegment.next.firstSequence <= acknowledged) {
+            readSegment = readSegment.next;
+        }
+        for (long skipped = readSegment.firstSequence; skipped < acknowledged; skipped++) {
+            readPosition += frameLength(readSegment.buffer, readPosition, skipped);
+        }
+        acknowledgedSequence = acknowledged;
+        compact();
+    }
+
+    /**
+     * Appends an entry, returning its sequence number once it is durable.
+     */
+    long append(String egsUnit, InvoiceRequest invoiceRequest) {
+        byte[][] fields = {utf8(egsUnit), utf8(invoiceRequest.invoiceHash()), utf8(invoiceRequest.uuid()),
+                utf8(invoiceRequest.invoice())};
+        int length = FIXED_PAYLOAD;
+        for (byte[] field : fields) {
+            length += field.length;
+        }
+        if (FRAME + length > segmentSize) {
+            throw new IllegalArgumentException("The invoice takes " + (FRAME + length)
+                    + " bytes, more than an outbox segment of " + segmentSize + " bytes");
+        }
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The outbox is closed");
+            }
+            Segment segment = active;
+            if (segment.position + FRAME + length > segment.buffer.capacity()) {
+                segment = roll();
+            }
+            sequence = nextSequence;
+            write(segment.buffer, segment.position, sequence, fields, length);
+            segment.position += FRAME + length;
+            nextSequence = sequence + 1;
+            if (!fsync) {
+                durableSequence = nextSequence;
+            }
+        }
+        if (fsync) {
+            flush(sequence);
+        }
+        return sequence;
+    }
+
+    private Segment roll() {
+        if (fsync) {
+            active.buffer.force();
+        }
+        Path file = segmentFile(nextSequence);
+        try {
+            Segment segment = new Segment(file, nextSequence, map(file, segmentSize));
+            active.next = segment;
+            active = segment;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create outbox segment " + file, e);
+        }
+    }
+
+    /**
+     * Forces the log to disk unless an earlier force already covered the entry, covering along with it every
+     * entry appended until then.
+     */
+    private void flush(long sequence) {
+        synchronized (flushLock) {
+            if (sequence < durableSequence) {
+                return;
+            }
+            Segment segment;
+            int position;
+            long upTo;
+            synchronized (this) {
+                segment = active;
+                position = segment.position;
+                upTo = nextSequence;
+            }
+            int from = segment == flushedSegment ? flushedPosition : 0;
+            segment.buffer.force(from, position - from);
+            flushedSegment = segment;
+            flushedPosition = position;
+            durableSequence = upTo;
+        }
+    }
+
+    /**
+     * Returns the first entry not acknowledged, or {@code null} when every durable entry was.
+     */
+    OutboxEntry peek() {
+        List<OutboxEntry> entries = peek(1);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * Returns up to {@code max} durable entries from the first one not acknowledged, in order.
+     */
+    List<OutboxEntry> peek(int max) {
+        while (peekedCount() < max) {
+            if (readNext() == null) {
+                break;
+            }
+        }
+        List<OutboxEntry> entries = new ArrayList<>(Math.min(max, peekedCount()));
+        for (int index = peekedFirst; index < peeked.size() && entries.size() < max; index++) {
+            entries.add(entry(peeked.get(index)));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns up to {@code max} durable entries past the ones it returned so far, in order.
+     */
+    List<OutboxEntry> readAhead(int max) {
+        List<OutboxEntry> entries = new ArrayList<>();
+        while (entries.size() < max) {
+            long index = Math.max(readAheadSequence, acknowledgedSequence) - acknowledgedSequence;
+            Peeked next = index < peekedCount() ? peeked.get(peekedFirst + (int) index) : readNext();
+            if (next == null) {
+                break;
+            }
+            entries.add(entry(next));
+            readAheadSequence = next.sequence + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Reads again an entry not acknowledged that was already read.
+     */
+    OutboxEntry read(long sequence) {
+        long index = sequence - acknowledgedSequence;
+        if (index < 0 || index >= peekedCount()) {
+            throw new IllegalArgumentException("Entry " + sequence + " was not read yet");
+        }
+        return entry(peeked.get(peekedFirst + (int) index));
+    }
+
+    private int peekedCount() {
+        return peeked.size() - peekedFirst;
+    }
+
+    private Peeked readNext() {
+        long sequence = acknowledgedSequence + peekedCount();
+        if (sequence >= durableSequence) {
+            return null;
+        }
+        Peeked last = peekedCount() == 0 ? null : peeked.get(peeked.size() - 1);
+        Segment segment = last == null ? readSegment : last.segment;
+        int position = last == null ? readPosition : last.position + last.length;
+        int length = frameLength(segment.buffer, position, sequence);
+        if (length < 0 && segment.next != null) {
+            segment = segment.next;
+            position = 0;
+            length = frameLength(segment.buffer, position, sequence);
+        }
+        if (length < 0) {
+            throw new IllegalStateException("Corrupt outbox entry " + sequence + " in " + segment.file);
+        }
+        Peeked next = new Peeked(sequence, segment, position, length);
+        peeked.add(next);
+        return next;
+    }
+
+    private static OutboxEntry entry(Peeked peeked) {
+        ByteBuffer buffer = peeked.segment.buffer.duplicate().position(peeked.position + FRAME + Long.BYTES);
+        return new OutboxEntry(peeked.sequence, string(buffer),
+                new InvoiceRequest(string(buffer), string(buffer), string(buffer)));
+    }
+
+    /**
+     * Acknowledges the first entry not acknowledged, once read, so that it is not delivered again.
+     */
+    void acknowledge(long sequence) {
+        if (peekedCount() == 0 || peeked.get(peekedFirst).sequence != sequence) {
+            throw new IllegalArgumentException("Entry " + sequence + " is not the head of the outbox");
+        }
+        Peeked first = peeked.get(peekedFirst++);
+        if (peekedFirst > peeked.size() / 2) {
+            peeked.subList(0, peekedFirst).clear();
+            peekedFirst = 0;
+        }
+        readSegment = first.segment;
+        readPosition = first.position + first.length;
+        checkpoint.putLong(0, sequence + 1);
+        if (fsync) {
+            checkpoint.force();
+        }
+        acknowledgedSequence = sequence + 1;
+        compact();
+    }
+
+    /**
+     * Returns the sequence number of the first entry not acknowledged.
+     */
+    long head() {
+        return acknowledgedSequence;
+    }
+
+    long pending() {
+        return durableSequence - acknowledgedSequence;
+    }
+
+    /**
+     * Deletes the segments before the one being read. A segment that cannot be deleted is left for the next
+     * acknowledgement to try again.
+     */
+    private synchronized void compact() {
+        while (head != readSegment) {
+            try {
+                Files.deleteIfExists(head.file);
+            } catch (IOException e) {
+                return;
+            }
+            head = head.next;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        active.buffer.force();
+        checkpoint.force();
+    }
+
+    private Path segmentFile(long firstSequence) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE, CREATE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static void write(MappedByteBuffer buffer, int position, long sequence, byte[][] fields, int length) {
+        int offset = position + FRAME;
+        buffer.putLong(offset, sequence);
+        offset += Long.BYTES;
+        for (byte[] field : fields) {
+            buffer.putInt(offset, field.length);
+            buffer.put(offset + Integer.BYTES, field);
+            offset += Integer.BYTES + field.length;
+        }
+        buffer.putInt(position + Integer.BYTES, checksum(buffer, position + FRAME, length));
+        buffer.putInt(position, length);
+    }
+
+    /**
+     * Returns the length of the frame at the position when it holds the entry with the sequence number, intact,
+     * and -1 otherwise.
+     */
+    private static int frameLength(MappedByteBuffer buffer, int position, long sequence) {
+        if (position + FRAME + FIXED_PAYLOAD > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(position);
+        if (length < FIXED_PAYLOAD || length > buffer.capacity() - position - FRAME
+                || buffer.getLong(position + FRAME) != sequence
+                || buffer.getInt(position + Integer.BYTES) != checksum(buffer, position + FRAME, length)) {
+            return -1;
+        }
+        return FRAME + length;
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Zeroes the segment from the position to its last byte written, leaving the pages never written to alone.
+     */
+    private static void zero(MappedByteBuffer buffer, int position) {
+        int end = buffer.capacity();
+        while (end > position && buffer.get(end - 1) == 0) {
+            end--;
+        }
+        if (end == position) {
+            return;
+        }
+        byte[] zeros = new byte[8192];
+        for (int offset = position; offset < end; offset += zeros.length) {
+            buffer.put(offset, zeros, 0, Math.min(zeros.length, end - offset));
+        }
+        buffer.force(position, end - position);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private record Peeked(long sequence, Segment segment, int position, int length) {
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long firstSequence;
+        final MappedByteBuffer buffer;
+        int position;
+        volatile Segment next;
+
+        Segment(Path file, long firstSequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * The outcome of onboarding a single EGS unit as part of a batch, holding the state it reached and the
+ * exception that stopped it, if any.
+ */
+public record OnboardingOutcome(EgsDevice device,
+                                OnboardingState state,
+                                RuntimeException error) {
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+
+/**
+ * How far the onboarding of an EGS unit got, saved after every step so that it resumes from there.
+ *
+ * @param completedStep          the last step completed, {@code null} before the compliance CSID was issued
+ * @param csr                    the CSR sent for the compliance CSID
+ * @param complianceCsid         the compliance CSID, once issued
+ * @param complianceChecksPassed number of sample invoices that passed the compliance checks
+ * @param productionCsid         the production CSID, once issued
+ */
+public record OnboardingState(String egsUnit,
+                              OnboardingStep completedStep,
+                              String csr,
+                              CSIDResponse complianceCsid,
+                              int complianceChecksPassed,
+                              CSIDResponse productionCsid) {
+
+    public boolean isCompleted() {
+        return completedStep == OnboardingStep.PRODUCTION_CSID;
+    }
+
+    boolean hasCompleted(OnboardingStep step) {
+        return completedStep != null && completedStep.compareTo(step) >= 0;
+    }
+}
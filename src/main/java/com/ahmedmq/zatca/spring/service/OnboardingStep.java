@@ -0,0 +1,10 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * The steps onboarding an EGS unit goes through, in order.
+ */
+public enum OnboardingStep {
+    COMPLIANCE_CSID,
+    COMPLIANCE_CHECKS,
+    PRODUCTION_CSID
+}
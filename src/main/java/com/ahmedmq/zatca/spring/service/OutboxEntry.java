@@ -0,0 +1,11 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+
+/**
+ * An invoice of the {@link ZatcaOutbox} with the sequence number it was enqueued with.
+ */
+public record OutboxEntry(long sequence,
+                          String egsUnit,
+                          InvoiceRequest invoiceRequest) {
+}
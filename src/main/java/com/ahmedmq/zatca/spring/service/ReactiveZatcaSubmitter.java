@@ -0,0 +1,52 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * Submits streams of invoices through {@link AsyncZatcaService}. Invoices are only requested from upstream
+ * as downstream demand allows, at most {@code maxInFlight} of them await the gateway at a time, and
+ * outcomes are emitted in the order of the invoices. A failed submission is emitted as a failed
+ * {@link SubmissionOutcome} rather than terminating the stream. Submissions go through the
+ * {@link ZatcaReactiveCallInterceptor}s and duplicate suppression of the {@link AsyncZatcaService}, so that a
+ * stream is paced by the rate limit like any other calls, without a thread waiting on each invoice in flight.
+ */
+public class ReactiveZatcaSubmitter {
+    private final AsyncZatcaService asyncZatcaService;
+    private final int maxInFlight;
+
+    public ReactiveZatcaSubmitter(AsyncZatcaService asyncZatcaService, int maxInFlight) {
+        this.asyncZatcaService = asyncZatcaService;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Flux<SubmissionOutcome<InvoiceResult>> reportInvoices(String certificate,
+                                                                 String secret,
+                                                                 Publisher<InvoiceRequest> invoiceRequests) {
+        return submit(invoiceRequests, invoiceRequest ->
+                asyncZatcaService.reportInvoice(certificate, secret, invoiceRequest));
+    }
+
+    public Flux<SubmissionOutcome<ClearedInvoiceResult>> clearInvoices(String certificate,
+                                                                       String secret,
+                                                                       Publisher<InvoiceRequest> invoiceRequests) {
+        return submit(invoiceRequests, invoiceRequest ->
+                asyncZatcaService.clearedInvoice(certificate, secret, invoiceRequest));
+    }
+
+    private <T> Flux<SubmissionOutcome<T>> submit(Publisher<InvoiceRequest> invoiceRequests,
+                                                  Function<InvoiceRequest, Mono<T>> submission) {
+        return Flux.from(invoiceRequests)
+                .flatMapSequential(invoiceRequest -> submission.apply(invoiceRequest)
+                                .map(result -> SubmissionOutcome.success(invoiceRequest, result))
+                                .onErrorResume(RuntimeException.class,
+                                        e -> Mono.just(SubmissionOutcome.failure(invoiceRequest, e))),
+                        maxInFlight, 1);
+    }
+}
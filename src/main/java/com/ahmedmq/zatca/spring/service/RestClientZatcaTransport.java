@@ -0,0 +1,66 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Calls the gateway with a {@link RestClient} sharing the request factory, message converters, base URL and error
+ * handling of the {@link RestTemplate} it is created from.
+ */
+final class RestClientZatcaTransport implements ZatcaTransport {
+    private final RestClient restClient;
+    private final ResponseErrorHandler errorHandler;
+    private final ObjectMapper objectMapper;
+
+    RestClientZatcaTransport(RestTemplate restTemplate) {
+        this.restClient = RestClient.create(restTemplate);
+        this.errorHandler = restTemplate.getErrorHandler();
+        this.objectMapper = ZatcaTransports.objectMapper(restTemplate.getMessageConverters());
+    }
+
+    @Override
+    public <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+        return request(endpoint, headers, body).retrieve().body(responseType);
+    }
+
+    @Override
+    public InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice) {
+        return request(endpoint, headers, body).exchange((request, response) -> {
+            if (errorHandler.hasError(response)) {
+                errorHandler.handleError(request.getURI(), request.getMethod(), response);
+            }
+            return ClearedInvoiceReader.extract(objectMapper, response.getBody(), clearedInvoice);
+        });
+    }
+
+    /**
+     * A streamed invoice is handed to the request as its body rather than written through
+     * {@link RestClient.RequestBodySpec#body(Object)}, which would buffer it.
+     */
+    private RestClient.RequestBodySpec request(ZatcaEndpoint endpoint, HttpHeaders headers, Object body) {
+        RestClient.RequestBodySpec request = restClient.method(endpoint.method())
+                .uri(endpoint.path())
+                .headers(httpHeaders -> httpHeaders.addAll(headers))
+                .accept(MediaType.APPLICATION_JSON);
+        if (body instanceof StreamingInvoiceRequest invoiceRequest) {
+            return request.httpRequest(clientRequest -> {
+                try {
+                    ZatcaTransports.writeStreamingBody(clientRequest, objectMapper, invoiceRequest);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return request.body(body);
+    }
+}
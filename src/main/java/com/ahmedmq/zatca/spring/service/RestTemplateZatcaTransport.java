@@ -0,0 +1,63 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Calls the gateway with a {@link RestTemplate}, the transport used unless another one is configured.
+ */
+final class RestTemplateZatcaTransport implements ZatcaTransport {
+    private final RestTemplate restTemplate;
+    private volatile ObjectMapper objectMapper;
+
+    RestTemplateZatcaTransport(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+        if (body instanceof StreamingInvoiceRequest invoiceRequest) {
+            return restTemplate.execute(endpoint.path(), endpoint.method(), streamingRequest(headers, invoiceRequest),
+                    new HttpMessageConverterExtractor<>(responseType, restTemplate.getMessageConverters()));
+        }
+        HttpEntity<Object> request = new HttpEntity<>(body, headers);
+        return endpoint.method() == HttpMethod.PATCH
+                ? restTemplate.patchForObject(endpoint.path(), request, responseType)
+                : restTemplate.postForObject(endpoint.path(), request, responseType);
+    }
+
+    @Override
+    public InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice) {
+        RequestCallback request = body instanceof StreamingInvoiceRequest invoiceRequest
+                ? streamingRequest(headers, invoiceRequest)
+                : restTemplate.httpEntityCallback(new HttpEntity<>(body, headers), InvoiceResult.class);
+        return restTemplate.execute(endpoint.path(), endpoint.method(), request, response ->
+                ClearedInvoiceReader.extract(objectMapper(), response.getBody(), clearedInvoice));
+    }
+
+    private RequestCallback streamingRequest(HttpHeaders headers, StreamingInvoiceRequest invoiceRequest) {
+        return clientRequest -> {
+            clientRequest.getHeaders().putAll(headers);
+            ZatcaTransports.writeStreamingBody(clientRequest, objectMapper(), invoiceRequest);
+        };
+    }
+
+    /**
+     * The object mapper of the {@code RestTemplate}, so that streamed requests are written with the same
+     * configuration as the others.
+     */
+    private ObjectMapper objectMapper() {
+        if (objectMapper == null) {
+            objectMapper = ZatcaTransports.objectMapper(restTemplate.getMessageConverters());
+        }
+        return objectMapper;
+    }
+}
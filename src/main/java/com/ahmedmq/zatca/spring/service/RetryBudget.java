@@ -0,0 +1,69 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries to a fraction of the calls seen over a sliding window, plus a small fixed allowance per second
+ * so that low traffic can still be retried. Counts are kept in one second buckets so that recording a call
+ * does not contend on a single counter.
+ */
+final class RetryBudget {
+    private static final long BUCKET_NANOS = 1_000_000_000L;
+
+    private final double ratio;
+    private final long minRetries;
+    private final Bucket[] buckets;
+
+    RetryBudget(double ratio, int minRetriesPerSecond, Duration window) {
+        int seconds = (int) Math.max(1, window.toSeconds());
+        this.ratio = ratio;
+        this.minRetries = (long) minRetriesPerSecond * seconds;
+        this.buckets = new Bucket[seconds];
+        for (int i = 0; i < seconds; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    void recordCall() {
+        current().calls.incrementAndGet();
+    }
+
+    boolean tryAcquireRetry() {
+        long epoch = System.nanoTime() / BUCKET_NANOS;
+        long calls = 0;
+        long retries = 0;
+        for (Bucket bucket : buckets) {
+            if (epoch - bucket.epoch < buckets.length) {
+                calls += bucket.calls.get();
+                retries += bucket.retries.get();
+            }
+        }
+        if (retries >= minRetries + (long) (calls * ratio)) {
+            return false;
+        }
+        current().retries.incrementAndGet();
+        return true;
+    }
+
+    private Bucket current() {
+        long epoch = System.nanoTime() / BUCKET_NANOS;
+        Bucket bucket = buckets[(int) (epoch % buckets.length)];
+        if (bucket.epoch != epoch) {
+            synchronized (bucket) {
+                if (bucket.epoch != epoch) {
+                    bucket.calls.set(0);
+                    bucket.retries.set(0);
+                    bucket.epoch = epoch;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static final class Bucket {
+        private volatile long epoch = Long.MIN_VALUE;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+    }
+}
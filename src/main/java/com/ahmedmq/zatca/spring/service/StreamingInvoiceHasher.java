@@ -0,0 +1,482 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceSource;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Canonicalizes and hashes an invoice in a single pass over a StAX reader, without building a DOM. The
+ * canonical bytes are encoded straight into a {@link MessageDigest} kept per thread, except for an
+ * {@code AdditionalDocumentReference}, which is held back until its ID tells whether it is the QR code.
+ * <p>
+ * The elements removed are those matched by the stylesheet ZATCA publishes for the invoice hash, and the
+ * output follows C14N 1.1 without comments for a whole document.
+ * <p>
+ * A batch is split into as many slices as the parallelism, hashed on the executor, rather than on the common
+ * pool that the application shares.
+ */
+class StreamingInvoiceHasher implements InvoiceHasher {
+    static final String CBC_NAMESPACE = "urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2";
+
+    private final ThreadLocal<Canonicalizer> canonicalizers = ThreadLocal.withInitial(Canonicalizer::new);
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * A hasher hashing batches on the calling thread.
+     */
+    StreamingInvoiceHasher() {
+        this(Runnable::run, 1);
+    }
+
+    StreamingInvoiceHasher(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String hash(InvoiceSource invoice) {
+        return hash(invoice, Listener.NONE);
+    }
+
+    /**
+     * Hashes the invoice while passing every element and text event, including those of the removed
+     * elements, to the listener, so that other checks can share the single pass over the XML.
+     */
+    String hash(InvoiceSource invoice, Listener listener) {
+        try (InputStream invoiceXml = invoice.openStream()) {
+            return Base64.getEncoder().encodeToString(canonicalizers.get().digest(invoiceXml, listener));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invoice is not well-formed XML", e);
+        }
+    }
+
+    @Override
+    public List<String> hashAll(List<? extends InvoiceSource> invoices) {
+        int slices = Math.min(parallelism, invoices.size());
+        if (slices <= 1) {
+            return invoices.stream().map(this::hash).toList();
+        }
+        List<CompletableFuture<List<String>>> hashed = new ArrayList<>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            List<? extends InvoiceSource> batch = invoices.subList(invoices.size() * slice / slices,
+                    invoices.size() * (slice + 1) / slices);
+            hashed.add(CompletableFuture.supplyAsync(() -> batch.stream().map(this::hash).toList(), executor));
+        }
+        List<String> hashes = new ArrayList<>(invoices.size());
+        for (CompletableFuture<List<String>> batch : hashed) {
+            try {
+                hashes.addAll(batch.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return List.copyOf(hashes);
+    }
+
+    interface Listener {
+        Listener NONE = new Listener() {
+        };
+
+        default void startElement(XMLStreamReader reader, int depth) {
+        }
+
+        default void text(XMLStreamReader reader, int depth) {
+        }
+
+        default void endElement(XMLStreamReader reader, int depth) {
+        }
+    }
+
+    private static final class Canonicalizer {
+        private final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        private final MessageDigest messageDigest;
+        private final StringBuilder id = new StringBuilder();
+
+        private byte[] buffer = new byte[8192];
+        private int count;
+        private boolean capturing;
+        private char highSurrogate;
+
+        private String[] localNames = new String[16];
+        private int[] namespaceMarks = new int[16];
+        private String[] namespacePrefixes = new String[16];
+        private String[] namespaceUris = new String[16];
+        private int namespaceCount;
+        private int[] attributeOrder = new int[8];
+
+        Canonicalizer() {
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] digest(InputStream invoiceXml, Listener listener) throws XMLStreamException {
+            messageDigest.reset();
+            count = 0;
+            capturing = false;
+            highSurrogate = 0;
+            namespaceCount = 0;
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(invoiceXml);
+            try {
+                canonicalize(reader, listener);
+            } finally {
+                reader.close();
+            }
+            flush();
+            return messageDigest.digest();
+        }
+
+        private void canonicalize(XMLStreamReader reader, Listener listener) throws XMLStreamException {
+            int depth = 0;
+            int skipDepth = 0;
+            int captureDepth = 0;
+            int idDepth = 0;
+            int invoices = 0;
+            boolean qrCode = false;
+            boolean afterRoot = false;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        depth++;
+                        listener.startElement(reader, depth);
+                        if (skipDepth != 0) {
+                            break;
+                        }
+                        String localName = reader.getLocalName();
+                        if (invoices > 0 && (localName.equals("UBLExtensions")
+                                || localName.equals("Signature") && "Invoice".equals(localNames[depth - 1]))) {
+                            skipDepth = depth;
+                            break;
+                        }
+                        if (captureDepth == 0 && localName.equals("AdditionalDocumentReference")) {
+                            startCapture();
+                            captureDepth = depth;
+                            qrCode = false;
+                        } else if (captureDepth != 0 && depth == captureDepth + 1 && localName.equals("ID")
+                                && CBC_NAMESPACE.equals(reader.getNamespaceURI())) {
+                            idDepth = depth;
+                            id.setLength(0);
+                        }
+                        if (localName.equals("Invoice")) {
+                            invoices++;
+                        }
+                        startElement(reader, depth, localName);
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        listener.endElement(reader, depth);
+                        if (skipDepth != 0) {
+                            if (depth == skipDepth) {
+                                skipDepth = 0;
+                            }
+                        } else {
+                            endElement(reader, depth);
+                            if (depth == idDepth) {
+                                qrCode |= isQrCode(id);
+                                idDepth = 0;
+                            }
+                            if (depth == captureDepth) {
+                                endCapture(qrCode);
+                                captureDepth = 0;
+                            }
+                            if (localNames[depth].equals("Invoice")) {
+                                invoices--;
+                            }
+                        }
+                        depth--;
+                        afterRoot = depth == 0;
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (depth > 0) {
+                            listener.text(reader, depth);
+                        }
+                        if (skipDepth == 0 && depth > 0) {
+                            text(reader);
+                            if (depth == idDepth) {
+                                id.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            }
+                        }
+                    }
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        if (skipDepth == 0) {
+                            processingInstruction(reader, depth == 0 && !afterRoot, depth == 0 && afterRoot);
+                        }
+                    }
+                    default -> {
+                        // comments are omitted, the document type and entity declarations are not part of the output
+                    }
+                }
+            }
+        }
+
+        private void startElement(XMLStreamReader reader, int depth, String localName) {
+            if (depth == localNames.length) {
+                localNames = Arrays.copyOf(localNames, depth * 2);
+                namespaceMarks = Arrays.copyOf(namespaceMarks, depth * 2);
+            }
+            localNames[depth] = localName;
+            namespaceMarks[depth] = namespaceCount;
+            write('<');
+            writeName(reader.getPrefix(), localName);
+
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = nonNull(reader.getNamespacePrefix(i));
+                String uri = nonNull(reader.getNamespaceURI(i));
+                if (!uri.equals(namespaceUri(prefix))) {
+                    pushNamespace(prefix, uri);
+                }
+            }
+            sortNamespaces(namespaceMarks[depth]);
+            for (int i = namespaceMarks[depth]; i < namespaceCount; i++) {
+                write(namespacePrefixes[i].isEmpty() ? " xmlns" : " xmlns:");
+                write(namespacePrefixes[i]);
+                write("=\"");
+                attributeValue(namespaceUris[i]);
+                write('"');
+            }
+
+            int attributes = reader.getAttributeCount();
+            sortAttributes(reader, attributes);
+            for (int i = 0; i < attributes; i++) {
+                int attribute = attributeOrder[i];
+                write(' ');
+                writeName(reader.getAttributePrefix(attribute), reader.getAttributeLocalName(attribute));
+                write("=\"");
+                attributeValue(reader.getAttributeValue(attribute));
+                write('"');
+            }
+            write('>');
+        }
+
+        private void endElement(XMLStreamReader reader, int depth) {
+            write("</");
+            writeName(reader.getPrefix(), localNames[depth]);
+            write('>');
+            namespaceCount = namespaceMarks[depth];
+        }
+
+        private void processingInstruction(XMLStreamReader reader, boolean beforeRoot, boolean afterRoot) {
+            if (afterRoot) {
+                write('\n');
+            }
+            write("<?");
+            write(reader.getPITarget());
+            String data = reader.getPIData();
+            if (data != null && !data.isEmpty()) {
+                write(' ');
+                write(data);
+            }
+            write("?>");
+            if (beforeRoot) {
+                write('\n');
+            }
+        }
+
+        private String namespaceUri(String prefix) {
+            for (int i = namespaceCount - 1; i >= 0; i--) {
+                if (namespacePrefixes[i].equals(prefix)) {
+                    return namespaceUris[i];
+                }
+            }
+            return prefix.isEmpty() ? "" : null;
+        }
+
+        private void pushNamespace(String prefix, String uri) {
+            if (namespaceCount == namespacePrefixes.length) {
+                namespacePrefixes = Arrays.copyOf(namespacePrefixes, namespaceCount * 2);
+                namespaceUris = Arrays.copyOf(namespaceUris, namespaceCount * 2);
+            }
+            namespacePrefixes[namespaceCount] = prefix;
+            namespaceUris[namespaceCount] = uri;
+            namespaceCount++;
+        }
+
+        /**
+         * Namespace declarations are ordered by prefix, the default namespace first.
+         */
+        private void sortNamespaces(int from) {
+            for (int i = from + 1; i < namespaceCount; i++) {
+                String prefix = namespacePrefixes[i];
+                String uri = namespaceUris[i];
+                int j = i - 1;
+                while (j >= from && namespacePrefixes[j].compareTo(prefix) > 0) {
+                    namespacePrefixes[j + 1] = namespacePrefixes[j];
+                    namespaceUris[j + 1] = namespaceUris[j];
+                    j--;
+                }
+                namespacePrefixes[j + 1] = prefix;
+                namespaceUris[j + 1] = uri;
+            }
+        }
+
+        /**
+         * Attributes are ordered by namespace URI, those without a namespace first, then by local name.
+         */
+        private void sortAttributes(XMLStreamReader reader, int attributes) {
+            if (attributes > attributeOrder.length) {
+                attributeOrder = new int[attributes * 2];
+            }
+            for (int i = 0; i < attributes; i++) {
+                int attribute = i;
+                int j = i - 1;
+                while (j >= 0 && compareAttributes(reader, attributeOrder[j], attribute) > 0) {
+                    attributeOrder[j + 1] = attributeOrder[j];
+                    j--;
+                }
+                attributeOrder[j + 1] = attribute;
+            }
+        }
+
+        private static int compareAttributes(XMLStreamReader reader, int left, int right) {
+            int byNamespace = nonNull(reader.getAttributeNamespace(left)).compareTo(nonNull(reader.getAttributeNamespace(right)));
+            return byNamespace != 0 ? byNamespace
+                    : reader.getAttributeLocalName(left).compareTo(reader.getAttributeLocalName(right));
+        }
+
+        private void writeName(String prefix, String localName) {
+            if (prefix != null && !prefix.isEmpty()) {
+                write(prefix);
+                write(':');
+            }
+            write(localName);
+        }
+
+        private void text(XMLStreamReader reader) {
+            char[] characters = reader.getTextCharacters();
+            int end = reader.getTextStart() + reader.getTextLength();
+            for (int i = reader.getTextStart(); i < end; i++) {
+                char c = characters[i];
+                switch (c) {
+                    case '&' -> write("&amp;");
+                    case '<' -> write("&lt;");
+                    case '>' -> write("&gt;");
+                    case '\r' -> write("&#xD;");
+                    default -> write(c);
+                }
+            }
+        }
+
+        private void attributeValue(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&' -> write("&amp;");
+                    case '<' -> write("&lt;");
+                    case '"' -> write("&quot;");
+                    case '\t' -> write("&#x9;");
+                    case '\n' -> write("&#xA;");
+                    case '\r' -> write("&#xD;");
+                    default -> write(c);
+                }
+            }
+        }
+
+        private void write(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                write(s.charAt(i));
+            }
+        }
+
+        /**
+         * Encodes the character as UTF-8, pairing surrogates that may arrive in separate text events.
+         */
+        private void write(char c) {
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | c >> 6);
+                put(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+                int codePoint = Character.toCodePoint(highSurrogate, c);
+                highSurrogate = 0;
+                put(0xF0 | codePoint >> 18);
+                put(0x80 | codePoint >> 12 & 0x3F);
+                put(0x80 | codePoint >> 6 & 0x3F);
+                put(0x80 | codePoint & 0x3F);
+            } else {
+                put(0xE0 | c >> 12);
+                put(0x80 | c >> 6 & 0x3F);
+                put(0x80 | c & 0x3F);
+            }
+        }
+
+        private void put(int b) {
+            if (count == buffer.length) {
+                if (capturing) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                } else {
+                    flush();
+                }
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        private void flush() {
+            messageDigest.update(buffer, 0, count);
+            count = 0;
+        }
+
+        /**
+         * Holds back the bytes written from now on, growing the buffer rather than digesting it when full.
+         */
+        private void startCapture() {
+            flush();
+            capturing = true;
+        }
+
+        private void endCapture(boolean discard) {
+            if (discard) {
+                count = 0;
+            }
+            capturing = false;
+        }
+
+        /**
+         * Whether the ID is {@code QR} once leading and trailing whitespace is dropped, as {@code normalize-space}
+         * does in the stylesheet.
+         */
+        private static boolean isQrCode(CharSequence id) {
+            int start = 0;
+            int end = id.length();
+            while (start < end && isWhitespace(id.charAt(start))) {
+                start++;
+            }
+            while (end > start && isWhitespace(id.charAt(end - 1))) {
+                end--;
+            }
+            return end - start == 2 && id.charAt(start) == 'Q' && id.charAt(start + 1) == 'R';
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+        }
+
+        private static String nonNull(String s) {
+            return s != null ? s : "";
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+
+/**
+ * The outcome of submitting a single invoice as part of a batch or stream, holding either the
+ * gateway result or the exception raised for it.
+ */
+public record SubmissionOutcome<T>(InvoiceRequest invoiceRequest,
+                                   T result,
+                                   RuntimeException error) {
+
+    public static <T> SubmissionOutcome<T> success(InvoiceRequest invoiceRequest, T result) {
+        return new SubmissionOutcome<>(invoiceRequest, result, null);
+    }
+
+    public static <T> SubmissionOutcome<T> failure(InvoiceRequest invoiceRequest, RuntimeException error) {
+        return new SubmissionOutcome<>(invoiceRequest, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.Warning;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * What the gateway said about an invoice submitted to an endpoint, as recorded by the
+ * {@link ZatcaSubmissionLedger}. The status is {@code null} when no result was returned, in which case the
+ * failure describes the error status or the I/O error the call failed with.
+ */
+public record SubmissionRecord(String uuid,
+                               String invoiceHash,
+                               ZatcaEndpoint endpoint,
+                               String status,
+                               List<Warning> warnings,
+                               List<Error> errors,
+                               String failure,
+                               Instant submittedAt,
+                               Duration duration) {
+}
@@ -0,0 +1,59 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces the calls to a single endpoint to a steady rate, letting up to {@code burst} calls through at once after
+ * an idle period. A call that finds the bucket empty reserves the next token ahead of time and waits for it, so
+ * callers are served in the order they arrived.
+ */
+final class TokenBucket {
+    private final double permitsPerSecond;
+    private final double permitsPerNano;
+    private final int burst;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token and returns how long to wait before it may be used, or {@code -1} without taking it if that
+     * is longer than {@code maxWaitNanos}.
+     */
+    synchronized long reserve(long maxWaitNanos) {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+        long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Gives back a token reserved for a call that was not made after all.
+     */
+    synchronized void refund() {
+        tokens = Math.min(burst, tokens + 1);
+    }
+
+    double permitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    AtomicInteger waiting() {
+        return waiting;
+    }
+}
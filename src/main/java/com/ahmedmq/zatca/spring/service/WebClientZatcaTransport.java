@@ -0,0 +1,151 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.ahmedmq.zatca.spring.service.ZatcaObservedClientHttpRequestFactory.CountingInputStream;
+import com.ahmedmq.zatca.spring.service.ZatcaObservedClientHttpRequestFactory.CountingOutputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Calls the gateway with a {@link WebClient} over the reactive connection pool, blocking the calling thread until
+ * the response has arrived. The body is then read on the calling thread as its buffers arrive, a few at a time, so
+ * that the cleared invoice of a sink is written out rather than held in memory. A streamed invoice is written on the executor as the connection
+ * asks for it. The exchange is reported to the {@link ZatcaExchangeObserver}s here, as there is no request factory
+ * to observe.
+ */
+final class WebClientZatcaTransport implements ZatcaTransport {
+    private static final int PREFETCH = 4;
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final ZatcaProperties.Errors errors;
+    private final List<ZatcaExchangeObserver> observers;
+    private final Executor executor;
+
+    WebClientZatcaTransport(WebClient webClient, ObjectMapper objectMapper, ZatcaProperties.Errors errors,
+                            List<ZatcaExchangeObserver> observers, Executor executor) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.errors = errors;
+        this.observers = List.copyOf(observers);
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+        return exchange(endpoint, headers, body, (statusCode, responseHeaders, response) ->
+                ZatcaTransports.read(endpoint, statusCode, responseHeaders, response, objectMapper, errors, responseType));
+    }
+
+    @Override
+    public InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice) {
+        return exchange(endpoint, headers, body, (statusCode, responseHeaders, response) ->
+                ZatcaTransports.read(endpoint, statusCode, responseHeaders, response, objectMapper, errors, clearedInvoice));
+    }
+
+    private <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body,
+                           ZatcaTransports.ResponseReader<T> reader) {
+        AtomicLong requestBytes = new AtomicLong();
+        WebClient.RequestBodySpec request = webClient.method(endpoint.method())
+                .uri(endpoint.path())
+                .headers(httpHeaders -> httpHeaders.addAll(headers))
+                .accept(MediaType.APPLICATION_JSON);
+        try {
+            WebClient.RequestHeadersSpec<?> exchange;
+            if (body instanceof StreamingInvoiceRequest invoiceRequest) {
+                exchange = request.body(BodyInserters.fromDataBuffers(DataBufferUtils.outputStreamPublisher(
+                        outputStream -> write(new CountingOutputStream(outputStream), invoiceRequest, requestBytes),
+                        DefaultDataBufferFactory.sharedInstance, executor)));
+            } else {
+                byte[] json = objectMapper.writeValueAsBytes(body);
+                requestBytes.set(json.length);
+                exchange = request.bodyValue(json);
+            }
+            ResponseEntity<Flux<DataBuffer>> response = exchange.retrieve()
+                    .onStatus(statusCode -> true, clientResponse -> Mono.empty())
+                    .toEntityFlux(DataBuffer.class)
+                    .block();
+            return read(endpoint, response, requestBytes.get(), reader);
+        } catch (WebClientRequestException e) {
+            throw ZatcaTransports.ioError(endpoint, e.getUri().toString(),
+                    e.getCause() instanceof IOException cause ? cause : new IOException(e.getMostSpecificCause()));
+        } catch (IOException e) {
+            throw ZatcaTransports.ioError(endpoint, endpoint.path(), e);
+        }
+    }
+
+    /**
+     * Reads the response to its end so that the connection can be reused, then reports the exchange.
+     */
+    private <T> T read(ZatcaEndpoint endpoint, ResponseEntity<Flux<DataBuffer>> response, long requestBytes,
+                       ZatcaTransports.ResponseReader<T> reader) throws IOException {
+        try (Stream<DataBuffer> buffers = response.getBody()
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .toStream(PREFETCH)) {
+            CountingInputStream body = new CountingInputStream(inputStream(buffers.iterator()));
+            try (body) {
+                T result = reader.read(response.getStatusCode(), response.getHeaders(), StreamUtils.nonClosing(body));
+                body.transferTo(OutputStream.nullOutputStream());
+                return result;
+            } finally {
+                ZatcaTransports.notify(observers, endpoint, response.getStatusCode(), requestBytes, body.count());
+            }
+        }
+    }
+
+    /**
+     * Reads the buffers one after the other, releasing each once read.
+     */
+    private static InputStream inputStream(Iterator<DataBuffer> buffers) {
+        return new SequenceInputStream(new Enumeration<>() {
+
+            @Override
+            public boolean hasMoreElements() {
+                return buffers.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return buffers.next().asInputStream(true);
+            }
+        });
+    }
+
+    private void write(CountingOutputStream outputStream, StreamingInvoiceRequest invoiceRequest,
+                       AtomicLong requestBytes) {
+        try {
+            objectMapper.writeValue(outputStream, invoiceRequest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            requestBytes.set(outputStream.count());
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates the {@link WebClientZatcaTransport}s of the tenants. They share the reactive connection pool, which
+ * keeps a separate set of connections per host; a tenant with HTTP settings of its own keeps its timeouts.
+ */
+final class WebClientZatcaTransports {
+    private final WebClient.Builder builder;
+    private final ConnectionProvider connectionProvider;
+    private final ObjectMapper objectMapper;
+    private final ZatcaProperties.Errors errors;
+    private final List<ZatcaExchangeObserver> observers;
+    private final Executor executor;
+
+    WebClientZatcaTransports(WebClient.Builder builder, ConnectionProvider connectionProvider,
+                             ObjectMapper objectMapper, ZatcaProperties.Errors errors,
+                             List<ZatcaExchangeObserver> observers, Executor executor) {
+        this.builder = builder;
+        this.connectionProvider = connectionProvider;
+        this.objectMapper = objectMapper;
+        this.errors = errors;
+        this.observers = List.copyOf(observers);
+        this.executor = executor;
+    }
+
+    ZatcaTransport create(String baseUrl, ZatcaProperties.Http http) {
+        WebClient webClient = builder.clone()
+                .baseUrl(baseUrl)
+                .clientConnector(ZatcaClientHttpConnectors.create(http, connectionProvider))
+                .build();
+        return new WebClientZatcaTransport(webClient, objectMapper, errors, observers, executor);
+    }
+}
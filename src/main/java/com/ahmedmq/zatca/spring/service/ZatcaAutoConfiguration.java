@@ -1,22 +1,399 @@
 package com.ahmedmq.zatca.spring.service;
 
 import com.ahmedmq.zatca.ZatcaProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @AutoConfiguration
 @EnableConfigurationProperties(ZatcaProperties.class)
 public class ZatcaAutoConfiguration {
 
     @Bean
-    public ZatcaService zatcaService(RestTemplateBuilder builder, ZatcaProperties zatcaProperties) {
-        RestTemplate restTemplate = builder
-                .rootUri(zatcaProperties.baseUrl())
-                .errorHandler(new ZatcaClientErrorHandler()).build();
+    @ConditionalOnMissingBean(name = "zatcaClientHttpRequestFactory")
+    public ClientHttpRequestFactory zatcaClientHttpRequestFactory(ZatcaProperties zatcaProperties) {
+        return ZatcaClientHttpRequestFactories.create(zatcaProperties.http());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.retry", name = "enabled", havingValue = "true")
+    ZatcaRetryInterceptor zatcaRetryInterceptor(ZatcaProperties zatcaProperties) {
+        return new ZatcaRetryInterceptor(zatcaProperties.retry());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.circuit-breaker", name = "enabled", havingValue = "true")
+    ZatcaCircuitBreakerInterceptor zatcaCircuitBreakerInterceptor(ZatcaProperties zatcaProperties,
+                                                                  ApplicationEventPublisher eventPublisher) {
+        return new ZatcaCircuitBreakerInterceptor(zatcaProperties.circuitBreaker(), eventPublisher);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.hedging", name = "enabled", havingValue = "true")
+    ZatcaHedgingInterceptor zatcaHedgingInterceptor(ZatcaProperties zatcaProperties,
+                                                    ObjectProvider<ZatcaObservationInterceptor> observationInterceptor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("zatca-hedging-");
+        executor.setDaemon(true);
+        executor.setCorePoolSize(0);
+        executor.setMaxPoolSize(zatcaProperties.hedging().maxConcurrency());
+        executor.setQueueCapacity(0);
+        observationInterceptor.ifAvailable(interceptor -> executor.setTaskDecorator(interceptor::inCurrentObservation));
+        executor.initialize();
+        return new ZatcaHedgingInterceptor(zatcaProperties.hedging(), executor);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.rate-limit", name = "enabled", havingValue = "true")
+    ZatcaRateLimitInterceptor zatcaRateLimitInterceptor(ZatcaProperties zatcaProperties) {
+        return new ZatcaRateLimitInterceptor(zatcaProperties.rateLimit());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.preflight", name = "enabled", havingValue = "true")
+    ZatcaPreflightInterceptor zatcaPreflightInterceptor() {
+        return new ZatcaPreflightInterceptor(new StreamingInvoiceHasher());
+    }
+
+    @Bean
+    ZatcaTenantRequestFactories zatcaTenantRequestFactories(ZatcaProperties zatcaProperties) {
+        return new ZatcaTenantRequestFactories(zatcaProperties.tenants(), zatcaProperties.transport());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.ledger", name = "enabled", havingValue = "true")
+    FileSubmissionLedger zatcaSubmissionLedger(ZatcaProperties zatcaProperties) {
+        ZatcaProperties.Ledger ledger = zatcaProperties.ledger();
+        try {
+            return FileSubmissionLedger.open(ledger.directory(), ledger.segmentSize().toBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the submission ledger in " + ledger.directory(), e);
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.ledger", name = "enabled", havingValue = "true")
+    ZatcaLedgerInterceptor zatcaLedgerInterceptor(FileSubmissionLedger submissionLedger) {
+        return new ZatcaLedgerInterceptor(submissionLedger, Clock.systemUTC());
+    }
+
+    @Bean
+    public ZatcaCredentialRegistry zatcaCredentialRegistry(ZatcaProperties zatcaProperties) {
+        Map<String, ZatcaProperties.Tenant> tenants = zatcaProperties.tenants();
+        return new DefaultZatcaCredentialRegistry(tenants == null ? Set.of() : tenants.keySet(),
+                zatcaProperties.apiVersion());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.renewal", name = "enabled", havingValue = "true")
+    @ConditionalOnBean(ZatcaCsidRenewalSource.class)
+    ZatcaCsidRenewalManager zatcaCsidRenewalManager(ZatcaService zatcaService,
+                                                    ZatcaCredentialRegistry credentialRegistry,
+                                                    ZatcaCsidRenewalSource renewalSource,
+                                                    ZatcaProperties zatcaProperties,
+                                                    ApplicationEventPublisher eventPublisher) {
+        return new ZatcaCsidRenewalManager(zatcaService, (DefaultZatcaCredentialRegistry) credentialRegistry,
+                renewalSource, zatcaProperties.renewal(), eventPublisher, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ZatcaTransportFactory zatcaTransportFactory(RestTemplateBuilder builder,
+                                                       ZatcaProperties zatcaProperties,
+                                                       ObjectProvider<ZatcaExchangeObserver> exchangeObservers,
+                                                       ObjectProvider<ObjectMapper> objectMapper,
+                                                       ObjectProvider<WebClientZatcaTransports> webClientTransports) {
+        List<ZatcaExchangeObserver> observers = exchangeObservers.orderedStream().toList();
+        return switch (zatcaProperties.transport()) {
+            case REST_TEMPLATE -> (baseUrl, http, requestFactory) -> new RestTemplateZatcaTransport(
+                    restTemplate(builder, zatcaProperties, baseUrl, requestFactory, observers));
+            case REST_CLIENT -> (baseUrl, http, requestFactory) -> new RestClientZatcaTransport(
+                    restTemplate(builder, zatcaProperties, baseUrl, requestFactory, observers));
+            case WEB_CLIENT -> {
+                WebClientZatcaTransports transports = webClientTransports.getIfAvailable();
+                if (transports == null) {
+                    throw new IllegalStateException("The web-client transport needs spring-webflux and reactor-netty");
+                }
+                yield (baseUrl, http, requestFactory) -> transports.create(baseUrl, http);
+            }
+            case JDK -> {
+                ObjectMapper mapper = objectMapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build());
+                Map<ZatcaProperties.Http, HttpClient> httpClients = new ConcurrentHashMap<>();
+                yield (baseUrl, http, requestFactory) -> new JdkZatcaTransport(
+                        httpClients.computeIfAbsent(http, ZatcaClientHttpRequestFactories::httpClient), baseUrl,
+                        http.readTimeout(), mapper, zatcaProperties.errors(), observers);
+            }
+        };
+    }
+
+    @Bean
+    public ZatcaService zatcaService(ZatcaTransportFactory transportFactory,
+                                     ZatcaProperties zatcaProperties,
+                                     @Qualifier("zatcaClientHttpRequestFactory") ClientHttpRequestFactory requestFactory,
+                                     ObjectProvider<ZatcaCallInterceptor> interceptors,
+                                     ZatcaTenantRequestFactories tenantRequestFactories,
+                                     ZatcaCredentialRegistry credentialRegistry,
+                                     ObjectProvider<ZatcaSubmissionDeduplicator> deduplicator) {
+        List<ZatcaCallInterceptor> orderedInterceptors = interceptors.orderedStream().toList();
+        ZatcaSubmissionDeduplicator submissionDeduplicator = deduplicator.getIfAvailable();
+
+        DefaultZatcaService zatcaService = new DefaultZatcaService(transportFactory.create(zatcaProperties.baseUrl(),
+                zatcaProperties.http(), requestFactory), zatcaProperties);
+        zatcaService.setInterceptors(orderedInterceptors);
+        zatcaService.setDeduplicator(submissionDeduplicator);
+
+        Map<String, DefaultZatcaService> tenants = new HashMap<>();
+        if (zatcaProperties.tenants() != null) {
+            zatcaProperties.tenants().forEach((name, tenant) -> {
+                ClientHttpRequestFactory tenantRequestFactory = tenantRequestFactories.get(name);
+                DefaultZatcaService tenantService = new DefaultZatcaService(transportFactory.create(
+                        tenant.baseUrl() == null ? zatcaProperties.baseUrl() : tenant.baseUrl(),
+                        tenant.http() == null ? zatcaProperties.http() : tenant.http(),
+                        tenantRequestFactory == null ? requestFactory : tenantRequestFactory), zatcaProperties);
+                tenantService.setInterceptors(ZatcaTenantScopedInterceptor.forTenant(orderedInterceptors, name));
+                tenantService.setDeduplicator(submissionDeduplicator);
+                tenants.put(name, tenantService);
+            });
+        }
+        zatcaService.setTenants(tenants);
+        if (credentialRegistry instanceof DefaultZatcaCredentialRegistry registry) {
+            zatcaService.setCredentialRegistry(registry);
+        }
+        return zatcaService;
+    }
+
+    private static RestTemplate restTemplate(RestTemplateBuilder builder, ZatcaProperties zatcaProperties,
+                                             String baseUrl, ClientHttpRequestFactory requestFactory,
+                                             List<ZatcaExchangeObserver> observers) {
+        ClientHttpRequestFactory observedRequestFactory = observers.isEmpty() ? requestFactory
+                : new ZatcaObservedClientHttpRequestFactory(requestFactory, observers);
+        return builder
+                .rootUri(baseUrl)
+                .requestFactory(() -> observedRequestFactory)
+                .errorHandler(new ZatcaClientErrorHandler(zatcaProperties.errors())).build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public InvoiceHasher invoiceHasher() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-hash-");
+        executor.setConcurrencyLimit(parallelism);
+        executor.setDaemon(true);
+        return new StreamingInvoiceHasher(executor, parallelism);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.chain", name = "directory")
+    @ConditionalOnMissingBean
+    public InvoiceChainStore invoiceChainStore(ZatcaProperties zatcaProperties) {
+        return new FileInvoiceChainStore(zatcaProperties.chain().directory(), zatcaProperties.chain().fsync());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(InvoiceChainStore.class)
+    public InvoiceChain invoiceChain(InvoiceHasher invoiceHasher, InvoiceChainStore invoiceChainStore) {
+        return new DefaultInvoiceChain(invoiceHasher, invoiceChainStore);
+    }
+
+    @Bean
+    public ZatcaBulkReporter zatcaBulkReporter(ZatcaService zatcaService, ZatcaProperties zatcaProperties) {
+        return new ZatcaBulkReporter(zatcaService, bulkTaskExecutor(zatcaProperties.bulk()));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(ZatcaOnboardingSupport.class)
+    public ZatcaOnboardingStore zatcaOnboardingStore(ZatcaProperties zatcaProperties) {
+        return new FileOnboardingStore(zatcaProperties.onboarding().directory());
+    }
+
+    @Bean
+    @ConditionalOnBean(ZatcaOnboardingSupport.class)
+    KeyPairPool zatcaKeyPairPool(ZatcaProperties zatcaProperties) {
+        ZatcaProperties.Onboarding onboarding = zatcaProperties.onboarding();
+        return new KeyPairPool(onboarding.keyCurve(), onboarding.keyProvider(), onboarding.keyPoolSize());
+    }
+
+    @Bean
+    @ConditionalOnBean(ZatcaOnboardingSupport.class)
+    public ZatcaOnboarding zatcaOnboarding(ZatcaService zatcaService, ZatcaCredentialRegistry credentialRegistry,
+                                           ZatcaOnboardingSupport onboardingSupport,
+                                           ZatcaOnboardingStore onboardingStore, KeyPairPool keyPairPool,
+                                           ZatcaProperties zatcaProperties) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-onboarding-");
+        executor.setConcurrencyLimit(zatcaProperties.onboarding().concurrency());
+        ZatcaOnboarding onboarding = new ZatcaOnboarding(zatcaService, credentialRegistry, onboardingSupport,
+                onboardingStore, keyPairPool, executor);
+        onboarding.registerOnboardedUnits();
+        return onboarding;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.outbox", name = "enabled", havingValue = "true")
+    DefaultZatcaOutbox zatcaOutbox(ZatcaService zatcaService, ZatcaProperties zatcaProperties,
+                                   ApplicationEventPublisher eventPublisher) {
+        ZatcaProperties.Outbox outbox = zatcaProperties.outbox();
+        try {
+            return new DefaultZatcaOutbox(MappedOutboxLog.open(outbox.directory(), outbox.segmentSize().toBytes(),
+                    outbox.fsync()), zatcaService, outbox.retryInterval(), outbox.concurrency(), outbox.maxAttempts(),
+                    outboxTaskExecutor(outbox), eventPublisher);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the outbox in " + outbox.directory(), e);
+        }
+    }
+
+    private static SimpleAsyncTaskExecutor outboxTaskExecutor(ZatcaProperties.Outbox outbox) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-outbox-");
+        executor.setConcurrencyLimit(outbox.concurrency());
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    private static SimpleAsyncTaskExecutor bulkTaskExecutor(ZatcaProperties.Bulk bulk) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-bulk-");
+        if (bulk.virtualThreads()) {
+            try {
+                executor.setVirtualThreads(true);
+            } catch (UnsupportedOperationException e) {
+                // virtual threads need JDK 21, fall back to platform threads
+            }
+        }
+        executor.setConcurrencyLimit(bulk.concurrency());
+        return executor;
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(prefix = "zatca.deduplication", name = "enabled", havingValue = "true")
+    static class DeduplicationConfiguration {
+
+        @Bean
+        @ConditionalOnProperty(prefix = "zatca.deduplication", name = "directory")
+        @ConditionalOnMissingBean
+        ZatcaDeduplicationStore zatcaDeduplicationStore(ZatcaProperties zatcaProperties) {
+            ZatcaProperties.Deduplication deduplication = zatcaProperties.deduplication();
+            SimpleAsyncTaskExecutor writer = new SimpleAsyncTaskExecutor("zatca-deduplication-");
+            writer.setDaemon(true);
+            return new FileDeduplicationStore(deduplication.directory(), deduplication.ttl(),
+                    deduplication.maxEntries(), Clock.systemUTC(), writer);
+        }
+
+        @Bean
+        ZatcaSubmissionDeduplicator zatcaSubmissionDeduplicator(ZatcaProperties zatcaProperties,
+                                                                ObjectProvider<ZatcaDeduplicationStore> store) {
+            ZatcaProperties.Deduplication deduplication = zatcaProperties.deduplication();
+            return new ZatcaSubmissionDeduplicator(deduplication.ttl(), deduplication.maxEntries(),
+                    store.getIfAvailable(), Clock.systemUTC());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass({WebClient.class, ConnectionProvider.class})
+    static class AsyncZatcaServiceConfiguration {
+
+        @Bean(destroyMethod = "dispose")
+        @ConditionalOnMissingBean(name = "zatcaConnectionProvider")
+        ConnectionProvider zatcaConnectionProvider(ZatcaProperties zatcaProperties) {
+            return ZatcaClientHttpConnectors.connectionProvider(zatcaProperties.http());
+        }
+
+        @Bean
+        WebClientZatcaTransports zatcaWebClientTransports(ObjectProvider<WebClient.Builder> builder,
+                                                          ZatcaProperties zatcaProperties,
+                                                          @Qualifier("zatcaConnectionProvider") ConnectionProvider connectionProvider,
+                                                          ObjectProvider<ObjectMapper> objectMapper,
+                                                          ObjectProvider<ZatcaExchangeObserver> exchangeObservers) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-web-client-");
+            executor.setDaemon(true);
+            return new WebClientZatcaTransports(builder.getIfAvailable(WebClient::builder), connectionProvider,
+                    objectMapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build()),
+                    zatcaProperties.errors(), exchangeObservers.orderedStream().toList(), executor);
+        }
+
+        /**
+         * Calls go through the reactive counterparts of the interceptors and the duplicate suppression without
+         * blocking. Interceptors without one are left out, unless the blocking fallback is enabled, in which case
+         * every call is made through {@code ZatcaService} instead, blocking on the reactive connection pool.
+         */
+        @Bean
+        public AsyncZatcaService asyncZatcaService(ObjectProvider<WebClient.Builder> builder,
+                                                   ZatcaProperties zatcaProperties,
+                                                   @Qualifier("zatcaConnectionProvider") ConnectionProvider connectionProvider,
+                                                   WebClientZatcaTransports webClientTransports,
+                                                   ObjectProvider<ObjectMapper> objectMapper,
+                                                   ObjectProvider<ZatcaExchangeObserver> exchangeObservers,
+                                                   ObjectProvider<ZatcaCallInterceptor> interceptors,
+                                                   ObjectProvider<ZatcaReactiveCallInterceptor> reactiveInterceptors,
+                                                   ObjectProvider<ZatcaSubmissionDeduplicator> deduplicator) {
+            WebClient webClient = builder.getIfAvailable(WebClient::builder)
+                    .baseUrl(zatcaProperties.baseUrl())
+                    .clientConnector(ZatcaClientHttpConnectors.create(zatcaProperties.http(), connectionProvider))
+                    .build();
+
+            DefaultAsyncZatcaService asyncZatcaService = new DefaultAsyncZatcaService(webClient,
+                    objectMapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build()), zatcaProperties,
+                    exchangeObservers.orderedStream().toList());
+            List<ZatcaCallInterceptor> orderedInterceptors = interceptors.orderedStream().toList();
+            List<ZatcaReactiveCallInterceptor> orderedReactiveInterceptors =
+                    new ArrayList<>(reactiveInterceptors.orderedStream().toList());
+            boolean blockingOnly = false;
+            for (ZatcaCallInterceptor interceptor : orderedInterceptors) {
+                if (interceptor instanceof ZatcaReactiveInterceptorSource source) {
+                    orderedReactiveInterceptors.add(source.reactive());
+                } else if (!(interceptor instanceof ZatcaReactiveCallInterceptor)) {
+                    blockingOnly = true;
+                }
+            }
+            AnnotationAwareOrderComparator.sort(orderedReactiveInterceptors);
+            ZatcaSubmissionDeduplicator submissionDeduplicator = deduplicator.getIfAvailable();
+            if (blockingOnly && zatcaProperties.async().blockingFallback()) {
+                DefaultZatcaService zatcaService = new DefaultZatcaService(
+                        webClientTransports.create(zatcaProperties.baseUrl(), zatcaProperties.http()), zatcaProperties);
+                zatcaService.setInterceptors(orderedInterceptors);
+                zatcaService.setDeduplicator(submissionDeduplicator);
+                asyncZatcaService.setZatcaService(zatcaService, Schedulers.boundedElastic());
+            } else {
+                asyncZatcaService.setInterceptors(orderedReactiveInterceptors);
+                asyncZatcaService.setDeduplicator(submissionDeduplicator);
+            }
+            return asyncZatcaService;
+        }
 
-        return new DefaultZatcaService(restTemplate, zatcaProperties);
+        @Bean
+        public ReactiveZatcaSubmitter reactiveZatcaSubmitter(AsyncZatcaService asyncZatcaService,
+                                                             ZatcaProperties zatcaProperties) {
+            return new ReactiveZatcaSubmitter(asyncZatcaService, zatcaProperties.stream().maxInFlight());
+        }
     }
 }
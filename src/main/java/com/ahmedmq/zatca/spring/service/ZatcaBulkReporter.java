@@ -0,0 +1,48 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Reports batches of simplified invoices concurrently. The executor bounds how many submissions are in
+ * flight, results are returned in the order of the given requests and a failed invoice never aborts the
+ * rest of the batch.
+ */
+public class ZatcaBulkReporter {
+    private final ZatcaService zatcaService;
+    private final Executor executor;
+
+    public ZatcaBulkReporter(ZatcaService zatcaService, Executor executor) {
+        this.zatcaService = zatcaService;
+        this.executor = executor;
+    }
+
+    public List<SubmissionOutcome<InvoiceResult>> reportInvoices(String certificate,
+                                                                 String secret,
+                                                                 Collection<InvoiceRequest> invoiceRequests) {
+        List<CompletableFuture<SubmissionOutcome<InvoiceResult>>> submissions = new ArrayList<>(invoiceRequests.size());
+        for (InvoiceRequest invoiceRequest : invoiceRequests) {
+            submissions.add(CompletableFuture.supplyAsync(() -> report(certificate, secret, invoiceRequest), executor));
+        }
+        List<SubmissionOutcome<InvoiceResult>> outcomes = new ArrayList<>(submissions.size());
+        for (CompletableFuture<SubmissionOutcome<InvoiceResult>> submission : submissions) {
+            outcomes.add(submission.join());
+        }
+        return outcomes;
+    }
+
+    private SubmissionOutcome<InvoiceResult> report(String certificate, String secret, InvoiceRequest invoiceRequest) {
+        try {
+            return SubmissionOutcome.success(invoiceRequest,
+                    zatcaService.reportInvoice(certificate, secret, invoiceRequest));
+        } catch (RuntimeException e) {
+            return SubmissionOutcome.failure(invoiceRequest, e);
+        }
+    }
+}
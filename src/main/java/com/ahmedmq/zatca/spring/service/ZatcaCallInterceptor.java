@@ -0,0 +1,13 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Intercepts calls made by {@link DefaultZatcaService} to the gateway. Interceptors are applied in their
+ * {@link org.springframework.core.Ordered order}, the lowest order being the outermost, and may invoke the
+ * execution any number of times.
+ */
+public interface ZatcaCallInterceptor {
+
+    <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution);
+}
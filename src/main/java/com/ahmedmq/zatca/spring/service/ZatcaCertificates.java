@@ -0,0 +1,33 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+
+final class ZatcaCertificates {
+
+    private ZatcaCertificates() {
+    }
+
+    /**
+     * Returns the expiry of a CSID as returned in {@code binarySecurityToken}, the base64 of the base64 DER of
+     * its certificate, also accepting the base64 DER itself, or {@code null} when it is not a certificate.
+     */
+    static Instant notAfter(String certificate) {
+        try {
+            byte[] der = Base64.getMimeDecoder().decode(certificate);
+            if (der.length > 0 && der[0] != 0x30) {
+                der = Base64.getMimeDecoder().decode(new String(der, StandardCharsets.US_ASCII));
+            }
+            X509Certificate x509 = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(der));
+            return x509.getNotAfter().toInstant();
+        } catch (IllegalArgumentException | CertificateException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A count based circuit breaker for a single endpoint. The outcomes of the last {@code slidingWindowSize}
+ * calls are kept in a ring and the breaker opens once the failure or slow call rate reaches its threshold.
+ * After {@code waitDurationInOpenState} a limited number of probe calls are let through and their outcome
+ * decides whether the breaker closes again, or it opens again once {@code maxWaitDurationInHalfOpenState} passed
+ * without a decision, so that a hung probe does not hold it half open. Transitions are reported to the listener
+ * outside of the lock.
+ */
+final class ZatcaCircuitBreaker {
+    private final ZatcaProperties.CircuitBreaker config;
+    private final LongSupplier nanoClock;
+    private final BiConsumer<CircuitBreakerState, CircuitBreakerState> transitionListener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean[] failed;
+    private final boolean[] slow;
+
+    private volatile CircuitBreakerState state = CircuitBreakerState.CLOSED;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private long halfOpenedAt;
+    private int probesPermitted;
+
+    ZatcaCircuitBreaker(ZatcaProperties.CircuitBreaker config, LongSupplier nanoClock,
+                        BiConsumer<CircuitBreakerState, CircuitBreakerState> transitionListener) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.transitionListener = transitionListener;
+        this.failed = new boolean[config.slidingWindowSize()];
+        this.slow = new boolean[config.slidingWindowSize()];
+    }
+
+    CircuitBreakerState state() {
+        return state;
+    }
+
+    boolean tryAcquirePermission() {
+        if (state == CircuitBreakerState.CLOSED) {
+            return true;
+        }
+        CircuitBreakerState previous = null;
+        CircuitBreakerState current;
+        boolean permitted;
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (state == CircuitBreakerState.OPEN && now - openedAt >= config.waitDurationInOpenState().toNanos()) {
+                halfOpenedAt = now;
+                previous = transitionTo(CircuitBreakerState.HALF_OPEN);
+            } else if (state == CircuitBreakerState.HALF_OPEN
+                    && now - halfOpenedAt >= config.maxWaitDurationInHalfOpenState().toNanos()) {
+                openedAt = now;
+                previous = transitionTo(CircuitBreakerState.OPEN);
+            }
+            current = state;
+            permitted = current == CircuitBreakerState.CLOSED || current == CircuitBreakerState.HALF_OPEN
+                    && probesPermitted < config.permittedNumberOfCallsInHalfOpenState();
+            if (permitted && current == CircuitBreakerState.HALF_OPEN) {
+                probesPermitted++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyTransition(previous, current);
+        return permitted;
+    }
+
+    /**
+     * Gives back a permission whose call ended without an outcome telling about the health of the endpoint, such as
+     * one refused by the rate limiter or cancelled, so that another probe may take its place.
+     */
+    void releasePermission() {
+        lock.lock();
+        try {
+            if (state == CircuitBreakerState.HALF_OPEN && probesPermitted > 0) {
+                probesPermitted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onResult(boolean failure, long durationNanos) {
+        CircuitBreakerState previous;
+        CircuitBreakerState current;
+        lock.lock();
+        try {
+            if (state == CircuitBreakerState.OPEN) {
+                return;
+            }
+            record(failure, durationNanos >= config.slowCallDurationThreshold().toNanos());
+            int minimumCalls = state == CircuitBreakerState.HALF_OPEN
+                    ? config.permittedNumberOfCallsInHalfOpenState()
+                    : config.minimumNumberOfCalls();
+            if (calls < minimumCalls) {
+                return;
+            }
+            if (failures * 100f / calls >= config.failureRateThreshold()
+                    || slowCalls * 100f / calls >= config.slowCallRateThreshold()) {
+                openedAt = nanoClock.getAsLong();
+                previous = transitionTo(CircuitBreakerState.OPEN);
+            } else if (state == CircuitBreakerState.HALF_OPEN) {
+                previous = transitionTo(CircuitBreakerState.CLOSED);
+            } else {
+                return;
+            }
+            current = state;
+        } finally {
+            lock.unlock();
+        }
+        notifyTransition(previous, current);
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private CircuitBreakerState transitionTo(CircuitBreakerState newState) {
+        CircuitBreakerState previous = state;
+        state = newState;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        probesPermitted = 0;
+        return previous;
+    }
+
+    private void notifyTransition(CircuitBreakerState previous, CircuitBreakerState current) {
+        if (previous != null && previous != current) {
+            transitionListener.accept(previous, current);
+        }
+    }
+}
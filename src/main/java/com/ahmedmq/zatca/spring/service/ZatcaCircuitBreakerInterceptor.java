@@ -0,0 +1,121 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Tracks a separate {@link ZatcaCircuitBreaker} per endpoint and fails fast with a
+ * {@link ZatcaCircuitOpenException} while it is open. Transient errors and slow calls count against the
+ * breaker, business rejections do not since they show a healthy gateway. Calls refused by the rate limiter or
+ * another open circuit, and cancelled calls, tell nothing about the gateway and give their permission back instead.
+ * State changes are published as {@link ZatcaCircuitBreakerStateChangedEvent}s. Each tenant has its own circuit
+ * breakers.
+ */
+class ZatcaCircuitBreakerInterceptor
+        implements ZatcaTenantScopedInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = 100;
+
+    private final Map<ZatcaEndpoint, ZatcaCircuitBreaker> circuitBreakers = new EnumMap<>(ZatcaEndpoint.class);
+    private final ConcurrentMap<String, ZatcaCircuitBreakerInterceptor> tenants = new ConcurrentHashMap<>();
+    private final ZatcaProperties.CircuitBreaker config;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LongSupplier nanoClock;
+
+    ZatcaCircuitBreakerInterceptor(ZatcaProperties.CircuitBreaker config, ApplicationEventPublisher eventPublisher) {
+        this(config, eventPublisher, System::nanoTime);
+    }
+
+    ZatcaCircuitBreakerInterceptor(ZatcaProperties.CircuitBreaker config, ApplicationEventPublisher eventPublisher,
+                                   LongSupplier nanoClock) {
+        this(ZatcaCredentialRegistry.DEFAULT_TENANT, config, eventPublisher, nanoClock);
+    }
+
+    private ZatcaCircuitBreakerInterceptor(String tenant, ZatcaProperties.CircuitBreaker config,
+                                           ApplicationEventPublisher eventPublisher, LongSupplier nanoClock) {
+        for (ZatcaEndpoint endpoint : ZatcaEndpoint.values()) {
+            circuitBreakers.put(endpoint, new ZatcaCircuitBreaker(config, nanoClock, (from, to) ->
+                    eventPublisher.publishEvent(new ZatcaCircuitBreakerStateChangedEvent(tenant, endpoint, from, to))));
+        }
+        this.config = config;
+        this.eventPublisher = eventPublisher;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public ZatcaCircuitBreakerInterceptor forTenant(String tenant) {
+        if (ZatcaCredentialRegistry.DEFAULT_TENANT.equals(tenant)) {
+            return this;
+        }
+        return tenants.computeIfAbsent(tenant,
+                name -> new ZatcaCircuitBreakerInterceptor(name, config, eventPublisher, nanoClock));
+    }
+
+    CircuitBreakerState state(ZatcaEndpoint endpoint) {
+        return circuitBreakers.get(endpoint).state();
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        ZatcaCircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ZatcaCircuitOpenException(endpoint);
+        }
+        long start = nanoClock.getAsLong();
+        try {
+            T result = execution.get();
+            circuitBreaker.onResult(false, nanoClock.getAsLong() - start);
+            return result;
+        } catch (RuntimeException e) {
+            onError(circuitBreaker, e, start);
+            throw e;
+        }
+    }
+
+    private void onError(ZatcaCircuitBreaker circuitBreaker, RuntimeException e, long start) {
+        if (e instanceof ZatcaRateLimitedException || e instanceof ZatcaCircuitOpenException) {
+            circuitBreaker.releasePermission();
+        } else {
+            circuitBreaker.onResult(ZatcaRetryInterceptor.isRetryable(e), nanoClock.getAsLong() - start);
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            ZatcaCircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new ZatcaCircuitOpenException(endpoint));
+            }
+            long start = nanoClock.getAsLong();
+            return execution
+                    .doOnSuccess(result -> circuitBreaker.onResult(false, nanoClock.getAsLong() - start))
+                    .doOnError(RuntimeException.class, e -> onError(circuitBreaker, e, start))
+                    .doOnCancel(circuitBreaker::releasePermission);
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * Published as an application event whenever the circuit breaker of an endpoint changes state. Each tenant has
+ * its own circuit breakers.
+ */
+public record ZatcaCircuitBreakerStateChangedEvent(String tenant,
+                                                   ZatcaEndpoint endpoint,
+                                                   CircuitBreakerState fromState,
+                                                   CircuitBreakerState toState) {
+
+    /**
+     * An event of the circuit breaker of the default tenant.
+     */
+    public ZatcaCircuitBreakerStateChangedEvent(ZatcaEndpoint endpoint, CircuitBreakerState fromState,
+                                                CircuitBreakerState toState) {
+        this(ZatcaCredentialRegistry.DEFAULT_TENANT, endpoint, fromState, toState);
+    }
+}
@@ -0,0 +1,20 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown without calling the gateway while the circuit breaker of an endpoint is open. It carries no
+ * stack trace so that failing fast stays cheap.
+ */
+public class ZatcaCircuitOpenException extends ZatcaClientApiException {
+    private final ZatcaEndpoint endpoint;
+
+    public ZatcaCircuitOpenException(ZatcaEndpoint endpoint) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Circuit Breaker Open", "", false);
+        this.endpoint = endpoint;
+    }
+
+    public ZatcaEndpoint getEndpoint() {
+        return endpoint;
+    }
+}
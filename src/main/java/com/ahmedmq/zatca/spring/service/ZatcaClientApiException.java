@@ -1,11 +1,21 @@
 package com.ahmedmq.zatca.spring.service;
 
+import com.ahmedmq.zatca.model.CertificatesErrorsResponse;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.Warning;
 import org.springframework.http.HttpStatusCode;
 
+import java.time.Duration;
+import java.util.List;
+
 public class ZatcaClientApiException extends RuntimeException{
     private final HttpStatusCode statusCode;
     private final String statusText;
     private final String responseBody;
+    private final transient Object errorResponse;
+    private final Duration retryAfter;
 
     public ZatcaClientApiException(
             HttpStatusCode statusCode,
@@ -16,6 +26,43 @@ public class ZatcaClientApiException extends RuntimeException{
         this.statusCode = statusCode;
         this.statusText = statusText;
         this.responseBody = responseBody;
+        this.errorResponse = null;
+        this.retryAfter = null;
+    }
+
+    protected ZatcaClientApiException(
+            HttpStatusCode statusCode,
+            String statusText,
+            String responseBody,
+            boolean writableStackTrace) {
+
+        this(statusCode, statusText, responseBody, null, writableStackTrace);
+    }
+
+    protected ZatcaClientApiException(
+            HttpStatusCode statusCode,
+            String statusText,
+            String responseBody,
+            Object errorResponse,
+            boolean writableStackTrace) {
+
+        this(statusCode, statusText, responseBody, errorResponse, null, writableStackTrace);
+    }
+
+    protected ZatcaClientApiException(
+            HttpStatusCode statusCode,
+            String statusText,
+            String responseBody,
+            Object errorResponse,
+            Duration retryAfter,
+            boolean writableStackTrace) {
+
+        super(null, null, false, writableStackTrace);
+        this.statusCode = statusCode;
+        this.statusText = statusText;
+        this.responseBody = responseBody;
+        this.errorResponse = errorResponse;
+        this.retryAfter = retryAfter;
     }
 
     public HttpStatusCode getStatusCode() {
@@ -29,4 +76,63 @@ public class ZatcaClientApiException extends RuntimeException{
     public String getResponseBody() {
         return responseBody;
     }
+
+    /**
+     * How long the gateway asked to wait before calling again in a {@code Retry-After} header, or {@code null}
+     * if the response had none.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * The rejection of a reporting or clearance call, or {@code null} if the response body was not one.
+     */
+    public InvoiceResult getInvoiceResult() {
+        return errorResponse instanceof InvoiceResult invoiceResult ? invoiceResult : null;
+    }
+
+    /**
+     * The rejection of a compliance check, or {@code null} if the response body was not one.
+     */
+    public InvoiceComplianceResponse getInvoiceComplianceResponse() {
+        return errorResponse instanceof InvoiceComplianceResponse complianceResponse ? complianceResponse : null;
+    }
+
+    /**
+     * The errors of a CSID call, or {@code null} if the response body was not one.
+     */
+    public CertificatesErrorsResponse getCertificatesErrorsResponse() {
+        return errorResponse instanceof CertificatesErrorsResponse errorsResponse ? errorsResponse : null;
+    }
+
+    /**
+     * The errors returned by the gateway, whichever the endpoint, or an empty list if the body held none.
+     */
+    public List<Error> getErrors() {
+        List<Error> errors = null;
+        if (errorResponse instanceof InvoiceResult invoiceResult) {
+            errors = invoiceResult.errors();
+        } else if (errorResponse instanceof CertificatesErrorsResponse errorsResponse) {
+            errors = errorsResponse.errors();
+        } else if (errorResponse instanceof InvoiceComplianceResponse complianceResponse
+                && complianceResponse.validationResults() != null) {
+            errors = complianceResponse.validationResults().errorMessages();
+        }
+        return errors != null ? errors : List.of();
+    }
+
+    /**
+     * The warnings returned by the gateway, whichever the endpoint, or an empty list if the body held none.
+     */
+    public List<Warning> getWarnings() {
+        List<Warning> warnings = null;
+        if (errorResponse instanceof InvoiceResult invoiceResult) {
+            warnings = invoiceResult.warnings();
+        } else if (errorResponse instanceof InvoiceComplianceResponse complianceResponse
+                && complianceResponse.validationResults() != null) {
+            warnings = complianceResponse.validationResults().warningMessages();
+        }
+        return warnings != null ? warnings : List.of();
+    }
 }
@@ -1,29 +1,42 @@
 package com.ahmedmq.zatca.spring.service;
 
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.ResponseErrorHandler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.stream.Collectors;
+import java.net.URI;
 
 class ZatcaClientErrorHandler implements ResponseErrorHandler {
+    private final ZatcaProperties.Errors errors;
+
+    ZatcaClientErrorHandler() {
+        this(new ZatcaProperties.Errors(DataSize.ofKilobytes(64), false));
+    }
+
+    ZatcaClientErrorHandler(ZatcaProperties.Errors errors) {
+        this.errors = errors;
+    }
+
     @Override
     public boolean hasError(ClientHttpResponse response) throws IOException {
         return !response.getStatusCode().is2xxSuccessful();
     }
 
+    @Override
+    public void handleError(URI url, HttpMethod method, ClientHttpResponse response) throws IOException {
+        handleError(ZatcaEndpoint.resolve(method, url.getPath()), response);
+    }
+
     @Override
     public void handleError(ClientHttpResponse response) throws IOException {
-        throw new ZatcaClientApiException(response.getStatusCode(),
-                response.getStatusText(),
-                getResponseBodyAsString(response));
+        handleError(null, response);
     }
 
-    private String getResponseBodyAsString(ClientHttpResponse response) throws IOException {
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(response.getBody()))) {
-            return bufferedReader.lines().collect(Collectors.joining("\n"));
-        }
+    private void handleError(ZatcaEndpoint endpoint, ClientHttpResponse response) throws IOException {
+        throw ZatcaErrorResponses.read(endpoint, response.getStatusCode(), response.getStatusText(),
+                response.getHeaders(), response.getBody(), errors);
     }
 }
@@ -0,0 +1,31 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import io.netty.channel.ChannelOption;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+final class ZatcaClientHttpConnectors {
+
+    private ZatcaClientHttpConnectors() {
+    }
+
+    static ConnectionProvider connectionProvider(ZatcaProperties.Http http) {
+        return ConnectionProvider.builder("zatca")
+                .maxConnections(http.maxConnectionsPerRoute())
+                .pendingAcquireMaxCount(-1)
+                .maxIdleTime(http.idleTimeout())
+                .maxLifeTime(http.connectionTimeToLive())
+                .evictInBackground(http.idleTimeout())
+                .build();
+    }
+
+    static ClientHttpConnector create(ZatcaProperties.Http http, ConnectionProvider connectionProvider) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.connectTimeout().toMillis())
+                .responseTimeout(http.readTimeout());
+        return new ReactorClientHttpConnector(httpClient);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+
+final class ZatcaClientHttpRequestFactories {
+
+    private ZatcaClientHttpRequestFactories() {
+    }
+
+    static ClientHttpRequestFactory create(ZatcaProperties.Http http) {
+        SSLContext sslContext = sslContext(http);
+        return http.http2() ? jdk(http, sslContext) : pooled(http, sslContext);
+    }
+
+    private static ClientHttpRequestFactory pooled(ZatcaProperties.Http http, SSLContext sslContext) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                        .setSslContext(sslContext)
+                        .build())
+                .setMaxConnTotal(http.maxConnections())
+                .setMaxConnPerRoute(http.maxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(http.connectTimeout().toMillis()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(http.readTimeout().toMillis()))
+                        .setTimeToLive(TimeValue.ofMilliseconds(http.connectionTimeToLive().toMillis()))
+                        .setValidateAfterInactivity(TimeValue.ofMilliseconds(http.validateAfterInactivity().toMillis()))
+                        .build())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(http.readTimeout().toMillis()))
+                        .build())
+                // the gateway calls are not idempotent, replaying one could submit an invoice or spend an OTP
+                // twice: stale connections are evicted and validated instead, and retries left to the service
+                .disableAutomaticRetries()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(http.idleTimeout().toMillis()))
+                .disableRedirectHandling()
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    private static ClientHttpRequestFactory jdk(ZatcaProperties.Http http, SSLContext sslContext) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient(http, sslContext));
+        requestFactory.setReadTimeout(http.readTimeout());
+        return requestFactory;
+    }
+
+    /**
+     * The JDK client negotiating HTTP/2, shared by the HTTP/2 request factory and the JDK transport.
+     */
+    static HttpClient httpClient(ZatcaProperties.Http http) {
+        return httpClient(http, sslContext(http));
+    }
+
+    private static HttpClient httpClient(ZatcaProperties.Http http, SSLContext sslContext) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(http.connectTimeout())
+                .sslContext(sslContext)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * A dedicated {@link SSLContext} so that the session cache used for TLS resumption can be sized for
+     * the gateway without touching the JVM wide default context.
+     */
+    private static SSLContext sslContext(ZatcaProperties.Http http) {
+        SSLContext sslContext = SSLContexts.createSystemDefault();
+        sslContext.getClientSessionContext().setSessionCacheSize(http.tlsSessionCacheSize());
+        sslContext.getClientSessionContext().setSessionTimeout((int) http.tlsSessionTimeout().toSeconds());
+        return sslContext;
+    }
+}
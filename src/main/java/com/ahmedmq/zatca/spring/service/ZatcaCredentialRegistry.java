@@ -0,0 +1,38 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.time.Instant;
+
+/**
+ * Holds the production CSID of each EGS unit, so that invoices are reported and cleared by unit rather than by
+ * passing the certificate and secret on every call. The authorization headers of a unit are prepared once when
+ * it is registered. Each unit belongs to a tenant, which selects the base URL and connection pool its calls go
+ * through, as configured under {@code zatca.tenants}.
+ */
+public interface ZatcaCredentialRegistry {
+
+    /**
+     * The tenant of units registered without one, using {@code zatca.base-url} and {@code zatca.http}.
+     */
+    String DEFAULT_TENANT = "default";
+
+    default void register(String egsUnit, String certificate, String secret) {
+        register(egsUnit, DEFAULT_TENANT, certificate, secret);
+    }
+
+    /**
+     * Registers the credentials of a unit, replacing any registered before, for example after a renewal.
+     *
+     * @throws IllegalArgumentException when the tenant is not configured
+     */
+    void register(String egsUnit, String tenant, String certificate, String secret);
+
+    boolean unregister(String egsUnit);
+
+    boolean isRegistered(String egsUnit);
+
+    /**
+     * Returns when the certificate of the unit expires, or {@code null} when the unit is not registered or its
+     * certificate could not be read.
+     */
+    Instant expiresAt(String egsUnit);
+}
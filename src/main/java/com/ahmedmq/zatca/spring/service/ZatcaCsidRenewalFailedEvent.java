@@ -0,0 +1,12 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.time.Instant;
+
+/**
+ * Published as an application event when renewing the production CSID of an EGS unit failed. The unit keeps
+ * its current CSID and the renewal is attempted again from {@code nextAttempt}.
+ */
+public record ZatcaCsidRenewalFailedEvent(String egsUnit,
+                                          RuntimeException exception,
+                                          Instant nextAttempt) {
+}
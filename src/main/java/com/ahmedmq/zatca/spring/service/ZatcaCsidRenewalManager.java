@@ -0,0 +1,116 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.spring.service.DefaultZatcaCredentialRegistry.EgsUnit;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the production CSID of every registered EGS unit ahead of its expiry. Each unit is renewed at a point
+ * of its own within the jitter window before {@code renewBefore}, derived from its ID, so that units registered
+ * together are not all renewed in the same second. The renewed credentials replace the unit's as a whole in the
+ * registry: calls in flight finish with the old CSID, later calls use the new one, and none of them waits.
+ */
+class ZatcaCsidRenewalManager implements SmartLifecycle {
+    private final ZatcaService zatcaService;
+    private final DefaultZatcaCredentialRegistry credentialRegistry;
+    private final ZatcaCsidRenewalSource renewalSource;
+    private final ZatcaProperties.Renewal config;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+    private final Map<String, Instant> nextAttempts = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    ZatcaCsidRenewalManager(ZatcaService zatcaService, DefaultZatcaCredentialRegistry credentialRegistry,
+                            ZatcaCsidRenewalSource renewalSource, ZatcaProperties.Renewal config,
+                            ApplicationEventPublisher eventPublisher, Clock clock) {
+        this.zatcaService = zatcaService;
+        this.credentialRegistry = credentialRegistry;
+        this.renewalSource = renewalSource;
+        this.config = config;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zatca-csid-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.checkInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::renewDue, 0, interval, TimeUnit.MILLISECONDS);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Renews the units that are due, one after the other so that renewals never compete with submissions for
+     * more than one connection.
+     */
+    void renewDue() {
+        Instant now = clock.instant();
+        credentialRegistry.units().forEach((egsUnit, unit) -> {
+            if (unit.notAfter() == null || now.isBefore(renewAt(egsUnit, unit.notAfter()))) {
+                return;
+            }
+            Instant nextAttempt = nextAttempts.get(egsUnit);
+            if (nextAttempt == null || !now.isBefore(nextAttempt)) {
+                renew(egsUnit, unit, now);
+            }
+        });
+        nextAttempts.keySet().retainAll(credentialRegistry.units().keySet());
+    }
+
+    Instant renewAt(String egsUnit, Instant notAfter) {
+        long window = config.jitter().toMillis();
+        long jitter = 0;
+        if (window > 0) {
+            long hash = egsUnit.hashCode() * 0x9E3779B97F4A7C15L;
+            jitter = Math.floorMod(hash ^ (hash >>> 32), window);
+        }
+        return notAfter.minus(config.renewBefore()).minusMillis(jitter);
+    }
+
+    private void renew(String egsUnit, EgsUnit unit, Instant now) {
+        try {
+            CsidRenewalRequest renewalRequest = renewalSource.renewalRequest(egsUnit);
+            if (renewalRequest == null) {
+                return;
+            }
+            CSIDResponse csid = zatcaService.renewProductionCSID(egsUnit, renewalRequest.csr(), renewalRequest.otp());
+            nextAttempts.remove(egsUnit);
+            if (credentialRegistry.replace(egsUnit, unit, csid.binarySecurityToken(), csid.secret())) {
+                eventPublisher.publishEvent(new ZatcaCsidRenewedEvent(egsUnit, csid,
+                        credentialRegistry.expiresAt(egsUnit)));
+            }
+        } catch (RuntimeException e) {
+            Instant nextAttempt = now.plus(config.retryInterval());
+            nextAttempts.put(egsUnit, nextAttempt);
+            eventPublisher.publishEvent(new ZatcaCsidRenewalFailedEvent(egsUnit, e, nextAttempt));
+        }
+    }
+}
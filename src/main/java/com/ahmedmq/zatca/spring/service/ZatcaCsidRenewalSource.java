@@ -0,0 +1,14 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * Supplies what is needed to renew the production CSID of an EGS unit when it is about to expire. The private
+ * key matching the CSR is kept by the implementation, which learns of the new CSID through a
+ * {@link ZatcaCsidRenewedEvent}.
+ */
+public interface ZatcaCsidRenewalSource {
+
+    /**
+     * Returns the renewal request of the unit, or {@code null} to skip the unit until the next check.
+     */
+    CsidRenewalRequest renewalRequest(String egsUnit);
+}
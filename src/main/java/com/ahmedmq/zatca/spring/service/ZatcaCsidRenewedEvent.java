@@ -0,0 +1,14 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+
+import java.time.Instant;
+
+/**
+ * Published as an application event once the production CSID of an EGS unit has been renewed and the unit's
+ * calls switched to it, carrying the new certificate and secret to persist.
+ */
+public record ZatcaCsidRenewedEvent(String egsUnit,
+                                    CSIDResponse csid,
+                                    Instant expiresAt) {
+}
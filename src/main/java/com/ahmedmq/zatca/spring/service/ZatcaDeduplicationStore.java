@@ -0,0 +1,18 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.List;
+
+/**
+ * Persists the invoices accepted by the gateway, so that duplicate submissions are still suppressed after a
+ * restart. Submissions older than {@code zatca.deduplication.ttl} are ignored when loaded, so a store may keep
+ * them until it is convenient to drop them.
+ */
+public interface ZatcaDeduplicationStore {
+
+    /**
+     * Returns the submissions saved, oldest first.
+     */
+    List<AcceptedSubmission> load();
+
+    void save(AcceptedSubmission submission);
+}
@@ -0,0 +1,53 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpMethod;
+
+public enum ZatcaEndpoint {
+
+    COMPLIANCE_CSID(HttpMethod.POST, "/compliance", false, false),
+    INVOICE_COMPLIANCE(HttpMethod.POST, "/compliance/invoices", true, false),
+    PRODUCTION_CSID(HttpMethod.POST, "/production/csids", false, false),
+    REPORTING(HttpMethod.POST, "/invoices/reporting/single", true, true),
+    RENEW_PRODUCTION_CSID(HttpMethod.PATCH, "/production/csids", true, false),
+    CLEARANCE(HttpMethod.POST, "/invoices/clearance/single", true, true);
+
+    private final HttpMethod method;
+    private final String path;
+    private final boolean acceptLanguage;
+    private final boolean clearanceStatus;
+
+    ZatcaEndpoint(HttpMethod method, String path, boolean acceptLanguage, boolean clearanceStatus) {
+        this.method = method;
+        this.path = path;
+        this.acceptLanguage = acceptLanguage;
+        this.clearanceStatus = clearanceStatus;
+    }
+
+    /**
+     * Resolves the endpoint a request is sent to, or {@code null} if it is not a known gateway endpoint.
+     */
+    public static ZatcaEndpoint resolve(HttpMethod method, String path) {
+        for (ZatcaEndpoint endpoint : values()) {
+            if (endpoint.method.equals(method) && path != null && path.endsWith(endpoint.path)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    public HttpMethod method() {
+        return method;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    boolean acceptLanguage() {
+        return acceptLanguage;
+    }
+
+    boolean clearanceStatus() {
+        return clearanceStatus;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.CertificatesErrorsResponse;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Turns an error response of the gateway into a {@link ZatcaClientApiException}. The body is read once, up to
+ * the configured size, decoded as UTF-8 and parsed into the model the endpoint rejects with, so that callers
+ * do not have to parse {@link ZatcaClientApiException#getResponseBody()} themselves.
+ */
+final class ZatcaErrorResponses {
+
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private ZatcaErrorResponses() {
+    }
+
+    static ZatcaClientApiException read(ZatcaEndpoint endpoint, HttpStatusCode statusCode, String statusText,
+                                        HttpHeaders headers, InputStream body, ZatcaProperties.Errors errors)
+            throws IOException {
+        return toException(endpoint, statusCode, statusText, headers, body.readNBytes(maxBodySize(errors) + 1),
+                errors);
+    }
+
+    static ZatcaClientApiException toException(ZatcaEndpoint endpoint, HttpStatusCode statusCode, String statusText,
+                                               HttpHeaders headers, byte[] body, ZatcaProperties.Errors errors) {
+        int length = Math.min(body.length, maxBodySize(errors));
+        Object errorResponse = length == body.length ? parse(endpoint, body) : null;
+        boolean rejection = statusCode.is4xxClientError() && statusCode.value() != HttpStatus.TOO_MANY_REQUESTS.value();
+        return new ZatcaClientApiException(statusCode, statusText, new String(body, 0, length, StandardCharsets.UTF_8),
+                errorResponse, retryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER)),
+                !(rejection && errors.stacklessRejections()));
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, either a number of seconds or an HTTP date, or returns {@code null}
+     * when there is none or it cannot be read.
+     */
+    static Duration retryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try a date
+        }
+        try {
+            Duration delay = Duration.between(Instant.now(),
+                    ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static int maxBodySize(ZatcaProperties.Errors errors) {
+        return (int) Math.min(errors.maxBodySize().toBytes(), Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Parses the body into the rejection model of the endpoint, or returns {@code null} when it is not a JSON
+     * object, as with the HTML error pages of a proxy, without paying for a parse failure.
+     */
+    private static Object parse(ZatcaEndpoint endpoint, byte[] body) {
+        Class<?> type = errorResponseType(endpoint);
+        if (type == null || !isJsonObject(body)) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(body, type);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> errorResponseType(ZatcaEndpoint endpoint) {
+        if (endpoint == null) {
+            return null;
+        }
+        return switch (endpoint) {
+            case REPORTING, CLEARANCE -> InvoiceResult.class;
+            case INVOICE_COMPLIANCE -> InvoiceComplianceResponse.class;
+            case COMPLIANCE_CSID, PRODUCTION_CSID, RENEW_PRODUCTION_CSID -> CertificatesErrorsResponse.class;
+        };
+    }
+
+    private static boolean isJsonObject(byte[] body) {
+        for (byte b : body) {
+            if (b == '{') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,12 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Notified on the calling thread once the response of an HTTP exchange with a gateway endpoint has been
+ * read and closed.
+ */
+public interface ZatcaExchangeObserver {
+
+    void onExchange(ZatcaEndpoint endpoint, HttpStatusCode statusCode, long requestBytes, long responseBytes);
+}
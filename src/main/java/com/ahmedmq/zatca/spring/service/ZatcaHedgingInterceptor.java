@@ -0,0 +1,329 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.springframework.core.Ordered;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second attempt of a call that has not completed after the hedging delay, and returns whichever attempt
+ * completes first with a response, the other one being cancelled. The delay is either fixed
+ * or a percentile of the latencies of recent first attempts, so that only the slowest calls are hedged. This is
+ * safe for reporting and clearance because the gateway answers a resubmitted invoice, identified by its UUID and
+ * hash, with the same outcome. Calls are therefore only hedged when their invoice can be sent twice, and never
+ * when the cleared invoice is streamed to a sink. Hedges are drawn from a {@link RetryBudget} so that they stay a
+ * small fraction of the calls made. Each tenant has its own budget and latency estimate, while sharing the
+ * executor.
+ * <p>
+ * Both attempts run on the executor while the caller waits. The executor is bounded: a call it rejects runs on the
+ * calling thread without a hedge, and a hedge it rejects is skipped, as is a hedge the rate limiter refuses. A
+ * transient failure of one attempt waits for the other, and the failure of the first attempt is thrown if both fail. Once the outcome is known, the attempt
+ * still running is cancelled, interrupting its thread so that the transport aborts the exchange where it can.
+ */
+class ZatcaHedgingInterceptor implements ZatcaTenantScopedInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = 150;
+    private static final int MIN_SAMPLES = 100;
+    private static final int MAX_SAMPLES = 1024;
+
+    private final ZatcaProperties.Hedging hedging;
+    private final Executor executor;
+    private final LongSupplier nanoClock;
+    private final RetryBudget hedgeBudget;
+    private final LatencyPercentile latencies;
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder won = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final ConcurrentMap<String, ZatcaHedgingInterceptor> tenants = new ConcurrentHashMap<>();
+
+    ZatcaHedgingInterceptor(ZatcaProperties.Hedging hedging, Executor executor) {
+        this(hedging, executor, System::nanoTime);
+    }
+
+    ZatcaHedgingInterceptor(ZatcaProperties.Hedging hedging, Executor executor, LongSupplier nanoClock) {
+        this.hedging = hedging;
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+        this.hedgeBudget = new RetryBudget(hedging.budgetRatio(), hedging.budgetMinHedgesPerSecond(),
+                hedging.budgetWindow());
+        this.latencies = new LatencyPercentile(hedging.percentile(), MIN_SAMPLES, MAX_SAMPLES);
+    }
+
+    @Override
+    public ZatcaHedgingInterceptor forTenant(String tenant) {
+        if (ZatcaCredentialRegistry.DEFAULT_TENANT.equals(tenant)) {
+            return this;
+        }
+        return tenants.computeIfAbsent(tenant, name -> new ZatcaHedgingInterceptor(hedging, executor, nanoClock));
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        if (!hedging.endpoints().contains(endpoint) || !isHedgeable(request)) {
+            return execution.get();
+        }
+        hedgeBudget.recordCall();
+        long delay = delayNanos();
+        if (delay < 0) {
+            return timed(execution);
+        }
+        Attempt<T> first;
+        try {
+            first = attempt(execution, true);
+        } catch (RejectedExecutionException e) {
+            return timed(execution);
+        }
+        try {
+            return first.result().get(delay, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return join(first.result());
+        } catch (TimeoutException e) {
+            // slower than the delay, hedge it
+        }
+        if (!hedgeBudget.tryAcquireRetry()) {
+            skipped.increment();
+            return join(first.result());
+        }
+        Attempt<T> second;
+        try {
+            second = attempt(execution, false);
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+            return join(first.result());
+        }
+        hedged.increment();
+        CompletableFuture<Response<T>> outcome = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        first.result().whenComplete((result, failure) ->
+                settle(outcome, pending, firstFailure, result, failure, false));
+        second.result().whenComplete((result, failure) ->
+                settle(outcome, pending, firstFailure, result, failure, true));
+        try {
+            Response<T> response = join(outcome);
+            if (response.hedge()) {
+                won.increment();
+            }
+            return response.result();
+        } finally {
+            first.cancel();
+            second.cancel();
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    private <T> T timed(Supplier<T> execution) {
+        long start = nanoClock.getAsLong();
+        T result = execution.get();
+        latencies.record(nanoClock.getAsLong() - start);
+        return result;
+    }
+
+    /**
+     * Starts an attempt on the executor.
+     *
+     * @throws RejectedExecutionException when the executor has no room for it
+     */
+    private <T> Attempt<T> attempt(Supplier<T> execution, boolean recordLatency) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.complete(recordLatency ? timed(execution) : execution.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null);
+        executor.execute(task);
+        return new Attempt<>(result, task);
+    }
+
+    /**
+     * Completes the outcome with the first response, which may be a rejection, or with the failure of the first
+     * attempt once both attempts failed transiently. A hedge refused by the rate limiter counts as skipped.
+     */
+    private <T> void settle(CompletableFuture<Response<T>> outcome, AtomicInteger pending,
+                                   AtomicReference<Throwable> firstFailure, T result, Throwable failure,
+                                   boolean hedge) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause == null) {
+            outcome.complete(new Response<>(result, hedge));
+        } else if (hedge && cause instanceof ZatcaRateLimitedException) {
+            hedged.decrement();
+            skipped.increment();
+            if (pending.decrementAndGet() == 0) {
+                outcome.completeExceptionally(firstFailure.get());
+            }
+        } else if (!(cause instanceof RuntimeException e && ZatcaRetryInterceptor.isRetryable(e))) {
+            outcome.completeExceptionally(cause);
+        } else {
+            if (!hedge) {
+                firstFailure.set(cause);
+            }
+            if (pending.decrementAndGet() == 0) {
+                outcome.completeExceptionally(firstFailure.get());
+            }
+        }
+    }
+
+    long delayNanos() {
+        if (hedging.delay() != null) {
+            return hedging.delay().toNanos();
+        }
+        long estimate = latencies.estimate();
+        return estimate < 0 ? -1 : Math.max(estimate, hedging.minDelay().toNanos());
+    }
+
+    private static boolean isHedgeable(Object request) {
+        if (request instanceof InvoiceRequest invoiceRequest) {
+            return invoiceRequest.uuid() != null && invoiceRequest.invoiceHash() != null;
+        }
+        return request instanceof StreamingInvoiceRequest streamingRequest && streamingRequest.uuid() != null
+                && streamingRequest.invoiceHash() != null && streamingRequest.invoice().isRepeatable();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    long hedged() {
+        return hedged.sum();
+    }
+
+    long won() {
+        return won.sum();
+    }
+
+    long skipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private record Response<T>(T result, boolean hedge) {
+    }
+
+    /**
+     * Hedges asynchronous calls the same way, subscribing to the execution a second time once the delay has passed
+     * on a timer and cancelling the subscription still pending once the outcome is known. No thread waits on
+     * either attempt, so the executor is not used.
+     */
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            if (!hedging.endpoints().contains(endpoint) || !isHedgeable(request)) {
+                return execution;
+            }
+            hedgeBudget.recordCall();
+            long delay = delayNanos();
+            if (delay < 0) {
+                return timed(execution);
+            }
+            CompletableFuture<Response<T>> outcome = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger(1);
+            AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+            Disposable.Composite attempts = Disposables.composite();
+            return Mono.fromFuture(() -> {
+                        attempts.add(subscribe(timed(execution), outcome, pending, firstFailure, false));
+                        attempts.add(Mono.delay(Duration.ofNanos(delay)).subscribe(tick -> {
+                            if (outcome.isDone()) {
+                                return;
+                            }
+                            if (!hedgeBudget.tryAcquireRetry()) {
+                                skipped.increment();
+                                return;
+                            }
+                            hedged.increment();
+                            pending.incrementAndGet();
+                            attempts.add(subscribe(execution, outcome, pending, firstFailure, true));
+                        }));
+                        return outcome.whenComplete((response, failure) -> attempts.dispose());
+                    })
+                    .doOnCancel(attempts::dispose)
+                    .handle((response, sink) -> {
+                        if (response.hedge()) {
+                            won.increment();
+                        }
+                        if (response.result() != null) {
+                            sink.next(response.result());
+                        }
+                    });
+        }
+
+        private <T> Mono<T> timed(Mono<T> execution) {
+            return Mono.defer(() -> {
+                long start = nanoClock.getAsLong();
+                return execution.doOnSuccess(result -> latencies.record(nanoClock.getAsLong() - start));
+            });
+        }
+
+        private <T> Disposable subscribe(Mono<T> attempt, CompletableFuture<Response<T>> outcome,
+                                         AtomicInteger pending, AtomicReference<Throwable> firstFailure,
+                                         boolean hedge) {
+            return attempt.subscribe(
+                    result -> settle(outcome, pending, firstFailure, result, null, hedge),
+                    failure -> settle(outcome, pending, firstFailure, null, failure, hedge),
+                    () -> settle(outcome, pending, firstFailure, null, null, hedge));
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+
+    private record Attempt<T>(CompletableFuture<T> result, FutureTask<Void> task) {
+
+        /**
+         * Interrupts the attempt if it is still running, or keeps it from starting.
+         */
+        void cancel() {
+            if (!result.isDone()) {
+                task.cancel(true);
+            }
+        }
+    }
+}
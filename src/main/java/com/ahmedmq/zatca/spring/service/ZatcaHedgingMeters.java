@@ -0,0 +1,48 @@
+package com.ahmedmq.zatca.spring.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes how many calls the {@link ZatcaHedgingInterceptor} hedged, how many of those hedges answered first
+ * and how many were not sent for lack of budget, along with the current hedging delay, tagged with the tenant.
+ */
+final class ZatcaHedgingMeters {
+    static final String HEDGES = "zatca.client.hedges";
+    static final String HEDGES_WON = "zatca.client.hedges.won";
+    static final String HEDGES_SKIPPED = "zatca.client.hedges.skipped";
+    static final String HEDGING_DELAY = "zatca.client.hedging.delay";
+
+    ZatcaHedgingMeters(ZatcaHedgingInterceptor hedgingInterceptor, Set<String> tenants, MeterRegistry meterRegistry) {
+        register(hedgingInterceptor, ZatcaCredentialRegistry.DEFAULT_TENANT, meterRegistry);
+        for (String tenant : tenants) {
+            register(hedgingInterceptor.forTenant(tenant), tenant, meterRegistry);
+        }
+    }
+
+    private static void register(ZatcaHedgingInterceptor hedgingInterceptor, String tenant,
+                                 MeterRegistry meterRegistry) {
+        FunctionCounter.builder(HEDGES, hedgingInterceptor, ZatcaHedgingInterceptor::hedged)
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        FunctionCounter.builder(HEDGES_WON, hedgingInterceptor, ZatcaHedgingInterceptor::won)
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        FunctionCounter.builder(HEDGES_SKIPPED, hedgingInterceptor, ZatcaHedgingInterceptor::skipped)
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        Gauge.builder(HEDGING_DELAY, hedgingInterceptor, ZatcaHedgingMeters::delaySeconds)
+                .tag("tenant", tenant)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static double delaySeconds(ZatcaHedgingInterceptor hedgingInterceptor) {
+        long delay = hedgingInterceptor.delayNanos();
+        return delay < 0 ? Double.NaN : delay / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,154 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.ahmedmq.zatca.model.Warning;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Records the outcome of every invoice reported, cleared or checked for compliance in the
+ * {@link FileSubmissionLedger}, timed over all of its attempts. It runs inside the preflight validation, and calls
+ * failed by an open circuit breaker or the rate limiter are not recorded, so that only invoices that reached the
+ * gateway are. A submission that could not be recorded still returns its result: failing it would have the caller
+ * submit an invoice the gateway already accepted again. The failure is logged and counted instead.
+ */
+class ZatcaLedgerInterceptor implements ZatcaCallInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = -150;
+
+    private static final Log logger = LogFactory.getLog(ZatcaLedgerInterceptor.class);
+
+    private final FileSubmissionLedger ledger;
+    private final Clock clock;
+    private final LongAdder appendFailures = new LongAdder();
+
+    ZatcaLedgerInterceptor(FileSubmissionLedger ledger, Clock clock) {
+        this.ledger = ledger;
+        this.clock = clock;
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        if (!isRecorded(endpoint)) {
+            return execution.get();
+        }
+        Instant submittedAt = clock.instant();
+        long start = System.nanoTime();
+        try {
+            T result = execution.get();
+            record(endpoint, request, submittedAt, start, result, null);
+            return result;
+        } catch (ZatcaCircuitOpenException | ZatcaRateLimitedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            record(endpoint, request, submittedAt, start, null, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    private static boolean isRecorded(ZatcaEndpoint endpoint) {
+        return endpoint == ZatcaEndpoint.REPORTING || endpoint == ZatcaEndpoint.CLEARANCE
+                || endpoint == ZatcaEndpoint.INVOICE_COMPLIANCE;
+    }
+
+    private void record(ZatcaEndpoint endpoint, Object request, Instant submittedAt, long start, Object result,
+                        RuntimeException exception) {
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        String uuid = null;
+        String invoiceHash = null;
+        if (request instanceof InvoiceRequest invoiceRequest) {
+            uuid = invoiceRequest.uuid();
+            invoiceHash = invoiceRequest.invoiceHash();
+        } else if (request instanceof StreamingInvoiceRequest invoiceRequest) {
+            uuid = invoiceRequest.uuid();
+            invoiceHash = invoiceRequest.invoiceHash();
+        }
+        String status = null;
+        List<Warning> warnings = List.of();
+        List<Error> errors = List.of();
+        String failure = null;
+        if (exception instanceof ZatcaClientApiException apiException) {
+            result = apiException.getInvoiceResult() != null ? apiException.getInvoiceResult()
+                    : apiException.getInvoiceComplianceResponse();
+            warnings = apiException.getWarnings();
+            errors = apiException.getErrors();
+            failure = apiException.getStatusCode().value() + " " + apiException.getStatusText();
+        } else if (exception != null) {
+            failure = exception.toString();
+        }
+        if (result instanceof InvoiceResult invoiceResult) {
+            status = invoiceResult.status();
+            warnings = invoiceResult.warnings();
+            errors = invoiceResult.errors();
+        } else if (result instanceof ClearedInvoiceResult clearedInvoiceResult) {
+            status = clearedInvoiceResult.status();
+            warnings = clearedInvoiceResult.warnings();
+            errors = clearedInvoiceResult.errors();
+        } else if (result instanceof InvoiceComplianceResponse complianceResponse) {
+            status = complianceResponse.status();
+            if (complianceResponse.validationResults() != null) {
+                warnings = complianceResponse.validationResults().warningMessages();
+                errors = complianceResponse.validationResults().errorMessages();
+            }
+        }
+        try {
+            ledger.append(new SubmissionRecord(uuid, invoiceHash, endpoint, status, warnings, errors, failure,
+                    submittedAt, duration));
+        } catch (RuntimeException e) {
+            // the submission happened whether or not it could be recorded
+            appendFailures.increment();
+            logger.warn("Failed to record the " + endpoint + " submission of invoice " + uuid + " in the ledger", e);
+        }
+    }
+
+    long appendFailures() {
+        return appendFailures.sum();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            if (!isRecorded(endpoint)) {
+                return execution;
+            }
+            Instant submittedAt = clock.instant();
+            long start = System.nanoTime();
+            return execution
+                    .doOnSuccess(result -> record(endpoint, request, submittedAt, start, result, null))
+                    .doOnError(RuntimeException.class, e -> {
+                        if (!(e instanceof ZatcaCircuitOpenException) && !(e instanceof ZatcaRateLimitedException)) {
+                            record(endpoint, request, submittedAt, start, null, e);
+                        }
+                    });
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ahmedmq.zatca.spring.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Publishes how many submissions the {@link ZatcaLedgerInterceptor} failed to record in the ledger.
+ */
+final class ZatcaLedgerMeters {
+    static final String APPEND_FAILURES = "zatca.ledger.append.failures";
+
+    ZatcaLedgerMeters(ZatcaLedgerInterceptor ledgerInterceptor, MeterRegistry meterRegistry) {
+        FunctionCounter.builder(APPEND_FAILURES, ledgerInterceptor, ZatcaLedgerInterceptor::appendFailures)
+                .register(meterRegistry);
+    }
+}
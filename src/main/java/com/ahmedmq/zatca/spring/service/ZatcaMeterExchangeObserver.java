@@ -0,0 +1,77 @@
+package com.ahmedmq.zatca.spring.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.ObservationView;
+import org.springframework.http.HttpStatusCode;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records the size of request and response bodies exchanged with each endpoint, and hands the status of the
+ * exchange to the observation of the call it belongs to so the {@link ZatcaObservationInterceptor} can tag the
+ * call with it. The observation is found through the current one, which is propagated to the threads running
+ * hedged attempts.
+ */
+class ZatcaMeterExchangeObserver implements ZatcaExchangeObserver {
+    static final String REQUEST_SIZE = "zatca.client.request.size";
+    static final String RESPONSE_SIZE = "zatca.client.response.size";
+    private static final String STATUS_CODE = ZatcaMeterExchangeObserver.class.getName() + ".statusCode";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    ZatcaMeterExchangeObserver(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public void onExchange(ZatcaEndpoint endpoint, HttpStatusCode statusCode, long requestBytes, long responseBytes) {
+        AtomicReference<HttpStatusCode> lastStatusCode = lastStatusCode(observationRegistry.getCurrentObservation());
+        if (lastStatusCode != null) {
+            lastStatusCode.set(statusCode);
+        }
+        String status = statusCode != null ? String.valueOf(statusCode.value()) : "UNKNOWN";
+        summary(REQUEST_SIZE, endpoint, status).record(requestBytes);
+        summary(RESPONSE_SIZE, endpoint, status).record(responseBytes);
+    }
+
+    ObservationRegistry observationRegistry() {
+        return observationRegistry;
+    }
+
+    /**
+     * Makes the observation of a call collect the status of the last exchange made within it.
+     */
+    static AtomicReference<HttpStatusCode> collectStatusCode(Observation observation) {
+        AtomicReference<HttpStatusCode> statusCode = new AtomicReference<>();
+        observation.getContext().put(STATUS_CODE, statusCode);
+        return statusCode;
+    }
+
+    /**
+     * The status collected by the observation of the call, which may be a parent of the current observation
+     * when the HTTP client observes the exchange itself.
+     */
+    private static AtomicReference<HttpStatusCode> lastStatusCode(ObservationView observation) {
+        while (observation != null) {
+            AtomicReference<HttpStatusCode> statusCode = observation.getContextView().get(STATUS_CODE);
+            if (statusCode != null) {
+                return statusCode;
+            }
+            observation = observation.getContextView().getParentObservation();
+        }
+        return null;
+    }
+
+    private DistributionSummary summary(String name, ZatcaEndpoint endpoint, String status) {
+        return DistributionSummary.builder(name)
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint.name())
+                .tag("http.status", status)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,89 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+import java.util.Set;
+
+/**
+ * Instruments gateway calls when Micrometer is on the classpath and a {@link MeterRegistry} is available.
+ */
+@AutoConfiguration(before = ZatcaAutoConfiguration.class, afterName = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration"})
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnBean(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "zatca.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ZatcaMetricsAutoConfiguration {
+
+    @Bean
+    ZatcaMeterExchangeObserver zatcaMeterExchangeObserver(ObjectProvider<ObservationRegistry> observationRegistry,
+                                                          MeterRegistry meterRegistry) {
+        return new ZatcaMeterExchangeObserver(meterRegistry,
+                observationRegistry.getIfAvailable(() -> meterObservationRegistry(meterRegistry)));
+    }
+
+    @Bean
+    ZatcaObservationInterceptor zatcaObservationInterceptor(MeterRegistry meterRegistry,
+                                                            ZatcaMeterExchangeObserver exchangeObserver) {
+        return new ZatcaObservationInterceptor(exchangeObserver.observationRegistry(), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.hedging", name = "enabled", havingValue = "true")
+    ZatcaHedgingMeters zatcaHedgingMeters(ZatcaHedgingInterceptor hedgingInterceptor, ZatcaProperties zatcaProperties,
+                                          MeterRegistry meterRegistry) {
+        return new ZatcaHedgingMeters(hedgingInterceptor, tenants(zatcaProperties), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.ledger", name = "enabled", havingValue = "true")
+    ZatcaLedgerMeters zatcaLedgerMeters(ZatcaLedgerInterceptor ledgerInterceptor, MeterRegistry meterRegistry) {
+        return new ZatcaLedgerMeters(ledgerInterceptor, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "zatca.rate-limit", name = "enabled", havingValue = "true")
+    ZatcaRateLimitMeters zatcaRateLimitMeters(ZatcaRateLimitInterceptor rateLimitInterceptor,
+                                              ZatcaProperties zatcaProperties, MeterRegistry meterRegistry) {
+        return new ZatcaRateLimitMeters(rateLimitInterceptor, tenants(zatcaProperties), meterRegistry);
+    }
+
+    /**
+     * Publishes percentile histograms for the call timer so latency percentiles can be aggregated across
+     * instances.
+     */
+    @Bean
+    MeterFilter zatcaMeterFilter() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() == Meter.Type.TIMER && id.getName().equals(ZatcaObservationInterceptor.OBSERVATION_NAME)) {
+                    return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    private static Set<String> tenants(ZatcaProperties zatcaProperties) {
+        return zatcaProperties.tenants() == null ? Set.of() : zatcaProperties.tenants().keySet();
+    }
+
+    private static ObservationRegistry meterObservationRegistry(MeterRegistry meterRegistry) {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        return observationRegistry;
+    }
+}
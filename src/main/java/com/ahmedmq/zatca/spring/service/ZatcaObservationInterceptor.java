@@ -0,0 +1,190 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Wraps every call, including its retries, in a {@code zatca.client.requests} {@link Observation} tagged with
+ * the endpoint, the HTTP status and the ZATCA status of the result, which yields a timer and a span that is a
+ * child of whatever observation is current. The invoice UUID is added as a high cardinality key so that
+ * traces can be correlated with the submitted invoice. Warnings and errors returned by the gateway are
+ * counted separately in {@code zatca.client.messages}, including those of rejected calls.
+ */
+class ZatcaObservationInterceptor implements ZatcaCallInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = -100;
+    static final String OBSERVATION_NAME = "zatca.client.requests";
+    static final String MESSAGES = "zatca.client.messages";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+
+    ZatcaObservationInterceptor(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        Observation observation = observation(endpoint, request);
+        AtomicReference<HttpStatusCode> lastStatusCode = ZatcaMeterExchangeObserver.collectStatusCode(observation);
+        observation.start();
+        try {
+            T result = observation.scoped(execution::get);
+            onResult(endpoint, observation, lastStatusCode, result);
+            return result;
+        } catch (RuntimeException e) {
+            onError(endpoint, observation, lastStatusCode, e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    private Observation observation(ZatcaEndpoint endpoint, Object request) {
+        Observation observation = Observation.createNotStarted(OBSERVATION_NAME, observationRegistry)
+                .contextualName("zatca " + endpoint.name().toLowerCase(Locale.ROOT))
+                .lowCardinalityKeyValue("endpoint", endpoint.name());
+        String uuid = request instanceof InvoiceRequest invoiceRequest ? invoiceRequest.uuid()
+                : request instanceof StreamingInvoiceRequest invoiceRequest ? invoiceRequest.uuid() : null;
+        if (uuid != null) {
+            observation.highCardinalityKeyValue("invoice.uuid", uuid);
+        }
+        return observation;
+    }
+
+    private void onResult(ZatcaEndpoint endpoint, Observation observation,
+                          AtomicReference<HttpStatusCode> lastStatusCode, Object result) {
+        observation.lowCardinalityKeyValue("http.status", status(lastStatusCode.get()));
+        observation.lowCardinalityKeyValue("zatca.status", zatcaStatus(result));
+        countMessages(endpoint, result);
+    }
+
+    private void onError(ZatcaEndpoint endpoint, Observation observation,
+                         AtomicReference<HttpStatusCode> lastStatusCode, Throwable e) {
+        HttpStatusCode statusCode = lastStatusCode.get();
+        if (e instanceof ZatcaClientApiException apiException) {
+            statusCode = apiException.getStatusCode();
+            count(endpoint, "warning", apiException.getWarnings());
+            count(endpoint, "error", apiException.getErrors());
+        }
+        observation.lowCardinalityKeyValue("http.status", status(statusCode));
+        observation.lowCardinalityKeyValue("zatca.status", "NONE");
+        observation.error(e);
+    }
+
+    /**
+     * Runs a task in the observation current when it was created, so that exchanges made by another thread on
+     * behalf of a call are still attributed to it.
+     */
+    Runnable inCurrentObservation(Runnable task) {
+        Observation current = observationRegistry.getCurrentObservation();
+        return current == null ? task : () -> current.scoped(task);
+    }
+
+    private void countMessages(ZatcaEndpoint endpoint, Object result) {
+        if (result instanceof InvoiceResult invoiceResult) {
+            count(endpoint, "warning", invoiceResult.warnings());
+            count(endpoint, "error", invoiceResult.errors());
+        } else if (result instanceof ClearedInvoiceResult clearedInvoiceResult) {
+            count(endpoint, "warning", clearedInvoiceResult.warnings());
+            count(endpoint, "error", clearedInvoiceResult.errors());
+        } else if (result instanceof InvoiceComplianceResponse complianceResponse
+                && complianceResponse.validationResults() != null) {
+            count(endpoint, "warning", complianceResponse.validationResults().warningMessages());
+            count(endpoint, "error", complianceResponse.validationResults().errorMessages());
+        }
+    }
+
+    private void count(ZatcaEndpoint endpoint, String type, List<?> messages) {
+        if (messages != null && !messages.isEmpty()) {
+            Counter.builder(MESSAGES)
+                    .tag("endpoint", endpoint.name())
+                    .tag("type", type)
+                    .register(meterRegistry)
+                    .increment(messages.size());
+        }
+    }
+
+    private static String status(HttpStatusCode statusCode) {
+        return statusCode != null ? String.valueOf(statusCode.value()) : "NONE";
+    }
+
+    private static String zatcaStatus(Object result) {
+        String status = null;
+        if (result instanceof InvoiceResult invoiceResult) {
+            status = invoiceResult.status();
+        } else if (result instanceof ClearedInvoiceResult clearedInvoiceResult) {
+            status = clearedInvoiceResult.status();
+        } else if (result instanceof InvoiceComplianceResponse complianceResponse) {
+            status = complianceResponse.status();
+        } else if (result instanceof CSIDResponse csidResponse) {
+            status = csidResponse.dispositionMessage();
+        }
+        return status != null ? status : "NONE";
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * Observes asynchronous calls the same way. The observation is handed down in the subscriber context rather
+     * than made current on a thread, under the key Reactor and the {@code WebClient} look for the parent
+     * observation in, and {@link DefaultAsyncZatcaService} reports the status of its exchanges to it.
+     */
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            return Mono.deferContextual(context -> {
+                Observation observation = observation(endpoint, request);
+                Observation parent = context.getOrDefault(DefaultAsyncZatcaService.OBSERVATION_KEY, null);
+                if (parent != null) {
+                    observation.parentObservation(parent);
+                }
+                AtomicReference<HttpStatusCode> lastStatusCode = ZatcaMeterExchangeObserver.collectStatusCode(observation);
+                observation.start();
+                // stopped before the outcome is passed on, so that it is recorded by the time the caller sees it
+                return execution
+                        .doOnSuccess(result -> {
+                            onResult(endpoint, observation, lastStatusCode, result);
+                            observation.stop();
+                        })
+                        .doOnError(e -> {
+                            onError(endpoint, observation, lastStatusCode, e);
+                            observation.stop();
+                        })
+                        .doOnCancel(observation::stop)
+                        .contextWrite(Context.of(DefaultAsyncZatcaService.OBSERVATION_KEY, observation));
+            });
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
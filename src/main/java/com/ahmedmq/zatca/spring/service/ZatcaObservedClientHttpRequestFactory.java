@@ -0,0 +1,213 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Counts the bytes sent and received on each exchange with a gateway endpoint and reports them, along with
+ * the response status, to the {@link ZatcaExchangeObserver}s. Bodies are counted as they stream through, so
+ * requests are not buffered.
+ */
+final class ZatcaObservedClientHttpRequestFactory implements ClientHttpRequestFactory {
+    private final ClientHttpRequestFactory delegate;
+    private final List<ZatcaExchangeObserver> observers;
+
+    ZatcaObservedClientHttpRequestFactory(ClientHttpRequestFactory delegate, List<ZatcaExchangeObserver> observers) {
+        this.delegate = delegate;
+        this.observers = List.copyOf(observers);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        ClientHttpRequest request = delegate.createRequest(uri, httpMethod);
+        ZatcaEndpoint endpoint = ZatcaEndpoint.resolve(httpMethod, uri.getPath());
+        return endpoint != null ? new ObservedRequest(request, endpoint) : request;
+    }
+
+    private final class ObservedRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+        private final ClientHttpRequest request;
+        private final ZatcaEndpoint endpoint;
+        private CountingOutputStream body;
+
+        ObservedRequest(ClientHttpRequest request, ZatcaEndpoint endpoint) {
+            this.request = request;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            return new ObservedResponse(request.execute(), endpoint, body != null ? body.count : 0);
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            if (body == null) {
+                body = new CountingOutputStream(request.getBody());
+            }
+            return body;
+        }
+
+        /**
+         * Passes a streamed body on to the delegate, so that it is not buffered here either.
+         */
+        @Override
+        public void setBody(Body body) {
+            if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+                streamingRequest.setBody(new Body() {
+                    @Override
+                    public void writeTo(OutputStream outputStream) throws IOException {
+                        ObservedRequest.this.body = new CountingOutputStream(outputStream);
+                        body.writeTo(ObservedRequest.this.body);
+                    }
+
+                    @Override
+                    public boolean repeatable() {
+                        return body.repeatable();
+                    }
+                });
+            } else {
+                try {
+                    body.writeTo(getBody());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+
+    private final class ObservedResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final ZatcaEndpoint endpoint;
+        private final long requestBytes;
+        private CountingInputStream body;
+        private boolean closed;
+
+        ObservedResponse(ClientHttpResponse response, ZatcaEndpoint endpoint, long requestBytes) {
+            this.response = response;
+            this.endpoint = endpoint;
+            this.requestBytes = requestBytes;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new CountingInputStream(response.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            HttpStatusCode statusCode;
+            try {
+                statusCode = response.getStatusCode();
+            } catch (IOException e) {
+                statusCode = null;
+            } finally {
+                response.close();
+            }
+            long responseBytes = body != null ? body.count : 0;
+            for (ZatcaExchangeObserver observer : observers) {
+                observer.onExchange(endpoint, statusCode, requestBytes, responseBytes);
+            }
+        }
+    }
+
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            count += b >= 0 ? 1 : 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            count += Math.max(read, 0);
+            return read;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.model.CSRRequest;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.ProductionCSIDRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Onboards batches of EGS units: a compliance CSID, the compliance checks of the sample invoices, then a
+ * production CSID, which is registered with the {@link ZatcaCredentialRegistry}. Each unit goes through the steps
+ * in order while the executor bounds how many units are onboarded at once. The state of a unit is saved after
+ * every call, so that onboarding it again resumes after the last completed step, and a failed unit never aborts
+ * the rest of the batch. The units whose onboarding completed before a restart are registered again at startup.
+ */
+public class ZatcaOnboarding {
+    private final ZatcaService zatcaService;
+    private final ZatcaCredentialRegistry credentialRegistry;
+    private final ZatcaOnboardingSupport onboardingSupport;
+    private final ZatcaOnboardingStore onboardingStore;
+    private final KeyPairPool keyPairPool;
+    private final Executor executor;
+
+    ZatcaOnboarding(ZatcaService zatcaService, ZatcaCredentialRegistry credentialRegistry,
+                    ZatcaOnboardingSupport onboardingSupport, ZatcaOnboardingStore onboardingStore,
+                    KeyPairPool keyPairPool, Executor executor) {
+        this.zatcaService = zatcaService;
+        this.credentialRegistry = credentialRegistry;
+        this.onboardingSupport = onboardingSupport;
+        this.onboardingStore = onboardingStore;
+        this.keyPairPool = keyPairPool;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers the production CSID of every unit whose onboarding completed and that is not registered yet, so
+     * that a restart does not lose the units onboarded before. Units registered by the application keep their
+     * credentials, which may have been renewed since.
+     */
+    void registerOnboardedUnits() {
+        for (OnboardingState state : onboardingStore.loadAll()) {
+            if (state.isCompleted() && !credentialRegistry.isRegistered(state.egsUnit())) {
+                credentialRegistry.register(state.egsUnit(), state.productionCsid().binarySecurityToken(),
+                        state.productionCsid().secret());
+            }
+        }
+    }
+
+    public List<OnboardingOutcome> onboard(Collection<EgsDevice> devices) {
+        return onboard(devices, state -> {
+        });
+    }
+
+    /**
+     * Onboards the units, passing their state to the progress listener, from the executor's threads, every
+     * time it is saved. Outcomes are returned in the order of the given devices.
+     */
+    public List<OnboardingOutcome> onboard(Collection<EgsDevice> devices, Consumer<OnboardingState> progress) {
+        List<CompletableFuture<OnboardingOutcome>> onboardings = new ArrayList<>(devices.size());
+        for (EgsDevice device : devices) {
+            onboardings.add(CompletableFuture.supplyAsync(() -> onboard(device, progress), executor));
+        }
+        List<OnboardingOutcome> outcomes = new ArrayList<>(onboardings.size());
+        for (CompletableFuture<OnboardingOutcome> onboarding : onboardings) {
+            outcomes.add(onboarding.join());
+        }
+        return outcomes;
+    }
+
+    private OnboardingOutcome onboard(EgsDevice device, Consumer<OnboardingState> progress) {
+        OnboardingState state = null;
+        try {
+            state = onboardingStore.load(device.egsUnit());
+            if (state == null) {
+                state = new OnboardingState(device.egsUnit(), null, null, null, 0, null);
+            }
+            if (!state.hasCompleted(OnboardingStep.COMPLIANCE_CSID)) {
+                state = complianceCsid(device, state, progress);
+            }
+            if (!state.hasCompleted(OnboardingStep.COMPLIANCE_CHECKS)) {
+                state = complianceChecks(device, state, progress);
+            }
+            if (!state.hasCompleted(OnboardingStep.PRODUCTION_CSID)) {
+                CSIDResponse complianceCsid = state.complianceCsid();
+                CSIDResponse productionCsid = zatcaService.productionCSID(complianceCsid.binarySecurityToken(),
+                        complianceCsid.secret(), new ProductionCSIDRequest(complianceCsid.requestID()));
+                state = save(new OnboardingState(state.egsUnit(), OnboardingStep.PRODUCTION_CSID, state.csr(),
+                        complianceCsid, state.complianceChecksPassed(), productionCsid), progress);
+            }
+            credentialRegistry.register(device.egsUnit(), state.productionCsid().binarySecurityToken(),
+                    state.productionCsid().secret());
+            return new OnboardingOutcome(device, state, null);
+        } catch (RuntimeException e) {
+            return new OnboardingOutcome(device, saved(device.egsUnit(), state), e);
+        }
+    }
+
+    /**
+     * The state a failed unit will resume from, the steps saved since it was loaded included.
+     */
+    private OnboardingState saved(String egsUnit, OnboardingState loaded) {
+        try {
+            OnboardingState saved = onboardingStore.load(egsUnit);
+            return saved == null ? loaded : saved;
+        } catch (RuntimeException e) {
+            return loaded;
+        }
+    }
+
+    /**
+     * Saves the CSR before it is sent, so that a unit resumed after a crash sends the CSR of the key pair the
+     * {@link ZatcaOnboardingSupport} kept rather than a new one.
+     */
+    private OnboardingState complianceCsid(EgsDevice device, OnboardingState state, Consumer<OnboardingState> progress) {
+        if (state.csr() == null) {
+            CSRRequest csr = onboardingSupport.csr(device, keyPairPool.take());
+            state = save(new OnboardingState(state.egsUnit(), null, csr.csr(), null, 0, null), progress);
+        }
+        CSIDResponse complianceCsid = zatcaService.complianceCSID(new CSRRequest(state.csr()), device.otp());
+        return save(new OnboardingState(state.egsUnit(), OnboardingStep.COMPLIANCE_CSID, state.csr(), complianceCsid,
+                0, null), progress);
+    }
+
+    private OnboardingState complianceChecks(EgsDevice device, OnboardingState state, Consumer<OnboardingState> progress) {
+        CSIDResponse complianceCsid = state.complianceCsid();
+        List<InvoiceRequest> invoices = onboardingSupport.complianceInvoices(device, complianceCsid);
+        for (int i = state.complianceChecksPassed(); i < invoices.size(); i++) {
+            InvoiceComplianceResponse response = zatcaService.checkInvoiceCompliance(
+                    complianceCsid.binarySecurityToken(), complianceCsid.secret(), invoices.get(i));
+            String status = response.validationResults() == null ? null : response.validationResults().status();
+            if (!"PASS".equals(status) && !"WARNING".equals(status)) {
+                throw new IllegalStateException("Sample invoice " + (i + 1) + " of EGS unit " + device.egsUnit()
+                        + " failed the compliance checks with status " + status);
+            }
+            state = save(new OnboardingState(state.egsUnit(), OnboardingStep.COMPLIANCE_CSID, state.csr(),
+                    complianceCsid, i + 1, null), progress);
+        }
+        return save(new OnboardingState(state.egsUnit(), OnboardingStep.COMPLIANCE_CHECKS, state.csr(), complianceCsid,
+                state.complianceChecksPassed(), null), progress);
+    }
+
+    private OnboardingState save(OnboardingState state, Consumer<OnboardingState> progress) {
+        onboardingStore.save(state);
+        progress.accept(state);
+        return state;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.List;
+
+/**
+ * Persists the {@link OnboardingState} of each EGS unit, so that onboarding resumes from the last completed
+ * step after a crash. Calls for the same unit never overlap, calls for different units may run concurrently.
+ */
+public interface ZatcaOnboardingStore {
+
+    /**
+     * Returns the last saved state of the unit, or {@code null} when its onboarding has not started.
+     */
+    OnboardingState load(String egsUnit);
+
+    /**
+     * Saves the state of the unit, which must be durable once this method returns.
+     */
+    void save(OnboardingState state);
+
+    /**
+     * Returns the last saved state of every unit, so that the units onboarded before a restart are registered
+     * again. A store that cannot list its units returns none.
+     */
+    default List<OnboardingState> loadAll() {
+        return List.of();
+    }
+}
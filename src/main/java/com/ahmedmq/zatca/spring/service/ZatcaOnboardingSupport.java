@@ -0,0 +1,26 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.model.CSRRequest;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+
+import java.security.KeyPair;
+import java.util.List;
+
+/**
+ * Supplies the parts of onboarding an EGS unit that depend on the taxpayer: its CSR and the sample invoices
+ * signed with its compliance CSID.
+ */
+public interface ZatcaOnboardingSupport {
+
+    /**
+     * Returns the CSR of the unit for the given key pair, taken from a pool generated ahead of time. The private
+     * key is kept by the implementation, since the unit signs its invoices with it.
+     */
+    CSRRequest csr(EgsDevice device, KeyPair keyPair);
+
+    /**
+     * Returns the sample invoices the unit must pass the compliance checks with.
+     */
+    List<InvoiceRequest> complianceInvoices(EgsDevice device, CSIDResponse complianceCsid);
+}
@@ -0,0 +1,25 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+
+/**
+ * A durable queue of simplified invoices to report, written to local disk before they are sent, so that an
+ * invoice once enqueued is reported even when the application dies before the gateway accepted it. The invoices of
+ * an EGS unit are reported in the order they were enqueued, through the {@link ZatcaCredentialRegistry}, and an
+ * invoice that keeps failing is eventually dead-lettered. Delivery is at least once: an invoice reported just before
+ * a crash is reported again after the restart.
+ */
+public interface ZatcaOutbox {
+
+    /**
+     * Appends the invoice of the unit to the outbox, returning its sequence number once it is on disk.
+     *
+     * @throws IllegalArgumentException when the invoice does not fit in a segment of the outbox
+     */
+    long enqueue(String egsUnit, InvoiceRequest invoiceRequest);
+
+    /**
+     * Returns the number of invoices enqueued and not reported yet.
+     */
+    long pending();
+}
@@ -0,0 +1,12 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * Published as an application event when an invoice of the {@link ZatcaOutbox} failed as many times as
+ * {@code zatca.outbox.maxAttempts} allows without being rejected, for instance because its EGS unit was never
+ * registered or its CSID expired. The entry is removed from the outbox, so that it no longer holds back the invoices
+ * of its unit, and is left to the application to enqueue again once the cause is fixed.
+ */
+public record ZatcaOutboxDeadLetteredEvent(OutboxEntry entry,
+                                           int attempts,
+                                           RuntimeException exception) {
+}
@@ -0,0 +1,13 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceResult;
+
+/**
+ * Published as an application event when the gateway rejected an invoice of the {@link ZatcaOutbox}. The entry
+ * is removed from the outbox, as sending it again would be rejected again. The exception is {@code null} when
+ * the gateway answered without an error status but did not report the invoice.
+ */
+public record ZatcaOutboxRejectedEvent(OutboxEntry entry,
+                                       InvoiceResult invoiceResult,
+                                       ZatcaClientApiException exception) {
+}
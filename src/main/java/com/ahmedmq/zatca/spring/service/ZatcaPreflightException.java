@@ -0,0 +1,22 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown without calling the gateway when an invoice fails the local preflight checks. Like a rejection by
+ * the gateway it is a 400 whose {@link #getInvoiceResult() invoice result} holds the errors found, and it
+ * carries no stack trace so that failing fast stays cheap.
+ */
+public class ZatcaPreflightException extends ZatcaClientApiException {
+    private final ZatcaEndpoint endpoint;
+
+    public ZatcaPreflightException(ZatcaEndpoint endpoint, InvoiceResult invoiceResult) {
+        super(HttpStatus.BAD_REQUEST, "Preflight Validation Failed", "", invoiceResult, false);
+        this.endpoint = endpoint;
+    }
+
+    public ZatcaEndpoint getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,88 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+/**
+ * Checks invoices with {@link InvoicePreflight} before they are reported, cleared or checked for compliance,
+ * failing with a {@link ZatcaPreflightException} instead of calling the gateway when they would be rejected.
+ * It is the outermost interceptor, so a failed check is neither retried, counted by the circuit breaker nor
+ * observed as a gateway call. Streamed invoices are only checked when their source can be read again.
+ */
+class ZatcaPreflightInterceptor implements ZatcaCallInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = -200;
+
+    private final StreamingInvoiceHasher invoiceHasher;
+
+    ZatcaPreflightInterceptor(StreamingInvoiceHasher invoiceHasher) {
+        this.invoiceHasher = invoiceHasher;
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        ZatcaPreflightException rejection = check(endpoint, request);
+        if (rejection != null) {
+            throw rejection;
+        }
+        return execution.get();
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    /**
+     * The exception the invoice of the request would be rejected with, or {@code null} if it passes.
+     */
+    private ZatcaPreflightException check(ZatcaEndpoint endpoint, Object request) {
+        if (endpoint == ZatcaEndpoint.REPORTING || endpoint == ZatcaEndpoint.CLEARANCE
+                || endpoint == ZatcaEndpoint.INVOICE_COMPLIANCE) {
+            InvoiceResult result = null;
+            if (request instanceof InvoiceRequest invoiceRequest && invoiceRequest.invoice() != null) {
+                result = InvoicePreflight.check(invoiceHasher, endpoint, invoiceRequest.uuid(),
+                        invoiceRequest.invoiceHash(), base64Source(invoiceRequest.invoice()));
+            } else if (request instanceof StreamingInvoiceRequest invoiceRequest
+                    && invoiceRequest.invoice().isRepeatable()) {
+                result = InvoicePreflight.check(invoiceHasher, endpoint, invoiceRequest.uuid(),
+                        invoiceRequest.invoiceHash(), invoiceRequest.invoice());
+            }
+            if (result != null && !result.errors().isEmpty()) {
+                return new ZatcaPreflightException(endpoint, result);
+            }
+        }
+        return null;
+    }
+
+    private static InvoiceSource base64Source(String invoice) {
+        return () -> Base64.getDecoder().wrap(new ByteArrayInputStream(invoice.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            ZatcaPreflightException rejection = check(endpoint, request);
+            return rejection != null ? Mono.error(rejection) : execution;
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Paces gateway calls with a {@link TokenBucket} per endpoint and bounds those in flight with an
+ * {@link AdaptiveConcurrencyLimiter} shared by all endpoints, lowered on 429 and 503 responses, I/O errors and
+ * slow calls. Clearance calls, which usually hold up a sale, wait in the highest lane and reporting calls, which
+ * may be made within 24 hours, in the lowest. A call that cannot get a permit within {@code maxWait} fails with
+ * a {@link ZatcaRateLimitedException}. It runs inside the retry interceptor, so that retries are paced too. Each
+ * tenant has its own limits.
+ */
+class ZatcaRateLimitInterceptor implements ZatcaTenantScopedInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = 200;
+
+    private final Map<ZatcaEndpoint, TokenBucket> tokenBuckets = new EnumMap<>(ZatcaEndpoint.class);
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final long maxWaitNanos;
+    private final LongSupplier nanoClock;
+    private final ZatcaProperties.RateLimit config;
+    private final ConcurrentMap<String, ZatcaRateLimitInterceptor> tenants = new ConcurrentHashMap<>();
+
+    ZatcaRateLimitInterceptor(ZatcaProperties.RateLimit config) {
+        this(config, System::nanoTime);
+    }
+
+    ZatcaRateLimitInterceptor(ZatcaProperties.RateLimit config, LongSupplier nanoClock) {
+        for (ZatcaEndpoint endpoint : ZatcaEndpoint.values()) {
+            double permitsPerSecond = config.endpoints() != null && config.endpoints().containsKey(endpoint)
+                    ? config.endpoints().get(endpoint) : config.permitsPerSecond();
+            if (permitsPerSecond > 0) {
+                tokenBuckets.put(endpoint, new TokenBucket(permitsPerSecond, config.burst(), nanoClock));
+            }
+        }
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(config.initialConcurrency(),
+                config.minConcurrency(), config.maxConcurrency(), config.backoffRatio(),
+                config.latencyThreshold().toNanos(), nanoClock);
+        this.maxWaitNanos = config.maxWait().toNanos();
+        this.nanoClock = nanoClock;
+        this.config = config;
+    }
+
+    @Override
+    public ZatcaRateLimitInterceptor forTenant(String tenant) {
+        if (ZatcaCredentialRegistry.DEFAULT_TENANT.equals(tenant)) {
+            return this;
+        }
+        return tenants.computeIfAbsent(tenant, name -> new ZatcaRateLimitInterceptor(config, nanoClock));
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        long deadline = nanoClock.getAsLong() + maxWaitNanos;
+        TokenBucket tokenBucket = tokenBuckets.get(endpoint);
+        long wait = tokenBucket == null ? 0 : tokenBucket.reserve(maxWaitNanos);
+        if (wait < 0) {
+            throw new ZatcaRateLimitedException(endpoint);
+        }
+        try {
+            if (wait > 0) {
+                awaitToken(tokenBucket, wait);
+            }
+            if (!concurrencyLimiter.tryAcquire(lane(endpoint), deadline - nanoClock.getAsLong())) {
+                refund(tokenBucket);
+                throw new ZatcaRateLimitedException(endpoint);
+            }
+        } catch (InterruptedException e) {
+            refund(tokenBucket);
+            Thread.currentThread().interrupt();
+            throw new ZatcaRateLimitedException(endpoint);
+        }
+        long start = nanoClock.getAsLong();
+        try {
+            T result = execution.get();
+            concurrencyLimiter.release(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            concurrencyLimiter.release(start, isOverload(e));
+            throw e;
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    private static void awaitToken(TokenBucket tokenBucket, long wait) throws InterruptedException {
+        tokenBucket.waiting().incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } finally {
+            tokenBucket.waiting().decrementAndGet();
+        }
+    }
+
+    /**
+     * Gives back the token of a call that did not get a slot in time, so that it does not count against the rate.
+     */
+    private static void refund(TokenBucket tokenBucket) {
+        if (tokenBucket != null) {
+            tokenBucket.refund();
+        }
+    }
+
+    static AdaptiveConcurrencyLimiter.Lane lane(ZatcaEndpoint endpoint) {
+        return switch (endpoint) {
+            case CLEARANCE -> AdaptiveConcurrencyLimiter.Lane.HIGH;
+            case REPORTING -> AdaptiveConcurrencyLimiter.Lane.LOW;
+            default -> AdaptiveConcurrencyLimiter.Lane.NORMAL;
+        };
+    }
+
+    /**
+     * Whether the failure says the gateway is overloaded. An attempt aborted by interrupting its thread, as the
+     * hedging interceptor does with the slower attempt, says nothing about the gateway.
+     */
+    private static boolean isOverload(RuntimeException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        if (e instanceof ZatcaClientApiException apiException) {
+            return apiException.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)
+                    || apiException.getStatusCode().isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return e instanceof ResourceAccessException;
+    }
+
+    Map<ZatcaEndpoint, TokenBucket> tokenBuckets() {
+        return tokenBuckets;
+    }
+
+    AdaptiveConcurrencyLimiter concurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * Paces asynchronous calls with the same buckets and limiter, waiting for a token on a timer and for a slot in
+     * the queue of the limiter instead of on a thread.
+     */
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            long deadline = nanoClock.getAsLong() + maxWaitNanos;
+            TokenBucket tokenBucket = tokenBuckets.get(endpoint);
+            long wait = tokenBucket == null ? 0 : tokenBucket.reserve(maxWaitNanos);
+            if (wait < 0) {
+                return Mono.error(new ZatcaRateLimitedException(endpoint));
+            }
+            Mono<Long> token = wait == 0 ? Mono.just(0L) : Mono.delay(Duration.ofNanos(wait))
+                    .doOnSubscribe(subscription -> tokenBucket.waiting().incrementAndGet())
+                    .doFinally(signal -> tokenBucket.waiting().decrementAndGet());
+            AtomicBoolean admitted = new AtomicBoolean();
+            return token.then(Mono.defer(() -> acquire(lane(endpoint), deadline - nanoClock.getAsLong())))
+                    .doOnCancel(() -> {
+                        if (!admitted.get()) {
+                            refund(tokenBucket);
+                        }
+                    })
+                    .flatMap(acquired -> {
+                        admitted.set(true);
+                        if (!acquired) {
+                            refund(tokenBucket);
+                            return Mono.error(new ZatcaRateLimitedException(endpoint));
+                        }
+                        return Mono.usingWhen(Mono.fromSupplier(nanoClock::getAsLong), start -> execution,
+                                start -> release(start, false),
+                                (start, e) -> release(start, e instanceof RuntimeException failure && isOverload(failure)),
+                                start -> release(start, false));
+                    });
+        }
+
+        /**
+         * Takes a slot, completing with whether one was taken within {@code timeoutNanos}. The slot of a call
+         * cancelled just as it was granted one is freed again.
+         */
+        private Mono<Boolean> acquire(AdaptiveConcurrencyLimiter.Lane lane, long timeoutNanos) {
+            return Mono.create(sink -> {
+                AtomicBoolean settled = new AtomicBoolean();
+                AdaptiveConcurrencyLimiter.Waiter waiter = concurrencyLimiter.tryAcquire(lane, () -> {
+                    if (settled.compareAndSet(false, true)) {
+                        sink.success(true);
+                    }
+                });
+                if (waiter == null) {
+                    sink.success(true);
+                    return;
+                }
+                sink.onDispose(Mono.delay(Duration.ofNanos(Math.max(0, timeoutNanos))).subscribe(tick -> {
+                    if (settled.compareAndSet(false, true)) {
+                        sink.success(!concurrencyLimiter.cancel(lane, waiter));
+                    }
+                }));
+                sink.onCancel(() -> {
+                    if (settled.compareAndSet(false, true) && !concurrencyLimiter.cancel(lane, waiter)) {
+                        concurrencyLimiter.release();
+                    }
+                });
+            });
+        }
+
+        private Mono<Void> release(long start, boolean overloaded) {
+            return Mono.fromRunnable(() -> concurrencyLimiter.release(start, overloaded));
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ahmedmq.zatca.spring.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Publishes the limits of the {@link ZatcaRateLimitInterceptor} and the calls waiting on them as gauges, tagged
+ * with the tenant.
+ */
+final class ZatcaRateLimitMeters {
+    static final String RATE_LIMIT = "zatca.client.rate.limit";
+    static final String RATE_WAITING = "zatca.client.rate.waiting";
+    static final String CONCURRENCY_LIMIT = "zatca.client.concurrency.limit";
+    static final String IN_FLIGHT = "zatca.client.concurrency.in.flight";
+    static final String QUEUED = "zatca.client.concurrency.queued";
+
+    ZatcaRateLimitMeters(ZatcaRateLimitInterceptor rateLimitInterceptor, Set<String> tenants,
+                         MeterRegistry meterRegistry) {
+        register(rateLimitInterceptor, ZatcaCredentialRegistry.DEFAULT_TENANT, meterRegistry);
+        for (String tenant : tenants) {
+            register(rateLimitInterceptor.forTenant(tenant), tenant, meterRegistry);
+        }
+    }
+
+    private static void register(ZatcaRateLimitInterceptor rateLimitInterceptor, String tenant,
+                                 MeterRegistry meterRegistry) {
+        rateLimitInterceptor.tokenBuckets().forEach((endpoint, tokenBucket) -> {
+            Gauge.builder(RATE_LIMIT, tokenBucket, TokenBucket::permitsPerSecond)
+                    .tag("tenant", tenant)
+                    .tag("endpoint", endpoint.name())
+                    .baseUnit("requests/s")
+                    .register(meterRegistry);
+            Gauge.builder(RATE_WAITING, tokenBucket.waiting(), Number::doubleValue)
+                    .tag("tenant", tenant)
+                    .tag("endpoint", endpoint.name())
+                    .register(meterRegistry);
+        });
+        AdaptiveConcurrencyLimiter concurrencyLimiter = rateLimitInterceptor.concurrencyLimiter();
+        Gauge.builder(CONCURRENCY_LIMIT, concurrencyLimiter, AdaptiveConcurrencyLimiter::limit)
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT, concurrencyLimiter, AdaptiveConcurrencyLimiter::inFlight)
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        for (AdaptiveConcurrencyLimiter.Lane lane : AdaptiveConcurrencyLimiter.Lane.values()) {
+            Gauge.builder(QUEUED, concurrencyLimiter, limiter -> limiter.queued(lane))
+                    .tag("tenant", tenant)
+                    .tag("lane", lane.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown without calling the gateway when a call could not get a permit from the client-side rate or
+ * concurrency limiter within {@code zatca.rate-limit.max-wait}. It carries no stack trace so that shedding
+ * load stays cheap, and it is not retried.
+ */
+public class ZatcaRateLimitedException extends ZatcaClientApiException {
+    private final ZatcaEndpoint endpoint;
+
+    public ZatcaRateLimitedException(ZatcaEndpoint endpoint) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Client Rate Limited", "", false);
+        this.endpoint = endpoint;
+    }
+
+    public ZatcaEndpoint getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ahmedmq.zatca.spring.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Intercepts calls made by the {@link AsyncZatcaService} to the gateway without blocking. Interceptors are applied
+ * in their {@link org.springframework.core.Ordered order}, the lowest order being the outermost, each time the call
+ * is subscribed to, and may subscribe to the execution any number of times.
+ * <p>
+ * The built-in {@link ZatcaCallInterceptor}s all have a reactive counterpart. Other interceptors only apply to
+ * asynchronous calls when they implement this interface, unless {@code zatca.async.blockingFallback} is set.
+ */
+public interface ZatcaReactiveCallInterceptor {
+
+    <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution);
+}
@@ -0,0 +1,11 @@
+package com.ahmedmq.zatca.spring.service;
+
+/**
+ * A {@link ZatcaCallInterceptor} that also intercepts the calls of the {@link AsyncZatcaService} without blocking.
+ * The reactive interceptor is a separate object sharing the state of this one, so that the blocking interceptor
+ * can be used without Reactor on the classpath.
+ */
+interface ZatcaReactiveInterceptorSource {
+
+    ZatcaReactiveCallInterceptor reactive();
+}
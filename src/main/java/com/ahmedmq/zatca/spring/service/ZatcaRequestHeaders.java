@@ -0,0 +1,50 @@
+package com.ahmedmq.zatca.spring.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Locale;
+
+final class ZatcaRequestHeaders {
+
+    private static final List<Locale.LanguageRange> ACCEPT_LANGUAGE = Locale.LanguageRange.parse("en");
+
+    private ZatcaRequestHeaders() {
+    }
+
+    static HttpHeaders withOtp(ZatcaEndpoint endpoint, String apiVersion, String otp) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("OTP", otp);
+        apply(endpoint, apiVersion, headers);
+        return headers;
+    }
+
+    /**
+     * Adds an OTP to a copy of prepared headers, such as the Basic auth headers of the CSID being renewed.
+     */
+    static HttpHeaders withOtp(HttpHeaders headers, String otp) {
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        copy.set("OTP", otp);
+        return copy;
+    }
+
+    static HttpHeaders withBasicAuth(ZatcaEndpoint endpoint, String apiVersion, String username, String password) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth(username, password);
+        apply(endpoint, apiVersion, headers);
+        return headers;
+    }
+
+    private static void apply(ZatcaEndpoint endpoint, String apiVersion, HttpHeaders headers) {
+        if (endpoint.acceptLanguage()) {
+            headers.setAcceptLanguage(ACCEPT_LANGUAGE);
+        }
+        headers.set("Accept-Version", apiVersion);
+        if (endpoint.clearanceStatus()) {
+            headers.set("Clearance-Status", "0");
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON);
+    }
+}
@@ -0,0 +1,167 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries calls failing with a transient error, that is a 5xx or 429 response or an I/O error such as a
+ * connection reset or timeout, using exponential backoff with full jitter. Rejections such as a 400 with
+ * validation errors are never retried, nor are requests streaming an invoice that cannot be read twice. Only
+ * reporting, clearance and compliance invoice checks are retried: the CSID calls spend a one-time password or
+ * the current certificate, and a failed attempt may already have done so. A 429 or 503 carrying a
+ * {@code Retry-After} header is retried after the delay the gateway asked for, or not at all when that exceeds
+ * {@code maxBackoff}. Retries are drawn from a {@link RetryBudget} so that an outage cannot multiply the load
+ * sent to the gateway. Each tenant has its own budget.
+ */
+class ZatcaRetryInterceptor implements ZatcaTenantScopedInterceptor, ZatcaReactiveInterceptorSource, Ordered {
+    static final int ORDER = 0;
+
+    private final ZatcaProperties.Retry retry;
+    private final RetryBudget retryBudget;
+    private final ConcurrentMap<String, ZatcaRetryInterceptor> tenants = new ConcurrentHashMap<>();
+
+    ZatcaRetryInterceptor(ZatcaProperties.Retry retry) {
+        this.retry = retry;
+        this.retryBudget = new RetryBudget(retry.budgetRatio(), retry.budgetMinRetriesPerSecond(), retry.budgetWindow());
+    }
+
+    @Override
+    public ZatcaRetryInterceptor forTenant(String tenant) {
+        if (ZatcaCredentialRegistry.DEFAULT_TENANT.equals(tenant)) {
+            return this;
+        }
+        return tenants.computeIfAbsent(tenant, name -> new ZatcaRetryInterceptor(retry));
+    }
+
+    @Override
+    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+        if (!isRetryable(endpoint)) {
+            return execution.get();
+        }
+        retryBudget.recordCall();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return execution.get();
+            } catch (RuntimeException e) {
+                long delay = retryDelay(request, e, attempt);
+                if (delay < 0) {
+                    throw e;
+                }
+                sleep(delay, e);
+            }
+        }
+    }
+
+    @Override
+    public ZatcaReactiveCallInterceptor reactive() {
+        return new Reactive();
+    }
+
+    /**
+     * The delay in milliseconds before retrying the failed attempt, or {@code -1} if it is not to be retried.
+     */
+    private long retryDelay(Object request, RuntimeException e, int attempt) {
+        Duration retryAfter = retryAfter(e);
+        if (attempt >= retry.maxAttempts() || !isRetryable(e) || !isRepeatable(request)
+                || (retryAfter != null && retryAfter.compareTo(retry.maxBackoff()) > 0)
+                || !retryBudget.tryAcquireRetry()) {
+            return -1;
+        }
+        return retryAfter != null ? retryAfter.toMillis() : backoff(attempt);
+    }
+
+    private static boolean isRetryable(ZatcaEndpoint endpoint) {
+        return switch (endpoint) {
+            case REPORTING, CLEARANCE, INVOICE_COMPLIANCE -> true;
+            case COMPLIANCE_CSID, PRODUCTION_CSID, RENEW_PRODUCTION_CSID -> false;
+        };
+    }
+
+    static boolean isRetryable(RuntimeException e) {
+        if (e instanceof ZatcaCircuitOpenException || e instanceof ZatcaRateLimitedException) {
+            return false;
+        }
+        if (e instanceof ZatcaClientApiException apiException) {
+            return apiException.getStatusCode().is5xxServerError()
+                    || apiException.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return e instanceof ResourceAccessException;
+    }
+
+    private static boolean isRepeatable(Object request) {
+        return !(request instanceof StreamingInvoiceRequest streamingRequest) || streamingRequest.invoice().isRepeatable();
+    }
+
+    /**
+     * The delay asked for by a throttled or unavailable gateway, or {@code null} to use the computed backoff.
+     */
+    private static Duration retryAfter(RuntimeException e) {
+        if (e instanceof ZatcaClientApiException apiException
+                && (apiException.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)
+                || apiException.getStatusCode().isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE))) {
+            return apiException.getRetryAfter();
+        }
+        return null;
+    }
+
+    private long backoff(int attempt) {
+        double ceiling = Math.min(retry.maxBackoff().toMillis(),
+                retry.initialBackoff().toMillis() * Math.pow(retry.multiplier(), attempt - 1));
+        return (long) ThreadLocalRandom.current().nextDouble(ceiling + 1);
+    }
+
+    private static void sleep(long millis, RuntimeException failure) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * Retries asynchronous calls the same way, waiting on a timer instead of a thread.
+     */
+    private final class Reactive implements ZatcaReactiveCallInterceptor, Ordered {
+
+        @Override
+        public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+            if (!isRetryable(endpoint)) {
+                return execution;
+            }
+            retryBudget.recordCall();
+            return attempt(request, execution, 1);
+        }
+
+        private <T> Mono<T> attempt(Object request, Mono<T> execution, int attempt) {
+            return execution.onErrorResume(RuntimeException.class, e -> {
+                long delay = retryDelay(request, e, attempt);
+                if (delay < 0) {
+                    return Mono.error(e);
+                }
+                return Mono.delay(Duration.ofMillis(delay))
+                        .then(Mono.defer(() -> attempt(request, execution, attempt + 1)));
+            });
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+    }
+}
@@ -3,6 +3,12 @@ package com.ahmedmq.zatca.spring.service;
 
 import com.ahmedmq.zatca.model.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+
 public interface ZatcaService {
 
     CSIDResponse complianceCSID(CSRRequest CSRRequest,
@@ -20,11 +26,122 @@ public interface ZatcaService {
                                 String secret,
                                 InvoiceRequest invoiceRequest);
 
+    /**
+     * Reports an invoice read from its source. The default implementation reads the whole invoice in memory.
+     */
+    default InvoiceResult reportInvoice(String certificate,
+                                        String secret,
+                                        StreamingInvoiceRequest invoiceRequest) {
+        return reportInvoice(certificate, secret, buffered(invoiceRequest));
+    }
+
     CSIDResponse renewProductionCSID(CSRRequest CSRRequest,
                                      String otp);
 
+    /**
+     * Renews the production CSID of an EGS unit registered with the {@link ZatcaCredentialRegistry}, through the
+     * base URL and connection pool of its tenant. The OTP is sent along with the unit's current production CSID
+     * as Basic auth. The registry is not updated.
+     */
+    default CSIDResponse renewProductionCSID(String egsUnit,
+                                             CSRRequest CSRRequest,
+                                             String otp) {
+        throw unsupportedEgsUnits();
+    }
+
     ClearedInvoiceResult clearedInvoice(String certificate,
                                           String secret,
                                           InvoiceRequest invoiceRequest);
 
+    /**
+     * Clears an invoice read from its source. The default implementation reads the whole invoice in memory.
+     */
+    default ClearedInvoiceResult clearedInvoice(String certificate,
+                                                String secret,
+                                                StreamingInvoiceRequest invoiceRequest) {
+        return clearedInvoice(certificate, secret, buffered(invoiceRequest));
+    }
+
+    /**
+     * Clears an invoice, writing the cleared invoice XML to the given sink as it is decoded from the response
+     * and returning the other fields of the result. The default implementation decodes the whole cleared invoice
+     * in memory before writing it.
+     */
+    default InvoiceResult clearedInvoice(String certificate,
+                                         String secret,
+                                         InvoiceRequest invoiceRequest,
+                                         InvoiceSink clearedInvoice) {
+        return written(clearedInvoice(certificate, secret, invoiceRequest), clearedInvoice);
+    }
+
+    default InvoiceResult clearedInvoice(String certificate,
+                                         String secret,
+                                         StreamingInvoiceRequest invoiceRequest,
+                                         InvoiceSink clearedInvoice) {
+        return written(clearedInvoice(certificate, secret, invoiceRequest), clearedInvoice);
+    }
+
+    /**
+     * Reports an invoice of an EGS unit registered with the {@link ZatcaCredentialRegistry}, through the base
+     * URL and connection pool of its tenant.
+     */
+    default InvoiceResult reportInvoice(String egsUnit,
+                                        InvoiceRequest invoiceRequest) {
+        throw unsupportedEgsUnits();
+    }
+
+    default InvoiceResult reportInvoice(String egsUnit,
+                                        StreamingInvoiceRequest invoiceRequest) {
+        throw unsupportedEgsUnits();
+    }
+
+    /**
+     * Clears an invoice of an EGS unit registered with the {@link ZatcaCredentialRegistry}, through the base
+     * URL and connection pool of its tenant.
+     */
+    default ClearedInvoiceResult clearedInvoice(String egsUnit,
+                                                InvoiceRequest invoiceRequest) {
+        throw unsupportedEgsUnits();
+    }
+
+    default ClearedInvoiceResult clearedInvoice(String egsUnit,
+                                                StreamingInvoiceRequest invoiceRequest) {
+        throw unsupportedEgsUnits();
+    }
+
+    default InvoiceResult clearedInvoice(String egsUnit,
+                                         InvoiceRequest invoiceRequest,
+                                         InvoiceSink clearedInvoice) {
+        return written(clearedInvoice(egsUnit, invoiceRequest), clearedInvoice);
+    }
+
+    default InvoiceResult clearedInvoice(String egsUnit,
+                                         StreamingInvoiceRequest invoiceRequest,
+                                         InvoiceSink clearedInvoice) {
+        return written(clearedInvoice(egsUnit, invoiceRequest), clearedInvoice);
+    }
+
+    private UnsupportedOperationException unsupportedEgsUnits() {
+        return new UnsupportedOperationException(getClass().getName() + " does not call on behalf of EGS units");
+    }
+
+    private static InvoiceRequest buffered(StreamingInvoiceRequest invoiceRequest) {
+        try (InputStream invoice = invoiceRequest.invoice().openStream()) {
+            return new InvoiceRequest(invoiceRequest.invoiceHash(), invoiceRequest.uuid(),
+                    Base64.getEncoder().encodeToString(invoice.readAllBytes()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the invoice " + invoiceRequest.uuid(), e);
+        }
+    }
+
+    private static InvoiceResult written(ClearedInvoiceResult result, InvoiceSink clearedInvoice) {
+        if (result.clearedInvoice() != null) {
+            try (OutputStream out = clearedInvoice.openStream()) {
+                out.write(Base64.getDecoder().decode(result.clearedInvoice()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write the cleared invoice", e);
+            }
+        }
+        return new InvoiceResult(result.invoiceHash(), result.status(), result.warnings(), result.errors());
+    }
 }
@@ -0,0 +1,206 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Suppresses duplicate submissions of an invoice, identified by its UUID and hash, to the reporting and clearance
+ * endpoints. The result of an accepted invoice is kept for the TTL and returned to later submissions of it
+ * without calling the gateway, and submissions made while the invoice is in flight wait for the outcome of the
+ * first and share it. Rejections and failures are not kept, so that a corrected or retried invoice is submitted
+ * again. The results kept are bounded by evicting the oldest, which, since they all live for the TTL, are also
+ * the first to expire.
+ */
+class ZatcaSubmissionDeduplicator {
+    private static final Log logger = LogFactory.getLog(ZatcaSubmissionDeduplicator.class);
+
+    private final Duration ttl;
+    private final int maxEntries;
+    private final ZatcaDeduplicationStore store;
+    private final Clock clock;
+    private final Map<Key, AcceptedSubmission> accepted = new ConcurrentHashMap<>();
+    private final Queue<AcceptedSubmission> acceptedOrder = new ConcurrentLinkedQueue<>();
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    ZatcaSubmissionDeduplicator(Duration ttl, int maxEntries, ZatcaDeduplicationStore store, Clock clock) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.store = store;
+        this.clock = clock;
+        if (store != null) {
+            Instant now = clock.instant();
+            for (AcceptedSubmission submission : store.load()) {
+                if (!isExpired(submission, now)) {
+                    remember(submission, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the invoice accepted before, or of the submission of the invoice in flight, or else
+     * makes the submission.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T deduplicate(ZatcaEndpoint endpoint, String uuid, String invoiceHash, Supplier<T> submission) {
+        if (uuid == null || invoiceHash == null) {
+            return submission.get();
+        }
+        Key key = new Key(endpoint, uuid, invoiceHash);
+        Object result = acceptedResult(key);
+        if (result != null) {
+            return (T) result;
+        }
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> first = inFlight.putIfAbsent(key, call);
+        if (first != null) {
+            return (T) await(first);
+        }
+        try {
+            // accepted between the lookup and claiming the call
+            result = acceptedResult(key);
+            if (result == null) {
+                result = submission.get();
+                accept(key, result);
+            }
+            call.complete(result);
+            return (T) result;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            if (!call.isDone()) {
+                call.completeExceptionally(new IllegalStateException("The submission of invoice " + uuid + " failed"));
+            }
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Does the same for a submission made without blocking, completing with the result instead of returning it.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> deduplicateAsync(ZatcaEndpoint endpoint, String uuid, String invoiceHash,
+                                              Supplier<CompletableFuture<T>> submission) {
+        if (uuid == null || invoiceHash == null) {
+            return submission.get();
+        }
+        Key key = new Key(endpoint, uuid, invoiceHash);
+        Object result = acceptedResult(key);
+        if (result != null) {
+            return CompletableFuture.completedFuture((T) result);
+        }
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> first = inFlight.putIfAbsent(key, call);
+        if (first != null) {
+            return (CompletableFuture<T>) first;
+        }
+        // accepted between the lookup and claiming the call
+        Object accepted = acceptedResult(key);
+        CompletableFuture<T> made;
+        try {
+            made = accepted != null ? CompletableFuture.completedFuture((T) accepted) : submission.get();
+        } catch (RuntimeException e) {
+            made = CompletableFuture.failedFuture(e);
+        }
+        made.whenComplete((value, failure) -> {
+            if (failure == null) {
+                if (accepted == null) {
+                    accept(key, value);
+                }
+                call.complete(value);
+            } else {
+                call.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+            inFlight.remove(key, call);
+        });
+        return (CompletableFuture<T>) call;
+    }
+
+    private static Object await(CompletableFuture<Object> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Object acceptedResult(Key key) {
+        AcceptedSubmission submission = accepted.get(key);
+        if (submission == null) {
+            return null;
+        }
+        if (isExpired(submission, clock.instant())) {
+            accepted.remove(key, submission);
+            return null;
+        }
+        return submission.endpoint() == ZatcaEndpoint.REPORTING ? submission.invoiceResult()
+                : submission.clearedInvoiceResult();
+    }
+
+    private void accept(Key key, Object result) {
+        AcceptedSubmission submission = null;
+        Instant now = clock.instant();
+        if (result instanceof InvoiceResult invoiceResult && "REPORTED".equals(invoiceResult.status())) {
+            submission = new AcceptedSubmission(key.endpoint(), key.uuid(), key.invoiceHash(), invoiceResult, null, now);
+        } else if (result instanceof ClearedInvoiceResult clearedInvoiceResult
+                && "CLEARED".equals(clearedInvoiceResult.status())) {
+            submission = new AcceptedSubmission(key.endpoint(), key.uuid(), key.invoiceHash(), null,
+                    clearedInvoiceResult, now);
+        }
+        if (submission == null) {
+            return;
+        }
+        remember(submission, now);
+        if (store != null) {
+            try {
+                store.save(submission);
+            } catch (RuntimeException e) {
+                // the invoice was accepted whether or not it could be persisted
+                logger.warn("Failed to persist the accepted submission of invoice " + key.uuid(), e);
+            }
+        }
+    }
+
+    private void remember(AcceptedSubmission submission, Instant now) {
+        accepted.put(key(submission), submission);
+        acceptedOrder.add(submission);
+        for (AcceptedSubmission oldest; (oldest = acceptedOrder.peek()) != null
+                && (accepted.size() > maxEntries || isExpired(oldest, now)); ) {
+            if (acceptedOrder.remove(oldest)) {
+                accepted.remove(key(oldest), oldest);
+            }
+        }
+    }
+
+    private boolean isExpired(AcceptedSubmission submission, Instant now) {
+        return !now.isBefore(submission.acceptedAt().plus(ttl));
+    }
+
+    int size() {
+        return accepted.size();
+    }
+
+    private static Key key(AcceptedSubmission submission) {
+        return new Key(submission.endpoint(), submission.uuid(), submission.invoiceHash());
+    }
+
+    private record Key(ZatcaEndpoint endpoint, String uuid, String invoiceHash) {
+    }
+}
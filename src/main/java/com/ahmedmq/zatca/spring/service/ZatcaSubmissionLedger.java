@@ -0,0 +1,36 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A record of every invoice reported, cleared or checked for compliance, with what the gateway said about it,
+ * for reconciliation and audits. Submissions rejected by preflight validation never reached the gateway and are
+ * not recorded.
+ */
+public interface ZatcaSubmissionLedger {
+
+    /**
+     * Returns the submissions of the invoice with the UUID, oldest first.
+     */
+    List<SubmissionRecord> findByUuid(String uuid);
+
+    /**
+     * Returns the submissions of the invoice with the hash, oldest first.
+     */
+    List<SubmissionRecord> findByInvoiceHash(String invoiceHash);
+
+    /**
+     * Passes the submissions made from {@code from}, inclusive, to {@code to}, exclusive, to the action in the
+     * order they completed.
+     */
+    void forEach(Instant from, Instant to, Consumer<SubmissionRecord> action);
+
+    /**
+     * Writes the submissions made from {@code from}, inclusive, to {@code to}, exclusive, to the stream as JSON
+     * lines, one record per line. The stream is left open.
+     */
+    void export(Instant from, Instant to, OutputStream out);
+}
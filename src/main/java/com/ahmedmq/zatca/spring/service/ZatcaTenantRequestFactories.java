@@ -0,0 +1,44 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The connection pools of the tenants configuring one of their own, closed with the application context like
+ * the shared pool. Only the transports sending through a request factory use them, the others keeping a client
+ * per {@link ZatcaProperties.Http}.
+ */
+class ZatcaTenantRequestFactories implements DisposableBean {
+    private final Map<String, ClientHttpRequestFactory> requestFactories = new HashMap<>();
+
+    ZatcaTenantRequestFactories(Map<String, ZatcaProperties.Tenant> tenants, ZatcaProperties.Transport transport) {
+        if (tenants != null && (transport == ZatcaProperties.Transport.REST_TEMPLATE
+                || transport == ZatcaProperties.Transport.REST_CLIENT)) {
+            tenants.forEach((name, tenant) -> {
+                if (tenant.http() != null) {
+                    requestFactories.put(name, ZatcaClientHttpRequestFactories.create(tenant.http()));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the connection pool of the tenant, or {@code null} when it uses the shared pool.
+     */
+    ClientHttpRequestFactory get(String tenant) {
+        return requestFactories.get(tenant);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (ClientHttpRequestFactory requestFactory : requestFactories.values()) {
+            if (requestFactory instanceof DisposableBean disposable) {
+                disposable.destroy();
+            }
+        }
+    }
+}
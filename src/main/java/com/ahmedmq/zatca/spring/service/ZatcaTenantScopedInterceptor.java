@@ -0,0 +1,28 @@
+package com.ahmedmq.zatca.spring.service;
+
+import java.util.List;
+
+/**
+ * A {@link ZatcaCallInterceptor} whose state tracks the gateway it calls, such as a circuit breaker, a rate limit
+ * or a retry budget. Each tenant gets its own copy, so that an outage or a burst of calls of one tenant cannot
+ * trip, drain or slow down the others.
+ */
+interface ZatcaTenantScopedInterceptor extends ZatcaCallInterceptor {
+
+    /**
+     * Returns the interceptor of the tenant, created on first use with the same settings. The default tenant is
+     * served by this interceptor.
+     */
+    ZatcaCallInterceptor forTenant(String tenant);
+
+    /**
+     * Returns the interceptor of the tenant of each interceptor that keeps its state per tenant, and the others
+     * as they are.
+     */
+    static List<ZatcaCallInterceptor> forTenant(List<ZatcaCallInterceptor> interceptors, String tenant) {
+        return interceptors.stream()
+                .map(interceptor -> interceptor instanceof ZatcaTenantScopedInterceptor scoped
+                        ? scoped.forTenant(tenant) : interceptor)
+                .toList();
+    }
+}
@@ -0,0 +1,29 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Carries a call to a gateway endpoint over an HTTP client. The body is a model object or a
+ * {@link StreamingInvoiceRequest}, written as JSON. A streamed body may only be sent again by the client when
+ * its invoice is repeatable.
+ * <p>
+ * Every transport fails the same way, so that the interceptors do not depend on the client carrying the call:
+ * a response other than 2xx is thrown as a {@link ZatcaClientApiException} and an I/O error as a
+ * {@link ResourceAccessException}.
+ */
+public interface ZatcaTransport {
+
+    <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType);
+
+    /**
+     * Writes the cleared invoice of the response to the sink and returns the other fields. Once the sink has
+     * been opened a failure is thrown as a plain {@link RestClientException}, so that it is not retried into a
+     * sink already holding part of the invoice.
+     */
+    InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice);
+}
@@ -0,0 +1,15 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+/**
+ * Creates the {@link ZatcaTransport} of the default tenant and of each configured tenant. The HTTP settings and
+ * request factory are the tenant's own when it configures a connection pool, the shared ones otherwise; a
+ * transport not built on a {@link ClientHttpRequestFactory} may ignore the latter.
+ */
+@FunctionalInterface
+public interface ZatcaTransportFactory {
+
+    ZatcaTransport create(String baseUrl, ZatcaProperties.Http http, ClientHttpRequestFactory requestFactory);
+}
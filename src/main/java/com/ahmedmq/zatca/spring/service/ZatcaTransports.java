@@ -0,0 +1,124 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * What the {@link ZatcaTransport}s have in common: the JSON configuration, the body of a streamed invoice and
+ * the exceptions a response or an I/O error is thrown as.
+ */
+final class ZatcaTransports {
+
+    private ZatcaTransports() {
+    }
+
+    /**
+     * The object mapper of the message converters, so that a transport writes JSON with the same configuration
+     * as the rest of the application.
+     */
+    static ObjectMapper objectMapper(List<HttpMessageConverter<?>> messageConverters) {
+        return messageConverters.stream()
+                .filter(MappingJackson2HttpMessageConverter.class::isInstance)
+                .map(converter -> ((MappingJackson2HttpMessageConverter) converter).getObjectMapper())
+                .findFirst()
+                .orElseGet(() -> Jackson2ObjectMapperBuilder.json().build());
+    }
+
+    /**
+     * Writes the request straight to the connection. Unlike the JSON message converter, which claims any body
+     * can be written twice, the body is only marked repeatable when its invoice can be read again, so that the
+     * client does not replay a request whose invoice stream has been consumed.
+     */
+    static void writeStreamingBody(ClientHttpRequest request, ObjectMapper objectMapper,
+                                   StreamingInvoiceRequest invoiceRequest) throws IOException {
+        if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+            streamingRequest.setBody(new StreamingHttpOutputMessage.Body() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    objectMapper.writeValue(StreamUtils.nonClosing(outputStream), invoiceRequest);
+                }
+
+                @Override
+                public boolean repeatable() {
+                    return invoiceRequest.invoice().isRepeatable();
+                }
+            });
+        } else {
+            objectMapper.writeValue(StreamUtils.nonClosing(request.getBody()), invoiceRequest);
+        }
+    }
+
+    /**
+     * Reads the response of a transport not built on the message converters into the response type, throwing
+     * anything but a 2xx response as a {@link ZatcaClientApiException}.
+     */
+    static <T> T read(ZatcaEndpoint endpoint, HttpStatusCode statusCode, HttpHeaders headers, InputStream body,
+                      ObjectMapper objectMapper, ZatcaProperties.Errors errors, Class<T> responseType) throws IOException {
+        if (!statusCode.is2xxSuccessful()) {
+            throw ZatcaErrorResponses.read(endpoint, statusCode, statusText(statusCode), headers, body, errors);
+        }
+        try {
+            return objectMapper.readValue(body, responseType);
+        } catch (JsonProcessingException e) {
+            throw new RestClientException("Error while extracting response for type [" + responseType + "]", e);
+        }
+    }
+
+    static InvoiceResult read(ZatcaEndpoint endpoint, HttpStatusCode statusCode, HttpHeaders headers,
+                              InputStream body, ObjectMapper objectMapper, ZatcaProperties.Errors errors,
+                              InvoiceSink clearedInvoice) throws IOException {
+        if (!statusCode.is2xxSuccessful()) {
+            throw ZatcaErrorResponses.read(endpoint, statusCode, statusText(statusCode), headers, body, errors);
+        }
+        return ClearedInvoiceReader.extract(objectMapper, body, clearedInvoice);
+    }
+
+    /**
+     * The reason phrase of the status, which HTTP/2 and the reactive client do not carry.
+     */
+    static String statusText(HttpStatusCode statusCode) {
+        HttpStatus status = HttpStatus.resolve(statusCode.value());
+        return status != null ? status.getReasonPhrase() : "";
+    }
+
+    static ResourceAccessException ioError(ZatcaEndpoint endpoint, String url, IOException e) {
+        return new ResourceAccessException("I/O error on " + endpoint.method() + " request for \"" + url + "\": "
+                + e.getMessage(), e);
+    }
+
+    static void notify(List<ZatcaExchangeObserver> observers, ZatcaEndpoint endpoint, HttpStatusCode statusCode,
+                       long requestBytes, long responseBytes) {
+        for (ZatcaExchangeObserver observer : observers) {
+            observer.onExchange(endpoint, statusCode, requestBytes, responseBytes);
+        }
+    }
+
+    /**
+     * Reads the status, headers and body of a response.
+     */
+    @FunctionalInterface
+    interface ResponseReader<T> {
+
+        T read(HttpStatusCode statusCode, HttpHeaders headers, InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ahmedmq.zatca.qr;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QrCodeReaderTest {
+
+    QrCodeReader qrCodeReader = new QrCodeReader(4);
+
+    @Test
+    void readsTheFieldsInPlace() {
+        qrCodeReader.reset(QrCodeWriterTest.ZATCA_EXAMPLE);
+
+        assertThat(qrCodeReader.next()).isTrue();
+        assertThat(qrCodeReader.tag()).isEqualTo(QrCodeTag.SELLER_NAME.tag());
+        assertThat(qrCodeReader.valueEquals("Bobs Records")).isTrue();
+        assertThat(qrCodeReader.valueEquals("Bobs Record")).isFalse();
+        assertThat(qrCodeReader.valueEquals("Bobs Records!")).isFalse();
+        assertThat(qrCodeReader.next()).isTrue();
+        assertThat(qrCodeReader.valueAsString()).isEqualTo("310122393500003");
+        assertThat(qrCodeReader.next()).isTrue();
+        assertThat(qrCodeReader.next()).isTrue();
+        assertThat(qrCodeReader.next()).isTrue();
+        assertThat(qrCodeReader.tag()).isEqualTo(QrCodeTag.VAT_TOTAL.tag());
+        assertThat(new String(qrCodeReader.buffer(), qrCodeReader.valueOffset(), qrCodeReader.valueLength()))
+                .isEqualTo("150.00");
+        assertThat(qrCodeReader.next()).isFalse();
+    }
+
+    @Test
+    void comparesNonAsciiValues() {
+        String sellerName = "شركة التوريد 😀";
+        qrCodeReader.reset(new QrCodeWriter().text(QrCodeTag.SELLER_NAME, sellerName).toBase64());
+
+        qrCodeReader.next();
+
+        assertThat(qrCodeReader.valueEquals(sellerName)).isTrue();
+        assertThat(qrCodeReader.valueEquals("شركة التوريد 😁")).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidBase64() {
+        assertThatThrownBy(() -> qrCodeReader.reset("AQx*")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> qrCodeReader.reset("AQx")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedFields() {
+        qrCodeReader.reset(new byte[]{1, 5, 'a', 'b'}, 0, 4);
+
+        assertThatThrownBy(qrCodeReader::next)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("QR code field at offset 0 is truncated");
+    }
+}
@@ -0,0 +1,86 @@
+package com.ahmedmq.zatca.qr;
+
+import com.ahmedmq.zatca.model.Error;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QrCodeValidatorTest {
+
+    static final String INVOICE_HASH = "NWZlY2ViNjZmZmM4NmYzOGQ5NTI3ODZjNmQ2OTZjNzljMmRiYzIzOWRkNGU5MWI0NjcyOWQ3M2EyN2ZiNTdlOQ==";
+
+    static final String HASH = "3Qx3ZLk4Xf3PKmE+gQp0oNi4qCnG5EjWQwDCzkFYXfI=";
+
+    @Test
+    void acceptsACompleteSimplifiedInvoiceQrCode() {
+        String qrCode = simplified().toBase64();
+
+        assertThat(QrCodeValidator.validate(qrCode, true)).isEmpty();
+        assertThat(QrCodeValidator.validate(qrCode, true, HASH)).isEmpty();
+    }
+
+    @Test
+    void reportsMissingAndMalformedFields() {
+        String qrCode = new QrCodeWriter()
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .text(QrCodeTag.VAT_NUMBER, "31012239350000")
+                .text(QrCodeTag.TIMESTAMP, "2022-04-25 15:30:00")
+                .text(QrCodeTag.INVOICE_TOTAL, "1,000.00")
+                .amount(QrCodeTag.VAT_TOTAL, 15000, 2)
+                .text(QrCodeTag.INVOICE_HASH, INVOICE_HASH)
+                .text(QrCodeTag.SIGNATURE, "signature")
+                .bytes(QrCodeTag.PUBLIC_KEY, new byte[]{0x30, 0x56})
+                .toBase64();
+
+        assertThat(QrCodeValidator.validate(qrCode, true)).extracting(Error::code).containsExactly(
+                "QR-INVALID-VAT-NUMBER", "QR-INVALID-TIMESTAMP", "QR-INVALID-INVOICE-TOTAL",
+                "QR-INVALID-INVOICE-HASH", "QR-MISSING-TAG");
+        assertThat(QrCodeValidator.validate(qrCode, false)).extracting(Error::code).doesNotContain("QR-MISSING-TAG");
+    }
+
+    @Test
+    void reportsAQrCodeOfAnotherInvoice() {
+        List<Error> errors = QrCodeValidator.validate(simplified().toBase64(), true,
+                "x4Rk0ozQp0zsaB1LqxR7ZxVfz1e2a0E5cQ4Vh1nYk9Q=");
+
+        assertThat(errors).containsExactly(new Error("QR_CODE", "QR-INVALID-INVOICE-HASH",
+                "INVOICE_HASH does not match the invoice"));
+    }
+
+    @Test
+    void reportsDuplicateAndOutOfOrderTags() {
+        String qrCode = simplified()
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .toBase64();
+
+        assertThat(QrCodeValidator.validate(qrCode, true)).extracting(Error::code).containsExactly("QR-DUPLICATE-TAG");
+        assertThat(QrCodeValidator.validate(new QrCodeWriter()
+                .text(QrCodeTag.VAT_NUMBER, "310122393500003")
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .toBase64(), false)).extracting(Error::code).startsWith("QR-TAG-ORDER");
+    }
+
+    @Test
+    void reportsQrCodesThatAreNotTlv() {
+        assertThat(QrCodeValidator.validate("not base64", true)).extracting(Error::code)
+                .containsExactly("QR-INVALID-BASE64");
+        assertThat(QrCodeValidator.validate("AQx=", true)).extracting(Error::code)
+                .startsWith("QR-INVALID-TLV");
+    }
+
+    static QrCodeWriter simplified() {
+        return new QrCodeWriter()
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .text(QrCodeTag.VAT_NUMBER, "310122393500003")
+                .timestamp(QrCodeTag.TIMESTAMP, LocalDateTime.of(2022, 4, 25, 15, 30))
+                .amount(QrCodeTag.INVOICE_TOTAL, 100000, 2)
+                .amount(QrCodeTag.VAT_TOTAL, 15000, 2)
+                .text(QrCodeTag.INVOICE_HASH, HASH)
+                .text(QrCodeTag.SIGNATURE, "MEUCIQD7pY2uHyV0ht2Pdt9SEtBq1dN2J3cHNKiuR9/aBdO8rQIgIGYzdg==")
+                .bytes(QrCodeTag.PUBLIC_KEY, new byte[88])
+                .bytes(QrCodeTag.CERTIFICATE_SIGNATURE, new byte[71]);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ahmedmq.zatca.qr;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QrCodeWriterTest {
+
+    static final String ZATCA_EXAMPLE = "AQxCb2JzIFJlY29yZHMCDzMxMDEyMjM5MzUwMDAwMwMUMjAyMi0wNC0yNVQxNTozMDowMFoEBzEwMDAuMDAFBjE1MC4wMA==";
+
+    QrCodeWriter qrCodeWriter = new QrCodeWriter(8);
+
+    @Test
+    void encodesTheZatcaExample() {
+        qrCodeWriter.reset()
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .text(QrCodeTag.VAT_NUMBER, "310122393500003")
+                .text(QrCodeTag.TIMESTAMP, "2022-04-25T15:30:00Z")
+                .amount(QrCodeTag.INVOICE_TOTAL, 100000, 2)
+                .amount(QrCodeTag.VAT_TOTAL, new BigDecimal("150.00"));
+
+        assertThat(qrCodeWriter.toBase64()).isEqualTo(ZATCA_EXAMPLE);
+        byte[] base64 = new byte[qrCodeWriter.base64Length() + 2];
+        assertThat(qrCodeWriter.toBase64(base64, 2)).isEqualTo(ZATCA_EXAMPLE.length());
+        assertThat(new String(base64, 2, ZATCA_EXAMPLE.length())).isEqualTo(ZATCA_EXAMPLE);
+    }
+
+    @Test
+    void encodesTextAsUtf8() {
+        String sellerName = "شركة التوريد 😀";
+
+        qrCodeWriter.reset().text(QrCodeTag.SELLER_NAME, sellerName);
+
+        byte[] expected = sellerName.getBytes(StandardCharsets.UTF_8);
+        byte[] tlv = new byte[qrCodeWriter.length()];
+        qrCodeWriter.copyTo(tlv, 0);
+        assertThat(tlv[0]).isEqualTo((byte) 1);
+        assertThat(tlv[1] & 0xFF).isEqualTo(expected.length);
+        assertThat(Base64.getDecoder().decode(qrCodeWriter.toBase64())).isEqualTo(tlv);
+        assertThat(new String(tlv, 2, expected.length, StandardCharsets.UTF_8)).isEqualTo(sellerName);
+    }
+
+    @Test
+    void writesAmountsAndTimestampsDigitByDigit() {
+        assertThat(value(qrCodeWriter.reset().amount(QrCodeTag.INVOICE_TOTAL, 460, 2))).isEqualTo("4.60");
+        assertThat(value(qrCodeWriter.reset().amount(QrCodeTag.INVOICE_TOTAL, 5, 2))).isEqualTo("0.05");
+        assertThat(value(qrCodeWriter.reset().amount(QrCodeTag.INVOICE_TOTAL, 0, 0))).isEqualTo("0");
+        assertThat(value(qrCodeWriter.reset().amount(QrCodeTag.INVOICE_TOTAL, -1234, 1))).isEqualTo("-123.4");
+        assertThat(value(qrCodeWriter.reset().amount(QrCodeTag.INVOICE_TOTAL, new BigDecimal("1E+3")))).isEqualTo("1000");
+        assertThat(value(qrCodeWriter.reset().timestamp(QrCodeTag.TIMESTAMP, LocalDateTime.of(2022, 8, 7, 5, 1, 9))))
+                .isEqualTo("2022-08-07T05:01:09");
+    }
+
+    @Test
+    void rejectsValuesLongerThan255Bytes() {
+        qrCodeWriter.reset().text(QrCodeTag.SELLER_NAME, "seller");
+
+        assertThatThrownBy(() -> qrCodeWriter.bytes(QrCodeTag.PUBLIC_KEY, new byte[256]))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("QR code value of PUBLIC_KEY is longer than 255 bytes");
+        assertThat(qrCodeWriter.length()).isEqualTo(8);
+    }
+
+    private static String value(QrCodeWriter qrCodeWriter) {
+        QrCodeReader qrCodeReader = new QrCodeReader().reset(qrCodeWriter.toBase64());
+        qrCodeReader.next();
+        return qrCodeReader.valueAsString();
+    }
+}
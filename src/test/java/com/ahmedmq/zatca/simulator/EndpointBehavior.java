@@ -0,0 +1,45 @@
+package com.ahmedmq.zatca.simulator;
+
+/**
+ * How the simulator answers calls to one endpoint. Rates are probabilities between 0 and 1 drawn for every
+ * call that is not throttled.
+ *
+ * @param latency              distribution of the time taken to answer
+ * @param warningRate          share of accepted invoices answered with a 202 and warnings
+ * @param rejectionRate        share of calls rejected with a 400 and validation errors
+ * @param serverErrorRate      share of calls failing with a 500
+ * @param maxRequestsPerSecond calls accepted per second before answering 429, or 0 for no limit
+ */
+public record EndpointBehavior(LatencyDistribution latency,
+                               double warningRate,
+                               double rejectionRate,
+                               double serverErrorRate,
+                               int maxRequestsPerSecond) {
+
+    /**
+     * Answers every call immediately and successfully.
+     */
+    public static EndpointBehavior healthy() {
+        return new EndpointBehavior(LatencyDistribution.none(), 0, 0, 0, 0);
+    }
+
+    public EndpointBehavior withLatency(LatencyDistribution latency) {
+        return new EndpointBehavior(latency, warningRate, rejectionRate, serverErrorRate, maxRequestsPerSecond);
+    }
+
+    public EndpointBehavior withWarningRate(double warningRate) {
+        return new EndpointBehavior(latency, warningRate, rejectionRate, serverErrorRate, maxRequestsPerSecond);
+    }
+
+    public EndpointBehavior withRejectionRate(double rejectionRate) {
+        return new EndpointBehavior(latency, warningRate, rejectionRate, serverErrorRate, maxRequestsPerSecond);
+    }
+
+    public EndpointBehavior withServerErrorRate(double serverErrorRate) {
+        return new EndpointBehavior(latency, warningRate, rejectionRate, serverErrorRate, maxRequestsPerSecond);
+    }
+
+    public EndpointBehavior withMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        return new EndpointBehavior(latency, warningRate, rejectionRate, serverErrorRate, maxRequestsPerSecond);
+    }
+}
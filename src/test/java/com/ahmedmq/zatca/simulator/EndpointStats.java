@@ -0,0 +1,22 @@
+package com.ahmedmq.zatca.simulator;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Calls answered by the simulator for one endpoint since it started or was last reset.
+ *
+ * @param requests           number of calls answered
+ * @param responsesByStatus  number of calls answered with each HTTP status
+ * @param requestsPerSecond  calls answered per second between the first and the last call
+ * @param p50                median time taken to answer, including the simulated latency
+ * @param p99                99th percentile of the time taken to answer
+ * @param max                longest time taken to answer
+ */
+public record EndpointStats(long requests,
+                            Map<Integer, Long> responsesByStatus,
+                            double requestsPerSecond,
+                            Duration p50,
+                            Duration p99,
+                            Duration max) {
+}
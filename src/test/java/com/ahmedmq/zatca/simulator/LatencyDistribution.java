@@ -0,0 +1,41 @@
+package com.ahmedmq.zatca.simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribution the simulated processing time of a gateway call is drawn from.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * Returns the latency of the next call, in nanoseconds.
+     */
+    long sampleNanos(Random random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long rangeNanos = max.toNanos() - minNanos;
+        return random -> minNanos + (long) (random.nextDouble() * rangeNanos);
+    }
+
+    /**
+     * A log-normal distribution, the long tailed shape gateway latencies usually have, fitted to the given
+     * median and 99th percentile.
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        double sigma = (Math.log(p99.toNanos()) - mu) / 2.3263478740408408;
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+}
@@ -0,0 +1,46 @@
+package com.ahmedmq.zatca.simulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies with buckets growing by 5%, so percentiles are accurate to within 5% from
+ * a microsecond to over a minute while recording costs a single atomic increment.
+ */
+final class LatencyHistogram {
+    private static final double GROWTH = 1.05;
+    private static final int BUCKETS = 400;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long micros = Math.max(nanos / 1_000, 1);
+        int bucket = (int) Math.min(Math.log(micros) / Math.log(GROWTH), BUCKETS - 1);
+        counts.incrementAndGet(bucket);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the upper bound, in nanoseconds, of the bucket holding the given quantile.
+     */
+    long quantileNanos(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min((long) (Math.pow(GROWTH, i + 1) * 1_000), max.get());
+            }
+        }
+        return 0;
+    }
+
+    long maxNanos() {
+        return max.get();
+    }
+}
@@ -0,0 +1,341 @@
+package com.ahmedmq.zatca.simulator;
+
+import com.ahmedmq.zatca.spring.service.ZatcaEndpoint;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for the ZATCA gateway implementing the six endpoints used by the starter, for load
+ * testing an integration without network access. Each endpoint answers with bodies shaped like the
+ * gateway's, after a latency drawn from its {@link EndpointBehavior}, and may be configured to return
+ * warnings, rejections, server errors and 429s. Calls are answered on virtual threads when the JVM supports
+ * them, and counted per endpoint in {@link #stats(ZatcaEndpoint)}.
+ *
+ * <pre>
+ * try (ZatcaGatewaySimulator simulator = ZatcaGatewaySimulator.builder()
+ *         .defaults(EndpointBehavior.healthy().withLatency(LatencyDistribution.logNormal(ofMillis(80), ofMillis(400))))
+ *         .endpoint(ZatcaEndpoint.CLEARANCE, EndpointBehavior.healthy().withRejectionRate(0.02))
+ *         .start()) {
+ *     // point zatca.base-url at simulator.baseUrl()
+ * }
+ * </pre>
+ */
+public final class ZatcaGatewaySimulator implements AutoCloseable {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte[] EMPTY_JSON = "{}".getBytes();
+
+    private final HttpServer server;
+    private final Map<ZatcaEndpoint, EndpointState> endpoints = new EnumMap<>(ZatcaEndpoint.class);
+    private final AtomicLong requestIds = new AtomicLong(1234567890123L);
+
+    private ZatcaGatewaySimulator(Builder builder) throws IOException {
+        for (ZatcaEndpoint endpoint : ZatcaEndpoint.values()) {
+            endpoints.put(endpoint, new EndpointState(builder.behaviors.getOrDefault(endpoint, builder.defaults)));
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("zatca-simulator-");
+        try {
+            executor.setVirtualThreads(true);
+        } catch (UnsupportedOperationException e) {
+            // virtual threads need JDK 21, fall back to platform threads
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Base URL to configure as {@code zatca.base-url}.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public EndpointStats stats(ZatcaEndpoint endpoint) {
+        return endpoints.get(endpoint).stats();
+    }
+
+    /**
+     * The headers of the last call to an endpoint, looked up ignoring case, or an empty map if it was not called.
+     */
+    public Map<String, List<String>> lastRequestHeaders(ZatcaEndpoint endpoint) {
+        return endpoints.get(endpoint).lastRequestHeaders;
+    }
+
+    /**
+     * Clears the stats of every endpoint, for example once a load test has warmed up.
+     */
+    public void reset() {
+        endpoints.values().forEach(EndpointState::reset);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            byte[] body;
+            try (InputStream requestBody = exchange.getRequestBody()) {
+                body = requestBody.readAllBytes();
+            }
+            ZatcaEndpoint endpoint = ZatcaEndpoint.resolve(HttpMethod.valueOf(exchange.getRequestMethod()),
+                    exchange.getRequestURI().getPath());
+            if (endpoint == null) {
+                respond(exchange, 404, EMPTY_JSON);
+                return;
+            }
+            EndpointState state = endpoints.get(endpoint);
+            Map<String, List<String>> requestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            requestHeaders.putAll(exchange.getRequestHeaders());
+            state.lastRequestHeaders = Collections.unmodifiableMap(requestHeaders);
+            Response response = answer(endpoint, state, body);
+            sleep(state.behavior.latency().sampleNanos(ThreadLocalRandom.current()) - (System.nanoTime() - start));
+            if (response.status == 429) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            byte[] responseBody = OBJECT_MAPPER.writeValueAsBytes(response.body);
+            // recorded before responding, so that the stats include a call once the client has its response
+            state.record(response.status, System.nanoTime() - start);
+            respond(exchange, response.status, responseBody);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response answer(ZatcaEndpoint endpoint, EndpointState state, byte[] body) throws IOException {
+        EndpointBehavior behavior = state.behavior;
+        if (!state.tryAcquire()) {
+            return new Response(429, Map.of("message", "Too Many Requests"));
+        }
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < behavior.serverErrorRate()) {
+            return new Response(500, Map.of("code", "500", "message", "Something went wrong and caused an Internal Server Error."));
+        }
+        boolean rejected = draw < behavior.serverErrorRate() + behavior.rejectionRate();
+        boolean warned = !rejected && ThreadLocalRandom.current().nextDouble() < behavior.warningRate();
+        JsonNode request = body.length > 0 ? OBJECT_MAPPER.readTree(body) : OBJECT_MAPPER.createObjectNode();
+        return switch (endpoint) {
+            case COMPLIANCE_CSID, PRODUCTION_CSID, RENEW_PRODUCTION_CSID -> rejected
+                    ? new Response(400, Map.of("code", "Invalid-CSR", "message", "Invalid CSR"))
+                    : new Response(200, csid());
+            case INVOICE_COMPLIANCE -> new Response(rejected ? 400 : warned ? 202 : 200,
+                    compliance(rejected, warned));
+            case REPORTING -> new Response(rejected ? 400 : warned ? 202 : 200,
+                    invoiceResult(request, rejected ? "NOT_REPORTED" : "REPORTED", rejected, warned, false));
+            case CLEARANCE -> new Response(rejected ? 400 : warned ? 202 : 200,
+                    invoiceResult(request, rejected ? "NOT_CLEARED" : "CLEARED", rejected, warned, !rejected));
+        };
+    }
+
+    private Map<String, Object> csid() {
+        long requestId = requestIds.getAndIncrement();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("requestID", requestId);
+        body.put("dispositionMessage", "ISSUED");
+        body.put("binarySecurityToken", "TUlJQ1BUQ0NBZU9nQXdJQkFnSUdBWVZ1Q0Z5ak1Bb0dDQ3FHU000OUJBTUNNQlV4RXpBUkJnTlZCQU1NQ2tWSlRsWlBTVU5KVGtjd0hoY05NakV4TWpBeE1EWXpOVEk0V2hjTk1qWXhNVE13TWpFd01EQXdXakJHTVFzd0NRWURWUVFHRXdKVFFURVRNQkVHQTFVRUN3d0tNemN3TURBd01EWXpOVEVSTUE4R0ExVUVDZ3dJVTJGdGNHeGxVMEV4RFRBTEJnTlZCQU1NQkVGRVNrRQ==");
+        body.put("secret", "Dehvg1fc6lHM9r/PnwgVWmYgg8FhUUvN5HkWD4Ao3ho=");
+        body.put("errors", null);
+        return body;
+    }
+
+    private static Map<String, Object> compliance(boolean rejected, boolean warned) {
+        Map<String, Object> validationResults = new LinkedHashMap<>();
+        validationResults.put("infoMessages", List.of(message("INFO", "XSD_ZATCA_VALID", "XSD validation",
+                "Complied with UBL 2.1 standards in line with ZATCA specifications", "PASS")));
+        validationResults.put("warningMessages", warned ? List.of(warning()) : List.of());
+        validationResults.put("errorMessages", rejected ? List.of(error()) : List.of());
+        validationResults.put("status", rejected ? "ERROR" : warned ? "WARNING" : "PASS");
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("validationResults", validationResults);
+        body.put("status", rejected ? "ERROR" : "PASS");
+        body.put("reportingStatus", rejected ? "NOT_REPORTED" : "REPORTED");
+        body.put("clearanceStatus", null);
+        body.put("qrSellertStatus", null);
+        body.put("qrBuyertStatus", null);
+        return body;
+    }
+
+    private static Map<String, Object> invoiceResult(JsonNode request, String status, boolean rejected,
+                                                     boolean warned, boolean cleared) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("invoiceHash", request.path("invoiceHash").asText(null));
+        if (cleared) {
+            body.put("clearedInvoice", request.path("invoice").asText(null));
+        }
+        body.put("status", status);
+        body.put("warnings", warned ? List.of(warning()) : List.of());
+        body.put("errors", rejected ? List.of(error()) : List.of());
+        return body;
+    }
+
+    private static Map<String, Object> warning() {
+        return message("WARNING", "BR-KSA-08", "KSA",
+                "[BR-KSA-08] - The seller identification (BT-29) must exist only once", "WARNING");
+    }
+
+    private static Map<String, Object> error() {
+        return message("ERROR", "BR-KSA-44", "KSA",
+                "[BR-KSA-44] - The seller's address must contain the street name (BT-35)", "ERROR");
+    }
+
+    private static Map<String, Object> message(String type, String code, String category, String message,
+                                               String status) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("type", type);
+        body.put("code", code);
+        body.put("category", category);
+        body.put("message", message);
+        body.put("status", status);
+        return body;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Response(int status, Object body) {
+    }
+
+    private static final class EndpointState {
+        private final EndpointBehavior behavior;
+        private volatile LatencyHistogram latencies = new LatencyHistogram();
+        private volatile Map<String, List<String>> lastRequestHeaders = Map.of();
+        private final Map<Integer, LongAdder> responsesByStatus = new ConcurrentHashMap<>();
+        private final LongAdder requests = new LongAdder();
+        private final AtomicLong firstNanos = new AtomicLong();
+        private final AtomicLong lastNanos = new AtomicLong();
+        private long throttleWindow;
+        private int throttleCount;
+
+        EndpointState(EndpointBehavior behavior) {
+            this.behavior = behavior;
+        }
+
+        /**
+         * Counts the call against a fixed one second window, as the gateway's quotas do.
+         */
+        synchronized boolean tryAcquire() {
+            if (behavior.maxRequestsPerSecond() <= 0) {
+                return true;
+            }
+            long window = System.nanoTime() / 1_000_000_000L;
+            if (window != throttleWindow) {
+                throttleWindow = window;
+                throttleCount = 0;
+            }
+            return ++throttleCount <= behavior.maxRequestsPerSecond();
+        }
+
+        void reset() {
+            latencies = new LatencyHistogram();
+            responsesByStatus.clear();
+            requests.reset();
+            firstNanos.set(0);
+            lastNanos.set(0);
+        }
+
+        void record(int status, long durationNanos) {
+            long now = System.nanoTime();
+            firstNanos.compareAndSet(0, now);
+            lastNanos.accumulateAndGet(now, Math::max);
+            requests.increment();
+            responsesByStatus.computeIfAbsent(status, s -> new LongAdder()).increment();
+            latencies.record(durationNanos);
+        }
+
+        EndpointStats stats() {
+            Map<Integer, Long> byStatus = new TreeMap<>();
+            responsesByStatus.forEach((status, count) -> byStatus.put(status, count.sum()));
+            long count = requests.sum();
+            long elapsedNanos = lastNanos.get() - firstNanos.get();
+            double requestsPerSecond = count > 1 && elapsedNanos > 0 ? (count - 1) / (elapsedNanos / 1e9) : 0;
+            return new EndpointStats(count, byStatus, requestsPerSecond,
+                    Duration.ofNanos(latencies.quantileNanos(0.5)),
+                    Duration.ofNanos(latencies.quantileNanos(0.99)),
+                    Duration.ofNanos(latencies.maxNanos()));
+        }
+    }
+
+    public static final class Builder {
+        private final Map<ZatcaEndpoint, EndpointBehavior> behaviors = new EnumMap<>(ZatcaEndpoint.class);
+        private EndpointBehavior defaults = EndpointBehavior.healthy();
+        private int port;
+
+        private Builder() {
+        }
+
+        /**
+         * Behavior of the endpoints not configured with {@link #endpoint}.
+         */
+        public Builder defaults(EndpointBehavior behavior) {
+            this.defaults = behavior;
+            return this;
+        }
+
+        public Builder endpoint(ZatcaEndpoint endpoint, EndpointBehavior behavior) {
+            behaviors.put(endpoint, behavior);
+            return this;
+        }
+
+        /**
+         * Port to listen on, an ephemeral one is picked by default.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public ZatcaGatewaySimulator start() {
+            try {
+                return new ZatcaGatewaySimulator(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ahmedmq.zatca.simulator;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.spring.service.SubmissionOutcome;
+import com.ahmedmq.zatca.spring.service.ZatcaAutoConfiguration;
+import com.ahmedmq.zatca.spring.service.ZatcaBulkReporter;
+import com.ahmedmq.zatca.spring.service.ZatcaEndpoint;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZatcaGatewaySimulatorIT {
+
+    static final int INVOICES = 20_000;
+
+    @Test
+    void answersEachInvoiceOfASustainedLoadWithTheOutcomeItReported() {
+        List<InvoiceRequest> invoiceRequests = IntStream.range(0, INVOICES)
+                .mapToObj(i -> new InvoiceRequest("hash", String.valueOf(i), "aW52b2ljZQ=="))
+                .toList();
+
+        try (ZatcaGatewaySimulator simulator = ZatcaGatewaySimulator.builder()
+                .endpoint(ZatcaEndpoint.REPORTING, EndpointBehavior.healthy()
+                        .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(20), Duration.ofMillis(100)))
+                        .withWarningRate(0.1)
+                        .withRejectionRate(0.01))
+                .start()) {
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class,
+                            RestTemplateAutoConfiguration.class, ZatcaAutoConfiguration.class))
+                    .withPropertyValues("zatca.base-url=" + simulator.baseUrl(),
+                            "zatca.api-version=V2",
+                            "zatca.bulk.concurrency=200",
+                            "zatca.http.max-connections-per-route=200")
+                    .run(context -> {
+                        List<SubmissionOutcome<InvoiceResult>> outcomes = context.getBean(ZatcaBulkReporter.class)
+                                .reportInvoices("certificate", "secret", invoiceRequests);
+
+                        EndpointStats stats = simulator.stats(ZatcaEndpoint.REPORTING);
+                        assertThat(outcomes).hasSize(INVOICES);
+                        assertThat(stats.requests()).isEqualTo(INVOICES);
+                        assertThat(outcomes).filteredOn(outcome -> !outcome.isSuccess())
+                                .hasSize(stats.responsesByStatus().getOrDefault(400, 0L).intValue());
+                        assertThat(outcomes).filteredOn(outcome -> outcome.isSuccess()
+                                        && !outcome.result().warnings().isEmpty())
+                                .hasSize(stats.responsesByStatus().getOrDefault(202, 0L).intValue());
+                        assertThat(stats.responsesByStatus().getOrDefault(400, 0L)).isBetween(INVOICES / 200L,
+                                INVOICES / 50L);
+                        assertThat(stats.p50()).isBetween(Duration.ofMillis(10), Duration.ofMillis(50));
+                        assertThat(stats.p99()).isBetween(stats.p50(), stats.max());
+                    });
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.ahmedmq.zatca.simulator;
+
+import com.ahmedmq.zatca.model.CSRRequest;
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.ProductionCSIDRequest;
+import com.ahmedmq.zatca.spring.service.ZatcaAutoConfiguration;
+import com.ahmedmq.zatca.spring.service.ZatcaClientApiException;
+import com.ahmedmq.zatca.spring.service.ZatcaCredentialRegistry;
+import com.ahmedmq.zatca.spring.service.ZatcaEndpoint;
+import com.ahmedmq.zatca.spring.service.ZatcaService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
+import org.springframework.boot.test.context.assertj.AssertableApplicationContext;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.ContextConsumer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class ZatcaGatewaySimulatorTest {
+
+    ZatcaGatewaySimulator simulator;
+
+    InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "3cf5ee18-ee25-44ea-a444-2c37ba7f28be", "aW52b2ljZQ==");
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void answersEveryEndpoint() {
+        simulator = ZatcaGatewaySimulator.builder().start();
+
+        withZatcaService(zatcaService -> {
+            assertThat(zatcaService.complianceCSID(new CSRRequest("csr"), "123345").dispositionMessage()).isEqualTo("ISSUED");
+            InvoiceComplianceResponse complianceResponse = zatcaService.checkInvoiceCompliance("user", "password", invoiceRequest);
+            assertThat(complianceResponse.reportingStatus()).isEqualTo("REPORTED");
+            assertThat(zatcaService.productionCSID("certificate", "secret", new ProductionCSIDRequest("1234567890123")).secret()).isNotBlank();
+            assertThat(zatcaService.renewProductionCSID(new CSRRequest("csr"), "123345").binarySecurityToken()).isNotBlank();
+            InvoiceResult invoiceResult = zatcaService.reportInvoice("certificate", "secret", invoiceRequest);
+            assertThat(invoiceResult.status()).isEqualTo("REPORTED");
+            assertThat(invoiceResult.invoiceHash()).isEqualTo("hash");
+            ClearedInvoiceResult clearedInvoiceResult = zatcaService.clearedInvoice("certificate", "secret", invoiceRequest);
+            assertThat(clearedInvoiceResult.status()).isEqualTo("CLEARED");
+            assertThat(clearedInvoiceResult.clearedInvoice()).isEqualTo("aW52b2ljZQ==");
+        });
+
+        for (ZatcaEndpoint endpoint : ZatcaEndpoint.values()) {
+            assertThat(simulator.stats(endpoint).requests()).as(endpoint.name()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void renewsTheCsidOfARegisteredUnitWithItsCurrentCsid() {
+        simulator = ZatcaGatewaySimulator.builder().start();
+
+        withContext(context -> {
+            context.getBean(ZatcaCredentialRegistry.class).register("egs-1", "certificate", "secret");
+
+            context.getBean(ZatcaService.class).renewProductionCSID("egs-1", new CSRRequest("csr"), "123345");
+        });
+
+        Map<String, List<String>> headers = simulator.lastRequestHeaders(ZatcaEndpoint.RENEW_PRODUCTION_CSID);
+        assertThat(headers.get("Authorization")).containsExactly("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+        assertThat(headers.get("OTP")).containsExactly("123345");
+        assertThat(headers.get("Accept-Version")).containsExactly("V2");
+    }
+
+    @Test
+    void rejectsAndWarns() {
+        simulator = ZatcaGatewaySimulator.builder()
+                .endpoint(ZatcaEndpoint.REPORTING, EndpointBehavior.healthy().withRejectionRate(1))
+                .endpoint(ZatcaEndpoint.CLEARANCE, EndpointBehavior.healthy().withWarningRate(1))
+                .start();
+
+        withZatcaService(zatcaService -> {
+            ZatcaClientApiException exception = catchThrowableOfType(
+                    () -> zatcaService.reportInvoice("certificate", "secret", invoiceRequest), ZatcaClientApiException.class);
+            assertThat(exception.getStatusCode().value()).isEqualTo(400);
+            assertThat(exception.getResponseBody()).contains("NOT_REPORTED", "BR-KSA-44");
+
+            ClearedInvoiceResult clearedInvoiceResult = zatcaService.clearedInvoice("certificate", "secret", invoiceRequest);
+            assertThat(clearedInvoiceResult.warnings()).hasSize(1);
+        });
+
+        assertThat(simulator.stats(ZatcaEndpoint.REPORTING).responsesByStatus()).isEqualTo(Map.of(400, 1L));
+        assertThat(simulator.stats(ZatcaEndpoint.CLEARANCE).responsesByStatus()).isEqualTo(Map.of(202, 1L));
+    }
+
+    @Test
+    void throttlesAboveTheConfiguredRate() {
+        simulator = ZatcaGatewaySimulator.builder()
+                .endpoint(ZatcaEndpoint.CLEARANCE, EndpointBehavior.healthy().withMaxRequestsPerSecond(2))
+                .start();
+
+        withZatcaService(zatcaService -> {
+            for (int i = 0; i < 5; i++) {
+                try {
+                    zatcaService.clearedInvoice("certificate", "secret", invoiceRequest);
+                } catch (ZatcaClientApiException e) {
+                    assertThat(e.getStatusCode().value()).isEqualTo(429);
+                }
+            }
+        });
+
+        assertThat(simulator.stats(ZatcaEndpoint.CLEARANCE).responsesByStatus()).containsKey(429);
+    }
+
+    @Test
+    void recordsSimulatedLatency() {
+        simulator = ZatcaGatewaySimulator.builder()
+                .defaults(EndpointBehavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ofMillis(50))))
+                .start();
+
+        withZatcaService(zatcaService -> zatcaService.reportInvoice("certificate", "secret", invoiceRequest));
+
+        EndpointStats stats = simulator.stats(ZatcaEndpoint.REPORTING);
+        assertThat(stats.p50()).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+        assertThat(stats.max()).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+
+        simulator.reset();
+        assertThat(simulator.stats(ZatcaEndpoint.REPORTING).requests()).isZero();
+    }
+
+    private void withZatcaService(Consumer<ZatcaService> test) {
+        withContext(context -> test.accept(context.getBean(ZatcaService.class)));
+    }
+
+    private void withContext(ContextConsumer<AssertableApplicationContext> test) {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class,
+                        RestTemplateAutoConfiguration.class, ZatcaAutoConfiguration.class))
+                .withPropertyValues("zatca.base-url=" + simulator.baseUrl(), "zatca.api-version=V2")
+                .run(test);
+    }
+}
@@ -0,0 +1,213 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class DefaultAsyncZatcaServiceTest {
+
+    MockWebServer mockWebServer;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    ZatcaProperties zatcaProperties;
+
+    AsyncZatcaService sut;
+
+    InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "", "invoice");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "zatca.base-url", mockWebServer.url("/").toString(),
+                "zatca.api-version", "V2")))
+                .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+        sut = new DefaultAsyncZatcaService(WebClient.builder().baseUrl(zatcaProperties.baseUrl()).build(), objectMapper,
+                zatcaProperties, List.of());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void reportInvoice() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        mockWebServer.enqueue(jsonResponse(200, invoiceResult));
+
+        InvoiceResult response = sut.reportInvoice("certificate", "secret", invoiceRequest).block();
+
+        assertThat(response).isEqualTo(invoiceResult);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getMethod()).isEqualTo("POST");
+        assertThat(request.getPath()).isEqualTo("/invoices/reporting/single");
+        assertThat(request.getHeader("Accept-Version")).isEqualTo("V2");
+        assertThat(request.getHeader("Accept-Language")).isEqualTo("en");
+        assertThat(request.getHeader("Clearance-Status")).isEqualTo("0");
+        assertThat(request.getHeader("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+        assertThat(objectMapper.readValue(request.getBody().readUtf8(), InvoiceRequest.class)).isEqualTo(invoiceRequest);
+    }
+
+    @Test
+    void clearedInvoice() throws Exception {
+        ClearedInvoiceResult clearanceResponse = new ClearedInvoiceResult("hash",
+                "invoice", "CLEARED", List.of(), List.of());
+        mockWebServer.enqueue(jsonResponse(200, clearanceResponse));
+
+        ClearedInvoiceResult response = sut.clearedInvoice("certificate", "secret", invoiceRequest).block();
+
+        assertThat(response).isEqualTo(clearanceResponse);
+        assertThat(mockWebServer.takeRequest().getPath()).isEqualTo("/invoices/clearance/single");
+    }
+
+    @Test
+    void renewProductionCSID() throws Exception {
+        CSIDResponse csidResponse = new CSIDResponse("456", "ISSUED", "productionToken", "productionSecret");
+        mockWebServer.enqueue(jsonResponse(200, csidResponse));
+
+        CSIDResponse response = sut.renewProductionCSID(new CSRRequest("csr"), "999").block();
+
+        assertThat(response).isEqualTo(csidResponse);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getMethod()).isEqualTo("PATCH");
+        assertThat(request.getPath()).isEqualTo("/production/csids");
+        assertThat(request.getHeader("OTP")).isEqualTo("999");
+    }
+
+    @Test
+    void reportInvoiceWhen400() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "NOT_REPORTED", null,
+                List.of(new Error("INVOICE_ERRORS", "Invalid-Invoice-Hash", "The provided invoice hash is invalid")));
+        String invoiceResultJson = objectMapper.writeValueAsString(invoiceResult);
+        mockWebServer.enqueue(new MockResponse()
+                .setStatus("HTTP/1.1 400 Bad Request")
+                .setHeader("Content-Type", "application/json")
+                .setBody(invoiceResultJson));
+
+        ZatcaClientApiException zatcaClientApiException = catchThrowableOfType(() ->
+                sut.reportInvoice("certificate", "secret", invoiceRequest).block(), ZatcaClientApiException.class);
+
+        assertThat(zatcaClientApiException.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(zatcaClientApiException.getStatusText()).isEqualTo("Bad Request");
+        assertThat(zatcaClientApiException.getResponseBody()).isEqualTo(invoiceResultJson);
+        assertThat(zatcaClientApiException.getInvoiceResult()).isEqualTo(invoiceResult);
+    }
+
+    @Test
+    void clearedInvoiceWhen303() {
+        mockWebServer.enqueue(new MockResponse()
+                .setStatus("HTTP/1.1 303 See Other")
+                .setHeader("Content-Type", "application/json")
+                .setBody("{}"));
+
+        ZatcaClientApiException zatcaClientApiException = catchThrowableOfType(() ->
+                sut.clearedInvoice("certificate", "secret", invoiceRequest).block(), ZatcaClientApiException.class);
+
+        assertThat(zatcaClientApiException.getStatusCode()).isEqualTo(HttpStatus.SEE_OTHER);
+    }
+
+    @Test
+    void callsGoThroughTheReactiveInterceptorsAndDuplicateSuppression() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(jsonResponse(200, invoiceResult));
+        List<String> intercepted = new CopyOnWriteArrayList<>();
+        DefaultAsyncZatcaService asyncZatcaService = (DefaultAsyncZatcaService) sut;
+        asyncZatcaService.setInterceptors(List.of(new ZatcaRetryInterceptor(new Binder(new MapConfigurationPropertySource(
+                        Map.of("zatca.retry.initial-backoff", "1ms"))).bindOrCreate("zatca.retry",
+                        Bindable.of(ZatcaProperties.Retry.class))).reactive(),
+                new ZatcaReactiveCallInterceptor() {
+                    @Override
+                    public <T> Mono<T> intercept(ZatcaEndpoint endpoint, Object request, Mono<T> execution) {
+                        intercepted.add(Thread.currentThread().getName());
+                        return execution;
+                    }
+                }));
+        asyncZatcaService.setDeduplicator(new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 100, null,
+                Clock.systemUTC()));
+
+        InvoiceResult response = sut.reportInvoice("certificate", "secret", invoiceRequest).block();
+        InvoiceResult duplicate = sut.reportInvoice("certificate", "secret", invoiceRequest).block();
+
+        assertThat(response).isEqualTo(invoiceResult);
+        assertThat(duplicate).isEqualTo(invoiceResult);
+        assertThat(intercepted).hasSize(2).noneMatch(thread -> thread.startsWith("boundedElastic"));
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void ioErrorsSurfaceAsResourceAccessExceptions() throws IOException {
+        mockWebServer.shutdown();
+
+        Throwable failure = catchThrowable(() -> sut.reportInvoice("certificate", "secret", invoiceRequest).block());
+
+        assertThat(failure).isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void callsGoThroughTheInterceptorsOfTheZatcaService() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(jsonResponse(200, invoiceResult));
+        List<ZatcaEndpoint> intercepted = new CopyOnWriteArrayList<>();
+        DefaultZatcaService zatcaService = new DefaultZatcaService(new WebClientZatcaTransport(
+                WebClient.builder().baseUrl(zatcaProperties.baseUrl()).build(), objectMapper, zatcaProperties.errors(),
+                List.of(), Runnable::run), zatcaProperties);
+        zatcaService.setInterceptors(List.of(new ZatcaRetryInterceptor(new Binder(new MapConfigurationPropertySource(
+                        Map.of("zatca.retry.initial-backoff", "1ms"))).bindOrCreate("zatca.retry",
+                        Bindable.of(ZatcaProperties.Retry.class))),
+                new ZatcaCallInterceptor() {
+                    @Override
+                    public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+                        intercepted.add(endpoint);
+                        return execution.get();
+                    }
+                }));
+        ((DefaultAsyncZatcaService) sut).setZatcaService(zatcaService, Schedulers.boundedElastic());
+
+        InvoiceResult response = sut.reportInvoice("certificate", "secret", invoiceRequest).block();
+
+        assertThat(response).isEqualTo(invoiceResult);
+        assertThat(intercepted).containsExactly(ZatcaEndpoint.REPORTING, ZatcaEndpoint.REPORTING);
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+        assertThat(mockWebServer.takeRequest().getHeader("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+    }
+
+    private MockResponse jsonResponse(int status, Object body) throws JsonProcessingException {
+        return new MockResponse()
+                .setResponseCode(status)
+                .setHeader("Content-Type", "application/json")
+                .setBody(objectMapper.writeValueAsString(body));
+    }
+}
@@ -0,0 +1,152 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DefaultInvoiceChainTest {
+
+    @TempDir
+    Path directory;
+
+    StreamingInvoiceHasher invoiceHasher = new StreamingInvoiceHasher();
+
+    @Test
+    void chainsEachInvoiceToThePreviousOne() {
+        DefaultInvoiceChain sut = new DefaultInvoiceChain(invoiceHasher, new FileInvoiceChainStore(directory, true));
+
+        InvoiceRequest first;
+        try (InvoiceChain.Link link = sut.next("egs-1")) {
+            assertThat(link.icv()).isEqualTo(1);
+            assertThat(link.previousInvoiceHash()).isEqualTo(InvoiceChain.INITIAL_INVOICE_HASH);
+            first = link.commit("uuid-1", invoice(link).getBytes(StandardCharsets.UTF_8));
+        }
+        try (InvoiceChain.Link link = sut.next("egs-1")) {
+            assertThat(link.icv()).isEqualTo(2);
+            assertThat(link.previousInvoiceHash()).isEqualTo(first.invoiceHash());
+        }
+
+        assertThat(first.uuid()).isEqualTo("uuid-1");
+        assertThat(first.invoiceHash()).isEqualTo(invoiceHasher.hash(Base64.getDecoder().decode(first.invoice())));
+        assertThat(sut.current("egs-1")).isEqualTo(new InvoiceChainState(1, first.invoiceHash()));
+        assertThat(sut.current("egs-2")).isNull();
+    }
+
+    @Test
+    void handsOutACounterValueAgainWhenTheLinkIsNotCommitted() {
+        DefaultInvoiceChain sut = new DefaultInvoiceChain(invoiceHasher, new FileInvoiceChainStore(directory, false));
+
+        InvoiceChain.Link abandoned = sut.next("egs-1");
+        abandoned.close();
+
+        try (InvoiceChain.Link link = sut.next("egs-1")) {
+            assertThat(link.icv()).isEqualTo(1);
+        }
+        assertThatThrownBy(() -> abandoned.commit("hash")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void resumesFromTheStoreAfterARestart() {
+        sequence(new DefaultInvoiceChain(invoiceHasher, new FileInvoiceChainStore(directory, true)), "egs/1", 3);
+
+        DefaultInvoiceChain restarted = new DefaultInvoiceChain(invoiceHasher, new FileInvoiceChainStore(directory, true));
+
+        assertThat(restarted.current("egs/1")).isEqualTo(new InvoiceChainState(3, "hash-3"));
+        try (InvoiceChain.Link link = restarted.next("egs/1")) {
+            assertThat(link.icv()).isEqualTo(4);
+            assertThat(link.previousInvoiceHash()).isEqualTo("hash-3");
+        }
+    }
+
+    @Test
+    void doesNotAdvanceWhenTheStateCannotBeSaved() {
+        FileInvoiceChainStore store = new FileInvoiceChainStore(directory, true);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        DefaultInvoiceChain sut = new DefaultInvoiceChain(invoiceHasher, new InvoiceChainStore() {
+            @Override
+            public InvoiceChainState load(String egsUnit) {
+                return store.load(egsUnit);
+            }
+
+            @Override
+            public void save(String egsUnit, InvoiceChainState state) {
+                if (failing.getAndSet(false)) {
+                    throw new UncheckedIOException(new IOException("No space left on device"));
+                }
+                store.save(egsUnit, state);
+            }
+        });
+
+        try (InvoiceChain.Link link = sut.next("egs-1")) {
+            assertThatThrownBy(() -> link.commit("hash-1")).isInstanceOf(UncheckedIOException.class);
+        }
+        try (InvoiceChain.Link link = sut.next("egs-1")) {
+            assertThat(link.icv()).isEqualTo(1);
+            link.commit("hash-1");
+        }
+        assertThat(store.load("egs-1")).isEqualTo(new InvoiceChainState(1, "hash-1"));
+    }
+
+    @Test
+    void sequencesUnitsInParallelWithoutGapsOrDuplicates() throws Exception {
+        DefaultInvoiceChain sut = new DefaultInvoiceChain(invoiceHasher, new FileInvoiceChainStore(directory, false));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicBoolean broken = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 32; i++) {
+                String egsUnit = "egs-" + (i % 4);
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 50; n++) {
+                        try (InvoiceChain.Link link = sut.next(egsUnit)) {
+                            String expected = link.icv() == 1 ? InvoiceChain.INITIAL_INVOICE_HASH : "hash-" + (link.icv() - 1);
+                            if (!link.previousInvoiceHash().equals(expected)) {
+                                broken.set(true);
+                            }
+                            link.commit("hash-" + link.icv());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(broken).isFalse();
+        for (int i = 0; i < 4; i++) {
+            assertThat(sut.current("egs-" + i)).isEqualTo(new InvoiceChainState(400, "hash-400"));
+        }
+    }
+
+    static void sequence(InvoiceChain invoiceChain, String egsUnit, int invoices) {
+        for (int i = 0; i < invoices; i++) {
+            try (InvoiceChain.Link link = invoiceChain.next(egsUnit)) {
+                link.commit("hash-" + link.icv());
+            }
+        }
+    }
+
+    static String invoice(InvoiceChain.Link link) {
+        return StreamingInvoiceHasherTest.INVOICE.formatted("", "")
+                .replace("<cbc:UUID>10</cbc:UUID>", "<cbc:UUID>" + link.icv() + "</cbc:UUID>");
+    }
+}
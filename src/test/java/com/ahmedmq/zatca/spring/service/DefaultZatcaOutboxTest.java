@@ -0,0 +1,323 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DefaultZatcaOutboxTest {
+
+    static final InvoiceResult REPORTED = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+
+    @TempDir
+    Path directory;
+
+    ZatcaService zatcaService = mock(ZatcaService.class);
+
+    ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    List<MappedOutboxLog> logs = new ArrayList<>();
+
+    MappedOutboxLog outboxLog;
+
+    @AfterEach
+    void tearDown() {
+        logs.forEach(MappedOutboxLog::close);
+    }
+
+    @Test
+    void redeliversUnacknowledgedEntriesAfterReopening() throws IOException {
+        MappedOutboxLog log = open(1 << 20);
+        for (int i = 0; i < 3; i++) {
+            assertThat(log.append("egs-1", invoice(i))).isEqualTo(i);
+        }
+        log.acknowledge(log.peek().sequence());
+        log.close();
+
+        MappedOutboxLog reopened = open(1 << 20);
+
+        assertThat(reopened.pending()).isEqualTo(2);
+        assertThat(reopened.peek()).isEqualTo(new OutboxEntry(1, "egs-1", invoice(1)));
+        reopened.acknowledge(reopened.peek().sequence());
+        assertThat(reopened.peek().sequence()).isEqualTo(2);
+        assertThat(reopened.append("egs-2", invoice(3))).isEqualTo(3);
+    }
+
+    @Test
+    void discardsATornTail() throws IOException {
+        MappedOutboxLog log = open(1 << 20);
+        log.append("egs-1", invoice(0));
+        log.append("egs-1", invoice(1));
+        log.append("egs-1", invoice(2));
+        log.close();
+        Path segment = segments().get(0);
+        int secondEntry = frameLength(segment);
+        try (FileChannel channel = FileChannel.open(segment, WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), secondEntry + 20);
+        }
+
+        MappedOutboxLog reopened = open(1 << 20);
+
+        assertThat(reopened.pending()).isEqualTo(1);
+        assertThat(reopened.append("egs-1", new InvoiceRequest("h", "u", "i"))).isEqualTo(1);
+        reopened.close();
+        MappedOutboxLog again = open(1 << 20);
+        assertThat(again.pending()).isEqualTo(2);
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesTheAcknowledgedOnes() throws IOException {
+        MappedOutboxLog log = open(512);
+        for (int i = 0; i < 20; i++) {
+            log.append("egs-1", invoice(i));
+        }
+        assertThat(segments()).hasSize(3);
+
+        for (int i = 0; i < 19; i++) {
+            OutboxEntry entry = log.peek();
+            assertThat(entry.sequence()).isEqualTo(i);
+            assertThat(entry.invoiceRequest()).isEqualTo(invoice(i));
+            log.acknowledge(entry.sequence());
+        }
+
+        assertThat(segments()).hasSize(1);
+        assertThat(log.pending()).isEqualTo(1);
+        log.close();
+        assertThat(open(512).peek().sequence()).isEqualTo(19);
+    }
+
+    @Test
+    void rejectsAnInvoiceLargerThanASegment() throws IOException {
+        MappedOutboxLog log = open(512);
+
+        assertThatThrownBy(() -> log.append("egs-1", new InvoiceRequest("hash", "uuid", "x".repeat(512))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("512 bytes");
+    }
+
+    @Test
+    void groupCommitsConcurrentAppends() throws Exception {
+        MappedOutboxLog log = open(4096);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<Long> sequences = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            appends.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    sequences.add(log.append("egs-1", invoice(i)));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> append : appends) {
+            append.get();
+        }
+        executor.shutdown();
+
+        assertThat(sequences).hasSize(800).allMatch(sequence -> sequence >= 0 && sequence < 800);
+        log.close();
+        MappedOutboxLog reopened = open(4096);
+        for (long sequence = 0; sequence < 800; sequence++) {
+            OutboxEntry entry = reopened.peek();
+            assertThat(entry.sequence()).isEqualTo(sequence);
+            reopened.acknowledge(entry.sequence());
+        }
+        assertThat(reopened.peek()).isNull();
+    }
+
+    @Test
+    void reportsEnqueuedInvoicesInTheBackground() throws IOException {
+        DefaultZatcaOutbox outbox = outbox();
+        when(zatcaService.reportInvoice(eq("egs-1"), any(InvoiceRequest.class))).thenReturn(REPORTED);
+        outbox.start();
+        try {
+            outbox.enqueue("egs-1", invoice(0));
+            outbox.enqueue("egs-1", invoice(1));
+
+            verify(zatcaService, timeout(5000)).reportInvoice("egs-1", invoice(1));
+        } finally {
+            outbox.stop();
+        }
+        assertThat(outbox.isRunning()).isFalse();
+        assertThat(outbox.pending()).isZero();
+    }
+
+    @Test
+    void acknowledgesARejectedInvoice() throws IOException {
+        DefaultZatcaOutbox outbox = outbox(10);
+        InvoiceResult notReported = new InvoiceResult("hash", "NOT_REPORTED", List.of(),
+                List.of(new Error("XSD_SCHEMA_ERROR", "SCHEMA_ERROR", "Schema validation failed")));
+        ZatcaClientApiException rejection = new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "");
+        when(zatcaService.reportInvoice("egs-1", invoice(0))).thenThrow(rejection);
+        when(zatcaService.reportInvoice("egs-1", invoice(1))).thenReturn(notReported);
+        outbox.enqueue("egs-1", invoice(0));
+        outbox.enqueue("egs-1", invoice(1));
+
+        assertThat(outbox.deliver(outboxLog.peek())).isTrue();
+        assertThat(outbox.deliver(outboxLog.peek(2).get(1))).isTrue();
+        assertThat(outbox.deliverWindow()).isZero();
+
+        verify(eventPublisher).publishEvent(new ZatcaOutboxRejectedEvent(new OutboxEntry(0, "egs-1", invoice(0)),
+                null, rejection));
+        verify(eventPublisher).publishEvent(new ZatcaOutboxRejectedEvent(new OutboxEntry(1, "egs-1", invoice(1)),
+                notReported, null));
+        assertThat(outbox.pending()).isZero();
+    }
+
+    @Test
+    void keepsAnInvoiceThatFailedTransiently() throws IOException {
+        DefaultZatcaOutbox outbox = outbox(10);
+        when(zatcaService.reportInvoice("egs-1", invoice(0)))
+                .thenThrow(new ResourceAccessException("Connection reset"))
+                .thenThrow(new ZatcaClientApiException(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", ""))
+                .thenThrow(new ZatcaClientApiException(HttpStatus.UNAUTHORIZED, "Unauthorized", ""))
+                .thenThrow(new IllegalArgumentException("EGS unit egs-1 is not registered"))
+                .thenReturn(REPORTED);
+        outbox.enqueue("egs-1", invoice(0));
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(outbox.deliver(outboxLog.peek())).isFalse();
+        }
+        assertThat(outbox.pending()).isEqualTo(1);
+        assertThat(outbox.deliverWindow()).isZero();
+        assertThat(outbox.pending()).isZero();
+    }
+
+    @Test
+    void reportsTheInvoicesOfOtherUnitsPastAFailingOne() throws IOException {
+        DefaultZatcaOutbox outbox = outbox(10);
+        when(zatcaService.reportInvoice("egs-1", invoice(0)))
+                .thenThrow(new IllegalArgumentException("EGS unit egs-1 is not registered"))
+                .thenReturn(REPORTED);
+        when(zatcaService.reportInvoice("egs-2", invoice(1))).thenReturn(REPORTED);
+        when(zatcaService.reportInvoice("egs-1", invoice(2))).thenReturn(REPORTED);
+        outbox.enqueue("egs-1", invoice(0));
+        outbox.enqueue("egs-2", invoice(1));
+        outbox.enqueue("egs-1", invoice(2));
+
+        outbox.deliverWindow();
+
+        verify(zatcaService).reportInvoice("egs-2", invoice(1));
+        verify(zatcaService, never()).reportInvoice("egs-1", invoice(2));
+        assertThat(outbox.pending()).isEqualTo(3);
+
+        outbox.deliverWindow();
+        outbox.deliverWindow();
+
+        verify(zatcaService).reportInvoice("egs-1", invoice(2));
+        verify(zatcaService, times(1)).reportInvoice("egs-2", invoice(1));
+        assertThat(outbox.pending()).isZero();
+    }
+
+    @Test
+    void readsPastMoreThanAWindowOfEntriesQueuedBehindAFailingUnit() throws IOException {
+        DefaultZatcaOutbox outbox = outbox();
+        when(zatcaService.reportInvoice(eq("egs-1"), any(InvoiceRequest.class)))
+                .thenThrow(new IllegalArgumentException("EGS unit egs-1 is not registered"));
+        when(zatcaService.reportInvoice("egs-2", invoice(1000))).thenReturn(REPORTED);
+        for (int i = 0; i < 1000; i++) {
+            outbox.enqueue("egs-1", invoice(i));
+        }
+        outbox.enqueue("egs-2", invoice(1000));
+
+        outbox.deliverWindow();
+
+        verify(zatcaService).reportInvoice("egs-1", invoice(0));
+        verify(zatcaService).reportInvoice("egs-2", invoice(1000));
+        verify(zatcaService, never()).reportInvoice("egs-1", invoice(1));
+        assertThat(outbox.pending()).isEqualTo(1001);
+    }
+
+    @Test
+    void deadLettersAnInvoiceThatKeepsFailing() throws IOException {
+        DefaultZatcaOutbox outbox = outbox(3);
+        IllegalArgumentException unknownUnit = new IllegalArgumentException("EGS unit egs-1 is not registered");
+        when(zatcaService.reportInvoice("egs-1", invoice(0))).thenThrow(unknownUnit);
+        when(zatcaService.reportInvoice("egs-1", invoice(1))).thenReturn(REPORTED);
+        outbox.enqueue("egs-1", invoice(0));
+        outbox.enqueue("egs-1", invoice(1));
+
+        for (int i = 0; i < 3; i++) {
+            outbox.deliverWindow();
+        }
+
+        verify(zatcaService, times(3)).reportInvoice("egs-1", invoice(0));
+        verify(eventPublisher).publishEvent(new ZatcaOutboxDeadLetteredEvent(new OutboxEntry(0, "egs-1", invoice(0)),
+                3, unknownUnit));
+        assertThat(outbox.pending()).isEqualTo(1);
+        outbox.deliverWindow();
+        assertThat(outbox.pending()).isZero();
+    }
+
+    DefaultZatcaOutbox outbox() throws IOException {
+        outboxLog = open(1 << 20);
+        return new DefaultZatcaOutbox(outboxLog, zatcaService, Duration.ofMillis(10), 4, 10, Runnable::run,
+                eventPublisher);
+    }
+
+    DefaultZatcaOutbox outbox(int maxAttempts) throws IOException {
+        outboxLog = open(1 << 20);
+        return new DefaultZatcaOutbox(outboxLog, zatcaService, Duration.ZERO, 4, maxAttempts, Runnable::run,
+                eventPublisher);
+    }
+
+    MappedOutboxLog open(int segmentSize) throws IOException {
+        MappedOutboxLog log = MappedOutboxLog.open(directory, segmentSize, true);
+        logs.add(log);
+        return log;
+    }
+
+    List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    static int frameLength(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(length, 0);
+            return 8 + length.flip().getInt();
+        }
+    }
+
+    static InvoiceRequest invoice(int i) {
+        return new InvoiceRequest("hash-" + i, "uuid-" + i, "invoice-" + i);
+    }
+}
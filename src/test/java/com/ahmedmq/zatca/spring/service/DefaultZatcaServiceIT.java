@@ -1,5 +1,6 @@
 package com.ahmedmq.zatca.spring.service;
 
+import com.ahmedmq.zatca.ZatcaProperties;
 import com.ahmedmq.zatca.model.Error;
 import com.ahmedmq.zatca.model.*;
 import com.ahmedmq.zatca.spring.service.sample.ZatcaSampleApp;
@@ -9,15 +10,27 @@ import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowableOfType;
@@ -38,6 +51,9 @@ public class DefaultZatcaServiceIT {
     @Autowired
     ZatcaService zatcaService;
 
+    @Autowired
+    ZatcaProperties zatcaProperties;
+
     MockWebServer mockWebServer;
 
     ObjectMapper objectMapper = new ObjectMapper();
@@ -56,6 +72,8 @@ public class DefaultZatcaServiceIT {
     @DynamicPropertySource
     static void registerProperties(DynamicPropertyRegistry registry) {
         registry.add("zatca.baseUrl", () -> "http://localhost:" + MOCK_SERVER_PORT);
+        // the gateway is restarted for every test, closing the pooled connections straight away
+        registry.add("zatca.http.validateAfterInactivity", () -> "0ms");
     }
 
     @Nested
@@ -107,6 +125,8 @@ public class DefaultZatcaServiceIT {
 
             CertificatesErrorsResponse response = objectMapper.readValue(zatcaClientApiException.getResponseBody(), CertificatesErrorsResponse.class);
             assertThat(response).isEqualTo(errorsResponse);
+            assertThat(zatcaClientApiException.getCertificatesErrorsResponse()).isEqualTo(errorsResponse);
+            assertThat(zatcaClientApiException.getErrors()).isEqualTo(errorsResponse.errors());
         }
     }
 
@@ -178,6 +198,8 @@ public class DefaultZatcaServiceIT {
 
             InvoiceResult response = objectMapper.readValue(zatcaClientApiException.getResponseBody(), InvoiceResult.class);
             assertThat(response).isEqualTo(invoiceResult);
+            assertThat(zatcaClientApiException.getInvoiceResult()).isEqualTo(invoiceResult);
+            assertThat(zatcaClientApiException.getErrors()).containsExactly(error);
         }
 
         @Test
@@ -350,4 +372,125 @@ public class DefaultZatcaServiceIT {
             assertThat(zatcaClientApiException.getResponseBody()).isEqualTo(clearanceResponse);
         }
     }
+
+    @Nested
+    @DisplayName("Streaming Invoice Submission")
+    class StreamingInvoiceTest {
+
+        byte[] invoiceXml = "<Invoice>فاتورة</Invoice>".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        String invoiceBase64 = Base64.getEncoder().encodeToString(invoiceXml);
+
+        @Test
+        void testReportInvoiceStreamsTheEncodedInvoice() throws Exception {
+            InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(objectMapper.writeValueAsString(invoiceResult)));
+
+            InvoiceResult actualInvoiceResult = zatcaService.reportInvoice("certificate", "secret",
+                    new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(ByteBuffer.wrap(invoiceXml))));
+
+            assertThat(actualInvoiceResult).isEqualTo(invoiceResult);
+            RecordedRequest recordedRequest = mockWebServer.takeRequest();
+            assertThat(recordedRequest.getHeader("Transfer-Encoding")).isEqualTo("chunked");
+            assertThat(objectMapper.readValue(recordedRequest.getBody().readUtf8(), InvoiceRequest.class))
+                    .isEqualTo(new InvoiceRequest("hash", "uuid", invoiceBase64));
+        }
+
+        @Test
+        void testInvoiceClearanceFromFile(@TempDir Path tempDir) throws Exception {
+            Path invoice = Files.write(tempDir.resolve("invoice.xml"), invoiceXml);
+            ClearedInvoiceResult clearanceResponse = new ClearedInvoiceResult("hash", invoiceBase64, "CLEARED", List.of(), List.of());
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(objectMapper.writeValueAsString(clearanceResponse)));
+
+            ClearedInvoiceResult actualClearanceResponse = zatcaService.clearedInvoice("certificate", "secret",
+                    new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(invoice)));
+
+            assertThat(actualClearanceResponse).isEqualTo(clearanceResponse);
+            assertThat(mockWebServer.takeRequest().getBody().readUtf8()).contains(invoiceBase64);
+        }
+
+        @Test
+        void testInvoiceStreamIsClosedOnceSent() throws Exception {
+            AtomicBoolean closed = new AtomicBoolean();
+            InputStream invoice = new ByteArrayInputStream(invoiceXml) {
+                @Override
+                public void close() {
+                    closed.set(true);
+                }
+            };
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(objectMapper.writeValueAsString(new InvoiceResult("hash", "REPORTED", List.of(), List.of()))));
+
+            // a stream can be read only once, so send it on a fresh connection rather than one pooled by an earlier test
+            ZatcaService freshZatcaService = new DefaultZatcaService(new RestTemplateBuilder()
+                    .rootUri(zatcaProperties.baseUrl())
+                    .requestFactory(() -> ZatcaClientHttpRequestFactories.create(zatcaProperties.http()))
+                    .errorHandler(new ZatcaClientErrorHandler())
+                    .build(), zatcaProperties);
+            freshZatcaService.reportInvoice("certificate", "secret",
+                    new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(invoice)));
+
+            assertThat(closed).isTrue();
+            assertThat(mockWebServer.takeRequest().getBody().readUtf8()).contains(invoiceBase64);
+        }
+    
+        @Test
+        void testInvoiceClearanceDecodesTheClearedInvoiceIntoASink(@TempDir Path tempDir) throws Exception {
+            Warning warning = new Warning("BR_KSA", "BR-KSA-08", "warning");
+            ClearedInvoiceResult clearanceResponse = new ClearedInvoiceResult("hash", invoiceBase64, "CLEARED", List.of(warning), List.of());
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(202)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(objectMapper.writeValueAsString(clearanceResponse)));
+            Path clearedInvoice = tempDir.resolve("cleared.xml");
+
+            InvoiceResult invoiceResult = zatcaService.clearedInvoice("certificate", "secret",
+                    new InvoiceRequest("hash", "uuid", invoiceBase64), InvoiceSink.of(clearedInvoice));
+
+            assertThat(invoiceResult).isEqualTo(new InvoiceResult("hash", "CLEARED", List.of(warning), List.of()));
+            assertThat(Files.readAllBytes(clearedInvoice)).isEqualTo(invoiceXml);
+        }
+
+        @Test
+        void testInvoiceClearanceStreamedBothWays() throws Exception {
+            ClearedInvoiceResult clearanceResponse = new ClearedInvoiceResult("hash", invoiceBase64, "CLEARED", List.of(), List.of());
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(objectMapper.writeValueAsString(clearanceResponse)));
+            ByteArrayOutputStream clearedInvoice = new ByteArrayOutputStream();
+
+            InvoiceResult invoiceResult = zatcaService.clearedInvoice("certificate", "secret",
+                    new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(ByteBuffer.wrap(invoiceXml))),
+                    InvoiceSink.of(Channels.newChannel(clearedInvoice)));
+
+            assertThat(invoiceResult.status()).isEqualTo("CLEARED");
+            assertThat(clearedInvoice.toByteArray()).isEqualTo(invoiceXml);
+        }
+
+        @Test
+        void testInvoiceClearanceRejectedLeavesTheSinkUntouched(@TempDir Path tempDir) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(400)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody("""
+                            {"invoiceHash":"hash","clearedInvoice":null,"status":"NOT_CLEARED","warnings":[],"errors":[]}"""));
+            Path clearedInvoice = tempDir.resolve("cleared.xml");
+
+            ZatcaClientApiException zatcaClientApiException = catchThrowableOfType(() ->
+                            zatcaService.clearedInvoice("certificate", "secret",
+                                    new InvoiceRequest("hash", "uuid", invoiceBase64), InvoiceSink.of(clearedInvoice)),
+                    ZatcaClientApiException.class);
+
+            assertThat(zatcaClientApiException.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(clearedInvoice).doesNotExist();
+        }
+    }
 }
@@ -11,14 +11,24 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -147,4 +157,91 @@ class DefaultZatcaServiceTest {
         assertThat(httpEntity.getHeaders().getFirst("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
         assertThat(httpEntity.getBody()).isEqualTo(invoiceRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    void callsGoThroughInterceptorsInOrder() {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "", "invoice");
+        when(restTemplate.postForObject(eq("/invoices/reporting/single"), httpEntityArgumentCaptor.capture(), eq(InvoiceResult.class))).thenReturn(invoiceResult);
+        StringBuilder calls = new StringBuilder();
+        sut.setInterceptors(List.of(recordingInterceptor("outer", calls), recordingInterceptor("inner", calls)));
+
+        InvoiceResult response = sut.reportInvoice("certificate", "secret", invoiceRequest);
+
+        assertThat(response).isEqualTo(invoiceResult);
+        assertThat(calls).hasToString("outer:REPORTING inner:REPORTING ");
+    }
+
+    @Test
+    void clearedInvoiceWrittenToASinkIsNotHedged() {
+        AtomicInteger attempts = new AtomicInteger();
+        sut.setInterceptors(List.of(new ZatcaHedgingInterceptor(new ZatcaProperties.Hedging(true,
+                Set.of(ZatcaEndpoint.CLEARANCE), Duration.ZERO, 95, Duration.ZERO, 1, 1, Duration.ofSeconds(10), 64),
+                command -> {
+                    attempts.incrementAndGet();
+                    command.run();
+                })));
+        InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "uuid", "invoice");
+        when(restTemplate.postForObject(eq("/invoices/clearance/single"), httpEntityArgumentCaptor.capture(), eq(ClearedInvoiceResult.class)))
+                .thenReturn(new ClearedInvoiceResult("hash", "invoice", "CLEARED", List.of(), List.of()));
+
+        sut.clearedInvoice("certificate", "secret", invoiceRequest);
+        sut.clearedInvoice("certificate", "secret", invoiceRequest, OutputStream::nullOutputStream);
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    private static ZatcaCallInterceptor recordingInterceptor(String name, StringBuilder calls) {
+        return new ZatcaCallInterceptor() {
+            @Override
+            public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+                calls.append(name).append(':').append(endpoint).append(' ');
+                return execution.get();
+            }
+        };
+    }
+
+    @Test
+    void reportInvoiceOfARegisteredEgsUnit() {
+        DefaultZatcaCredentialRegistry registry = new DefaultZatcaCredentialRegistry(Set.of(), zatcaProperties.apiVersion());
+        registry.register("egs-1", "certificate", "secret");
+        sut.setCredentialRegistry(registry);
+        InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "", "invoice");
+        when(restTemplate.postForObject(eq("/invoices/reporting/single"), httpEntityArgumentCaptor.capture(), eq(InvoiceResult.class)))
+                .thenReturn(new InvoiceResult("hash", "REPORTED", List.of(), List.of()));
+
+        sut.reportInvoice("egs-1", invoiceRequest);
+        sut.reportInvoice("egs-1", invoiceRequest);
+
+        List<HttpEntity<Object>> httpEntities = httpEntityArgumentCaptor.getAllValues();
+        HttpHeaders headers = httpEntities.get(0).getHeaders();
+        assertThat(headers.getFirst("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+        assertThat(headers.get("Accept-Version")).containsExactly("V2");
+        assertThat(headers.get("Clearance-Status")).containsExactly("0");
+        assertThat(headers.getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(httpEntities.get(1).getHeaders()).isSameAs(headers);
+        assertThatThrownBy(() -> sut.reportInvoice("egs-2", invoiceRequest)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void clearedInvoiceOfAnEgsUnitGoesThroughItsTenant() {
+        DefaultZatcaCredentialRegistry registry = new DefaultZatcaCredentialRegistry(Set.of("acme"), zatcaProperties.apiVersion());
+        registry.register("egs-1", "acme", "certificate", "secret");
+        RestTemplate tenantRestTemplate = mock(RestTemplate.class);
+        sut.setCredentialRegistry(registry);
+        sut.setTenants(Map.of("acme", new DefaultZatcaService(tenantRestTemplate, zatcaProperties)));
+        InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "", "invoice");
+        ClearedInvoiceResult clearanceResponse = new ClearedInvoiceResult("hash", "invoice", "CLEARED", List.of(), List.of());
+        when(tenantRestTemplate.postForObject(eq("/invoices/clearance/single"), httpEntityArgumentCaptor.capture(), eq(ClearedInvoiceResult.class)))
+                .thenReturn(clearanceResponse);
+
+        assertThat(sut.clearedInvoice("egs-1", invoiceRequest)).isEqualTo(clearanceResponse);
+
+        HttpHeaders headers = httpEntityArgumentCaptor.getValue().getHeaders();
+        assertThat(headers.getFirst("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+        assertThat(headers.get("Clearance-Status")).containsExactly("0");
+        verifyNoInteractions(restTemplate);
+        assertThatThrownBy(() -> registry.register("egs-2", "other", "certificate", "secret"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
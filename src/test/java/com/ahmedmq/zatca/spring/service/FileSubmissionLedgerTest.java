@@ -0,0 +1,137 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.Warning;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSubmissionLedgerTest {
+
+    static final Instant DAY = Instant.parse("2024-03-01T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    List<FileSubmissionLedger> ledgers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        ledgers.forEach(FileSubmissionLedger::close);
+    }
+
+    @Test
+    void findsSubmissionsByUuidAndInvoiceHash() throws IOException {
+        FileSubmissionLedger ledger = open(1 << 20);
+        SubmissionRecord rejected = new SubmissionRecord("uuid-1", "hash-1", ZatcaEndpoint.REPORTING, "NOT_REPORTED",
+                List.of(new Warning("KSA", "BR-KSA-08", "Check the seller address")),
+                List.of(new Error("XSD_SCHEMA_ERROR", "SCHEMA_ERROR", "Schema validation failed")),
+                "400 Bad Request", DAY, Duration.ofMillis(120));
+        SubmissionRecord reported = record(1, "REPORTED", DAY.plusSeconds(60));
+        ledger.append(rejected);
+        ledger.append(record(2, "REPORTED", DAY));
+        ledger.append(reported);
+
+        assertThat(ledger.findByUuid("uuid-1")).containsExactly(rejected, reported);
+        assertThat(ledger.findByInvoiceHash("hash-2")).extracting(SubmissionRecord::uuid).containsExactly("uuid-2");
+        assertThat(ledger.findByUuid("uuid-3")).isEmpty();
+    }
+
+    @Test
+    void findsSubmissionsInSealedSegmentsAfterReopening() throws IOException {
+        FileSubmissionLedger ledger = open(4096);
+        for (int i = 0; i < 500; i++) {
+            ledger.append(record(i % 250, "REPORTED", DAY.plusSeconds(i)));
+        }
+        ledger.close();
+        assertThat(indexes()).isNotEmpty();
+
+        FileSubmissionLedger reopened = open(4096);
+
+        assertThat(reopened.findByUuid("uuid-7")).extracting(SubmissionRecord::submittedAt)
+                .containsExactly(DAY.plusSeconds(7), DAY.plusSeconds(257));
+        assertThat(reopened.findByInvoiceHash("hash-249")).hasSize(2);
+        reopened.append(record(7, "REPORTED", DAY.plusSeconds(600)));
+        assertThat(reopened.findByUuid("uuid-7")).hasSize(3);
+    }
+
+    @Test
+    void rebuildsAMissingIndexAndDiscardsATornTail() throws IOException {
+        FileSubmissionLedger ledger = open(4096);
+        for (int i = 0; i < 100; i++) {
+            ledger.append(record(i, "REPORTED", DAY.plusSeconds(i)));
+        }
+        ledger.close();
+        Files.delete(indexes().get(0));
+        List<Path> logs = logs();
+        Path last = logs.get(logs.size() - 1);
+        try (FileChannel channel = FileChannel.open(last, WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        FileSubmissionLedger reopened = open(4096);
+
+        assertThat(reopened.findByUuid("uuid-0")).hasSize(1);
+        assertThat(reopened.findByUuid("uuid-99")).isEmpty();
+        assertThat(reopened.findByUuid("uuid-98")).hasSize(1);
+        reopened.append(record(99, "REPORTED", DAY.plusSeconds(99)));
+        assertThat(reopened.findByUuid("uuid-99")).hasSize(1);
+    }
+
+    @Test
+    void iteratesAndExportsTheSubmissionsOfADay() throws IOException {
+        FileSubmissionLedger ledger = open(4096);
+        for (int i = 0; i < 200; i++) {
+            ledger.append(record(i, "REPORTED", DAY.minusSeconds(3600).plusSeconds(i * 60L)));
+        }
+        List<SubmissionRecord> records = new ArrayList<>();
+
+        ledger.forEach(DAY, DAY.plus(Duration.ofDays(1)), records::add);
+
+        assertThat(records).hasSize(140).extracting(SubmissionRecord::uuid).startsWith("uuid-60", "uuid-61");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ledger.export(DAY, DAY.plusSeconds(120), out);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).hasSize(2).first().asString()
+                .contains("\"uuid\":\"uuid-60\"", "\"endpoint\":\"REPORTING\"", "\"submittedAt\":\"2024-03-01T00:00:00Z\"");
+    }
+
+    FileSubmissionLedger open(int segmentSize) throws IOException {
+        FileSubmissionLedger ledger = FileSubmissionLedger.open(directory, segmentSize);
+        ledgers.add(ledger);
+        return ledger;
+    }
+
+    List<Path> logs() throws IOException {
+        return files(".log");
+    }
+
+    List<Path> indexes() throws IOException {
+        return files(".idx");
+    }
+
+    List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    static SubmissionRecord record(int invoice, String status, Instant submittedAt) {
+        return new SubmissionRecord("uuid-" + invoice, "hash-" + invoice, ZatcaEndpoint.REPORTING, status, List.of(),
+                List.of(), null, submittedAt, Duration.ofMillis(80));
+    }
+}
@@ -0,0 +1,16 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+class JdkZatcaTransportTest extends ZatcaTransportConformanceTest {
+
+    @Override
+    ZatcaTransport transport(ZatcaProperties zatcaProperties, List<ZatcaExchangeObserver> observers) {
+        return new JdkZatcaTransport(ZatcaClientHttpRequestFactories.httpClient(zatcaProperties.http()),
+                zatcaProperties.baseUrl(), zatcaProperties.http().readTimeout(), new ObjectMapper(),
+                zatcaProperties.errors(), observers);
+    }
+}
@@ -0,0 +1,215 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.model.InvoiceSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveZatcaSubmitterTest {
+
+    @Mock
+    AsyncZatcaService asyncZatcaService;
+
+    ZatcaProperties zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of("zatca.api-version", "V2")))
+            .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+
+    @Test
+    void reportInvoicesKeepsOrderAndSurfacesErrors() {
+        when(asyncZatcaService.reportInvoice(eq("certificate"), eq("secret"), any())).thenAnswer(invocation -> {
+            InvoiceRequest invoiceRequest = invocation.getArgument(2);
+            int index = Integer.parseInt(invoiceRequest.uuid());
+            Mono<InvoiceResult> result = index % 2 == 0
+                    ? Mono.just(new InvoiceResult(invoiceRequest.invoiceHash(), "REPORTED", List.of(), List.of()))
+                    : Mono.error(new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "{}"));
+            return result.delaySubscription(Duration.ofMillis(10 - index));
+        });
+
+        List<SubmissionOutcome<InvoiceResult>> outcomes = new ReactiveZatcaSubmitter(asyncZatcaService, 4)
+                .reportInvoices("certificate", "secret", invoiceRequests(10))
+                .collectList()
+                .block();
+
+        assertThat(outcomes).extracting(outcome -> outcome.invoiceRequest().uuid())
+                .containsExactly("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+        assertThat(outcomes).extracting(SubmissionOutcome::isSuccess)
+                .containsExactly(true, false, true, false, true, false, true, false, true, false);
+        assertThat(outcomes.get(1).error()).isInstanceOf(ZatcaClientApiException.class);
+    }
+
+    @Test
+    void clearInvoicesCapsInFlightSubmissions() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(asyncZatcaService.clearedInvoice(eq("certificate"), eq("secret"), any())).thenAnswer(invocation ->
+                Mono.delay(Duration.ofMillis(2))
+                        .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                        .map(tick -> new ClearedInvoiceResult("hash", "invoice", "CLEARED", List.of(), List.of()))
+                        .doOnTerminate(inFlight::decrementAndGet));
+
+        Long cleared = new ReactiveZatcaSubmitter(asyncZatcaService, 3)
+                .clearInvoices("certificate", "secret", invoiceRequests(30))
+                .filter(SubmissionOutcome::isSuccess)
+                .count()
+                .block();
+
+        assertThat(cleared).isEqualTo(30);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void reportInvoicesHonoursDownstreamDemand() {
+        AtomicInteger pulled = new AtomicInteger();
+        when(asyncZatcaService.reportInvoice(eq("certificate"), eq("secret"), any()))
+                .thenReturn(Mono.just(new InvoiceResult("hash", "REPORTED", List.of(), List.of())));
+
+        new ReactiveZatcaSubmitter(asyncZatcaService, 4)
+                .reportInvoices("certificate", "secret", invoiceRequests(1_000).doOnNext(invoiceRequest -> pulled.incrementAndGet()))
+                .take(2)
+                .blockLast();
+
+        assertThat(pulled.get()).isLessThanOrEqualTo(2 + 4);
+    }
+
+    @Test
+    void reportInvoicesGoThroughTheInterceptorsAndDuplicateSuppression() {
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger intercepted = new AtomicInteger();
+        DefaultZatcaService zatcaService = new DefaultZatcaService(new ZatcaTransport() {
+            @Override
+            public <T> T exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, Class<T> responseType) {
+                sent.incrementAndGet();
+                return responseType.cast(new InvoiceResult(((InvoiceRequest) body).invoiceHash(), "REPORTED",
+                        List.of(), List.of()));
+            }
+
+            @Override
+            public InvoiceResult exchange(ZatcaEndpoint endpoint, HttpHeaders headers, Object body, InvoiceSink clearedInvoice) {
+                throw new UnsupportedOperationException();
+            }
+        }, zatcaProperties);
+        zatcaService.setInterceptors(List.of(new ZatcaCallInterceptor() {
+            @Override
+            public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+                intercepted.incrementAndGet();
+                return execution.get();
+            }
+        }));
+        zatcaService.setDeduplicator(new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 100, null, Clock.systemUTC()));
+        DefaultAsyncZatcaService asyncZatcaService = new DefaultAsyncZatcaService(WebClient.create(), new ObjectMapper(),
+                zatcaProperties, List.of());
+        asyncZatcaService.setZatcaService(zatcaService, Schedulers.boundedElastic());
+
+        List<SubmissionOutcome<InvoiceResult>> outcomes = new ReactiveZatcaSubmitter(asyncZatcaService, 1)
+                .reportInvoices("certificate", "secret", invoiceRequests(5).concatWith(invoiceRequests(5)))
+                .collectList()
+                .block();
+
+        assertThat(outcomes).hasSize(10).allMatch(SubmissionOutcome::isSuccess);
+        assertThat(intercepted.get()).isEqualTo(5);
+        assertThat(sent.get()).isEqualTo(5);
+    }
+
+    @Test
+    void reportInvoicesThroughTheObservationInterceptorWithoutParkingAThreadPerInvoice() throws Exception {
+        int invoices = 16;
+        CountDownLatch arrived = new CountDownLatch(invoices);
+        CountDownLatch respond = new CountDownLatch(1);
+        MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                arrived.countDown();
+                respond.await();
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody("{\"invoiceHash\":\"hash\",\"status\":\"REPORTED\",\"warnings\":[],\"errors\":[]}");
+            }
+        });
+        mockWebServer.start();
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            ObservationRegistry observationRegistry = ObservationRegistry.create();
+            observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+            DefaultAsyncZatcaService asyncZatcaService = new DefaultAsyncZatcaService(
+                    WebClient.create(mockWebServer.url("/").toString()), new ObjectMapper(), zatcaProperties,
+                    List.of(new ZatcaMeterExchangeObserver(meterRegistry, observationRegistry)));
+            asyncZatcaService.setInterceptors(List.of(
+                    new ZatcaObservationInterceptor(observationRegistry, meterRegistry).reactive()));
+
+            CompletableFuture<List<SubmissionOutcome<InvoiceResult>>> outcomes =
+                    new ReactiveZatcaSubmitter(asyncZatcaService, invoices)
+                            .reportInvoices("certificate", "secret", invoiceRequests(invoices))
+                            .collectList()
+                            .toFuture();
+
+            assertThat(arrived.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(threadsInACall()).isEmpty();
+            respond.countDown();
+            assertThat(outcomes.get(10, TimeUnit.SECONDS)).hasSize(invoices).allMatch(SubmissionOutcome::isSuccess);
+            assertThat(meterRegistry.get(ZatcaObservationInterceptor.OBSERVATION_NAME)
+                    .tag("endpoint", "REPORTING")
+                    .tag("http.status", "200")
+                    .tag("zatca.status", "REPORTED")
+                    .timer().count()).isEqualTo(invoices);
+        } finally {
+            respond.countDown();
+            mockWebServer.shutdown();
+        }
+    }
+
+    /**
+     * The threads inside the service while the mock gateway holds every invoice, which would be those parked
+     * waiting on its responses.
+     */
+    private static List<String> threadsInACall() {
+        return Thread.getAllStackTraces().entrySet().stream()
+                .filter(thread -> Arrays.stream(thread.getValue()).anyMatch(frame ->
+                        frame.getClassName().startsWith("com.ahmedmq.zatca")
+                                && !frame.getClassName().startsWith(ReactiveZatcaSubmitterTest.class.getName())))
+                .map(thread -> thread.getKey().getName())
+                .toList();
+    }
+
+    private static Flux<InvoiceRequest> invoiceRequests(int count) {
+        return Flux.range(0, count).map(i -> new InvoiceRequest("hash-" + i, String.valueOf(i), "invoice"));
+    }
+}
@@ -0,0 +1,13 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+
+import java.util.List;
+
+class RestClientZatcaTransportTest extends ZatcaTransportConformanceTest {
+
+    @Override
+    ZatcaTransport transport(ZatcaProperties zatcaProperties, List<ZatcaExchangeObserver> observers) {
+        return new RestClientZatcaTransport(restTemplate(zatcaProperties, observers));
+    }
+}
@@ -0,0 +1,165 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingInvoiceHasherTest {
+
+    static final String INVOICE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2" xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2" xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2" xmlns:ext="urn:oasis:names:specification:ubl:schema:xsd:CommonExtensionComponents-2">
+                <ext:UBLExtensions>
+                    <ext:UBLExtension>
+                        <ext:ExtensionURI>urn:oasis:names:specification:ubl:dsig:enveloped:xades</ext:ExtensionURI>
+                        <ext:ExtensionContent>
+                            <sig:UBLDocumentSignatures xmlns:sig="urn:oasis:names:specification:ubl:schema:xsd:CommonSignatureComponents-2">%s</sig:UBLDocumentSignatures>
+                        </ext:ExtensionContent>
+                    </ext:UBLExtension>
+                </ext:UBLExtensions>
+                <cbc:ProfileID>reporting:1.0</cbc:ProfileID>
+                <cbc:ID>SME00010</cbc:ID>
+                <cbc:UUID>8e6000cf-1a98-4174-b3e7-b5d5954bc10d</cbc:UUID>
+                <cbc:IssueDate>2022-08-17</cbc:IssueDate>
+                <cbc:InvoiceTypeCode name="0200000">388</cbc:InvoiceTypeCode>
+                <cbc:Note languageID="ar">ملاحظة &amp; &lt;تجربة&gt;</cbc:Note>
+                <cbc:DocumentCurrencyCode>SAR</cbc:DocumentCurrencyCode>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID>ICV</cbc:ID>
+                    <cbc:UUID>10</cbc:UUID>
+                </cac:AdditionalDocumentReference>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID>PIH</cbc:ID>
+                    <cac:Attachment>
+                        <cbc:EmbeddedDocumentBinaryObject mimeCode="text/plain">NWZlY2ViNjZmZmM4NmYzOGQ5NTI3ODZjNmQ2OTZjNzljMmRiYzIzOWRkNGU5MWI0NjcyOWQ3M2EyN2ZiNTdlOQ==</cbc:EmbeddedDocumentBinaryObject>
+                    </cac:Attachment>
+                </cac:AdditionalDocumentReference>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID> QR </cbc:ID>
+                    <cac:Attachment>
+                        <cbc:EmbeddedDocumentBinaryObject mimeCode="text/plain">%s</cbc:EmbeddedDocumentBinaryObject>
+                    </cac:Attachment>
+                </cac:AdditionalDocumentReference>
+                <cac:Signature>
+                    <cbc:ID>urn:oasis:names:specification:ubl:signature:Invoice</cbc:ID>
+                    <cbc:SignatureMethod>urn:oasis:names:specification:ubl:dsig:enveloped:xades</cbc:SignatureMethod>
+                </cac:Signature>
+                <cac:AccountingSupplierParty>
+                    <cac:Party>
+                        <cac:PartyIdentification>
+                            <cbc:ID schemeID="CRN">1010010000</cbc:ID>
+                        </cac:PartyIdentification>
+                        <cac:PostalAddress>
+                            <cbc:StreetName>الامير سلطان | Prince Sultan</cbc:StreetName>
+                            <cbc:CityName>الرياض | Riyadh</cbc:CityName>
+                        </cac:PostalAddress>
+                    </cac:Party>
+                </cac:AccountingSupplierParty>
+                <cac:TaxTotal>
+                    <cbc:TaxAmount currencyID="SAR">0.6</cbc:TaxAmount>
+                </cac:TaxTotal>
+                <cac:LegalMonetaryTotal>
+                    <cbc:PayableAmount currencyID="SAR">4.60</cbc:PayableAmount>
+                </cac:LegalMonetaryTotal>
+                <cac:InvoiceLine>
+                    <cbc:ID>1</cbc:ID>
+                    <cbc:InvoicedQuantity unitCode="PCE">2.000000</cbc:InvoicedQuantity>
+                    <cbc:LineExtensionAmount currencyID="SAR">4.00</cbc:LineExtensionAmount>
+                    <cac:Item>
+                        <cbc:Name>قلم رصاص</cbc:Name>
+                    </cac:Item>
+                </cac:InvoiceLine>
+            </Invoice>
+            """;
+
+    StreamingInvoiceHasher invoiceHasher = new StreamingInvoiceHasher();
+
+    XsltInvoiceHasher referenceHasher = new XsltInvoiceHasher();
+
+    @Test
+    void hashesAsTheZatcaStylesheetAndC14n11Do() {
+        byte[] invoice = invoice("signature", "qr");
+
+        assertThat(invoiceHasher.hash(invoice)).isEqualTo(referenceHasher.hash(invoice));
+    }
+
+    @Test
+    void ignoresTheSignatureAndTheQrCode() {
+        assertThat(invoiceHasher.hash(invoice("signature", "qr")))
+                .isEqualTo(invoiceHasher.hash(invoice("another signature", "another qr")));
+    }
+
+    @Test
+    void keepsOtherAdditionalDocumentReferences() {
+        byte[] invoice = invoice("signature", "qr");
+        byte[] nextInvoice = new String(invoice, StandardCharsets.UTF_8)
+                .replace("<cbc:UUID>10</cbc:UUID>", "<cbc:UUID>11</cbc:UUID>").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(invoiceHasher.hash(invoice)).isNotEqualTo(invoiceHasher.hash(nextInvoice));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "<Invoice b=\"2\" a=\"1\" xmlns:z=\"urn:z\" xmlns=\"urn:i\" z:c=\"3\" xmlns:a=\"urn:a\" a:c=\"4\"/>",
+            "<Invoice xmlns=\"urn:i\"><Child xmlns=\"urn:i\"><x:Leaf xmlns:x=\"urn:x\" xmlns=\"\"><Plain/></x:Leaf></Child></Invoice>",
+            "<Invoice attribute=\"tab&#9;newline&#10;return&#13;quote&quot;&amp;&lt;&gt;'\">text&#13;&amp;&lt;&gt;\"'<![CDATA[<cdata> & ]]>]]&gt;</Invoice>",
+            "<?pi before?><!-- comment --><Invoice><!-- inner --><?inner pi data?>text<Empty></Empty></Invoice><?pi after?>",
+            "<Invoice xmlns:ext=\"urn:ext\"><Nested><ext:UBLExtensions><Deep/></ext:UBLExtensions><Signature>kept</Signature></Nested></Invoice>",
+            "<Invoice xmlns:cac=\"urn:cac\" xmlns:cbc=\"urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2\">\n  <cac:AdditionalDocumentReference><cbc:UUID>QR</cbc:UUID><ID>QR</ID></cac:AdditionalDocumentReference>\n  <cac:AdditionalDocumentReference><cbc:ID>\tQR\n</cbc:ID></cac:AdditionalDocumentReference>\n</Invoice>",
+            "<Invoice>😀 surrogate pairs 𝄞 and ‰ three byte characters</Invoice>",
+            "<CreditNote><UBLExtensions/><Signature/></CreditNote>"
+    })
+    void canonicalizesAsC14n11(String invoiceXml) {
+        byte[] invoice = invoiceXml.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(invoiceHasher.hash(invoice)).isEqualTo(referenceHasher.hash(invoice));
+    }
+
+    @Test
+    void hashesBatchesInOrder() {
+        List<InvoiceSource> invoices = IntStream.range(0, 32)
+                .mapToObj(i -> InvoiceSource.of(java.nio.ByteBuffer.wrap(invoice("signature", "qr" + i))))
+                .toList();
+        List<String> expected = invoices.stream().map(invoiceHasher::hash).toList();
+
+        assertThat(invoiceHasher.hashAll(invoices)).isEqualTo(expected);
+    }
+
+    @Test
+    void hashesBatchesInSlicesOnTheExecutor() {
+        List<InvoiceSource> invoices = IntStream.range(0, 10)
+                .mapToObj(i -> InvoiceSource.of(java.nio.ByteBuffer.wrap(invoice("signature", "qr" + i))))
+                .toList();
+        List<Runnable> slices = new ArrayList<>();
+        StreamingInvoiceHasher sut = new StreamingInvoiceHasher(slice -> {
+            slices.add(slice);
+            slice.run();
+        }, 4);
+
+        assertThat(sut.hashAll(invoices)).isEqualTo(invoices.stream().map(invoiceHasher::hash).toList());
+        assertThat(slices).hasSize(4);
+        assertThatThrownBy(() -> sut.hashAll(List.of(invoices.get(0),
+                InvoiceSource.of(java.nio.ByteBuffer.wrap("<Invoice>".getBytes(StandardCharsets.UTF_8))))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsMalformedXml() {
+        assertThatThrownBy(() -> invoiceHasher.hash("<Invoice>".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invoice is not well-formed XML");
+    }
+
+    static byte[] invoice(String signature, String qrCode) {
+        return INVOICE.formatted(signature, qrCode).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,28 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+
+class WebClientZatcaTransportTest extends ZatcaTransportConformanceTest {
+
+    ConnectionProvider connectionProvider;
+
+    @Override
+    ZatcaTransport transport(ZatcaProperties zatcaProperties, List<ZatcaExchangeObserver> observers) {
+        connectionProvider = ZatcaClientHttpConnectors.connectionProvider(zatcaProperties.http());
+        return new WebClientZatcaTransports(WebClient.builder(), connectionProvider, new ObjectMapper(),
+                zatcaProperties.errors(), observers, new SimpleAsyncTaskExecutor("zatca-web-client-"))
+                .create(zatcaProperties.baseUrl(), zatcaProperties.http());
+    }
+
+    @AfterEach
+    void disposeConnectionProvider() {
+        connectionProvider.dispose();
+    }
+}
@@ -0,0 +1,85 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceSource;
+
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * The DOM based way of hashing an invoice, as done by the ZATCA SDK: the published stylesheet removes the
+ * excluded elements, then the result is canonicalized with C14N 1.1 and hashed. Used as the reference the
+ * {@link StreamingInvoiceHasher} is checked and benchmarked against.
+ */
+public class XsltInvoiceHasher implements InvoiceHasher {
+
+    static final String INVOICE_HASH_STYLESHEET = """
+            <xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                            xmlns:xs="http://www.w3.org/2001/XMLSchema"
+                            xmlns:ext="urn:oasis:names:specification:ubl:schema:xsd:CommonExtensionComponents-2"
+                            xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2"
+                            xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2"
+                            exclude-result-prefixes="xs">
+                <xsl:output omit-xml-declaration="yes" encoding="utf-8" indent="no"/>
+                <xsl:template match="node() | @*">
+                    <xsl:copy>
+                        <xsl:apply-templates select="node() | @*"/>
+                    </xsl:copy>
+                </xsl:template>
+                <xsl:template match="//*[local-name()='Invoice']//*[local-name()='UBLExtensions']"/>
+                <xsl:template match="//*[local-name()='AdditionalDocumentReference'][cbc:ID[normalize-space(text()) = 'QR']]"/>
+                <xsl:template match="//*[local-name()='Invoice']/*[local-name()='Signature']"/>
+            </xsl:stylesheet>""";
+
+    private final Templates templates;
+
+    private final CanonicalizationMethod canonicalizationMethod;
+
+    public XsltInvoiceHasher() {
+        try {
+            templates = TransformerFactory.newInstance().newTemplates(
+                    new StreamSource(new StringReader(INVOICE_HASH_STYLESHEET)));
+            canonicalizationMethod = XMLSignatureFactory.getInstance("DOM").newCanonicalizationMethod(
+                    CanonicalizationMethod.INCLUSIVE_11, (C14NMethodParameterSpec) null);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String hash(InvoiceSource invoice) {
+        try (InputStream invoiceXml = invoice.openStream()) {
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setNamespaceAware(true);
+            ByteArrayOutputStream transformed = new ByteArrayOutputStream();
+            templates.newTransformer().transform(
+                    new DOMSource(documentBuilderFactory.newDocumentBuilder().parse(invoiceXml)),
+                    new StreamResult(transformed));
+            OctetStreamData canonical = (OctetStreamData) canonicalizationMethod.transform(
+                    new OctetStreamData(new ByteArrayInputStream(transformed.toByteArray())), null);
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(canonical.getOctetStream().readAllBytes()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public List<String> hashAll(List<? extends InvoiceSource> invoices) {
+        return invoices.stream().map(this::hash).toList();
+    }
+}
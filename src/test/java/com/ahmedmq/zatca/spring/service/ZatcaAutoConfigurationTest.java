@@ -1,13 +1,23 @@
 package com.ahmedmq.zatca.spring.service;
 
 import com.ahmedmq.zatca.ZatcaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
 import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
 
 public class ZatcaAutoConfigurationTest {
 
@@ -22,6 +32,214 @@ public class ZatcaAutoConfigurationTest {
                 .run(context -> assertThat(context).hasSingleBean(DefaultZatcaService.class));
     }
 
+    @Test
+    void testAsyncZatcaServiceAutoConfiguration() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).hasSingleBean(DefaultAsyncZatcaService.class));
+    }
+
+    @Test
+    void testInvoiceHasherAutoConfiguration() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).hasSingleBean(StreamingInvoiceHasher.class));
+    }
+
+    @Test
+    void testInvoiceChainAutoConfiguration() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(InvoiceChain.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.chain.directory=/var/lib/zatca/chain")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(DefaultInvoiceChain.class);
+                    assertThat(context).hasSingleBean(FileInvoiceChainStore.class);
+                    assertThat(context.getBean(ZatcaProperties.class).chain().directory())
+                            .isEqualTo(Path.of("/var/lib/zatca/chain"));
+                });
+    }
+
+    @Test
+    void testTenantsAutoConfiguration() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.base-url=http://zatca.test",
+                        "zatca.tenants.acme.base-url=http://simulation.zatca.test",
+                        "zatca.tenants.acme.http.max-connections=20",
+                        "zatca.tenants.globex.base-url=http://globex.zatca.test")
+                .run(context -> {
+                    ZatcaProperties.Tenant acme = context.getBean(ZatcaProperties.class).tenants().get("acme");
+                    assertThat(acme.baseUrl()).isEqualTo("http://simulation.zatca.test");
+                    assertThat(acme.http().maxConnections()).isEqualTo(20);
+                    assertThat(acme.http().readTimeout()).isEqualTo(Duration.ofSeconds(30));
+                    ZatcaTenantRequestFactories tenantRequestFactories = context.getBean(ZatcaTenantRequestFactories.class);
+                    assertThat(tenantRequestFactories.get("acme")).isInstanceOf(HttpComponentsClientHttpRequestFactory.class);
+                    assertThat(tenantRequestFactories.get("globex")).isNull();
+                    ZatcaCredentialRegistry registry = context.getBean(ZatcaCredentialRegistry.class);
+                    registry.register("egs-1", "globex", "certificate", "secret");
+                    assertThat(registry.isRegistered("egs-1")).isTrue();
+                });
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.transport=jdk",
+                        "zatca.tenants.acme.http.max-connections=20")
+                .run(context -> assertThat(context.getBean(ZatcaTenantRequestFactories.class).get("acme")).isNull());
+    }
+
+    @Test
+    void csidRenewalManagerWhenEnabledWithARenewalSource() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.renewal.enabled=true")
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaCsidRenewalManager.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withBean(ZatcaCsidRenewalSource.class, () -> egsUnit -> null)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaCsidRenewalManager.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withBean(ZatcaCsidRenewalSource.class, () -> egsUnit -> null)
+                .withPropertyValues("zatca.renewal.enabled=true", "zatca.renewal.renew-before=30d")
+                .run(context -> {
+                    assertThat(context.getBean(ZatcaCsidRenewalManager.class).isRunning()).isTrue();
+                    assertThat(context.getBean(ZatcaProperties.class).renewal().renewBefore()).isEqualTo(Duration.ofDays(30));
+                });
+    }
+
+    @Test
+    void onboardingWithOnboardingSupport() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaOnboarding.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withBean(ZatcaOnboardingSupport.class, () -> mock(ZatcaOnboardingSupport.class))
+                .withPropertyValues("zatca.onboarding.concurrency=4", "zatca.onboarding.key-curve=secp256r1")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ZatcaOnboarding.class);
+                    assertThat(context).hasSingleBean(FileOnboardingStore.class);
+                    assertThat(context.getBean(ZatcaProperties.class).onboarding().concurrency()).isEqualTo(4);
+                    assertThat(context.getBean(KeyPairPool.class).take()).isNotNull();
+                });
+    }
+
+    @Test
+    void outboxWhenEnabled(@TempDir Path directory) {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaOutbox.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.outbox.enabled=true", "zatca.outbox.directory=" + directory,
+                        "zatca.outbox.segment-size=1MB")
+                .run(context -> {
+                    assertThat(context.getBean(DefaultZatcaOutbox.class).isRunning()).isTrue();
+                    assertThat(context.getBean(ZatcaOutbox.class).pending()).isZero();
+                    assertThat(directory.resolve("segment-0000000000000000000.log")).hasSize(1 << 20);
+                });
+    }
+
+    @Test
+    void submissionLedgerWhenEnabled(@TempDir Path directory) {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaSubmissionLedger.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.ledger.enabled=true", "zatca.ledger.directory=" + directory)
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ZatcaSubmissionLedger.class);
+                    assertThat(context).hasSingleBean(ZatcaLedgerInterceptor.class);
+                    assertThat(context.getBean(ZatcaSubmissionLedger.class).findByUuid("uuid-1")).isEmpty();
+                });
+    }
+
+    @Test
+    void submissionDeduplicatorWhenEnabled(@TempDir Path directory) {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.deduplication.enabled=true")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ZatcaSubmissionDeduplicator.class);
+                    assertThat(context).doesNotHaveBean(ZatcaDeduplicationStore.class);
+                });
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.deduplication.directory=" + directory)
+                .run(context -> {
+                    assertThat(context).doesNotHaveBean(ZatcaSubmissionDeduplicator.class);
+                    assertThat(context).doesNotHaveBean(ZatcaDeduplicationStore.class);
+                });
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.deduplication.enabled=true", "zatca.deduplication.ttl=1h",
+                        "zatca.deduplication.directory=" + directory)
+                .run(context -> {
+                    assertThat(context).hasSingleBean(FileDeduplicationStore.class);
+                    assertThat(context.getBean(ZatcaProperties.class).deduplication().ttl()).isEqualTo(Duration.ofHours(1));
+                    assertThat(context.getBean(ZatcaSubmissionDeduplicator.class).size()).isZero();
+                });
+    }
+
+    @Test
+    void retryInterceptorWhenEnabled() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaRetryInterceptor.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.retry.enabled=true")
+                .run(context -> assertThat(context).hasSingleBean(ZatcaRetryInterceptor.class));
+    }
+
+    @Test
+    void hedgingInterceptorWhenEnabled() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaHedgingInterceptor.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.hedging.enabled=true", "zatca.hedging.endpoints=clearance,reporting")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ZatcaHedgingInterceptor.class);
+                    ZatcaProperties.Hedging hedging = context.getBean(ZatcaProperties.class).hedging();
+                    assertThat(hedging.endpoints()).containsOnly(ZatcaEndpoint.CLEARANCE, ZatcaEndpoint.REPORTING);
+                    assertThat(hedging.delay()).isNull();
+                });
+    }
+
+    @Test
+    void rateLimitInterceptorWhenEnabled() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaRateLimitInterceptor.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withConfiguration(AutoConfigurations.of(ZatcaMetricsAutoConfiguration.class))
+                .withBean(SimpleMeterRegistry.class)
+                .withPropertyValues("zatca.rate-limit.enabled=true", "zatca.rate-limit.endpoints.clearance=5")
+                .run(context -> {
+                    assertThat(context.getBean(ZatcaRateLimitInterceptor.class).tokenBuckets()
+                            .get(ZatcaEndpoint.CLEARANCE).permitsPerSecond()).isEqualTo(5);
+                    assertThat(context.getBean(SimpleMeterRegistry.class).get(ZatcaRateLimitMeters.CONCURRENCY_LIMIT)
+                            .gauge().value()).isEqualTo(20);
+                });
+    }
+
+    @Test
+    void preflightInterceptorWhenEnabled() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context).doesNotHaveBean(ZatcaPreflightInterceptor.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.preflight.enabled=true")
+                .run(context -> assertThat(context).hasSingleBean(ZatcaPreflightInterceptor.class));
+    }
+
     @Test
     void registerProperties() {
         this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
@@ -35,4 +253,73 @@ public class ZatcaAutoConfigurationTest {
                     assertThat(zatcaProperties.apiVersion()).isEqualTo("V3");
                 });
     }
+
+    @Test
+    void pooledRequestFactoryByDefault() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(context.getBean("zatcaClientHttpRequestFactory", ClientHttpRequestFactory.class))
+                        .isInstanceOf(HttpComponentsClientHttpRequestFactory.class));
+    }
+
+    @Test
+    void http2RequestFactoryWhenEnabled() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.http.http2=true")
+                .run(context -> assertThat(context.getBean("zatcaClientHttpRequestFactory", ClientHttpRequestFactory.class))
+                        .isInstanceOf(JdkClientHttpRequestFactory.class));
+    }
+
+    @Test
+    void registerHttpProperties() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.http.max-connections-per-route=10",
+                        "zatca.http.read-timeout=2s")
+                .run(context -> {
+                    ZatcaProperties.Http http = context.getBean(ZatcaProperties.class).http();
+                    assertThat(http.maxConnectionsPerRoute()).isEqualTo(10);
+                    assertThat(http.readTimeout()).isEqualTo(Duration.ofSeconds(2));
+                    assertThat(http.maxConnections()).isEqualTo(200);
+                    assertThat(http.idleTimeout()).isEqualTo(Duration.ofSeconds(30));
+                });
+    }
+
+    @Test
+    void transportSelectedByProperty() {
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .run(context -> assertThat(transport(context)).isInstanceOf(RestTemplateZatcaTransport.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.transport=rest-client")
+                .run(context -> assertThat(transport(context)).isInstanceOf(RestClientZatcaTransport.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.transport=web-client")
+                .run(context -> assertThat(transport(context)).isInstanceOf(WebClientZatcaTransport.class));
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withPropertyValues("zatca.transport=jdk")
+                .run(context -> assertThat(transport(context)).isInstanceOf(JdkZatcaTransport.class));
+    }
+
+    @Test
+    void customTransportFactory() {
+        ZatcaTransport transport = mock(ZatcaTransport.class);
+        this.contextRunner.withUserConfiguration(RestTemplateAutoConfiguration.class,
+                        ZatcaAutoConfiguration.class)
+                .withBean(ZatcaTransportFactory.class, () -> (baseUrl, http, requestFactory) -> transport)
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ZatcaTransportFactory.class);
+                    assertThat(transport(context)).isSameAs(transport);
+                });
+    }
+
+    private static ZatcaTransport transport(ApplicationContext context) {
+        ZatcaProperties zatcaProperties = context.getBean(ZatcaProperties.class);
+        return context.getBean(ZatcaTransportFactory.class).create("http://zatca.test", zatcaProperties.http(),
+                context.getBean("zatcaClientHttpRequestFactory", ClientHttpRequestFactory.class));
+    }
 }
@@ -0,0 +1,86 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZatcaBulkReporterIT {
+
+    static final int INVOICES = 500;
+
+    static final int CONCURRENCY = 32;
+
+    MockWebServer mockWebServer;
+
+    AtomicInteger inFlight = new AtomicInteger();
+
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(ZatcaClientHttpRequestFactoriesIT.INVOICE_RESULT);
+            }
+        });
+        mockWebServer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void reportsUpToTheBulkConcurrencyAtOnce() {
+        List<InvoiceRequest> invoiceRequests = IntStream.range(0, INVOICES)
+                .mapToObj(i -> new InvoiceRequest("hash", String.valueOf(i), "invoice"))
+                .toList();
+
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class,
+                        RestTemplateAutoConfiguration.class, ZatcaAutoConfiguration.class))
+                .withPropertyValues("zatca.base-url=" + mockWebServer.url("/"),
+                        "zatca.api-version=V2",
+                        "zatca.bulk.concurrency=" + CONCURRENCY)
+                .run(context -> {
+                    List<SubmissionOutcome<InvoiceResult>> outcomes = context.getBean(ZatcaBulkReporter.class)
+                            .reportInvoices("certificate", "secret", invoiceRequests);
+
+                    assertThat(outcomes).extracting(SubmissionOutcome::invoiceRequest)
+                            .containsExactlyElementsOf(invoiceRequests);
+                    assertThat(outcomes).allMatch(SubmissionOutcome::isSuccess);
+                    assertThat(mockWebServer.getRequestCount()).isEqualTo(INVOICES);
+                    assertThat(maxInFlight).hasValue(CONCURRENCY);
+                });
+    }
+}
@@ -0,0 +1,90 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ZatcaBulkReporterTest {
+
+    @Mock
+    ZatcaService zatcaService;
+
+    @Test
+    void reportInvoicesPreservesOrder() {
+        when(zatcaService.reportInvoice(eq("certificate"), eq("secret"), any(InvoiceRequest.class))).thenAnswer(invocation -> {
+            InvoiceRequest invoiceRequest = invocation.getArgument(2);
+            Thread.sleep(Long.parseLong(invoiceRequest.uuid()) % 5);
+            return new InvoiceResult(invoiceRequest.invoiceHash(), "REPORTED", List.of(), List.of());
+        });
+        List<InvoiceRequest> invoiceRequests = invoiceRequests(50);
+
+        List<SubmissionOutcome<InvoiceResult>> outcomes = bulkReporter(8)
+                .reportInvoices("certificate", "secret", invoiceRequests);
+
+        assertThat(outcomes).extracting(SubmissionOutcome::invoiceRequest).containsExactlyElementsOf(invoiceRequests);
+        assertThat(outcomes).allSatisfy(outcome -> {
+            assertThat(outcome.isSuccess()).isTrue();
+            assertThat(outcome.result().invoiceHash()).isEqualTo(outcome.invoiceRequest().invoiceHash());
+        });
+    }
+
+    @Test
+    void reportInvoicesContinuesAfterFailures() {
+        ZatcaClientApiException rejection = new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "{}");
+        InvoiceResult reported = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        List<InvoiceRequest> invoiceRequests = invoiceRequests(3);
+        when(zatcaService.reportInvoice("certificate", "secret", invoiceRequests.get(0))).thenReturn(reported);
+        when(zatcaService.reportInvoice("certificate", "secret", invoiceRequests.get(1))).thenThrow(rejection);
+        when(zatcaService.reportInvoice("certificate", "secret", invoiceRequests.get(2))).thenReturn(reported);
+
+        List<SubmissionOutcome<InvoiceResult>> outcomes = bulkReporter(2)
+                .reportInvoices("certificate", "secret", invoiceRequests);
+
+        assertThat(outcomes).extracting(SubmissionOutcome::isSuccess).containsExactly(true, false, true);
+        assertThat(outcomes.get(1).error()).isSameAs(rejection);
+        assertThat(outcomes.get(1).result()).isNull();
+    }
+
+    @Test
+    void reportInvoicesBoundsConcurrency() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(zatcaService.reportInvoice(eq("certificate"), eq("secret"), any(InvoiceRequest.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            inFlight.decrementAndGet();
+            return new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        });
+
+        bulkReporter(4).reportInvoices("certificate", "secret", invoiceRequests(40));
+
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(4);
+    }
+
+    private ZatcaBulkReporter bulkReporter(int concurrency) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+        executor.setConcurrencyLimit(concurrency);
+        return new ZatcaBulkReporter(zatcaService, executor);
+    }
+
+    private static List<InvoiceRequest> invoiceRequests(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new InvoiceRequest("hash-" + i, String.valueOf(i), "invoice"))
+                .toList();
+    }
+}
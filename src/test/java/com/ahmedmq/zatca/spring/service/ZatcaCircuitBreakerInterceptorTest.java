@@ -0,0 +1,183 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ahmedmq.zatca.spring.service.CircuitBreakerState.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class ZatcaCircuitBreakerInterceptorTest {
+
+    AtomicLong clock = new AtomicLong();
+
+    List<Object> events = new ArrayList<>();
+
+    ZatcaCircuitBreakerInterceptor sut = new ZatcaCircuitBreakerInterceptor(
+            new ZatcaProperties.CircuitBreaker(true, 10, 4, 50, 80,
+                    Duration.ofSeconds(2), Duration.ofSeconds(30), 2, Duration.ofSeconds(60)),
+            events::add, clock::get);
+
+    @Test
+    void opensWhenFailureRateIsReachedAndFailsFast() {
+        succeed(ZatcaEndpoint.CLEARANCE, 2);
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.SERVICE_UNAVAILABLE, 2);
+        AtomicInteger executions = new AtomicInteger();
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, executions::incrementAndGet));
+
+        assertThat(thrown).isInstanceOf(ZatcaCircuitOpenException.class);
+        assertThat(((ZatcaCircuitOpenException) thrown).getEndpoint()).isEqualTo(ZatcaEndpoint.CLEARANCE);
+        assertThat(((ZatcaCircuitOpenException) thrown).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(thrown.getStackTrace()).isEmpty();
+        assertThat(executions).hasValue(0);
+        assertThat(events).containsExactly(
+                new ZatcaCircuitBreakerStateChangedEvent(ZatcaEndpoint.CLEARANCE, CLOSED, OPEN));
+    }
+
+    @Test
+    void eachTenantHasItsOwnCircuitBreakers() {
+        ZatcaCircuitBreakerInterceptor acme = sut.forTenant("acme");
+
+        succeed(ZatcaEndpoint.CLEARANCE, 2);
+        for (int i = 0; i < 2; i++) {
+            catchThrowable(() -> acme.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+                throw new ZatcaClientApiException(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", "");
+            }));
+        }
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.SERVICE_UNAVAILABLE, 2);
+
+        assertThat(sut.forTenant("acme")).isSameAs(acme);
+        assertThat(sut.forTenant(ZatcaCredentialRegistry.DEFAULT_TENANT)).isSameAs(sut);
+        assertThat(acme.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(CLOSED);
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(OPEN);
+        assertThat(events).containsExactly(new ZatcaCircuitBreakerStateChangedEvent(
+                ZatcaCredentialRegistry.DEFAULT_TENANT, ZatcaEndpoint.CLEARANCE, CLOSED, OPEN));
+    }
+
+    @Test
+    void businessRejectionsDoNotOpen() {
+        fail(ZatcaEndpoint.REPORTING, HttpStatus.BAD_REQUEST, 10);
+
+        assertThat(sut.state(ZatcaEndpoint.REPORTING)).isEqualTo(CLOSED);
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void slowCallsOpen() {
+        for (int i = 0; i < 4; i++) {
+            sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> clock.addAndGet(Duration.ofSeconds(3).toNanos()));
+        }
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(OPEN);
+    }
+
+    @Test
+    void endpointsAreTrackedSeparately() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(OPEN);
+        assertThat(sut.state(ZatcaEndpoint.REPORTING)).isEqualTo(CLOSED);
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED")).isEqualTo("REPORTED");
+    }
+
+    @Test
+    void closesAfterSuccessfulProbes() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        succeed(ZatcaEndpoint.CLEARANCE, 2);
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(CLOSED);
+        assertThat(events).extracting("toState").containsExactly(OPEN, HALF_OPEN, CLOSED);
+    }
+
+    @Test
+    void reopensAfterFailedProbes() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.BAD_GATEWAY, 2);
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(OPEN);
+        assertThat(events).extracting("toState").containsExactly(OPEN, HALF_OPEN, OPEN);
+    }
+
+    @Test
+    void limitsProbesInHalfOpenState() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () ->
+                sut.intercept(ZatcaEndpoint.CLEARANCE, null, () ->
+                        sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> "CLEARED"))));
+
+        assertThat(thrown).isInstanceOf(ZatcaCircuitOpenException.class);
+    }
+
+    @Test
+    void callsRefusedByTheRateLimiterGiveTheirProbeBack() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        for (int i = 0; i < 3; i++) {
+            catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+                throw new ZatcaRateLimitedException(ZatcaEndpoint.CLEARANCE);
+            }));
+        }
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(HALF_OPEN);
+        succeed(ZatcaEndpoint.CLEARANCE, 2);
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(CLOSED);
+    }
+
+    @Test
+    void reopensWhenTheProbesHangInHalfOpenState() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () ->
+                sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+                    clock.addAndGet(Duration.ofSeconds(60).toNanos());
+                    return sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> "CLEARED");
+                })));
+
+        assertThat(sut.state(ZatcaEndpoint.CLEARANCE)).isEqualTo(OPEN);
+        assertThat(events).extracting("toState").containsExactly(OPEN, HALF_OPEN, OPEN);
+    }
+
+    @Test
+    void cancelledAsynchronousCallsGiveTheirProbeBack() {
+        fail(ZatcaEndpoint.CLEARANCE, HttpStatus.INTERNAL_SERVER_ERROR, 4);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        ZatcaReactiveCallInterceptor reactive = sut.reactive();
+
+        for (int i = 0; i < 3; i++) {
+            reactive.intercept(ZatcaEndpoint.CLEARANCE, null, Mono.never()).subscribe().dispose();
+        }
+
+        assertThat(reactive.intercept(ZatcaEndpoint.CLEARANCE, null, Mono.just("CLEARED")).block())
+                .isEqualTo("CLEARED");
+    }
+
+    private void succeed(ZatcaEndpoint endpoint, int times) {
+        for (int i = 0; i < times; i++) {
+            sut.intercept(endpoint, null, () -> "OK");
+        }
+    }
+
+    private void fail(ZatcaEndpoint endpoint, HttpStatus status, int times) {
+        for (int i = 0; i < times; i++) {
+            catchThrowable(() -> sut.intercept(endpoint, null, () -> {
+                throw new ZatcaClientApiException(status, status.getReasonPhrase(), "");
+            }));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.Warning;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class ZatcaClientErrorHandlerTest {
+
+    static final String COMPLIANCE_REJECTION = """
+            {"validationResults":{"infoMessages":[],\
+            "warningMessages":[{"category":"KSA","code":"BR-KSA-08","message":"تحذير"}],\
+            "errorMessages":[{"category":"KSA","code":"BR-KSA-44","message":"خطأ"}],"status":"ERROR"},\
+            "reportingStatus":"NOT_REPORTED","clearanceStatus":null,"qrSellertStatus":null,"qrBuyertStatus":null}""";
+
+    @Test
+    void parsesTheRejectionOfTheEndpointOnce() {
+        ZatcaClientApiException exception = handleError(new ZatcaClientErrorHandler(), ZatcaEndpoint.INVOICE_COMPLIANCE,
+                HttpStatus.BAD_REQUEST, COMPLIANCE_REJECTION);
+
+        assertThat(exception.getResponseBody()).isEqualTo(COMPLIANCE_REJECTION);
+        assertThat(exception.getInvoiceComplianceResponse().reportingStatus()).isEqualTo("NOT_REPORTED");
+        assertThat(exception.getErrors()).containsExactly(new Error("KSA", "BR-KSA-44", "خطأ"));
+        assertThat(exception.getWarnings()).containsExactly(new Warning("KSA", "BR-KSA-08", "تحذير"));
+        assertThat(exception.getInvoiceResult()).isNull();
+        assertThat(exception.getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    void leavesBodiesThatAreNotJsonUnparsed() {
+        ZatcaClientApiException exception = handleError(new ZatcaClientErrorHandler(), ZatcaEndpoint.REPORTING,
+                HttpStatus.BAD_GATEWAY, "<html>Bad Gateway</html>");
+
+        assertThat(exception.getResponseBody()).isEqualTo("<html>Bad Gateway</html>");
+        assertThat(exception.getInvoiceResult()).isNull();
+        assertThat(exception.getErrors()).isEmpty();
+    }
+
+    @Test
+    void truncatesBodiesOverTheMaximumSize() {
+        ZatcaClientErrorHandler errorHandler = new ZatcaClientErrorHandler(
+                new ZatcaProperties.Errors(DataSize.ofBytes(16), false));
+
+        ZatcaClientApiException exception = handleError(errorHandler, ZatcaEndpoint.INVOICE_COMPLIANCE,
+                HttpStatus.BAD_REQUEST, COMPLIANCE_REJECTION);
+
+        assertThat(exception.getResponseBody()).isEqualTo(COMPLIANCE_REJECTION.substring(0, 16));
+        assertThat(exception.getInvoiceComplianceResponse()).isNull();
+    }
+
+    @Test
+    void omitsTheStackTraceOfBusinessRejectionsOnlyWhenEnabled() {
+        ZatcaClientErrorHandler errorHandler = new ZatcaClientErrorHandler(
+                new ZatcaProperties.Errors(DataSize.ofKilobytes(64), true));
+
+        assertThat(handleError(errorHandler, ZatcaEndpoint.INVOICE_COMPLIANCE, HttpStatus.BAD_REQUEST,
+                COMPLIANCE_REJECTION).getStackTrace()).isEmpty();
+        assertThat(handleError(errorHandler, ZatcaEndpoint.INVOICE_COMPLIANCE, HttpStatus.TOO_MANY_REQUESTS,
+                "").getStackTrace()).isNotEmpty();
+        assertThat(handleError(errorHandler, ZatcaEndpoint.INVOICE_COMPLIANCE, HttpStatus.INTERNAL_SERVER_ERROR,
+                "").getStackTrace()).isNotEmpty();
+    }
+
+    private static ZatcaClientApiException handleError(ZatcaClientErrorHandler errorHandler, ZatcaEndpoint endpoint,
+                                                       HttpStatus status, String body) {
+        return catchThrowableOfType(() -> errorHandler.handleError(
+                URI.create("https://gateway.example/e-invoicing/core" + endpoint.path()), endpoint.method(),
+                new MockClientHttpResponse(body.getBytes(StandardCharsets.UTF_8), status)), ZatcaClientApiException.class);
+    }
+}
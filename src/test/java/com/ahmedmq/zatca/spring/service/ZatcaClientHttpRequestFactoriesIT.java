@@ -0,0 +1,121 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZatcaClientHttpRequestFactoriesIT {
+
+    static final String INVOICE_RESULT = """
+            {"invoiceHash":"hash","status":"REPORTED","warnings":[],"errors":[]}""";
+
+    static final int CALLERS = 8;
+
+    MockWebServer mockWebServer;
+
+    ZatcaProperties zatcaProperties;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(INVOICE_RESULT);
+            }
+        });
+        mockWebServer.start();
+        zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "zatca.base-url", mockWebServer.url("/").toString(),
+                "zatca.api-version", "V2")))
+                .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void pooledTransportReusesConnections() throws InterruptedException {
+        ZatcaService zatcaService = zatcaService(ZatcaClientHttpRequestFactories.create(zatcaProperties.http()));
+
+        for (int i = 0; i < 3; i++) {
+            zatcaService.reportInvoice("certificate", "secret", new InvoiceRequest("hash", "", "invoice"));
+        }
+
+        assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+        assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(2);
+    }
+
+    @Test
+    void pooledTransportSharesItsConnectionsBetweenConcurrentCalls() throws InterruptedException {
+        ClientHttpRequestFactory unpooled = new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setConnectionReuseStrategy((request, response, context) -> false)
+                .build());
+        ClientHttpRequestFactory pooled = ZatcaClientHttpRequestFactories.create(zatcaProperties.http());
+
+        report(zatcaService(unpooled), 100);
+        assertThat(connectionsOpened(100)).isEqualTo(100);
+
+        report(zatcaService(pooled), 1_000);
+        assertThat(connectionsOpened(1_000)).isBetween(1, CALLERS);
+    }
+    private ZatcaService zatcaService(ClientHttpRequestFactory requestFactory) {
+        return new DefaultZatcaService(new RestTemplateBuilder()
+                .rootUri(zatcaProperties.baseUrl())
+                .requestFactory(() -> requestFactory)
+                .errorHandler(new ZatcaClientErrorHandler())
+                .build(), zatcaProperties);
+    }
+
+    private static void report(ZatcaService zatcaService, int calls) throws InterruptedException {
+        InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "", "invoice");
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        for (int i = 0; i < calls; i++) {
+            executor.execute(() -> {
+                InvoiceResult invoiceResult = zatcaService.reportInvoice("certificate", "secret", invoiceRequest);
+                assertThat(invoiceResult.status()).isEqualTo("REPORTED");
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+    }
+
+    /**
+     * Counts the connections the calls were made over, from the requests each was the first one on.
+     */
+    private int connectionsOpened(int calls) throws InterruptedException {
+        int connections = 0;
+        for (int i = 0; i < calls; i++) {
+            connections += mockWebServer.takeRequest().getSequenceNumber() == 0 ? 1 : 0;
+        }
+        return connections;
+    }
+}
@@ -0,0 +1,171 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.model.CSRRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ZatcaCsidRenewalManagerTest {
+
+    // self-signed certificates in the format of binarySecurityToken, expiring 2026-01-01T21:55:45Z and 2026-02-01T21:55:49Z
+    static final String CERTIFICATE = "TUlJQk5qQ0IzS0FEQWdFQ0Fna0E0OUNmNm1CWHhyUXdDZ1lJS29aSXpqMEVBd0l3RHpFTk1Bc0dBMVVFQXhNRVJVZFRNVEFlRncweU5EQXhNREV5TVRVMU5EVmFGdzB5TmpBeE1ERXlNVFUxTkRWYU1BOHhEVEFMQmdOVkJBTVRCRVZIVXpFd1dUQVRCZ2NxaGtqT1BRSUJCZ2dxaGtqT1BRTUJCd05DQUFRT1F1NDBBZzlXaHcwTy9MRVZySUc5L1gxMUhtVHJ4RDluR0NManFxTDg0QVRvOEVqZ21CL2dHdVgvR2pOQkxWOXJaSDlEVGNqc0xnODRVN2Zrb0JQd295RXdIekFkQmdOVkhRNEVGZ1FVSVcyZlFiMzNqOFBuYloxcXNmeU5uakZvL0VBd0NnWUlLb1pJemowRUF3SURTUUF3UmdJaEFJZUprNVZOQVpaTU9nZGxGSzJiZjdwN0toV0ZDSEZVTVVtbEVhcUVvdUo4QWlFQS9KRjlGZFk1eEtEaXNZNW4rUGE5cmo4WkdrMUFPY082MXY5YmpTcGNQTjQ9";
+
+    static final String RENEWED_CERTIFICATE = "TUlJQk5EQ0IyNkFEQWdFQ0FnaHJ2QkRCZnRVNzl6QUtCZ2dxaGtqT1BRUURBakFQTVEwd0N3WURWUVFERXdSRlIxTXlNQjRYRFRJME1ERXdNVEl4TlRVME9Wb1hEVEkyTURJd01USXhOVFUwT1Zvd0R6RU5NQXNHQTFVRUF4TUVSVWRUTWpCWk1CTUdCeXFHU000OUFnRUdDQ3FHU000OUF3RUhBMElBQkZZU3grK2xOaFBFOUZaZFczS2c4aXp2ZmZoL2QzSmxLd040V25Xa2YrV050MmJBN3hsY1AxRGk5TlBOZDZLVjZsZGd2cmtMRDdtaUltQnJaV0NqZngyaklUQWZNQjBHQTFVZERnUVdCQlNHb2hIRlBaOWdYU1NwTHMwZWJURXNVYk5rWlRBS0JnZ3Foa2pPUFFRREFnTklBREJGQWlFQWxMNjRVM28xWlpVR2c3amZzTDY5dkI5NXo3YzJHclpZOWhPUm9FZWk2NVFDSUd2dVd2Q0FxUHEyUFdqdlh2WFJEbTcwZlBNY2J1YW1VVFBvVmdzQTNBREg=";
+
+    static final CsidRenewalRequest RENEWAL_REQUEST = new CsidRenewalRequest(new CSRRequest("csr"), "123456");
+
+    MutableClock clock = new MutableClock(Instant.parse("2025-12-01T00:00:00Z"));
+
+    ZatcaService zatcaService = mock(ZatcaService.class);
+
+    ZatcaCsidRenewalSource renewalSource = mock(ZatcaCsidRenewalSource.class);
+
+    DefaultZatcaCredentialRegistry credentialRegistry = new DefaultZatcaCredentialRegistry(Set.of(), "V2");
+
+    List<Object> events = new ArrayList<>();
+
+    ZatcaCsidRenewalManager sut = new ZatcaCsidRenewalManager(zatcaService, credentialRegistry, renewalSource,
+            new ZatcaProperties.Renewal(true, Duration.ofDays(14), Duration.ZERO, Duration.ofHours(1), Duration.ofMinutes(15)),
+            events::add, clock);
+
+    @Test
+    void readsTheExpiryOfTheCertificate() {
+        credentialRegistry.register("egs-1", CERTIFICATE, "secret");
+        credentialRegistry.register("egs-2", "not a certificate", "secret");
+
+        assertThat(credentialRegistry.expiresAt("egs-1")).isEqualTo(Instant.parse("2026-01-01T21:55:45Z"));
+        assertThat(credentialRegistry.expiresAt("egs-2")).isNull();
+        assertThat(credentialRegistry.expiresAt("egs-3")).isNull();
+    }
+
+    @Test
+    void renewsAheadOfExpiryAndSwapsTheCredentials() {
+        credentialRegistry.register("egs-1", CERTIFICATE, "secret");
+        credentialRegistry.register("egs-2", "not a certificate", "secret");
+        CSIDResponse renewed = new CSIDResponse("1234", "ISSUED", RENEWED_CERTIFICATE, "renewed-secret");
+        when(renewalSource.renewalRequest("egs-1")).thenReturn(RENEWAL_REQUEST);
+        when(zatcaService.renewProductionCSID("egs-1", RENEWAL_REQUEST.csr(), "123456")).thenReturn(renewed);
+
+        sut.renewDue();
+        verifyNoInteractions(renewalSource, zatcaService);
+
+        clock.instant = Instant.parse("2025-12-19T00:00:00Z");
+        DefaultZatcaCredentialRegistry.EgsUnit inFlight = credentialRegistry.unit("egs-1");
+        sut.renewDue();
+
+        DefaultZatcaCredentialRegistry.EgsUnit unit = credentialRegistry.unit("egs-1");
+        assertThat(unit.notAfter()).isEqualTo(Instant.parse("2026-02-01T21:55:49Z"));
+        assertThat(unit.clearanceHeaders().getFirst("Authorization")).isEqualTo(
+                ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.CLEARANCE, "V2", RENEWED_CERTIFICATE, "renewed-secret")
+                        .getFirst("Authorization"));
+        assertThat(inFlight.clearanceHeaders().getFirst("Authorization")).isEqualTo(
+                ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.CLEARANCE, "V2", CERTIFICATE, "secret")
+                        .getFirst("Authorization"));
+        assertThat(events).containsExactly(new ZatcaCsidRenewedEvent("egs-1", renewed, Instant.parse("2026-02-01T21:55:49Z")));
+
+        sut.renewDue();
+        verify(zatcaService, times(1)).renewProductionCSID(anyString(), any(), anyString());
+    }
+
+    @Test
+    void retriesAFailedRenewalAfterTheRetryInterval() {
+        credentialRegistry.register("egs-1", CERTIFICATE, "secret");
+        ZatcaClientApiException failure = new ZatcaClientApiException(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", "");
+        when(renewalSource.renewalRequest("egs-1")).thenReturn(RENEWAL_REQUEST);
+        when(zatcaService.renewProductionCSID(eq("egs-1"), any(), anyString())).thenThrow(failure);
+        clock.instant = Instant.parse("2025-12-19T00:00:00Z");
+
+        sut.renewDue();
+        sut.renewDue();
+        clock.instant = clock.instant.plus(Duration.ofMinutes(15));
+        sut.renewDue();
+
+        verify(zatcaService, times(2)).renewProductionCSID(eq("egs-1"), any(), anyString());
+        assertThat(events).containsExactly(
+                new ZatcaCsidRenewalFailedEvent("egs-1", failure, Instant.parse("2025-12-19T00:15:00Z")),
+                new ZatcaCsidRenewalFailedEvent("egs-1", failure, Instant.parse("2025-12-19T00:30:00Z")));
+        assertThat(credentialRegistry.expiresAt("egs-1")).isEqualTo(Instant.parse("2026-01-01T21:55:45Z"));
+    }
+
+    @Test
+    void keepsCredentialsRegisteredDuringTheRenewal() {
+        credentialRegistry.register("egs-1", CERTIFICATE, "secret");
+        when(renewalSource.renewalRequest("egs-1")).thenAnswer(invocation -> {
+            credentialRegistry.register("egs-1", RENEWED_CERTIFICATE, "rotated-secret");
+            return RENEWAL_REQUEST;
+        });
+        when(zatcaService.renewProductionCSID(eq("egs-1"), any(), anyString()))
+                .thenReturn(new CSIDResponse("1234", "ISSUED", CERTIFICATE, "renewed-secret"));
+        clock.instant = Instant.parse("2025-12-19T00:00:00Z");
+
+        sut.renewDue();
+
+        assertThat(credentialRegistry.unit("egs-1").clearanceHeaders().getFirst("Authorization")).isEqualTo(
+                ZatcaRequestHeaders.withBasicAuth(ZatcaEndpoint.CLEARANCE, "V2", RENEWED_CERTIFICATE, "rotated-secret")
+                        .getFirst("Authorization"));
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void spreadsRenewalsOverTheJitterWindow() {
+        ZatcaCsidRenewalManager jittered = new ZatcaCsidRenewalManager(zatcaService, credentialRegistry, renewalSource,
+                new ZatcaProperties.Renewal(true, Duration.ofDays(14), Duration.ofHours(24), Duration.ofHours(1),
+                        Duration.ofMinutes(15)), events::add, clock);
+        Instant notAfter = Instant.parse("2026-01-01T00:00:00Z");
+        Instant latest = notAfter.minus(Duration.ofDays(14));
+
+        Set<Long> minutes = IntStream.range(0, 1000)
+                .mapToObj(i -> jittered.renewAt("egs-" + i, notAfter))
+                .peek(renewAt -> assertThat(renewAt).isBetween(latest.minus(Duration.ofHours(24)), latest))
+                .map(renewAt -> renewAt.getEpochSecond() / 60)
+                .collect(Collectors.toSet());
+
+        assertThat(minutes).hasSizeGreaterThan(700);
+        assertThat(jittered.renewAt("egs-1", notAfter)).isEqualTo(jittered.renewAt("egs-1", notAfter));
+    }
+
+    static class MutableClock extends Clock {
+        Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class ZatcaHedgingInterceptorTest {
+
+    static final InvoiceRequest INVOICE = new InvoiceRequest("hash-1", "uuid-1", "PEludm9pY2UvPg==");
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    CountDownLatch slowAttempt = new CountDownLatch(1);
+
+    AtomicInteger attempts = new AtomicInteger();
+
+    ZatcaHedgingInterceptor sut = hedging(Duration.ofMillis(50), 1);
+
+    @AfterEach
+    void tearDown() {
+        slowAttempt.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void returnsTheHedgeWhenItAnswersFirst() {
+        String result = sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(
+                () -> slow("CLEARED"), () -> "CLEARED BY HEDGE"));
+
+        assertThat(result).isEqualTo("CLEARED BY HEDGE");
+        assertThat(sut.hedged()).isEqualTo(1);
+        assertThat(sut.won()).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesAsynchronousCallsOnATimerAndCancelsTheLosingAttempt() {
+        AtomicInteger cancelled = new AtomicInteger();
+        Mono<String> execution = Mono.defer(() -> attempts.incrementAndGet() == 1
+                ? Mono.<String>never().doOnCancel(cancelled::incrementAndGet)
+                : Mono.just("CLEARED BY HEDGE"));
+
+        String result = sut.reactive().intercept(ZatcaEndpoint.CLEARANCE, INVOICE, execution)
+                .block(Duration.ofSeconds(1));
+
+        assertThat(result).isEqualTo("CLEARED BY HEDGE");
+        assertThat(cancelled.get()).isEqualTo(1);
+        assertThat(sut.hedged()).isEqualTo(1);
+        assertThat(sut.won()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelsTheLosingAttempt() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        String result = sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "CLEARED";
+        }, () -> "CLEARED BY HEDGE"));
+
+        assertThat(result).isEqualTo("CLEARED BY HEDGE");
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void runsTheCallOnTheCallingThreadWhenTheExecutorIsFull() {
+        executor.shutdown();
+        Thread caller = Thread.currentThread();
+
+        assertThat(sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE,
+                attempts(() -> Thread.currentThread() == caller ? "CLEARED" : "CLEARED ELSEWHERE")))
+                .isEqualTo("CLEARED");
+        assertThat(sut.hedged()).isZero();
+    }
+
+    @Test
+    void doesNotHedgeAFastCall() {
+        assertThat(sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> "CLEARED"))).isEqualTo("CLEARED");
+
+        assertThat(attempts).hasValue(1);
+        assertThat(sut.hedged()).isZero();
+    }
+
+    @Test
+    void waitsForTheOtherAttemptAfterATransientFailure() {
+        slowAttempt.countDown();
+        String result = sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> sleep(200, "CLEARED"),
+                () -> {
+                    throw new ZatcaClientApiException(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", "");
+                }));
+
+        assertThat(result).isEqualTo("CLEARED");
+        assertThat(sut.won()).isZero();
+
+        attempts.set(0);
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(
+                () -> sleep(100, null, new ZatcaClientApiException(HttpStatus.BAD_GATEWAY, "Bad Gateway", "")),
+                () -> {
+                    throw new ResourceAccessException("Connection reset");
+                })));
+
+        assertThat(thrown).isInstanceOf(ZatcaClientApiException.class).hasFieldOrPropertyWithValue("statusCode",
+                HttpStatus.BAD_GATEWAY);
+    }
+
+    @Test
+    void returnsTheFirstRejection() {
+        ZatcaClientApiException rejection = new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "");
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(
+                () -> slow("CLEARED"), () -> {
+                    throw rejection;
+                })));
+
+        assertThat(thrown).isSameAs(rejection);
+    }
+
+    @Test
+    void skipsHedgesBeyondTheBudget() {
+        sut = hedging(Duration.ofMillis(10), 0);
+        slowAttempt.countDown();
+
+        assertThat(sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> sleep(50, "CLEARED"))))
+                .isEqualTo("CLEARED");
+        assertThat(attempts).hasValue(1);
+        assertThat(sut.skipped()).isEqualTo(1);
+    }
+
+    @Test
+    void skipsAHedgeTheRateLimiterRefuses() {
+        slowAttempt.countDown();
+
+        assertThat(sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> sleep(200, "CLEARED"), () -> {
+            throw new ZatcaRateLimitedException(ZatcaEndpoint.CLEARANCE);
+        }))).isEqualTo("CLEARED");
+        assertThat(sut.hedged()).isZero();
+        assertThat(sut.skipped()).isEqualTo(1);
+    }
+
+    @Test
+    void onlyHedgesInvoicesThatCanBeSentTwice() {
+        StreamingInvoiceRequest streamed = new StreamingInvoiceRequest("hash-1", "uuid-1",
+                InvoiceSource.of(new ByteArrayInputStream(new byte[0])));
+        slowAttempt.countDown();
+
+        sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, attempts(() -> sleep(100, "REPORTED")));
+        sut.intercept(ZatcaEndpoint.CLEARANCE, streamed, attempts(() -> sleep(100, "CLEARED")));
+        sut.intercept(ZatcaEndpoint.CLEARANCE, new InvoiceRequest(null, "uuid-1", "PEludm9pY2UvPg=="),
+                attempts(() -> sleep(100, "CLEARED")));
+
+        assertThat(attempts).hasValue(3);
+        assertThat(sut.hedged()).isZero();
+    }
+
+    @Test
+    void hedgesAfterThePercentileOfRecentLatencies() {
+        LatencyPercentile latencies = new LatencyPercentile(95, 100, 1024);
+        for (int i = 1; i <= 99; i++) {
+            latencies.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(latencies.estimate()).isEqualTo(-1);
+        latencies.record(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(latencies.estimate()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(95));
+
+        sut = hedging(null, 1);
+        for (int i = 0; i < 100; i++) {
+            sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, () -> "CLEARED");
+        }
+        assertThat(sut.delayNanos()).isEqualTo(Duration.ofMillis(50).toNanos());
+    }
+
+    @Test
+    void publishesHedgesAsMeters() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ZatcaHedgingMeters(sut, Set.of(), meterRegistry);
+
+        sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, attempts(() -> slow("CLEARED"), () -> "CLEARED BY HEDGE"));
+
+        assertThat(meterRegistry.get(ZatcaHedgingMeters.HEDGES).functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ZatcaHedgingMeters.HEDGES_WON).functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ZatcaHedgingMeters.HEDGES_SKIPPED).functionCounter().count()).isZero();
+        assertThat(meterRegistry.get(ZatcaHedgingMeters.HEDGING_DELAY).gauge().value()).isEqualTo(0.05);
+    }
+
+    ZatcaHedgingInterceptor hedging(Duration delay, int budgetMinHedgesPerSecond) {
+        return new ZatcaHedgingInterceptor(new ZatcaProperties.Hedging(true, Set.of(ZatcaEndpoint.CLEARANCE), delay,
+                95, Duration.ofMillis(50), 0, budgetMinHedgesPerSecond, Duration.ofSeconds(10), 64), executor);
+    }
+
+    @SafeVarargs
+    final <T> Supplier<T> attempts(Supplier<T>... attempts) {
+        return () -> attempts[Math.min(this.attempts.getAndIncrement(), attempts.length - 1)].get();
+    }
+
+    <T> T slow(T result) {
+        try {
+            slowAttempt.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    static <T> T sleep(long millis, T result) {
+        return sleep(millis, result, null);
+    }
+
+    static <T> T sleep(long millis, T result, RuntimeException failure) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZatcaLedgerInterceptorTest {
+
+    static final Instant NOW = Instant.parse("2024-03-01T10:15:30Z");
+
+    static final InvoiceRequest INVOICE = new InvoiceRequest("hash-1", "uuid-1", "PEludm9pY2UvPg==");
+
+    @TempDir
+    Path directory;
+
+    FileSubmissionLedger ledger;
+
+    ZatcaLedgerInterceptor sut;
+
+    @AfterEach
+    void tearDown() {
+        ledger.close();
+    }
+
+    void setUp() throws IOException {
+        ledger = FileSubmissionLedger.open(directory, 1 << 20);
+        sut = new ZatcaLedgerInterceptor(ledger, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void recordsAReportedInvoice() throws IOException {
+        setUp();
+        InvoiceResult reported = new InvoiceResult("hash-1", "REPORTED", List.of(), List.of());
+
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, () -> reported)).isSameAs(reported);
+
+        SubmissionRecord record = ledger.findByUuid("uuid-1").get(0);
+        assertThat(record.invoiceHash()).isEqualTo("hash-1");
+        assertThat(record.endpoint()).isEqualTo(ZatcaEndpoint.REPORTING);
+        assertThat(record.status()).isEqualTo("REPORTED");
+        assertThat(record.failure()).isNull();
+        assertThat(record.submittedAt()).isEqualTo(NOW);
+        assertThat(record.duration()).isPositive();
+    }
+
+    @Test
+    void recordsRejectionsAndFailures() throws IOException {
+        setUp();
+        InvoiceResult notCleared = new InvoiceResult("hash-1", "NOT_CLEARED", List.of(),
+                List.of(new Error("XSD_SCHEMA_ERROR", "SCHEMA_ERROR", "Schema validation failed")));
+        ZatcaClientApiException rejection = new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "",
+                notCleared, true) {
+        };
+
+        assertThatThrownBy(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, () -> {
+            throw rejection;
+        })).isSameAs(rejection);
+        assertThatThrownBy(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, INVOICE, () -> {
+            throw new ResourceAccessException("Connection reset");
+        })).isInstanceOf(ResourceAccessException.class);
+
+        List<SubmissionRecord> records = ledger.findByInvoiceHash("hash-1");
+        assertThat(records).extracting(SubmissionRecord::status).containsExactly("NOT_CLEARED", null);
+        assertThat(records.get(0).errors()).extracting(Error::code).containsExactly("SCHEMA_ERROR");
+        assertThat(records.get(0).failure()).isEqualTo("400 Bad Request");
+        assertThat(records.get(1).failure()).contains("Connection reset");
+    }
+
+    @Test
+    void ignoresCallsOtherThanSubmissions() throws IOException {
+        setUp();
+        ledger.close();
+
+        assertThat(sut.intercept(ZatcaEndpoint.PRODUCTION_CSID, null, () -> "csid")).isEqualTo("csid");
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, () -> "result")).isEqualTo("result");
+    }
+
+    @Test
+    void skipsCallsThatNeverReachedTheGateway() throws IOException {
+        setUp();
+
+        assertThatThrownBy(() -> sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, () -> {
+            throw new ZatcaCircuitOpenException(ZatcaEndpoint.REPORTING);
+        })).isInstanceOf(ZatcaCircuitOpenException.class);
+        assertThatThrownBy(() -> sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, () -> {
+            throw new ZatcaRateLimitedException(ZatcaEndpoint.REPORTING);
+        })).isInstanceOf(ZatcaRateLimitedException.class);
+
+        assertThat(ledger.findByUuid("uuid-1")).isEmpty();
+    }
+
+    @Test
+    void countsSubmissionsThatCouldNotBeRecorded() throws IOException {
+        setUp();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ZatcaLedgerMeters(sut, meterRegistry);
+        ledger.close();
+
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, INVOICE, () -> "result")).isEqualTo("result");
+
+        assertThat(meterRegistry.get(ZatcaLedgerMeters.APPEND_FAILURES).functionCounter().count()).isEqualTo(1);
+    }
+}
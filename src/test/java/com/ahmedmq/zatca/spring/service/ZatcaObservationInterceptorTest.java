@@ -0,0 +1,137 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class ZatcaObservationInterceptorTest {
+
+    MockWebServer mockWebServer;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    DefaultZatcaService sut;
+
+    ZatcaObservationInterceptor observationInterceptor;
+
+    InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "8d487816-70b8-4ade-a618-9d620b73814a", "invoice");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        ZatcaProperties zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "zatca.base-url", mockWebServer.url("/").toString(),
+                "zatca.api-version", "V2")))
+                .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        ZatcaMeterExchangeObserver exchangeObserver = new ZatcaMeterExchangeObserver(meterRegistry, observationRegistry);
+
+        sut = new DefaultZatcaService(new RestTemplateBuilder()
+                .rootUri(zatcaProperties.baseUrl())
+                .requestFactory(() -> new ZatcaObservedClientHttpRequestFactory(
+                        ZatcaClientHttpRequestFactories.create(zatcaProperties.http()), List.of(exchangeObserver)))
+                .errorHandler(new ZatcaClientErrorHandler())
+                .build(), zatcaProperties);
+        observationInterceptor = new ZatcaObservationInterceptor(observationRegistry, meterRegistry);
+        sut.setInterceptors(List.of(observationInterceptor));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void timesCallsByEndpointAndStatus() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202)
+                .setHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"invoiceHash":"hash","status":"REPORTED","warnings":[
+                        {"category":"BR_KSA","code":"BR-KSA-08","message":"warning"},
+                        {"category":"BR_KSA","code":"BR-KSA-F-06","message":"warning"}],"errors":[]}"""));
+
+        InvoiceResult invoiceResult = sut.reportInvoice("certificate", "secret", invoiceRequest);
+
+        assertThat(invoiceResult.status()).isEqualTo("REPORTED");
+        Timer timer = meterRegistry.get(ZatcaObservationInterceptor.OBSERVATION_NAME)
+                .tags("endpoint", "REPORTING", "http.status", "202", "zatca.status", "REPORTED")
+                .timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ZatcaObservationInterceptor.MESSAGES)
+                .tags("endpoint", "REPORTING", "type", "warning").counter().count()).isEqualTo(2);
+
+        DistributionSummary requestSize = meterRegistry.get(ZatcaMeterExchangeObserver.REQUEST_SIZE)
+                .tags("endpoint", "REPORTING", "http.status", "202").summary();
+        DistributionSummary responseSize = meterRegistry.get(ZatcaMeterExchangeObserver.RESPONSE_SIZE)
+                .tags("endpoint", "REPORTING", "http.status", "202").summary();
+        assertThat(requestSize.count()).isEqualTo(1);
+        assertThat(requestSize.totalAmount()).isGreaterThan(0);
+        assertThat(responseSize.totalAmount()).isGreaterThan(0);
+    }
+
+    @Test
+    void tagsCallsWithTheStatusOfAnExchangeMadeOnAnotherThread() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202)
+                .setHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"invoiceHash":"hash","status":"REPORTED","warnings":[],"errors":[]}"""));
+        ZatcaCallInterceptor offloading = new ZatcaCallInterceptor() {
+            @Override
+            public <T> T intercept(ZatcaEndpoint endpoint, Object request, Supplier<T> execution) {
+                return CompletableFuture.supplyAsync(execution,
+                        task -> new Thread(observationInterceptor.inCurrentObservation(task)).start()).join();
+            }
+        };
+        sut.setInterceptors(List.of(observationInterceptor, offloading));
+
+        sut.reportInvoice("certificate", "secret", invoiceRequest);
+
+        Timer timer = meterRegistry.get(ZatcaObservationInterceptor.OBSERVATION_NAME)
+                .tags("endpoint", "REPORTING", "http.status", "202", "zatca.status", "REPORTED")
+                .timer();
+        assertThat(timer.count()).isEqualTo(1);
+    }
+
+    @Test
+    void timesFailedCallsWithTheErrorStatus() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(400)
+                .setHeader("Content-Type", "application/json")
+                .setBody("""
+                        {"invoiceHash":"hash","status":"NOT_REPORTED","warnings":[],"errors":[]}"""));
+
+        ZatcaClientApiException exception = catchThrowableOfType(
+                () -> sut.reportInvoice("certificate", "secret", invoiceRequest), ZatcaClientApiException.class);
+
+        assertThat(exception).isNotNull();
+        Timer timer = meterRegistry.get(ZatcaObservationInterceptor.OBSERVATION_NAME)
+                .tags("endpoint", "REPORTING", "http.status", "400", "error", "ZatcaClientApiException")
+                .timer();
+        assertThat(timer.count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,230 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.CSIDResponse;
+import com.ahmedmq.zatca.model.CSRRequest;
+import com.ahmedmq.zatca.model.InvoiceComplianceResponse;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.ProductionCSIDRequest;
+import com.ahmedmq.zatca.model.ValidationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ZatcaOnboardingTest {
+
+    static final InvoiceComplianceResponse PASSED = new InvoiceComplianceResponse(
+            new ValidationResult(List.of(), List.of(), List.of(), "PASS"), "PASS", "REPORTED", null, null, null);
+
+    @TempDir
+    Path directory;
+
+    ZatcaService zatcaService = mock(ZatcaService.class);
+
+    DefaultZatcaCredentialRegistry credentialRegistry = new DefaultZatcaCredentialRegistry(Set.of(), "V2");
+
+    List<KeyPair> keyPairs = Collections.synchronizedList(new ArrayList<>());
+
+    ZatcaOnboardingSupport onboardingSupport = new ZatcaOnboardingSupport() {
+        @Override
+        public CSRRequest csr(EgsDevice device, KeyPair keyPair) {
+            keyPairs.add(keyPair);
+            return new CSRRequest("csr-" + device.egsUnit());
+        }
+
+        @Override
+        public List<InvoiceRequest> complianceInvoices(EgsDevice device, CSIDResponse complianceCsid) {
+            return List.of(new InvoiceRequest("hash-1", "uuid-1", "standard"),
+                    new InvoiceRequest("hash-2", "uuid-2", "simplified"));
+        }
+    };
+
+    KeyPairPool keyPairPool = new KeyPairPool("secp256r1", "", 4);
+
+    List<OnboardingState> progress = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        keyPairPool.destroy();
+    }
+
+    @Test
+    void registersTheUnitsOnboardedBeforeARestart() {
+        FileOnboardingStore store = new FileOnboardingStore(directory);
+        store.save(new OnboardingState("egs-1", OnboardingStep.PRODUCTION_CSID, "csr",
+                new CSIDResponse("request", "ISSUED", "compliance", "secret"), 2,
+                new CSIDResponse("request", "ISSUED", "production-1", "secret-1")));
+        store.save(new OnboardingState("egs-2", OnboardingStep.COMPLIANCE_CSID, "csr",
+                new CSIDResponse("request", "ISSUED", "compliance", "secret"), 0, null));
+        store.save(new OnboardingState("egs-3", OnboardingStep.PRODUCTION_CSID, "csr",
+                new CSIDResponse("request", "ISSUED", "compliance", "secret"), 2,
+                new CSIDResponse("request", "ISSUED", "production-3", "secret-3")));
+        credentialRegistry.register("egs-3", "renewed-3", "secret-3");
+
+        onboarding(store).registerOnboardedUnits();
+
+        assertThat(credentialRegistry.units().keySet()).containsExactlyInAnyOrder("egs-1", "egs-3");
+        assertThat(credentialRegistry.unit("egs-1").reportingHeaders().getFirst("Authorization"))
+                .isEqualTo("Basic " + Base64.getEncoder().encodeToString("production-1:secret-1".getBytes()));
+        assertThat(credentialRegistry.unit("egs-3").reportingHeaders().getFirst("Authorization"))
+                .isEqualTo("Basic " + Base64.getEncoder().encodeToString("renewed-3:secret-3".getBytes()));
+    }
+
+    @Test
+    void savesStatesReadableByTheOwnerOnly() throws IOException {
+        assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path states = directory.resolve("states");
+
+        new FileOnboardingStore(states).save(new OnboardingState("egs-1", null, "csr", null, 0, null));
+
+        assertThat(Files.getPosixFilePermissions(states)).isEqualTo(PosixFilePermissions.fromString("rwx------"));
+        try (Stream<Path> files = Files.list(states)) {
+            assertThat(files).singleElement().satisfies(file -> assertThat(Files.getPosixFilePermissions(file))
+                    .isEqualTo(PosixFilePermissions.fromString("rw-------")));
+        }
+    }
+
+    @Test
+    void onboardsEachDeviceThroughAllSteps() {
+        ZatcaOnboarding sut = onboarding(new FileOnboardingStore(directory));
+        for (String egsUnit : List.of("egs-1", "egs-2", "egs-3")) {
+            when(zatcaService.complianceCSID(new CSRRequest("csr-" + egsUnit), "otp-" + egsUnit))
+                    .thenReturn(new CSIDResponse("request-" + egsUnit, "ISSUED", "compliance-" + egsUnit, "secret"));
+            when(zatcaService.checkInvoiceCompliance(eq("compliance-" + egsUnit), eq("secret"), any())).thenReturn(PASSED);
+            when(zatcaService.productionCSID("compliance-" + egsUnit, "secret", new ProductionCSIDRequest("request-" + egsUnit)))
+                    .thenReturn(new CSIDResponse("production-" + egsUnit, "ISSUED", "production-" + egsUnit, "secret"));
+        }
+
+        List<OnboardingOutcome> outcomes = sut.onboard(List.of(device("egs-1"), device("egs-2"), device("egs-3")),
+                progress::add);
+
+        assertThat(outcomes).extracting(outcome -> outcome.device().egsUnit()).containsExactly("egs-1", "egs-2", "egs-3");
+        assertThat(outcomes).allMatch(OnboardingOutcome::isSuccess)
+                .allMatch(outcome -> outcome.state().isCompleted());
+        assertThat(credentialRegistry.isRegistered("egs-2")).isTrue();
+        assertThat(keyPairs).hasSize(3).doesNotHaveDuplicates()
+                .allMatch(keyPair -> keyPair.getPublic() instanceof ECPublicKey);
+        assertThat(progress.stream().filter(state -> state.egsUnit().equals("egs-1")))
+                .extracting(OnboardingState::completedStep, OnboardingState::complianceChecksPassed)
+                .containsExactly(
+                        tuple(null, 0),
+                        tuple(OnboardingStep.COMPLIANCE_CSID, 0),
+                        tuple(OnboardingStep.COMPLIANCE_CSID, 1),
+                        tuple(OnboardingStep.COMPLIANCE_CSID, 2),
+                        tuple(OnboardingStep.COMPLIANCE_CHECKS, 2),
+                        tuple(OnboardingStep.PRODUCTION_CSID, 2));
+    }
+
+    @Test
+    void resumesAfterTheLastCompletedStep() {
+        FileOnboardingStore store = new FileOnboardingStore(directory);
+        CSIDResponse complianceCsid = new CSIDResponse("request-1", "ISSUED", "compliance-1", "secret");
+        store.save(new OnboardingState("egs-1", OnboardingStep.COMPLIANCE_CSID, "csr-egs-1", complianceCsid, 1, null));
+        when(zatcaService.checkInvoiceCompliance(eq("compliance-1"), eq("secret"), any())).thenReturn(PASSED);
+        when(zatcaService.productionCSID("compliance-1", "secret", new ProductionCSIDRequest("request-1")))
+                .thenReturn(new CSIDResponse("production-1", "ISSUED", "production-1", "secret"));
+
+        OnboardingOutcome outcome = onboarding(store).onboard(List.of(device("egs-1"))).get(0);
+
+        assertThat(outcome.isSuccess()).isTrue();
+        verify(zatcaService, never()).complianceCSID(any(), anyString());
+        verify(zatcaService, times(1)).checkInvoiceCompliance(anyString(), anyString(), any());
+        verify(zatcaService).checkInvoiceCompliance("compliance-1", "secret", new InvoiceRequest("hash-2", "uuid-2", "simplified"));
+        assertThat(store.load("egs-1").isCompleted()).isTrue();
+        assertThat(keyPairs).isEmpty();
+    }
+
+    @Test
+    void aFailedDeviceKeepsItsProgressAndDoesNotAbortTheBatch() {
+        ZatcaOnboarding sut = onboarding(new FileOnboardingStore(directory));
+        ZatcaClientApiException rejected = new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "");
+        when(zatcaService.complianceCSID(new CSRRequest("csr-egs-1"), "otp-egs-1")).thenThrow(rejected);
+        when(zatcaService.complianceCSID(new CSRRequest("csr-egs-2"), "otp-egs-2"))
+                .thenReturn(new CSIDResponse("request-2", "ISSUED", "compliance-2", "secret"));
+        when(zatcaService.checkInvoiceCompliance(eq("compliance-2"), eq("secret"), any())).thenReturn(PASSED);
+        when(zatcaService.productionCSID(eq("compliance-2"), eq("secret"), any()))
+                .thenReturn(new CSIDResponse("production-2", "ISSUED", "production-2", "secret"));
+
+        List<OnboardingOutcome> outcomes = sut.onboard(List.of(device("egs-1"), device("egs-2")));
+
+        assertThat(outcomes.get(0).error()).isSameAs(rejected);
+        assertThat(outcomes.get(0).state().csr()).isEqualTo("csr-egs-1");
+        assertThat(outcomes.get(1).isSuccess()).isTrue();
+
+        sut.onboard(List.of(device("egs-1")));
+        assertThat(keyPairs).hasSize(2);
+    }
+
+    @Test
+    void stopsAtAFailedComplianceCheck() {
+        ZatcaOnboarding sut = onboarding(new FileOnboardingStore(directory));
+        when(zatcaService.complianceCSID(any(), anyString()))
+                .thenReturn(new CSIDResponse("request-1", "ISSUED", "compliance-1", "secret"));
+        when(zatcaService.checkInvoiceCompliance(anyString(), anyString(), any())).thenReturn(PASSED,
+                new InvoiceComplianceResponse(new ValidationResult(List.of(), List.of(), List.of(), "ERROR"),
+                        "ERROR", "NOT_REPORTED", null, null, null));
+
+        OnboardingOutcome outcome = sut.onboard(List.of(device("egs-1"))).get(0);
+
+        assertThat(outcome.error()).hasMessageContaining("Sample invoice 2 of EGS unit egs-1");
+        assertThat(outcome.state().complianceChecksPassed()).isEqualTo(1);
+        verify(zatcaService, never()).productionCSID(anyString(), anyString(), any());
+        assertThat(credentialRegistry.isRegistered("egs-1")).isFalse();
+    }
+
+    @Test
+    void keyPairPoolNamesTheMissingCurve() {
+        KeyPairPool pool = new KeyPairPool("secp256k2", "", 0);
+
+        assertThatThrownBy(pool::take).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("secp256k2").hasMessageContaining("zatca.onboarding.key-provider");
+    }
+
+    @Test
+    void keyPairPoolHandsOutDistinctKeyPairs() {
+        Set<KeyPair> taken = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 16; i++) {
+            taken.add(keyPairPool.take());
+        }
+
+        assertThat(taken).hasSize(16);
+    }
+
+    ZatcaOnboarding onboarding(ZatcaOnboardingStore store) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("onboarding-");
+        executor.setConcurrencyLimit(2);
+        return new ZatcaOnboarding(zatcaService, credentialRegistry, onboardingSupport, store, keyPairPool, executor);
+    }
+
+    static EgsDevice device(String egsUnit) {
+        return new EgsDevice(egsUnit, "otp-" + egsUnit);
+    }
+}
@@ -0,0 +1,232 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceRequest;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import com.ahmedmq.zatca.model.Warning;
+import com.ahmedmq.zatca.qr.QrCodeTag;
+import com.ahmedmq.zatca.qr.QrCodeWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class ZatcaPreflightInterceptorTest {
+
+    static final String UUID = "8e6000cf-1a98-4174-b3e7-b5d5954bc10d";
+
+    static final String INVOICE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2" xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2" xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+                <cbc:ProfileID>reporting:1.0</cbc:ProfileID>
+                <cbc:ID>SME00010</cbc:ID>
+                <cbc:UUID>8e6000cf-1a98-4174-b3e7-b5d5954bc10d</cbc:UUID>
+                <cbc:IssueDate>2022-08-17</cbc:IssueDate>
+                <cbc:IssueTime>17:41:08</cbc:IssueTime>
+                <cbc:InvoiceTypeCode name="0200000">388</cbc:InvoiceTypeCode>
+                <cbc:DocumentCurrencyCode>SAR</cbc:DocumentCurrencyCode>
+                <cbc:TaxCurrencyCode>SAR</cbc:TaxCurrencyCode>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID>ICV</cbc:ID>
+                    <cbc:UUID>10</cbc:UUID>
+                </cac:AdditionalDocumentReference>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID>PIH</cbc:ID>
+                    <cac:Attachment>
+                        <cbc:EmbeddedDocumentBinaryObject mimeCode="text/plain">NWZlY2ViNjZmZmM4NmYzOGQ5NTI3ODZjNmQ2OTZjNzljMmRiYzIzOWRkNGU5MWI0NjcyOWQ3M2EyN2ZiNTdlOQ==</cbc:EmbeddedDocumentBinaryObject>
+                    </cac:Attachment>
+                </cac:AdditionalDocumentReference>
+                <cac:AdditionalDocumentReference>
+                    <cbc:ID>QR</cbc:ID>
+                    <cac:Attachment>
+                        <cbc:EmbeddedDocumentBinaryObject mimeCode="text/plain">%s</cbc:EmbeddedDocumentBinaryObject>
+                    </cac:Attachment>
+                </cac:AdditionalDocumentReference>
+                <cac:Signature>
+                    <cbc:ID>urn:oasis:names:specification:ubl:signature:Invoice</cbc:ID>
+                    <cbc:SignatureMethod>urn:oasis:names:specification:ubl:dsig:enveloped:xades</cbc:SignatureMethod>
+                </cac:Signature>
+                <cac:AccountingSupplierParty>
+                    <cac:Party>
+                        <cac:PartyTaxScheme>
+                            <cbc:CompanyID>310122393500003</cbc:CompanyID>
+                            <cac:TaxScheme>
+                                <cbc:ID>VAT</cbc:ID>
+                            </cac:TaxScheme>
+                        </cac:PartyTaxScheme>
+                    </cac:Party>
+                </cac:AccountingSupplierParty>
+                <cac:TaxTotal>
+                    <cbc:TaxAmount currencyID="SAR">0.60</cbc:TaxAmount>
+                </cac:TaxTotal>
+                <cac:LegalMonetaryTotal>
+                    <cbc:PayableAmount currencyID="SAR">4.60</cbc:PayableAmount>
+                </cac:LegalMonetaryTotal>
+                <cac:InvoiceLine>
+                    <cbc:ID>1</cbc:ID>
+                    <cbc:LineExtensionAmount currencyID="SAR">4.00</cbc:LineExtensionAmount>
+                </cac:InvoiceLine>
+            </Invoice>
+            """;
+
+    StreamingInvoiceHasher invoiceHasher = new StreamingInvoiceHasher();
+
+    ZatcaPreflightInterceptor sut = new ZatcaPreflightInterceptor(invoiceHasher);
+
+    AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void sendsAValidSimplifiedInvoice() {
+        String invoice = invoice(INVOICE);
+
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, request(invoice), executions::incrementAndGet)).isEqualTo(1);
+        assertThat(sut.intercept(ZatcaEndpoint.INVOICE_COMPLIANCE, request(invoice), executions::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsAnInvoiceWhoseUuidOrHashDoNotMatchTheRequest() {
+        String invoice = invoice(INVOICE);
+        InvoiceRequest request = new InvoiceRequest("x4Rk0ozQp0zsaB1LqxR7ZxVfz1e2a0E5cQ4Vh1nYk9Q=",
+                "3cf5ee18-ee25-44ea-a444-2c37ba7f28be", base64(invoice));
+
+        ZatcaPreflightException thrown = reject(ZatcaEndpoint.REPORTING, request);
+
+        assertThat(thrown.getEndpoint()).isEqualTo(ZatcaEndpoint.REPORTING);
+        assertThat(thrown.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(thrown.getStackTrace()).isEmpty();
+        assertThat(thrown.getInvoiceResult().status()).isEqualTo("NOT_REPORTED");
+        assertThat(thrown.getErrors()).extracting(Error::code)
+                .containsExactly("Invalid-Invoice-UUID", "Invalid-Invoice-Hash", "QR-INVALID-INVOICE-HASH");
+    }
+
+    @Test
+    void rejectsAnInvoiceSentToTheWrongEndpoint() {
+        assertThat(reject(ZatcaEndpoint.CLEARANCE, request(invoice(INVOICE))).getErrors()).extracting(Error::code)
+                .containsExactly("Invalid-Invoice-Type");
+
+        String standard = invoice(INVOICE.replace("0200000", "0100000"));
+        assertThat(reject(ZatcaEndpoint.REPORTING, request(standard)).getErrors()).extracting(Error::message)
+                .containsExactly("Standard invoices are cleared, not reported",
+                        "The invoice has no cac:AccountingCustomerParty");
+    }
+
+    @Test
+    void rejectsAnInvoiceMissingMandatoryElements() {
+        String invoice = invoice(INVOICE
+                .replaceAll("(?s)<cbc:IssueTime>.*?</cbc:IssueTime>", "")
+                .replaceAll("(?s)<cac:TaxTotal>.*?</cac:TaxTotal>", "")
+                .replaceAll("(?s)<cac:Signature>.*?</cac:Signature>", "")
+                .replace("<cbc:ID>ICV</cbc:ID>", "<cbc:ID>IVC</cbc:ID>"));
+
+        assertThat(reject(ZatcaEndpoint.REPORTING, request(invoice)).getErrors()).extracting(Error::message)
+                .containsExactly("The invoice has no cbc:IssueTime", "The invoice has no cac:TaxTotal",
+                        "The invoice has no ICV AdditionalDocumentReference", "Simplified invoices must be signed");
+    }
+
+    @Test
+    void rejectsMalformedValues() {
+        String invoice = invoice(INVOICE
+                .replace("2022-08-17", "17/08/2022")
+                .replace("17:41:08", "5:41 PM")
+                .replace("310122393500003", "31012239350000")
+                .replace("0200000", "0300000"));
+
+        ZatcaPreflightException thrown = reject(ZatcaEndpoint.REPORTING, request(invoice));
+
+        assertThat(thrown.getErrors()).extracting(Error::code).containsExactly("Invalid-Issue-Date",
+                "Invalid-Issue-Time", "Invalid-VAT-Number", "Invalid-Invoice-Type");
+    }
+
+    @Test
+    void rejectsAnInvalidQrCode() {
+        String invoice = invoice(INVOICE).replaceAll("(?s)(<cbc:ID>QR</cbc:ID>.*?mimeCode=\"text/plain\">)[^<]*",
+                "$1" + new QrCodeWriter().text(QrCodeTag.SELLER_NAME, "Bobs Records").toBase64());
+
+        assertThat(reject(ZatcaEndpoint.REPORTING, request(invoice)).getErrors()).extracting(Error::code)
+                .hasSize(8).containsOnly("QR-MISSING-TAG");
+    }
+
+    @Test
+    void rejectsDocumentsThatAreNotInvoices() {
+        assertThat(reject(ZatcaEndpoint.REPORTING, new InvoiceRequest("hash", UUID, base64("<Invoice>")))
+                .getErrors()).extracting(Error::code).containsExactly("Invalid-Invoice-XML");
+        assertThat(reject(ZatcaEndpoint.REPORTING, new InvoiceRequest("hash", UUID, base64("<CreditNote/>")))
+                .getErrors()).extracting(Error::code).containsExactly("Invalid-Invoice-Document");
+        assertThat(reject(ZatcaEndpoint.REPORTING, new InvoiceRequest("hash", UUID, "not base64")).getErrors())
+                .extracting(Error::code).containsExactly("Invalid-Invoice-Encoding");
+    }
+
+    @Test
+    void sendsAnInvoiceWithWarningsOnly() {
+        String invoice = invoice(INVOICE.replaceAll("(?s)<cac:PartyTaxScheme>.*?</cac:PartyTaxScheme>", ""));
+
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, request(invoice), executions::incrementAndGet)).isEqualTo(1);
+        assertThat(InvoicePreflight.check(invoiceHasher, ZatcaEndpoint.REPORTING, UUID, hash(invoice),
+                InvoiceSource.of(ByteBuffer.wrap(invoice.getBytes(StandardCharsets.UTF_8)))).warnings())
+                .extracting(Warning::code).containsExactly("Missing-VAT-Number");
+    }
+
+    @Test
+    void checksRepeatableStreamedInvoicesOnly() {
+        String invoice = invoice(INVOICE.replace(UUID, "3cf5ee18-ee25-44ea-a444-2c37ba7f28be"));
+        byte[] xml = invoice.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(reject(ZatcaEndpoint.REPORTING, new StreamingInvoiceRequest(hash(invoice), UUID,
+                InvoiceSource.of(ByteBuffer.wrap(xml)))).getErrors()).extracting(Error::code).containsExactly("Invalid-Invoice-UUID");
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, new StreamingInvoiceRequest(hash(invoice), UUID,
+                InvoiceSource.of(new ByteArrayInputStream(xml))), executions::incrementAndGet)).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresOtherEndpoints() {
+        assertThat(sut.intercept(ZatcaEndpoint.PRODUCTION_CSID, new InvoiceRequest("hash", UUID, "not base64"),
+                executions::incrementAndGet)).isEqualTo(1);
+    }
+
+    ZatcaPreflightException reject(ZatcaEndpoint endpoint, Object request) {
+        ZatcaPreflightException thrown = catchThrowableOfType(
+                () -> sut.intercept(endpoint, request, executions::incrementAndGet), ZatcaPreflightException.class);
+        assertThat(thrown).isNotNull();
+        assertThat(executions).hasValue(0);
+        return thrown;
+    }
+
+    /**
+     * Fills in a QR code matching the invoice, which is possible since the QR code is not part of the hash.
+     */
+    String invoice(String template) {
+        String hash = hash(template.formatted(""));
+        return template.formatted(new QrCodeWriter()
+                .text(QrCodeTag.SELLER_NAME, "Bobs Records")
+                .text(QrCodeTag.VAT_NUMBER, "310122393500003")
+                .timestamp(QrCodeTag.TIMESTAMP, LocalDateTime.of(2022, 8, 17, 17, 41, 8))
+                .amount(QrCodeTag.INVOICE_TOTAL, 460, 2)
+                .amount(QrCodeTag.VAT_TOTAL, 60, 2)
+                .text(QrCodeTag.INVOICE_HASH, hash)
+                .text(QrCodeTag.SIGNATURE, "MEUCIQD7pY2uHyV0ht2Pdt9SEtBq1dN2J3cHNKiuR9/aBdO8rQIgIGYzdg==")
+                .bytes(QrCodeTag.PUBLIC_KEY, new byte[88])
+                .bytes(QrCodeTag.CERTIFICATE_SIGNATURE, new byte[71])
+                .toBase64());
+    }
+
+    String hash(String invoice) {
+        return invoiceHasher.hash(invoice.getBytes(StandardCharsets.UTF_8));
+    }
+
+    InvoiceRequest request(String invoice) {
+        return new InvoiceRequest(hash(invoice), UUID, base64(invoice));
+    }
+
+    static String base64(String invoice) {
+        return Base64.getEncoder().encodeToString(invoice.getBytes(StandardCharsets.UTF_8));
+    }
+}
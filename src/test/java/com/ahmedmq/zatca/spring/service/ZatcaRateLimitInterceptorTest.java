@@ -0,0 +1,208 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.spring.service.AdaptiveConcurrencyLimiter.Lane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.within;
+
+class ZatcaRateLimitInterceptorTest {
+
+    AtomicLong clock = new AtomicLong();
+
+    ZatcaRateLimitInterceptor sut = new ZatcaRateLimitInterceptor(new ZatcaProperties.RateLimit(true, 10, 2,
+            Map.of(ZatcaEndpoint.CLEARANCE, 0d), Duration.ofMillis(150), 10, 2, 20, Duration.ofSeconds(2), 0.5),
+            clock::get);
+
+    @Test
+    void pacesEachEndpointToItsRate() {
+        TokenBucket reporting = sut.tokenBuckets().get(ZatcaEndpoint.REPORTING);
+
+        assertThat(reporting.reserve(0)).isZero();
+        assertThat(reporting.reserve(0)).isZero();
+        assertThat(reporting.reserve(0)).isEqualTo(-1);
+        assertThat(reporting.reserve(Duration.ofSeconds(1).toNanos())).isEqualTo(Duration.ofMillis(100).toNanos());
+        assertThat(reporting.reserve(Duration.ofSeconds(1).toNanos())).isEqualTo(Duration.ofMillis(200).toNanos());
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(reporting.reserve(0)).isZero();
+        assertThat(sut.tokenBuckets()).doesNotContainKey(ZatcaEndpoint.CLEARANCE);
+    }
+
+    @Test
+    void failsACallThatWouldWaitTooLong() {
+        sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED");
+        sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED");
+        assertThat(sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED")).isEqualTo("REPORTED");
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED"));
+
+        assertThat(thrown).isInstanceOf(ZatcaRateLimitedException.class);
+        assertThat(((ZatcaRateLimitedException) thrown).getEndpoint()).isEqualTo(ZatcaEndpoint.REPORTING);
+        assertThat(ZatcaRetryInterceptor.isRetryable((RuntimeException) thrown)).isFalse();
+        assertThat(sut.intercept(ZatcaEndpoint.COMPLIANCE_CSID, null, () -> "OK")).isEqualTo("OK");
+    }
+
+    @Test
+    void refundsTheTokenOfACallThatGotNoSlot() throws InterruptedException {
+        ZatcaRateLimitInterceptor sut = new ZatcaRateLimitInterceptor(new ZatcaProperties.RateLimit(true, 10, 1,
+                null, Duration.ofMillis(50), 1, 1, 1, Duration.ofSeconds(2), 0.5), clock::get);
+        assertThat(sut.concurrencyLimiter().tryAcquire(Lane.NORMAL, 0)).isTrue();
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, null, () -> "REPORTED"));
+
+        assertThat(thrown).isInstanceOf(ZatcaRateLimitedException.class);
+        sut.concurrencyLimiter().release(clock.get(), false);
+        assertThat(sut.tokenBuckets().get(ZatcaEndpoint.REPORTING).reserve(0)).isZero();
+    }
+
+    @Test
+    void queuesAsynchronousCallsForASlotWithoutBlocking() {
+        ZatcaRateLimitInterceptor sut = new ZatcaRateLimitInterceptor(new ZatcaProperties.RateLimit(true, 0, 1,
+                null, Duration.ofSeconds(2), 1, 1, 1, Duration.ofSeconds(2), 0.5), clock::get);
+        ZatcaReactiveCallInterceptor reactive = sut.reactive();
+        Sinks.One<String> first = Sinks.one();
+        List<String> results = new CopyOnWriteArrayList<>();
+
+        reactive.intercept(ZatcaEndpoint.REPORTING, null, first.asMono()).subscribe(results::add);
+        Disposable cancelled = reactive.intercept(ZatcaEndpoint.REPORTING, null, Mono.just("CANCELLED"))
+                .subscribe(results::add);
+        reactive.intercept(ZatcaEndpoint.REPORTING, null, Mono.just("REPORTED")).subscribe(results::add);
+        assertThat(sut.concurrencyLimiter().queued(Lane.LOW)).isEqualTo(2);
+        cancelled.dispose();
+        first.tryEmitValue("FIRST");
+
+        assertThat(results).containsExactlyInAnyOrder("FIRST", "REPORTED");
+        assertThat(sut.concurrencyLimiter().queued(Lane.LOW)).isZero();
+        assertThat(sut.concurrencyLimiter().inFlight()).isZero();
+    }
+
+    @Test
+    void lowersTheConcurrencyLimitOnceForEachRoundOfOverload() {
+        AdaptiveConcurrencyLimiter limiter = sut.concurrencyLimiter();
+
+        catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+            catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+                clock.addAndGet(1);
+                throw new ZatcaClientApiException(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", "");
+            }));
+            throw new ResourceAccessException("Read timed out");
+        }));
+        assertThat(limiter.limit()).isEqualTo(5);
+
+        sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> clock.addAndGet(Duration.ofSeconds(2).toNanos()));
+        assertThat(limiter.limit()).isEqualTo(2.5);
+        catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+            throw new ZatcaClientApiException(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", "");
+        }));
+        assertThat(limiter.limit()).isEqualTo(2);
+        catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+            throw new ZatcaClientApiException(HttpStatus.BAD_REQUEST, "Bad Request", "");
+        }));
+        assertThat(limiter.limit()).isEqualTo(2.5);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void raisesTheConcurrencyLimitWhileItIsInUse() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 5, 0.5, Long.MAX_VALUE, clock::get);
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire(Lane.NORMAL, 0)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(Lane.HIGH, 0)).isFalse();
+
+        for (int i = 0; i < 4; i++) {
+            limiter.release(0, false);
+        }
+
+        assertThat(limiter.limit()).isCloseTo(4.49, within(0.01));
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire(Lane.NORMAL, 0)).isTrue();
+            limiter.release(0, false);
+        }
+        assertThat(limiter.limit()).isCloseTo(4.49, within(0.01));
+    }
+
+    @Test
+    void grantsFreedSlotsToTheHighestLaneFirst() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, Long.MAX_VALUE,
+                System::nanoTime);
+        assertThat(limiter.tryAcquire(Lane.NORMAL, 0)).isTrue();
+        List<Lane> granted = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> low = executor.submit(() -> acquire(limiter, Lane.LOW, granted));
+            until(() -> limiter.queued(Lane.LOW) == 1);
+            Future<?> normal = executor.submit(() -> acquire(limiter, Lane.NORMAL, granted));
+            until(() -> limiter.queued(Lane.NORMAL) == 1);
+            Future<?> high = executor.submit(() -> acquire(limiter, Lane.HIGH, granted));
+            until(() -> limiter.queued(Lane.HIGH) == 1);
+
+            limiter.release(System.nanoTime(), false);
+            for (Future<?> call : List.of(low, normal, high)) {
+                call.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(granted).containsExactly(Lane.HIGH, Lane.NORMAL, Lane.LOW);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void publishesLimitsAndQueuesAsGauges() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ZatcaRateLimitMeters(sut, Set.of("acme"), meterRegistry);
+
+        assertThat(meterRegistry.get(ZatcaRateLimitMeters.RATE_LIMIT)
+                .tags("tenant", "default", "endpoint", "REPORTING").gauge().value()).isEqualTo(10);
+        assertThat(meterRegistry.find(ZatcaRateLimitMeters.RATE_LIMIT).tag("endpoint", "CLEARANCE").gauge())
+                .isNull();
+        assertThat(meterRegistry.get(ZatcaRateLimitMeters.CONCURRENCY_LIMIT).tag("tenant", "default").gauge().value())
+                .isEqualTo(10);
+        assertThat(meterRegistry.get(ZatcaRateLimitMeters.IN_FLIGHT).tag("tenant", "acme").gauge().value()).isZero();
+        assertThat(meterRegistry.get(ZatcaRateLimitMeters.QUEUED).tags("tenant", "default", "lane", "high").gauge()
+                .value()).isZero();
+        assertThat(meterRegistry.get(ZatcaRateLimitMeters.RATE_WAITING)
+                .tags("tenant", "acme", "endpoint", "REPORTING").gauge().value()).isZero();
+    }
+
+    private static void until(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimiter limiter, Lane lane, List<Lane> granted) {
+        try {
+            if (limiter.tryAcquire(lane, TimeUnit.SECONDS.toNanos(5))) {
+                granted.add(lane);
+                limiter.release(System.nanoTime(), false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.InvoiceSource;
+import com.ahmedmq.zatca.model.StreamingInvoiceRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class ZatcaRetryInterceptorTest {
+
+    ZatcaRetryInterceptor sut = new ZatcaRetryInterceptor(retry(3, 0.1, 10));
+
+    @Test
+    void retriesServerErrorsUntilSuccess() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = sut.intercept(ZatcaEndpoint.REPORTING, null, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw exception(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return "REPORTED";
+        });
+
+        assertThat(result).isEqualTo("REPORTED");
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void retriesThrottlingAndIoErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> switch (attempts.incrementAndGet()) {
+            case 1 -> throw exception(HttpStatus.TOO_MANY_REQUESTS);
+            case 2 -> throw new ResourceAccessException("Connection reset");
+            default -> "CLEARED";
+        });
+
+        assertThat(result).isEqualTo("CLEARED");
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryInvoiceStreamsThatCannotBeReadTwice() {
+        AtomicInteger attempts = new AtomicInteger();
+        StreamingInvoiceRequest request = new StreamingInvoiceRequest("hash", "uuid",
+                InvoiceSource.of(new ByteArrayInputStream(new byte[0])));
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, request, () -> {
+            attempts.incrementAndGet();
+            throw exception(HttpStatus.SERVICE_UNAVAILABLE);
+        }));
+
+        assertThat(thrown).isInstanceOf(ZatcaClientApiException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void doesNotRetryBusinessRejections() {
+        AtomicInteger attempts = new AtomicInteger();
+        ZatcaClientApiException rejection = exception(HttpStatus.BAD_REQUEST);
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, null, () -> {
+            attempts.incrementAndGet();
+            throw rejection;
+        }));
+
+        assertThat(thrown).isSameAs(rejection);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, null, () -> {
+            attempts.incrementAndGet();
+            throw exception(HttpStatus.INTERNAL_SERVER_ERROR);
+        }));
+
+        assertThat(thrown).isInstanceOf(ZatcaClientApiException.class);
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryCsidCalls() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.PRODUCTION_CSID, null, () -> {
+            attempts.incrementAndGet();
+            throw exception(HttpStatus.SERVICE_UNAVAILABLE);
+        }));
+
+        assertThat(thrown).isInstanceOf(ZatcaClientApiException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void honoursRetryAfter() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = sut.intercept(ZatcaEndpoint.REPORTING, null, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw exception(HttpStatus.TOO_MANY_REQUESTS, Duration.ZERO);
+            }
+            return "REPORTED";
+        });
+
+        assertThat(result).isEqualTo("REPORTED");
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void givesUpWhenRetryAfterExceedsMaxBackoff() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        Throwable thrown = catchThrowable(() -> sut.intercept(ZatcaEndpoint.CLEARANCE, null, () -> {
+            attempts.incrementAndGet();
+            throw exception(HttpStatus.SERVICE_UNAVAILABLE, Duration.ofSeconds(30));
+        }));
+
+        assertThat(thrown).isInstanceOf(ZatcaClientApiException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsExhausted() {
+        ZatcaRetryInterceptor sut = new ZatcaRetryInterceptor(retry(2, 0.2, 0));
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            catchThrowable(() -> sut.intercept(ZatcaEndpoint.REPORTING, null, () -> {
+                attempts.incrementAndGet();
+                throw exception(HttpStatus.BAD_GATEWAY);
+            }));
+        }
+
+        // five calls earn a single retry at a ratio of 0.2, granted to the last call
+        assertThat(attempts).hasValue(6);
+    }
+
+    private static ZatcaClientApiException exception(HttpStatus status) {
+        return new ZatcaClientApiException(status, status.getReasonPhrase(), "");
+    }
+
+    private static ZatcaClientApiException exception(HttpStatus status, Duration retryAfter) {
+        return new ZatcaClientApiException(status, status.getReasonPhrase(), "", null, retryAfter, true);
+    }
+
+    private static ZatcaProperties.Retry retry(int maxAttempts, double budgetRatio, int budgetMinRetriesPerSecond) {
+        return new ZatcaProperties.Retry(true, maxAttempts, Duration.ofMillis(1), Duration.ofMillis(5), 2,
+                budgetRatio, budgetMinRetriesPerSecond, Duration.ofSeconds(10));
+    }
+}
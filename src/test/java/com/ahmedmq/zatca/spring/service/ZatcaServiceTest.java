@@ -0,0 +1,71 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZatcaServiceTest {
+
+    static final String INVOICE = "PEludm9pY2UvPg==";
+
+    ZatcaService sut = new ZatcaService() {
+
+        @Override
+        public CSIDResponse complianceCSID(CSRRequest CSRRequest, String otp) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InvoiceComplianceResponse checkInvoiceCompliance(String userName, String password,
+                                                                InvoiceRequest invoiceRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CSIDResponse productionCSID(String certificate, String secret,
+                                           ProductionCSIDRequest productionCSIDRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InvoiceResult reportInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
+            return new InvoiceResult(invoiceRequest.invoice(), "REPORTED", List.of(), List.of());
+        }
+
+        @Override
+        public CSIDResponse renewProductionCSID(CSRRequest CSRRequest, String otp) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ClearedInvoiceResult clearedInvoice(String certificate, String secret, InvoiceRequest invoiceRequest) {
+            return new ClearedInvoiceResult("hash", invoiceRequest.invoice(), "CLEARED", List.of(), List.of());
+        }
+    };
+
+    @Test
+    void implementationsWrittenBeforeStreamingStillReportAndClearStreamedInvoices() {
+        StreamingInvoiceRequest streamed = new StreamingInvoiceRequest("hash", "uuid",
+                InvoiceSource.of(ByteBuffer.wrap("<Invoice/>".getBytes(StandardCharsets.UTF_8))));
+        ByteArrayOutputStream cleared = new ByteArrayOutputStream();
+
+        assertThat(sut.reportInvoice("certificate", "secret", streamed).invoiceHash()).isEqualTo(INVOICE);
+        assertThat(sut.clearedInvoice("certificate", "secret", streamed, InvoiceSink.of(cleared)))
+                .isEqualTo(new InvoiceResult("hash", "CLEARED", List.of(), List.of()));
+        assertThat(cleared.toString(StandardCharsets.UTF_8)).isEqualTo("<Invoice/>");
+    }
+
+    @Test
+    void implementationsWrittenBeforeEgsUnitsRefuseToCallOnTheirBehalf() {
+        assertThatThrownBy(() -> sut.reportInvoice("egs-1", new InvoiceRequest("hash", "uuid", INVOICE)))
+                .isInstanceOf(UnsupportedOperationException.class)
+                .hasMessageContaining("does not call on behalf of EGS units");
+    }
+}
@@ -0,0 +1,172 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.model.ClearedInvoiceResult;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.InvoiceResult;
+import com.ahmedmq.zatca.spring.service.ZatcaCsidRenewalManagerTest.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZatcaSubmissionDeduplicatorTest {
+
+    static final InvoiceResult REPORTED = new InvoiceResult("hash-1", "REPORTED", List.of(), List.of());
+
+    static final ClearedInvoiceResult CLEARED = new ClearedInvoiceResult("hash-1", "PEludm9pY2UvPg==", "CLEARED",
+            List.of(), List.of());
+
+    @TempDir
+    Path directory;
+
+    MutableClock clock = new MutableClock(Instant.parse("2024-03-01T10:15:30Z"));
+
+    AtomicInteger calls = new AtomicInteger();
+
+    ZatcaSubmissionDeduplicator sut = new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 2, null, clock);
+
+    @Test
+    void returnsTheResultOfAnAcceptedInvoice() {
+        assertThat(report("uuid-1", "hash-1", REPORTED)).isSameAs(REPORTED);
+        assertThat(report("uuid-1", "hash-1", REPORTED)).isSameAs(REPORTED);
+        assertThat(sut.deduplicate(ZatcaEndpoint.CLEARANCE, "uuid-1", "hash-1", () -> call(CLEARED))).isSameAs(CLEARED);
+        assertThat(sut.deduplicate(ZatcaEndpoint.CLEARANCE, "uuid-1", "hash-1", () -> call(CLEARED))).isSameAs(CLEARED);
+        assertThat(report("uuid-1", "hash-2", REPORTED)).isSameAs(REPORTED);
+
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void submitsARejectedOrFailedInvoiceAgain() {
+        InvoiceResult notReported = new InvoiceResult("hash-1", "NOT_REPORTED", List.of(),
+                List.of(new Error("XSD_SCHEMA_ERROR", "SCHEMA_ERROR", "Schema validation failed")));
+
+        assertThat(report("uuid-1", "hash-1", notReported)).isSameAs(notReported);
+        assertThatThrownBy(() -> sut.deduplicate(ZatcaEndpoint.REPORTING, "uuid-1", "hash-1", () -> {
+            calls.incrementAndGet();
+            throw new ResourceAccessException("Connection reset");
+        })).isInstanceOf(ResourceAccessException.class);
+        assertThat(report("uuid-1", "hash-1", REPORTED)).isSameAs(REPORTED);
+
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void coalescesConcurrentSubmissionsOfAnInvoice() throws Exception {
+        CountDownLatch submitted = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<InvoiceResult> first = executor.submit(() -> sut.deduplicate(ZatcaEndpoint.REPORTING, "uuid-1",
+                    "hash-1", () -> {
+                        calls.incrementAndGet();
+                        submitted.countDown();
+                        await(respond);
+                        return REPORTED;
+                    }));
+            assertThat(submitted.await(5, TimeUnit.SECONDS)).isTrue();
+            List<Future<InvoiceResult>> duplicates = List.of(
+                    executor.submit(() -> report("uuid-1", "hash-1", REPORTED)),
+                    executor.submit(() -> report("uuid-1", "hash-1", REPORTED)));
+            respond.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(REPORTED);
+            for (Future<InvoiceResult> duplicate : duplicates) {
+                assertThat(duplicate.get(5, TimeUnit.SECONDS)).isSameAs(REPORTED);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void forgetsAcceptedInvoicesAfterTheTtlOrBeyondTheMaximum() {
+        report("uuid-1", "hash-1", REPORTED);
+        clock.instant = clock.instant.plus(Duration.ofMinutes(59));
+        report("uuid-1", "hash-1", REPORTED);
+        clock.instant = clock.instant.plus(Duration.ofMinutes(1));
+        report("uuid-1", "hash-1", REPORTED);
+        assertThat(calls).hasValue(2);
+
+        report("uuid-2", "hash-2", REPORTED);
+        report("uuid-3", "hash-3", REPORTED);
+        assertThat(sut.size()).isEqualTo(2);
+        report("uuid-1", "hash-1", REPORTED);
+        assertThat(calls).hasValue(5);
+    }
+
+    @Test
+    void restoresAcceptedInvoicesFromTheStore() throws Exception {
+        FileDeduplicationStore store = new FileDeduplicationStore(directory, Duration.ofHours(1), 2, clock, Runnable::run);
+        sut = new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 2, store, clock);
+        report("uuid-1", "hash-1", REPORTED);
+        sut.deduplicate(ZatcaEndpoint.CLEARANCE, "uuid-2", "hash-2", () -> call(CLEARED));
+        Files.writeString(directory.resolve("accepted.jsonl"), "{\"endpoint\":\"REPO",
+                StandardOpenOption.APPEND);
+
+        clock.instant = clock.instant.plus(Duration.ofMinutes(30));
+        store = new FileDeduplicationStore(directory, Duration.ofHours(1), 2, clock, Runnable::run);
+        sut = new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 2, store, clock);
+
+        assertThat(report("uuid-1", "hash-1", null)).isEqualTo(REPORTED);
+        ClearedInvoiceResult cleared = sut.deduplicate(ZatcaEndpoint.CLEARANCE, "uuid-2", "hash-2", () -> call(null));
+        assertThat(cleared).isEqualTo(CLEARED);
+        assertThat(calls).hasValue(2);
+        assertThat(Files.readAllLines(directory.resolve("accepted.jsonl"))).hasSize(2);
+    }
+
+    @Test
+    void appendsToTheStoreAndCompactsItWithoutHoldingSubmissionsBack() throws Exception {
+        List<Runnable> writes = new ArrayList<>();
+        FileDeduplicationStore store = new FileDeduplicationStore(directory, Duration.ofHours(1), 2, clock,
+                writes::add);
+        sut = new ZatcaSubmissionDeduplicator(Duration.ofHours(1), 2, store, clock);
+        for (int i = 1; i <= 5; i++) {
+            report("uuid-" + i, "hash-" + i, REPORTED);
+        }
+
+        assertThat(writes).hasSize(1);
+        assertThat(directory.resolve("accepted.jsonl")).doesNotExist();
+        writes.get(0).run();
+
+        assertThat(Files.readAllLines(directory.resolve("accepted.jsonl"))).hasSize(2);
+        report("uuid-6", "hash-6", REPORTED);
+        writes.get(1).run();
+        store.close();
+        assertThat(store.load()).extracting(AcceptedSubmission::uuid).containsExactly("uuid-5", "uuid-6");
+    }
+
+    InvoiceResult report(String uuid, String invoiceHash, InvoiceResult result) {
+        return sut.deduplicate(ZatcaEndpoint.REPORTING, uuid, invoiceHash, () -> call(result));
+    }
+
+    <T> T call(T result) {
+        calls.incrementAndGet();
+        return result;
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
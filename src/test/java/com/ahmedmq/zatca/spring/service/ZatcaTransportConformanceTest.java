@@ -0,0 +1,286 @@
+package com.ahmedmq.zatca.spring.service;
+
+import com.ahmedmq.zatca.ZatcaProperties;
+import com.ahmedmq.zatca.model.Error;
+import com.ahmedmq.zatca.model.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ahmedmq.zatca.spring.service.ZatcaEndpoint.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+/**
+ * The behaviour every {@link ZatcaTransport} shares, run against each of them by a subclass.
+ */
+abstract class ZatcaTransportConformanceTest {
+
+    MockWebServer mockWebServer;
+
+    ZatcaProperties zatcaProperties;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    List<Exchange> exchanges = new CopyOnWriteArrayList<>();
+
+    ZatcaTransport transport;
+
+    InvoiceRequest invoiceRequest = new InvoiceRequest("hash", "uuid", "invoice");
+
+    abstract ZatcaTransport transport(ZatcaProperties zatcaProperties, List<ZatcaExchangeObserver> observers);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        zatcaProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "zatca.base-url", "http://localhost:" + mockWebServer.getPort(),
+                "zatca.api-version", "V2")))
+                .bindOrCreate("zatca", Bindable.of(ZatcaProperties.class));
+        transport = transport(zatcaProperties, List.of((endpoint, statusCode, requestBytes, responseBytes) ->
+                exchanges.add(new Exchange(endpoint, statusCode, requestBytes, responseBytes))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    void postsTheRequestWithItsHeaders() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "REPORTED", List.of(), List.of());
+        mockWebServer.enqueue(jsonResponse(200, invoiceResult));
+
+        InvoiceResult response = transport.exchange(REPORTING, basicAuth(REPORTING), invoiceRequest, InvoiceResult.class);
+
+        assertThat(response).isEqualTo(invoiceResult);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getMethod()).isEqualTo("POST");
+        assertThat(request.getPath()).isEqualTo("/invoices/reporting/single");
+        assertThat(request.getHeader("Authorization")).isEqualTo("Basic Y2VydGlmaWNhdGU6c2VjcmV0");
+        assertThat(request.getHeader("Accept-Version")).isEqualTo("V2");
+        assertThat(request.getHeader("Accept-Language")).isEqualTo("en");
+        assertThat(request.getHeader("Clearance-Status")).isEqualTo("0");
+        assertThat(request.getHeader("Content-Type")).startsWith("application/json");
+        assertThat(objectMapper.readValue(request.getBody().readUtf8(), InvoiceRequest.class)).isEqualTo(invoiceRequest);
+    }
+
+    @Test
+    void patchesARenewal() throws Exception {
+        CSIDResponse csidResponse = new CSIDResponse("456", "ISSUED", "productionToken", "productionSecret");
+        mockWebServer.enqueue(jsonResponse(200, csidResponse));
+
+        CSIDResponse response = transport.exchange(RENEW_PRODUCTION_CSID,
+                ZatcaRequestHeaders.withOtp(RENEW_PRODUCTION_CSID, "V2", "999"), new CSRRequest("csr"),
+                CSIDResponse.class);
+
+        assertThat(response).isEqualTo(csidResponse);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getMethod()).isEqualTo("PATCH");
+        assertThat(request.getPath()).isEqualTo("/production/csids");
+        assertThat(request.getHeader("OTP")).isEqualTo("999");
+    }
+
+    @Test
+    void streamsAnInvoice() throws Exception {
+        byte[] invoice = invoice(100_000);
+        ClearedInvoiceResult clearedInvoiceResult = new ClearedInvoiceResult("hash", "cleared", "CLEARED",
+                List.of(), List.of());
+        mockWebServer.enqueue(jsonResponse(200, clearedInvoiceResult));
+
+        ClearedInvoiceResult response = transport.exchange(CLEARANCE, basicAuth(CLEARANCE),
+                new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(ByteBuffer.wrap(invoice))),
+                ClearedInvoiceResult.class);
+
+        assertThat(response).isEqualTo(clearedInvoiceResult);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/invoices/clearance/single");
+        assertThat(request.getHeader("Content-Type")).startsWith("application/json");
+        assertThat(objectMapper.readValue(request.getBody().readUtf8(), InvoiceRequest.class))
+                .isEqualTo(new InvoiceRequest("hash", "uuid", Base64.getEncoder().encodeToString(invoice)));
+    }
+
+    @Test
+    void throwsARejectionWithItsErrorResponse() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "NOT_REPORTED", null,
+                List.of(new Error("INVOICE_ERRORS", "Invalid-Invoice-Hash", "The provided invoice hash is invalid")));
+        mockWebServer.enqueue(jsonResponse(400, invoiceResult));
+
+        ZatcaClientApiException exception = catchThrowableOfType(() ->
+                transport.exchange(REPORTING, basicAuth(REPORTING), invoiceRequest, InvoiceResult.class),
+                ZatcaClientApiException.class);
+
+        assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(exception.getStatusText()).isEqualTo("Bad Request");
+        assertThat(exception.getInvoiceResult()).isEqualTo(invoiceResult);
+    }
+
+    @Test
+    void throwsAServerError() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503).setBody("unavailable"));
+
+        ZatcaClientApiException exception = catchThrowableOfType(() ->
+                transport.exchange(REPORTING, basicAuth(REPORTING), invoiceRequest, InvoiceResult.class),
+                ZatcaClientApiException.class);
+
+        assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(exception.getResponseBody()).isEqualTo("unavailable");
+    }
+
+    @Test
+    void throwsAnUnreachableGatewayAsAResourceAccessException() throws IOException {
+        mockWebServer.shutdown();
+
+        assertThatThrownBy(() -> transport.exchange(REPORTING, basicAuth(REPORTING), invoiceRequest, InvoiceResult.class))
+                .isInstanceOf(ResourceAccessException.class);
+        assertThatThrownBy(() -> transport.exchange(CLEARANCE, basicAuth(CLEARANCE),
+                new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(ByteBuffer.wrap(invoice(100_000)))),
+                ClearedInvoiceResult.class))
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void writesTheClearedInvoiceToTheSink() throws Exception {
+        byte[] clearedInvoice = invoice(50_000);
+        mockWebServer.enqueue(jsonResponse(200, new ClearedInvoiceResult("hash",
+                Base64.getEncoder().encodeToString(clearedInvoice), "CLEARED", List.of(), List.of())));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        InvoiceResult response = transport.exchange(CLEARANCE, basicAuth(CLEARANCE),
+                new StreamingInvoiceRequest("hash", "uuid", InvoiceSource.of(ByteBuffer.wrap(invoice(1_000)))),
+                InvoiceSink.of(sink));
+
+        assertThat(response).isEqualTo(new InvoiceResult("hash", "CLEARED", List.of(), List.of()));
+        assertThat(sink.toByteArray()).isEqualTo(clearedInvoice);
+    }
+
+    @Test
+    void writesTheClearedInvoiceToTheSinkAsTheResponseArrives() throws Exception {
+        mockWebServer.enqueue(jsonResponse(200, new ClearedInvoiceResult("hash",
+                Base64.getEncoder().encodeToString(invoice(60_000)), "CLEARED", List.of(), List.of()))
+                .throttleBody(8 * 1024, 100, TimeUnit.MILLISECONDS));
+        AtomicLong firstWrite = new AtomicLong();
+
+        transport.exchange(CLEARANCE, basicAuth(CLEARANCE), invoiceRequest, () -> new OutputStream() {
+            @Override
+            public void write(int b) {
+                firstWrite.compareAndSet(0, System.nanoTime());
+            }
+        });
+
+        assertThat(firstWrite).doesNotHaveValue(0);
+        assertThat(Duration.ofNanos(System.nanoTime() - firstWrite.get())).isGreaterThan(Duration.ofMillis(300));
+    }
+
+    @Test
+    void doesNotOpenTheSinkOfARejectedClearance() throws Exception {
+        InvoiceResult invoiceResult = new InvoiceResult("hash", "NOT_CLEARED", null,
+                List.of(new Error("INVOICE_ERRORS", "Invalid-Invoice-Hash", "The provided invoice hash is invalid")));
+        mockWebServer.enqueue(jsonResponse(400, invoiceResult));
+        AtomicBoolean opened = new AtomicBoolean();
+
+        ZatcaClientApiException exception = catchThrowableOfType(() ->
+                transport.exchange(CLEARANCE, basicAuth(CLEARANCE), invoiceRequest, () -> {
+                    opened.set(true);
+                    return OutputStream.nullOutputStream();
+                }), ZatcaClientApiException.class);
+
+        assertThat(exception.getInvoiceResult()).isEqualTo(invoiceResult);
+        assertThat(opened).isFalse();
+    }
+
+    @Test
+    void doesNotReportAFailingSinkAsAnIoError() throws Exception {
+        mockWebServer.enqueue(jsonResponse(200, new ClearedInvoiceResult("hash",
+                Base64.getEncoder().encodeToString(invoice(1_000)), "CLEARED", List.of(), List.of())));
+
+        assertThatThrownBy(() -> transport.exchange(CLEARANCE, basicAuth(CLEARANCE), invoiceRequest, () ->
+                new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Disk full");
+                    }
+                }))
+                .isInstanceOf(RestClientException.class)
+                .isNotInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void reportsTheExchangeToTheObservers() throws Exception {
+        String invoiceResult = objectMapper.writeValueAsString(new InvoiceResult("hash", "REPORTED", List.of(), List.of()));
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(invoiceResult));
+
+        transport.exchange(REPORTING, basicAuth(REPORTING), invoiceRequest, InvoiceResult.class);
+
+        long requestBytes = mockWebServer.takeRequest().getBodySize();
+        assertThat(exchanges).containsExactly(new Exchange(REPORTING, HttpStatus.OK, requestBytes,
+                invoiceResult.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    /**
+     * A {@link RestTemplate} set up the way the auto-configuration sets it up.
+     */
+    static RestTemplate restTemplate(ZatcaProperties zatcaProperties, List<ZatcaExchangeObserver> observers) {
+        return new RestTemplateBuilder()
+                .rootUri(zatcaProperties.baseUrl())
+                .requestFactory(() -> new ZatcaObservedClientHttpRequestFactory(
+                        ZatcaClientHttpRequestFactories.create(zatcaProperties.http()), observers))
+                .errorHandler(new ZatcaClientErrorHandler(zatcaProperties.errors()))
+                .build();
+    }
+
+    static HttpHeaders basicAuth(ZatcaEndpoint endpoint) {
+        return ZatcaRequestHeaders.withBasicAuth(endpoint, "V2", "certificate", "secret");
+    }
+
+    static byte[] invoice(int size) {
+        byte[] invoice = new byte[size];
+        for (int i = 0; i < size; i++) {
+            invoice[i] = (byte) ('a' + i % 26);
+        }
+        return invoice;
+    }
+
+    MockResponse jsonResponse(int status, Object body) throws JsonProcessingException {
+        return new MockResponse()
+                .setStatus("HTTP/1.1 " + status + " " + HttpStatus.valueOf(status).getReasonPhrase())
+                .setHeader("Content-Type", "application/json")
+                .setBody(objectMapper.writeValueAsString(body));
+    }
+
+    record Exchange(ZatcaEndpoint endpoint, HttpStatusCode statusCode, long requestBytes, long responseBytes) {
+    }
+}